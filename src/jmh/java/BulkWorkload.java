@@ -0,0 +1,72 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import bench.Workload;
+
+/**
+ * Adds, updates or deletes a batch of books in a generated catalog, either
+ * through the batch operations or one book at a time. Each run starts from
+ * a fresh copy of the catalog.
+ */
+public class BulkWorkload implements Workload {
+    private List<Book> catalog;
+    private List<Book> extra;
+    private Set<String> ids;
+    private Map<String, Book> updates;
+    private String operation;
+    private Library library;
+
+    @Override
+    public void setUp(Map<String, String> params) {
+        int size = CatalogGenerator.size(params);
+        int batch = Integer.parseInt(params.get("batch"));
+        List<Book> books = CatalogGenerator.generate(size + batch, 1);
+        catalog = books.subList(0, size);
+        extra = books.subList(size, size + batch);
+        ids = new HashSet<>();
+        updates = new HashMap<>();
+        for (int i = 0; i < batch; i++) {
+            Book book = catalog.get((int) ((long) i * size / batch));
+            Book values = extra.get(i);
+            ids.add(book.getId());
+            updates.put(book.getId(), new Book(book.getId(), values.getTitle(), values.getAuthor(),
+                    values.getPublicationYear()));
+        }
+        operation = params.get("operation");
+    }
+
+    @Override
+    public void prepare() {
+        library = new Library();
+        library.setBooks(catalog);
+    }
+
+    @Override
+    public Object run() {
+        switch (operation) {
+            case "addAll":
+                return library.addAll(extra);
+            case "addEach":
+                extra.forEach(library::addBook);
+                return library;
+            case "updateAll":
+                return library.updateAll(updates);
+            case "updateEach":
+                updates.forEach(library::updateBook);
+                return library;
+            case "deleteAll":
+                return library.deleteAll(ids);
+            case "deleteWhere":
+                return library.deleteWhere(book -> ids.contains(book.getId()));
+            case "deleteEach":
+                ids.forEach(library::deleteBook);
+                return library;
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generates reproducible synthetic catalogs for the benchmarks. Authors are
+ * skewed so that a few of them write many books, as in real catalogs.
+ */
+public final class CatalogGenerator {
+    static final String[] WORDS = {
+            "the", "great", "gatsby", "war", "peace", "pride", "prejudice", "mockingbird",
+            "catcher", "rye", "brave", "new", "world", "animal", "farm", "lord", "flies",
+            "old", "man", "sea", "grapes", "wrath", "sound", "fury", "light", "august",
+            "moby", "dick", "little", "women", "crime", "punishment", "idiot", "brothers",
+            "hobbit", "rings", "dune", "foundation", "empire", "night", "day", "river",
+            "mountain", "garden", "house", "city", "silence", "shadow", "winter", "summer",
+            "station", "eleven", "road", "kingdom", "secret", "history", "song", "ice",
+            "fire", "storm", "island", "dream", "stone", "glass"
+    };
+    static final String[] FIRST_NAMES = {
+            "George", "Jane", "Harper", "Leo", "Fyodor", "Virginia", "Ernest", "Toni",
+            "Gabriel", "Haruki", "Chinua", "Doris", "Ursula", "Isaac", "Octavia", "Kazuo"
+    };
+    static final String[] LAST_NAMES = {
+            "Orwell", "Austen", "Lee", "Tolstoy", "Dostoevsky", "Woolf", "Hemingway", "Morrison",
+            "Marquez", "Murakami", "Achebe", "Lessing", "Le Guin", "Asimov", "Butler", "Ishiguro",
+            "Fitzgerald", "Salinger", "Steinbeck", "Faulkner", "Melville", "Alcott", "Tolkien", "Herbert"
+    };
+
+    private CatalogGenerator() {
+    }
+
+    /**
+     * Generates books with deterministic IDs, titles, authors and years.
+     *
+     * @param size Number of books
+     * @param seed Random seed
+     */
+    public static List<Book> generate(int size, long seed) {
+        Random random = new Random(seed);
+        String[] authors = new String[Math.max(16, size / 20)];
+        for (int i = 0; i < authors.length; i++) {
+            authors[i] = author(i);
+        }
+        List<Book> books = new ArrayList<>(size);
+        StringBuilder title = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            title.setLength(0);
+            int words = 1 + random.nextInt(4);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    title.append(' ');
+                }
+                String word = WORDS[random.nextInt(WORDS.length)];
+                title.append(w == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+            }
+            books.add(new Book(randomId(random), title.toString(), authors[skewed(random, authors.length)],
+                    1450 + random.nextInt(575)));
+        }
+        return books;
+    }
+
+    /**
+     * Name of the author with the given number; low numbers are the most
+     * prolific.
+     */
+    static String author(int n) {
+        String name = FIRST_NAMES[n % FIRST_NAMES.length] + " " + LAST_NAMES[(n / FIRST_NAMES.length) % LAST_NAMES.length];
+        int generation = n / (FIRST_NAMES.length * LAST_NAMES.length);
+        return generation == 0 ? name : name + " " + (generation + 1);
+    }
+
+    /**
+     * Arranges books for a sort benchmark.
+     *
+     * @param books The books to rearrange in place
+     * @param order "random", "sorted" or "reversed"
+     * @param comparator The order the benchmarked sort produces
+     */
+    public static void arrange(List<Book> books, String order, Comparator<Book> comparator) {
+        switch (order) {
+            case "random" -> Collections.shuffle(books, new Random(42));
+            case "sorted" -> books.sort(comparator);
+            case "reversed" -> books.sort(comparator.reversed());
+            default -> throw new IllegalArgumentException("Unknown order: " + order);
+        }
+    }
+
+    /**
+     * Writes books as CSV lines that {@link Library#loadBooks} accepts.
+     */
+    public static void writeCsv(List<Book> books, Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Book book : books) {
+                writer.write(book.getTitle());
+                writer.write(',');
+                writer.write(book.getAuthor());
+                writer.write(',');
+                writer.write(Integer.toString(book.getPublicationYear()));
+                writer.write('\n');
+            }
+        }
+    }
+
+    static int size(Map<String, String> params) {
+        return Integer.parseInt(params.get("size"));
+    }
+
+    private static int skewed(Random random, int authors) {
+        double u = random.nextDouble();
+        return (int) (authors * u * u * u);
+    }
+
+    private static String randomId(Random random) {
+        long most = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long least = (random.nextLong() & ~(0xC000L << 48)) | (0x8000L << 48);
+        return new UUID(most, least).toString();
+    }
+}
@@ -0,0 +1,44 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import bench.Workload;
+
+/**
+ * Parses a generated CSV catalog, either through {@link CsvIngestor} alone
+ * or through {@link Library#loadBooks}, which also builds the indexes.
+ */
+public class CsvWorkload implements Workload {
+    private Path file;
+    private boolean index;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        file = Files.createTempFile("books-bench", ".csv");
+        CatalogGenerator.writeCsv(CatalogGenerator.generate(CatalogGenerator.size(params), 1), file);
+        index = "loadBooks".equals(params.get("operation"));
+    }
+
+    @Override
+    public Object run() throws Exception {
+        if (!index) {
+            return new CsvIngestor().ingest(file);
+        }
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            Library library = new Library();
+            library.loadBooks(file.toString());
+            return library;
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+}
@@ -0,0 +1,82 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import bench.Workload;
+
+/**
+ * Exports a generated catalog with {@link CatalogExporter}, or with the code
+ * a caller would write without it: a {@link BufferedWriter}, optionally over
+ * a {@link GZIPOutputStream}, fed one formatted string per book.
+ */
+public class ExportWorkload implements Workload {
+    private Library library;
+    private Path file;
+    private boolean json;
+    private boolean gzip;
+    private boolean exporter;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        library = new Library();
+        library.setBooks(CatalogGenerator.generate(CatalogGenerator.size(params), 1));
+        json = switch (params.get("format")) {
+            case "csv" -> false;
+            case "jsonl" -> true;
+            default -> throw new IllegalArgumentException("Unknown format: " + params.get("format"));
+        };
+        gzip = Boolean.parseBoolean(params.get("gzip"));
+        exporter = switch (params.get("writer")) {
+            case "exporter" -> true;
+            case "stream" -> false;
+            default -> throw new IllegalArgumentException("Unknown writer: " + params.get("writer"));
+        };
+        file = Files.createTempFile("library-bench", json ? ".jsonl" : ".csv");
+    }
+
+    @Override
+    public Object run() throws IOException {
+        if (exporter) {
+            return new CatalogExporter(json ? CatalogExporter.Format.JSON_LINES : CatalogExporter.Format.CSV, gzip)
+                    .export(library, file);
+        }
+        long count = 0;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(gzip
+                ? new GZIPOutputStream(Files.newOutputStream(file), 1 << 16)
+                : Files.newOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            for (Book book : library) {
+                if (json) {
+                    Map<String, Object> object = new LinkedHashMap<>();
+                    object.put("id", book.getId());
+                    object.put("title", book.getTitle());
+                    object.put("author", book.getAuthor());
+                    object.put("year", book.getPublicationYear());
+                    out.write(Json.write(object));
+                } else {
+                    out.write(quote(book.getTitle()) + "," + quote(book.getAuthor()) + ","
+                            + book.getPublicationYear());
+                }
+                out.write('\n');
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String quote(String value) {
+        return value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 ? value
+                : '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+}
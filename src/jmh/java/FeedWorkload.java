@@ -0,0 +1,76 @@
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
+
+import bench.Workload;
+
+/**
+ * Updates books by ID in a generated catalog while the library's change
+ * feed has no subscribers, one subscriber that keeps up, or one that has
+ * stopped requesting and so has its changes coalesced in its buffer until
+ * the history leaves it behind.
+ */
+public class FeedWorkload implements Workload {
+    private Library library;
+    private String[] ids;
+    private int next;
+
+    @Override
+    public void setUp(Map<String, String> params) {
+        List<Book> books = CatalogGenerator.generate(CatalogGenerator.size(params), 1);
+        library = new Library();
+        library.setBooks(books);
+        int count = Math.min(books.size(), 1 << 16);
+        ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = books.get((int) ((long) i * books.size() / count)).getId();
+        }
+        String subscriber = params.get("subscriber");
+        switch (subscriber) {
+            case "none" -> {
+            }
+            case "fast" -> library.getChangeFeed().subscribe(new Sink(Long.MAX_VALUE));
+            case "stalled" -> library.getChangeFeed().subscribe(new Sink(0));
+            default -> throw new IllegalArgumentException("Unknown subscriber: " + subscriber);
+        }
+    }
+
+    @Override
+    public Object run() {
+        String id = ids[next];
+        next = next + 1 == ids.length ? 0 : next + 1;
+        Book book = library.getBookById(id).orElseThrow();
+        return library.updateBook(id, new Book(id, book.getTitle(), book.getAuthor(),
+                book.getPublicationYear() + 1));
+    }
+
+    /**
+     * Requests a fixed number of changes and discards them.
+     */
+    private static final class Sink implements Flow.Subscriber<ChangeFeed.Change> {
+        private final long requested;
+
+        private Sink(long requested) {
+            this.requested = requested;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (requested > 0) {
+                subscription.request(requested);
+            }
+        }
+
+        @Override
+        public void onNext(ChangeFeed.Change change) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,52 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import bench.Workload;
+
+/**
+ * Loads a generated CSV catalog into a library with standard or compact
+ * book storage and returns either the library or just the books it stores,
+ * for the benchmark to weigh. Storage {@code COLUMNAR} loads the books into
+ * an off-heap {@link ColumnarCatalog} instead and returns the catalog.
+ * Loading from CSV gives every book its own ID and author strings, as in a
+ * real import.
+ */
+public class FootprintWorkload implements Workload {
+    private Path file;
+    private String storage;
+    private boolean booksOnly;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        file = Files.createTempFile("books-bench", ".csv");
+        CatalogGenerator.writeCsv(CatalogGenerator.generate(CatalogGenerator.size(params), 1), file);
+        storage = params.get("storage");
+        booksOnly = "books".equals(params.get("retain"));
+    }
+
+    @Override
+    public Object run() throws Exception {
+        if (storage.equals("COLUMNAR")) {
+            ColumnarCatalog catalog = new ColumnarCatalog();
+            catalog.addAll(new CsvIngestor().ingest(file).getBooks());
+            return catalog;
+        }
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            Library library = new Library(Library.Storage.valueOf(storage));
+            library.loadBooks(file.toString());
+            return booksOnly ? library.getBooks() : library;
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+}
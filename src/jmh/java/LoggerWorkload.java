@@ -0,0 +1,40 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import bench.Workload;
+
+/**
+ * Logs through {@link UserInteractionLogger} into a temporary file. Only the
+ * caller-side cost is measured; writing happens on the writer thread.
+ */
+public class LoggerWorkload implements Workload {
+    private Path dir;
+    private AsyncLogWriter writer;
+    private UserInteractionLogger logger;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        dir = Files.createTempDirectory("logger-bench");
+        writer = new AsyncLogWriter(dir.resolve("user_interactions.log").toString(), 1 << 16,
+                AsyncLogWriter.OverflowPolicy.valueOf(params.get("policy")), 1 << 16, 200, 64L << 20, 1);
+        logger = new UserInteractionLogger(writer);
+    }
+
+    @Override
+    public Object run() {
+        logger.logSearch("gatsby");
+        return logger;
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        writer.close();
+        try (var files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+}
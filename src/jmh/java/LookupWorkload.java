@@ -0,0 +1,50 @@
+import java.util.List;
+import java.util.Map;
+
+import bench.Workload;
+
+/**
+ * Looks up, updates or deletes books by ID in a generated catalog. Deleted
+ * books are added back as new instances so the catalog size stays constant.
+ */
+public class LookupWorkload implements Workload {
+    private Library library;
+    private String[] ids;
+    private String operation;
+    private int next;
+
+    @Override
+    public void setUp(Map<String, String> params) {
+        List<Book> books = CatalogGenerator.generate(CatalogGenerator.size(params), 1);
+        library = new Library();
+        library.setBooks(books);
+        int count = Math.min(books.size(), 1 << 16);
+        ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = books.get((int) ((long) i * books.size() / count)).getId();
+        }
+        operation = params.get("operation");
+    }
+
+    @Override
+    public Object run() {
+        String id = ids[next];
+        next = next + 1 == ids.length ? 0 : next + 1;
+        switch (operation) {
+            case "getById":
+                return library.getBookById(id);
+            case "update": {
+                Book book = library.getBookById(id).orElseThrow();
+                return library.updateBook(id, new Book(id, book.getTitle(), book.getAuthor(),
+                        book.getPublicationYear() + 1));
+            }
+            case "deleteAndAdd": {
+                Book book = library.getBookById(id).orElseThrow();
+                library.deleteBook(id);
+                return library.addBook(new Book(id, book.getTitle(), book.getAuthor(), book.getPublicationYear()));
+            }
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+    }
+}
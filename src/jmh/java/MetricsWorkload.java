@@ -0,0 +1,60 @@
+import java.util.List;
+import java.util.Map;
+
+import bench.Workload;
+
+/**
+ * Runs cheap library operations with metrics recording on or off, to show
+ * what the instrumentation costs. The search cache is off so searches do
+ * their full work.
+ */
+public class MetricsWorkload implements Workload {
+    private static final String[] KEYWORDS = {"orwell", "austen", "history", "war", "love"};
+
+    private Library library;
+    private String[] ids;
+    private String[] titles;
+    private String operation;
+    private int next;
+
+    @Override
+    public void setUp(Map<String, String> params) {
+        Metrics.setEnabled(Boolean.parseBoolean(params.get("metrics")));
+        List<Book> books = CatalogGenerator.generate(CatalogGenerator.size(params), 1);
+        library = new Library();
+        library.setBooks(books);
+        library.setSearchCacheCapacity(0);
+        int count = Math.min(books.size(), 1 << 16);
+        ids = new String[count];
+        titles = new String[count];
+        for (int i = 0; i < count; i++) {
+            Book book = books.get((int) ((long) i * books.size() / count));
+            ids[i] = book.getId();
+            titles[i] = book.getTitle();
+        }
+        operation = params.get("operation");
+    }
+
+    @Override
+    public Object run() {
+        int i = next;
+        next = next + 1 == ids.length ? 0 : next + 1;
+        switch (operation) {
+            case "getById":
+                return library.getBookById(ids[i]);
+            case "exact":
+                return library.searchBookByKeyword(titles[i]);
+            case "keyword":
+                return library.searchBooksByKeyword(KEYWORDS[i % KEYWORDS.length]);
+            case "topKByYear":
+                return library.topKByYear(10, true);
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+    }
+
+    @Override
+    public void tearDown() {
+        Metrics.setEnabled(true);
+    }
+}
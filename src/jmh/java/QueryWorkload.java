@@ -0,0 +1,51 @@
+import java.util.Comparator;
+import java.util.Map;
+
+import bench.Workload;
+
+/**
+ * Runs a compound query against a generated catalog, either through
+ * {@link Library#query} or as a client would without it: a stream over every
+ * book that filters, sorts and limits. The library's result cache is off.
+ */
+public class QueryWorkload implements Workload {
+    private Library library;
+    private Query query;
+    private boolean planned;
+    private Comparator<Book> order;
+
+    @Override
+    public void setUp(Map<String, String> params) {
+        library = new Library();
+        library.setSearchCacheCapacity(0);
+        library.setBooks(CatalogGenerator.generate(CatalogGenerator.size(params), 1));
+        String name = params.get("query");
+        query = switch (name) {
+            // The most prolific author's books of the 1940s, first ten by title
+            case "author" -> Query.all().authorIs(CatalogGenerator.author(0)).yearBetween(1940, 1950)
+                    .orderBy(SortUtil.Key.TITLE).limit(10);
+            // Twenty newest books mentioning a word
+            case "keyword" -> Query.all().keyword("winter").orderByDescending(SortUtil.Key.YEAR).limit(20);
+            // Fifty oldest books of this century
+            case "recent" -> Query.all().yearBetween(2000, 2024).orderBy(SortUtil.Key.YEAR).limit(50);
+            default -> throw new IllegalArgumentException("Unknown query: " + name);
+        };
+        planned = switch (params.get("mode")) {
+            case "planner" -> true;
+            case "client" -> false;
+            default -> throw new IllegalArgumentException("Unknown mode: " + params.get("mode"));
+        };
+        order = SortUtil.comparator(query.getOrderBy());
+        if (query.isDescending()) {
+            order = order.reversed();
+        }
+    }
+
+    @Override
+    public Object run() {
+        if (planned) {
+            return library.query(query);
+        }
+        return library.getBooks().stream().filter(query::matches).sorted(order).limit(query.getLimit()).toList();
+    }
+}
@@ -0,0 +1,48 @@
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import bench.Workload;
+
+/**
+ * The read mix of a catalog page: an exact search, a lookup by ID and a
+ * keyword search, for a random book each time. Safe to run from several
+ * threads at once. With {@code cache=off} every search runs against the
+ * indexes; with {@code cache=on} the searches are answered from the result
+ * cache once the keys have been seen.
+ */
+public class ReadScalingWorkload implements Workload {
+    private Library library;
+    private String[] ids;
+    private String[] titles;
+    private String[] authors;
+
+    @Override
+    public void setUp(Map<String, String> params) {
+        List<Book> books = CatalogGenerator.generate(CatalogGenerator.size(params), 1);
+        library = new Library();
+        library.setBooks(books);
+        if ("off".equals(params.get("cache"))) {
+            library.setSearchCacheCapacity(0);
+        }
+        int count = Math.min(books.size(), 1 << 12);
+        ids = new String[count];
+        titles = new String[count];
+        authors = new String[count];
+        for (int i = 0; i < count; i++) {
+            Book book = books.get((int) ((long) i * books.size() / count));
+            ids[i] = book.getId();
+            titles[i] = book.getTitle();
+            authors[i] = book.getAuthor().toLowerCase();
+        }
+    }
+
+    @Override
+    public Object run() {
+        int n = ThreadLocalRandom.current().nextInt(ids.length);
+        Book exact = library.searchBookByKeyword(titles[n]);
+        Book byId = library.getBookById(ids[n]).orElseThrow();
+        List<Book> matches = library.searchBooksByKeyword(authors[n]);
+        return exact == byId ? matches : null;
+    }
+}
@@ -0,0 +1,92 @@
+import java.util.Map;
+import java.util.function.Function;
+
+import bench.Workload;
+
+/**
+ * Runs keyword searches against a generated catalog, cycling through a
+ * fixed set of queries. The search result cache is off except for the
+ * {@code cached} query, so the other queries measure the search itself.
+ */
+public class SearchWorkload implements Workload {
+    private Library library;
+    private String[] queries;
+    private Function<String, Object> search;
+    private int next;
+
+    @Override
+    public void setUp(Map<String, String> params) {
+        library = new Library();
+        library.setBooks(CatalogGenerator.generate(CatalogGenerator.size(params), 1));
+        String query = params.get("query");
+        if (!query.equals("cached")) {
+            library.setSearchCacheCapacity(0);
+        }
+        switch (query) {
+            case "keyword" -> {
+                // Substrings of title words and author names
+                queries = new String[] {"gats", "orwell", "mocking", "station", "rye", "haruki mur"};
+                search = library::searchBooksByKeyword;
+            }
+            case "shortKeyword" -> {
+                // Too short for the trigram index, answered by a scan
+                queries = new String[] {"19", "ab", "x"};
+                search = library::searchBooksByKeyword;
+            }
+            case "shortKeywordScan" -> {
+                // The same keywords as a scan lower-casing every title and
+                // author, as searches ran before the byte-level scanner
+                queries = new String[] {"19", "ab", "x"};
+                search = keyword -> library.getBooks().stream()
+                        .filter(book -> book.getTitle().toLowerCase().contains(keyword)
+                                || book.getAuthor().toLowerCase().contains(keyword)
+                                || String.valueOf(book.getPublicationYear()).contains(keyword))
+                        .toList();
+            }
+            case "exact" -> {
+                queries = new String[] {CatalogGenerator.author(0), CatalogGenerator.author(5),
+                        "the great gatsby", "Dune"};
+                search = library::searchBookByKeyword;
+            }
+            case "exactMiss" -> {
+                queries = new String[] {"no such title", "Nobody At All"};
+                search = library::searchBookByKeyword;
+            }
+            case "fuzzy" -> {
+                // Misspelled titles and authors, top 10 by edit distance
+                queries = new String[] {"Orwel", "great gatsbi", "mokingbird", "haruki murakam",
+                        "staton eleven", "no such thign"};
+                search = terms -> library.searchBooksFuzzy(terms, 10);
+            }
+            case "cached" -> {
+                // Repeated popular searches, answered from the result cache
+                queries = new String[] {"gats", "orwell", "19", "x"};
+                search = library::searchBooksByKeyword;
+            }
+            case "yearRange" -> {
+                // Decades, answered from the sorted year index
+                queries = new String[] {"1920", "1950", "1990", "2010"};
+                search = from -> library.findByYearRange(Integer.parseInt(from), Integer.parseInt(from) + 9);
+            }
+            case "yearScan" -> {
+                // The same decades as a filtered scan, for comparison
+                queries = new String[] {"1920", "1950", "1990", "2010"};
+                search = from -> {
+                    int start = Integer.parseInt(from);
+                    return library.stream()
+                            .filter(book -> book.getPublicationYear() >= start
+                                    && book.getPublicationYear() <= start + 9)
+                            .count();
+                };
+            }
+            default -> throw new IllegalArgumentException("Unknown query: " + query);
+        }
+    }
+
+    @Override
+    public Object run() {
+        String query = queries[next];
+        next = next + 1 == queries.length ? 0 : next + 1;
+        return search.apply(query);
+    }
+}
@@ -0,0 +1,48 @@
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import bench.Workload;
+
+/**
+ * Saves or loads a generated catalog with {@link LibrarySerializer}. The
+ * "loadLegacy" operation reads a Java-serialized file for comparison.
+ */
+public class SerializerWorkload implements Workload {
+    private final LibrarySerializer serializer = new LibrarySerializer();
+    private List<Book> books;
+    private Path file;
+    private String operation;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        books = CatalogGenerator.generate(CatalogGenerator.size(params), 1);
+        file = Files.createTempFile("library-bench", ".ser");
+        operation = params.get("operation");
+        if ("loadLegacy".equals(operation)) {
+            try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file.toFile()))) {
+                out.writeObject(new ArrayList<>(books));
+            }
+        } else {
+            serializer.saveLibrary(books, file.toString());
+        }
+    }
+
+    @Override
+    public Object run() {
+        return switch (operation) {
+            case "save" -> serializer.saveLibrary(books, file.toString());
+            case "load", "loadLegacy" -> serializer.loadLibrary(file.toString());
+            default -> throw new IllegalArgumentException("Unknown operation: " + operation);
+        };
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+}
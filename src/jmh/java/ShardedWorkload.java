@@ -0,0 +1,54 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import bench.Workload;
+
+/**
+ * Runs queries against a generated catalog split across a number of
+ * {@link ShardedLibrary} shards, with the shards' result caches off. One
+ * shard measures the cost of the scatter-gather machinery itself.
+ */
+public class ShardedWorkload implements Workload {
+    private static final String[] KEYWORDS = {"gats", "orwell", "mocking", "station", "rye", "haruki mur"};
+
+    private Supplier<Object> query;
+    private int next;
+
+    @Override
+    public void setUp(Map<String, String> params) {
+        ShardedLibrary library = new ShardedLibrary(Integer.parseInt(params.get("shards")));
+        for (int i = 0; i < library.getShardCount(); i++) {
+            library.getShard(i).setSearchCacheCapacity(0);
+        }
+        library.addAll(CatalogGenerator.generate(CatalogGenerator.size(params), 1));
+        Comparator<Book> byAuthor = Comparator.comparing(Book::getAuthor);
+        String name = params.get("query");
+        query = switch (name) {
+            case "keyword" -> () -> {
+                String keyword = KEYWORDS[next];
+                next = next + 1 == KEYWORDS.length ? 0 : next + 1;
+                return library.searchBooksByKeyword(keyword);
+            };
+            // Served from the merged listing until a shard changes
+            case "sortedTitle" -> () -> library.getSortedBooks(SortUtil.Key.TITLE);
+            // The merge itself, over the shards' cached sorted views
+            case "mergeTitle" -> () -> {
+                List<List<Book>> runs = new ArrayList<>();
+                for (int i = 0; i < library.getShardCount(); i++) {
+                    runs.add(library.getShard(i).getSortedBooks(SortUtil.Key.TITLE));
+                }
+                return SortUtil.mergeSorted(runs, SortUtil.Key.TITLE, Integer.MAX_VALUE);
+            };
+            case "topK" -> () -> library.topK(byAuthor, 100);
+            default -> throw new IllegalArgumentException("Unknown query: " + name);
+        };
+    }
+
+    @Override
+    public Object run() {
+        return query.get();
+    }
+}
@@ -0,0 +1,71 @@
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import bench.Workload;
+
+/**
+ * Sorts a fresh copy of a generated catalog with one {@link SortUtil}
+ * algorithm. The copy is part of the measured time; it is O(n) and small
+ * next to the sort itself.
+ */
+public class SortWorkload implements Workload {
+    private List<Book> pristine;
+    private final List<Book> work = new ArrayList<>();
+    private Runnable sort;
+
+    @Override
+    public void setUp(Map<String, String> params) {
+        Comparator<Book> byTitle = Comparator.comparing(Book::getTitle);
+        Comparator<Book> byYear = Comparator.comparingInt(Book::getPublicationYear);
+        String algorithm = params.get("algorithm");
+        Comparator<Book> order;
+        switch (algorithm) {
+            case "bubble" -> {
+                order = byTitle;
+                sort = () -> SortUtil.bubbleSort(work, byTitle);
+            }
+            case "insertion" -> {
+                order = byTitle;
+                sort = () -> SortUtil.insertionSort(work, byTitle);
+            }
+            case "quick" -> {
+                order = byYear;
+                sort = () -> SortUtil.quickSort(work, byYear, 0, work.size() - 1);
+            }
+            case "modern" -> {
+                order = byTitle;
+                sort = () -> {
+                    List<Book> sorted = SortUtil.modernSort(work, byTitle);
+                    work.clear();
+                    work.addAll(sorted);
+                };
+            }
+            case "merge" -> {
+                order = byTitle;
+                sort = () -> SortUtil.sort(work, byTitle);
+            }
+            case "year" -> {
+                order = byYear;
+                sort = () -> SortUtil.sort(work, SortUtil.Key.YEAR);
+            }
+            case "title" -> {
+                order = Comparator.comparing(Book::getTitle, Collator.getInstance());
+                sort = () -> SortUtil.sort(work, SortUtil.Key.TITLE);
+            }
+            default -> throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+        }
+        pristine = CatalogGenerator.generate(CatalogGenerator.size(params), 1);
+        CatalogGenerator.arrange(pristine, params.get("order"), order);
+    }
+
+    @Override
+    public Object run() {
+        work.clear();
+        work.addAll(pristine);
+        sort.run();
+        return work;
+    }
+}
@@ -0,0 +1,40 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import bench.Workload;
+
+/**
+ * Selects the first k books of an ordering from a generated catalog, with
+ * the bounded-heap top-k paths or, for reference, a full sort of a copy.
+ */
+public class TopKWorkload implements Workload {
+    private Supplier<List<Book>> query;
+
+    @Override
+    public void setUp(Map<String, String> params) {
+        List<Book> books = CatalogGenerator.generate(CatalogGenerator.size(params), 1);
+        int k = Integer.parseInt(params.get("k"));
+        Comparator<Book> byAuthor = Comparator.comparing(Book::getAuthor);
+        String method = params.get("method");
+        query = switch (method) {
+            case "heap" -> () -> SortUtil.topK(books, byAuthor, k, false);
+            case "heapParallel" -> () -> SortUtil.topK(books, byAuthor, k, true);
+            case "year" -> () -> SortUtil.topKByYear(books, k, true, false);
+            case "yearParallel" -> () -> SortUtil.topKByYear(books, k, true, true);
+            case "fullSort" -> () -> {
+                List<Book> copy = new ArrayList<>(books);
+                SortUtil.sort(copy, byAuthor);
+                return copy.subList(0, Math.min(k, copy.size()));
+            };
+            default -> throw new IllegalArgumentException("Unknown method: " + method);
+        };
+    }
+
+    @Override
+    public Object run() {
+        return query.get();
+    }
+}
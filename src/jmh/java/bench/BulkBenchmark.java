@@ -0,0 +1,62 @@
+package bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * addAll, updateAll, deleteAll and deleteWhere against the same batch
+ * applied one book at a time. Every invocation starts from a fresh catalog,
+ * built outside the measured time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BulkBenchmark {
+    @Param({"addAll", "addEach", "updateAll", "updateEach", "deleteAll", "deleteWhere", "deleteEach"})
+    public String operation;
+
+    @Param({"1000000"})
+    public String size;
+
+    @Param({"1000", "100000"})
+    public String batch;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = Workloads.create("BulkWorkload", Map.of("operation", operation, "size", size, "batch", batch));
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() throws Exception {
+        workload.prepare();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        workload.tearDown();
+    }
+
+    @Benchmark
+    public Object apply() throws Exception {
+        return workload.run();
+    }
+}
@@ -0,0 +1,72 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Heap footprint of standard and compact book storage, and of the off-heap
+ * columnar catalog. Each invocation loads a catalog and prints the heap
+ * retained per book, measured after a full GC on either side, either by the
+ * whole library or by the stored books alone. The time includes those GCs
+ * and is only indicative.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FootprintBenchmark {
+    @Param({"STANDARD", "COMPACT", "COLUMNAR"})
+    public String storage;
+
+    @Param({"library", "books"})
+    public String retain;
+
+    @Param({"100000", "1000000", "10000000"})
+    public String size;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = Workloads.create("FootprintWorkload", Map.of("storage", storage, "retain", retain, "size", size));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        workload.tearDown();
+    }
+
+    @Benchmark
+    public void load() throws Exception {
+        long before = usedHeapAfterGc();
+        Object retained = workload.run();
+        long after = usedHeapAfterGc();
+        Reference.reachabilityFence(retained);
+        System.out.printf("retained %.1f bytes per book%n", (double) (after - before) / Integer.parseInt(size));
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
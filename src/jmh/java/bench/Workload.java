@@ -0,0 +1,38 @@
+package bench;
+
+import java.util.Map;
+
+/**
+ * An operation to benchmark. JMH only accepts benchmarks in a named package,
+ * and code in a named package cannot refer to the library's default-package
+ * classes, so each benchmark drives a default-package workload through this
+ * interface instead.
+ */
+public interface Workload {
+    /**
+     * Builds the data the operation runs against.
+     *
+     * @param params The benchmark's {@code @Param} values by name
+     */
+    void setUp(Map<String, String> params) throws Exception;
+
+    /**
+     * Restores the data before a run that changes it, outside the measured
+     * time. Only benchmarks that set up per invocation call this.
+     */
+    default void prepare() throws Exception {
+    }
+
+    /**
+     * Runs the operation once.
+     *
+     * @return A value for the benchmark to hand to JMH's blackhole
+     */
+    Object run() throws Exception;
+
+    /**
+     * Releases anything created by {@link #setUp}.
+     */
+    default void tearDown() throws Exception {
+    }
+}
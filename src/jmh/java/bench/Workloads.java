@@ -0,0 +1,24 @@
+package bench;
+
+import java.util.Map;
+
+/**
+ * Creates default-package {@link Workload} implementations by class name.
+ */
+public final class Workloads {
+    private Workloads() {
+    }
+
+    /**
+     * Instantiates a workload and runs its setup.
+     *
+     * @param className Name of a default-package class implementing {@link Workload}
+     * @param params The benchmark's parameters
+     * @return The prepared workload
+     */
+    public static Workload create(String className, Map<String, String> params) throws Exception {
+        Workload workload = (Workload) Class.forName(className).getDeclaredConstructor().newInstance();
+        workload.setUp(params);
+        return workload;
+    }
+}
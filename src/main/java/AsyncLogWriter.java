@@ -0,0 +1,321 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous log file writer. Callers enqueue a message into a bounded
+ * lock-free ring buffer together with its timestamp; a single writer thread
+ * formats the lines, batches them in a direct buffer and writes them to one
+ * open {@link FileChannel}, flushing when the batch is full or the flush
+ * interval has passed. Files are rotated once they reach a size limit.
+ */
+public class AsyncLogWriter implements Closeable {
+    /**
+     * What {@link #enqueue} does when the ring buffer is full.
+     */
+    public enum OverflowPolicy {
+        /** Discard the message and count it as dropped. */
+        DROP,
+        /** Wait until the writer has made room. */
+        BLOCK
+    }
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Path file;
+    private final OverflowPolicy policy;
+    private final long flushIntervalNanos;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    // Ring buffer: a cell is free for position p when its sequence is p and
+    // holds a message for position p once its sequence is p + 1
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final String[] messages;
+    private final long[] timestamps;
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    private long dequeuePosition;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long writtenPosition;
+    private volatile boolean flushRequested;
+    private volatile boolean running = true;
+    private final Thread writer;
+
+    // Writer thread state
+    private final ByteBuffer batch;
+    private FileChannel channel;
+    private long fileBytes;
+    private long cachedSecond = Long.MIN_VALUE;
+    private byte[] cachedPrefix;
+
+    /**
+     * Creates a writer with an 8192-entry buffer, 64 KiB batches, a 200 ms
+     * flush interval, and rotation at 10 MiB keeping five old files.
+     *
+     * @param file The log file
+     */
+    public AsyncLogWriter(String file) {
+        this(file, 8192, OverflowPolicy.BLOCK, 64 * 1024, 200, 10L << 20, 5);
+    }
+
+    /**
+     * Creates a writer and starts its writer thread.
+     *
+     * @param file The log file
+     * @param capacity Ring buffer size, rounded up to a power of two
+     * @param policy What to do when the ring buffer is full
+     * @param batchBytes Bytes to gather before writing to the file
+     * @param flushIntervalMillis Longest time a line waits before being written
+     * @param maxFileBytes Size at which the file is rotated
+     * @param maxFiles Number of rotated files to keep
+     */
+    public AsyncLogWriter(String file, int capacity, OverflowPolicy policy, int batchBytes,
+                          long flushIntervalMillis, long maxFileBytes, int maxFiles) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.file = Path.of(file);
+        this.policy = policy;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.messages = new String[size];
+        this.timestamps = new long[size];
+        this.batch = ByteBuffer.allocateDirect(batchBytes);
+        this.writer = new Thread(this::runWriter, "log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a message to be written with the current time.
+     *
+     * @param message The message
+     * @return true if the message was queued, false if it was dropped
+     */
+    public boolean enqueue(String message) {
+        if (!running) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        while (true) {
+            long position = enqueuePosition.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    messages[index] = message;
+                    timestamps[index] = now;
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                if (policy == OverflowPolicy.DROP || !running) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(10_000);
+            }
+        }
+    }
+
+    /**
+     * Waits until every message queued before this call has been written to
+     * the file.
+     */
+    public void flush() {
+        long target = enqueuePosition.get();
+        while (writtenPosition < target && writer.isAlive()) {
+            flushRequested = true;
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    /**
+     * @return The number of messages discarded because the buffer was full
+     */
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes every queued message, then stops the writer thread and closes
+     * the file.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runWriter() {
+        long lastFlush = System.nanoTime();
+        try {
+            open();
+            while (true) {
+                boolean stopping = !running;
+                boolean flushing = flushRequested;
+                drain();
+                long now = System.nanoTime();
+                long waited = now - lastFlush;
+                if (batch.position() > 0 && (stopping || flushing || waited >= flushIntervalNanos)) {
+                    flushRequested = false;
+                    write();
+                    lastFlush = now;
+                    waited = 0;
+                }
+                if (!hasMessage()) {
+                    if (batch.position() == 0) {
+                        writtenPosition = dequeuePosition;
+                        if (stopping) {
+                            break;
+                        }
+                    }
+                    LockSupport.parkNanos(this, Math.max(flushIntervalNanos - waited, 1_000_000));
+                }
+            }
+        } catch (IOException e) {
+            running = false;
+            System.err.println("Error writing to log file: " + e.getMessage());
+        } finally {
+            try {
+                if (channel != null) {
+                    channel.force(false);
+                    channel.close();
+                }
+            } catch (IOException e) {
+                System.err.println("Error closing log file: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Moves queued messages into the batch buffer, writing it out whenever it
+     * fills up, until the queue is empty.
+     */
+    private void drain() throws IOException {
+        while (hasMessage()) {
+            int index = (int) dequeuePosition & mask;
+            String message = messages[index];
+            long timestamp = timestamps[index];
+            byte[] line = (message + "\n").getBytes(StandardCharsets.UTF_8);
+            byte[] prefix = prefix(timestamp);
+            if (batch.remaining() < prefix.length + line.length) {
+                if (batch.position() > 0) {
+                    write();
+                }
+                if (batch.remaining() < prefix.length + line.length) {
+                    writeDirect(prefix, line);
+                    release(index);
+                    continue;
+                }
+            }
+            batch.put(prefix).put(line);
+            release(index);
+        }
+    }
+
+    private boolean hasMessage() {
+        return sequences.get((int) dequeuePosition & mask) == dequeuePosition + 1;
+    }
+
+    private void release(int index) {
+        messages[index] = null;
+        sequences.lazySet(index, dequeuePosition + mask + 1);
+        dequeuePosition++;
+    }
+
+    /**
+     * Formats the "timestamp - " prefix, reusing the last one while the
+     * second has not changed.
+     */
+    private byte[] prefix(long timestamp) {
+        long second = Math.floorDiv(timestamp, 1000);
+        if (second != cachedSecond) {
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), zone);
+            cachedPrefix = (time.format(FORMATTER) + " - ").getBytes(StandardCharsets.UTF_8);
+            cachedSecond = second;
+        }
+        return cachedPrefix;
+    }
+
+    private void write() throws IOException {
+        batch.flip();
+        rotateIfNeeded(batch.remaining());
+        while (batch.hasRemaining()) {
+            fileBytes += channel.write(batch);
+        }
+        batch.clear();
+        writtenPosition = dequeuePosition;
+    }
+
+    private void writeDirect(byte[] prefix, byte[] line) throws IOException {
+        rotateIfNeeded(prefix.length + line.length);
+        ByteBuffer buffer = ByteBuffer.allocate(prefix.length + line.length).put(prefix).put(line).flip();
+        while (buffer.hasRemaining()) {
+            fileBytes += channel.write(buffer);
+        }
+    }
+
+    private void open() throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        fileBytes = channel.size();
+    }
+
+    private void rotateIfNeeded(int incoming) throws IOException {
+        if (fileBytes == 0 || fileBytes + incoming <= maxFileBytes) {
+            return;
+        }
+        channel.force(false);
+        channel.close();
+        if (maxFiles > 0) {
+            Files.deleteIfExists(rotated(maxFiles));
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                Path source = rotated(i);
+                if (Files.exists(source)) {
+                    Files.move(source, rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+        open();
+    }
+
+    private Path rotated(int generation) {
+        return file.resolveSibling(file.getFileName() + "." + generation);
+    }
+}
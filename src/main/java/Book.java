@@ -4,6 +4,10 @@ import java.util.UUID;
 /**
  * Represents a book in the digital library system.
  * Implements Serializable to allow for persistence.
+ *
+ * <p>A book becomes read-only once a {@link Library} holds it, since the
+ * library's indexes are built from its fields; change it through
+ * {@link Library#updateBook} instead, which stores a new instance.
  */
 public class Book implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -12,6 +16,7 @@ public class Book implements Serializable {
     private String title;
     private String author;
     private int publicationYear;
+    private transient boolean frozen;
 
     /**
      * Constructor for creating a new book.
@@ -27,34 +32,107 @@ public class Book implements Serializable {
         this.publicationYear = publicationYear;
     }
 
+    /**
+     * Constructor for restoring a book whose ID is already known, for example
+     * when reading it back from a snapshot.
+     *
+     * @param id The unique ID of the book
+     * @param title The title of the book
+     * @param author The author of the book
+     * @param publicationYear The year the book was published
+     */
+    public Book(String id, String title, String author, int publicationYear) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.publicationYear = publicationYear;
+    }
+
+    /**
+     * Constructor for subclasses that keep the ID and author in another form
+     * and override the accessors for them.
+     *
+     * @param title The title of the book
+     * @param publicationYear The year the book was published
+     */
+    protected Book(String title, int publicationYear) {
+        this.title = title;
+        this.publicationYear = publicationYear;
+    }
+
     // Getters and setters
     public String getId() { return id; }
     
     public String getTitle() { return title; }
-    public void setTitle(String title) { this.title = title; }
+    public void setTitle(String title) {
+        checkMutable();
+        this.title = title;
+    }
     
     public String getAuthor() { return author; }
-    public void setAuthor(String author) { this.author = author; }
+    public void setAuthor(String author) {
+        checkMutable();
+        this.author = author;
+    }
     
     public int getPublicationYear() { return publicationYear; }
-    public void setPublicationYear(int publicationYear) { this.publicationYear = publicationYear; }
+    public void setPublicationYear(int publicationYear) {
+        checkMutable();
+        this.publicationYear = publicationYear;
+    }
+
+    /**
+     * Makes the setters throw from now on. Called by a library when it
+     * starts holding the book.
+     */
+    void freeze() {
+        frozen = true;
+    }
+
+    /**
+     * @throws IllegalStateException If a library holds the book
+     */
+    protected final void checkMutable() {
+        if (frozen) {
+            throw new IllegalStateException("Book " + getId()
+                    + " is held by a library; change it with Library.updateBook");
+        }
+    }
 
     @Override
     public String toString() {
-        return String.format("Book [ID: %s, Title: %s, Author: %s, Year: %d]", 
-                id.substring(0, 8), title, author, publicationYear);
+        return appendTo(new StringBuilder(64)).toString();
+    }
+
+    /**
+     * Appends the same text as {@link #toString()} without going through
+     * {@code String.format}, for listings that print many books.
+     *
+     * @param out The builder to append to
+     * @return The builder
+     */
+    public StringBuilder appendTo(StringBuilder out) {
+        String id = getId();
+        return out.append("Book [ID: ").append(id, 0, Math.min(8, id.length()))
+                .append(", Title: ").append(title)
+                .append(", Author: ").append(getAuthor())
+                .append(", Year: ").append(publicationYear).append(']');
     }
     
+    /**
+     * Books are equal when their IDs are, whatever form each one stores its
+     * ID in.
+     */
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
-        if (obj == null || getClass() != obj.getClass()) return false;
+        if (!(obj instanceof Book)) return false;
         Book book = (Book) obj;
-        return id.equals(book.id);
+        return getId().equals(book.getId());
     }
     
     @Override
     public int hashCode() {
-        return id.hashCode();
+        return getId().hashCode();
     }
 }
\ No newline at end of file
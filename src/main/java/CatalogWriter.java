@@ -0,0 +1,83 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Writes numbered catalog listings to a stream through one buffered writer.
+ * Rows are formatted into a reused builder, so printing a page costs a
+ * single write to the stream instead of one per line. Call {@link #flush}
+ * once the listing is complete; the stream itself is never closed.
+ */
+public class CatalogWriter {
+    private static final String NEWLINE = System.lineSeparator();
+
+    private final Writer out;
+    private final StringBuilder row = new StringBuilder(128);
+
+    /**
+     * @param stream The stream to write to, typically {@code System.out}
+     */
+    public CatalogWriter(OutputStream stream) {
+        this.out = new BufferedWriter(new OutputStreamWriter(stream, Charset.defaultCharset()), 1 << 16);
+    }
+
+    /**
+     * Writes the catalog banner.
+     */
+    public void header() {
+        line(NEWLINE + "===== LIBRARY CATALOG =====");
+    }
+
+    /**
+     * Writes one numbered book.
+     *
+     * @param number The row number shown to the user
+     * @param book The book
+     */
+    public void row(int number, Book book) {
+        row.setLength(0);
+        row.append(number).append(". ");
+        book.appendTo(row).append(NEWLINE);
+        try {
+            out.append(row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the closing rule.
+     */
+    public void footer() {
+        line("==========================");
+    }
+
+    /**
+     * Writes a line of text.
+     *
+     * @param text The text, without a line break
+     */
+    public void line(String text) {
+        try {
+            out.write(text);
+            out.write(NEWLINE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Pushes everything written so far to the stream.
+     */
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,408 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link Flow.Publisher} of the adds, updates and deletes applied to a
+ * {@link Library}, so that mirrors and caches can follow the catalog
+ * without re-reading its snapshot file.
+ *
+ * <p>Every change is numbered with a sequence number one higher than the
+ * last and kept in a bounded history of the most recent changes. Each
+ * subscription reads from that history at its own pace, pulling changes
+ * into a small buffer of its own as its subscriber requests them, and
+ * delivers them on the feed's executor rather than on the thread that
+ * changed the library. A subscriber that falls behind is not sent more
+ * than it asked for; instead, when a change arrives for a book that is
+ * still waiting in its buffer, the two are coalesced into one change that
+ * carries the book's latest values. A subscriber that falls so far behind
+ * that the history no longer holds its next change is ended with a
+ * {@link SequenceExpiredException} and must reload the catalog.
+ *
+ * <p>A subscriber can resume after the sequence number of the last change
+ * it processed with {@link #subscribe(Flow.Subscriber, long)}, as long as
+ * the history still holds the changes after it. Changes arrive in sequence
+ * order. Each change carries the book's full values, so applying a change
+ * is idempotent, and a coalesced change keeps the number of the first
+ * change folded into it: resuming after it may repeat the later changes,
+ * but never skips one.
+ *
+ * <p>Sequence numbers start from 1 when the feed is created and are not
+ * saved with the library. {@link Library#setBooks}, which restores a saved
+ * state, is not reported.
+ */
+public class ChangeFeed implements Flow.Publisher<ChangeFeed.Change>, LibraryListener {
+    /** How many changes the feed keeps for resuming by default */
+    public static final int DEFAULT_HISTORY = 1 << 16;
+
+    /** How many books each subscription buffers by default */
+    public static final int DEFAULT_BUFFER = 1 << 10;
+
+    private final int bufferCapacity;
+    private final Executor executor;
+    private final List<FeedSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder subscriberFailures = new LongAdder();
+
+    // Guarded by this
+    private final Change[] history;
+    private long lastSequence;
+
+    /**
+     * Creates a feed with the default history and buffer sizes that
+     * delivers on the common fork/join pool.
+     */
+    public ChangeFeed() {
+        this(DEFAULT_HISTORY, DEFAULT_BUFFER, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a feed. It must be registered with
+     * {@link Library#addListener} to see changes.
+     *
+     * @param historySize How many of the latest changes to keep for
+     *        subscribers that are behind or resuming
+     * @param bufferCapacity How many books each subscription holds ready to
+     *        deliver
+     * @param executor Runs the deliveries to subscribers
+     * @throws IllegalArgumentException if a size is not positive
+     */
+    public ChangeFeed(int historySize, int bufferCapacity, Executor executor) {
+        if (historySize <= 0 || bufferCapacity <= 0) {
+            throw new IllegalArgumentException("History and buffer sizes must be positive");
+        }
+        this.history = new Change[historySize];
+        this.bufferCapacity = bufferCapacity;
+        this.executor = executor;
+    }
+
+    /**
+     * Subscribes to the changes made from now on.
+     *
+     * @param subscriber The subscriber
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super Change> subscriber) {
+        subscribe(subscriber, getLastSequence());
+    }
+
+    /**
+     * Subscribes to the changes numbered after a sequence number, starting
+     * with those still in the history. The subscriber is ended with a
+     * {@link SequenceExpiredException} if the history no longer holds the
+     * first of them, and with an {@link IllegalArgumentException} if the
+     * number has not been reached yet.
+     *
+     * @param subscriber The subscriber
+     * @param afterSequence The number of the last change the subscriber has
+     *        processed, or 0 for every change since the feed was created
+     */
+    public void subscribe(Flow.Subscriber<? super Change> subscriber, long afterSequence) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        // onSubscribe is called by the drain, so it cannot overlap a delivery
+        FeedSubscription subscription = new FeedSubscription(subscriber, afterSequence + 1);
+        subscriptions.add(subscription);
+        if (afterSequence > getLastSequence()) {
+            subscription.fail(new IllegalArgumentException("No change numbered " + afterSequence + " yet"));
+        } else {
+            subscription.signal();
+        }
+    }
+
+    /**
+     * @return The number of the latest change, or 0 if there has been none
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return The number of the oldest change still in the history
+     */
+    public synchronized long getOldestSequence() {
+        return Math.max(1, lastSequence - history.length + 1);
+    }
+
+    /**
+     * @return How many subscriptions are active
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * @return How many changes have been folded into an earlier change for
+     *         the same book waiting in a subscription's buffer
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return How many subscriptions were cancelled because their
+     *         subscriber threw from {@code onSubscribe} or {@code onNext}
+     */
+    public long getSubscriberFailureCount() {
+        return subscriberFailures.sum();
+    }
+
+    @Override
+    public void bookAdded(Book book) {
+        append(Type.ADDED, book);
+    }
+
+    @Override
+    public void bookUpdated(Book book) {
+        append(Type.UPDATED, book);
+    }
+
+    @Override
+    public void bookDeleted(Book book) {
+        append(Type.DELETED, book);
+    }
+
+    @Override
+    public void mutationsApplied() {
+        for (FeedSubscription subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    // Called under the library's write lock, so numbering follows the order the changes were applied
+    private synchronized void append(Type type, Book book) {
+        lastSequence++;
+        history[(int) (lastSequence % history.length)] = new Change(type, lastSequence, book);
+    }
+
+    /**
+     * Returns a change from the history.
+     *
+     * @return The change, or null if it has not happened yet
+     * @throws SequenceExpiredException if it is no longer kept
+     */
+    private synchronized Change changeAt(long sequence) {
+        if (sequence > lastSequence) {
+            return null;
+        }
+        if (sequence < getOldestSequence()) {
+            throw new SequenceExpiredException(sequence, getOldestSequence());
+        }
+        return history[(int) (sequence % history.length)];
+    }
+
+    /**
+     * Merges a change into an earlier one for the same book.
+     *
+     * @return The merged change, or null if the two cancel out
+     */
+    private static Change coalesce(Change earlier, Change later) {
+        Type type = later.type;
+        if (earlier.type == Type.ADDED && later.type == Type.DELETED) {
+            return null;
+        } else if (earlier.type == Type.ADDED) {
+            type = Type.ADDED;
+        } else if (earlier.type == Type.DELETED && later.type == Type.ADDED) {
+            type = Type.UPDATED;
+        }
+        return new Change(type, earlier.sequence, later.book);
+    }
+
+    /**
+     * The kinds of change.
+     */
+    public enum Type {
+        /** A book was added */
+        ADDED,
+        /** A book's title, author or year changed */
+        UPDATED,
+        /** A book was deleted */
+        DELETED
+    }
+
+    /**
+     * One change to the catalog.
+     */
+    public static final class Change {
+        private final Type type;
+        private final long sequence;
+        private final Book book;
+
+        private Change(Type type, long sequence, Book book) {
+            this.type = type;
+            this.sequence = sequence;
+            this.book = book;
+        }
+
+        /** @return What happened to the book */
+        public Type getType() { return type; }
+
+        /** @return The change's sequence number */
+        public long getSequence() { return sequence; }
+
+        /** @return The book as it is after the change, or as it was for a delete */
+        public Book getBook() { return book; }
+
+        @Override
+        public String toString() {
+            return "#" + sequence + " " + type + " " + book.getId();
+        }
+    }
+
+    /**
+     * Ends a subscription whose next change is no longer in the history.
+     */
+    public static class SequenceExpiredException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final long oldestSequence;
+
+        /**
+         * @param sequence The change that was wanted
+         * @param oldestSequence The oldest change still kept
+         */
+        public SequenceExpiredException(long sequence, long oldestSequence) {
+            super("Change " + sequence + " is no longer kept; the oldest is " + oldestSequence);
+            this.oldestSequence = oldestSequence;
+        }
+
+        /** @return The oldest change still kept when the subscription ended */
+        public long getOldestSequence() { return oldestSequence; }
+    }
+
+    /**
+     * One subscriber's position in the history and its buffer of changes
+     * ready to deliver. The buffer is only touched by the drain, which runs
+     * on the executor one pass at a time and makes every call to the
+     * subscriber, starting with {@code onSubscribe}.
+     */
+    private final class FeedSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super Change> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger signals = new AtomicInteger();
+        private final Map<String, Change> buffer = new LinkedHashMap<>();
+        private long next;
+        private boolean subscribed;
+        private volatile boolean done;
+        private volatile Throwable failure;
+
+        private FeedSubscription(Flow.Subscriber<? super Change> subscriber, long next) {
+            this.subscriber = subscriber;
+            this.next = next;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Requested " + n + " changes"));
+                return;
+            }
+            demand.getAndAccumulate(n, (current, added) -> {
+                long sum = current + added;
+                return sum < 0 ? Long.MAX_VALUE : sum;
+            });
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            subscriptions.remove(this);
+        }
+
+        private void fail(Throwable error) {
+            failure = error;
+            signal();
+        }
+
+        private void signal() {
+            if (signals.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if (!subscribed) {
+                    subscribed = true;
+                    try {
+                        subscriber.onSubscribe(this);
+                    } catch (RuntimeException e) {
+                        subscriberFailed("onSubscribe", e);
+                    }
+                }
+                if (!done && failure == null) {
+                    deliver();
+                }
+                if (!done && failure != null) {
+                    cancel();
+                    subscriber.onError(failure);
+                }
+                missed = signals.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void deliver() {
+            try {
+                fill();
+                while (demand.get() > 0 && !buffer.isEmpty() && !done) {
+                    Iterator<Change> first = buffer.values().iterator();
+                    Change change = first.next();
+                    first.remove();
+                    demand.decrementAndGet();
+                    subscriber.onNext(change);
+                    fill();
+                }
+            } catch (SequenceExpiredException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                subscriberFailed("onNext", e);
+            }
+        }
+
+        // The subscriber broke the protocol by throwing, so it is sent nothing more
+        private void subscriberFailed(String method, RuntimeException e) {
+            cancel();
+            subscriberFailures.increment();
+            System.err.println("Change feed subscriber threw from " + method + ", cancelling: " + e);
+        }
+
+        // Pulls changes from the history until the buffer is full, folding
+        // a change for a book already in the buffer into the waiting one
+        private void fill() {
+            while (true) {
+                Change change = changeAt(next);
+                if (change == null) {
+                    return;
+                }
+                String id = change.book.getId();
+                Change waiting = buffer.get(id);
+                if (waiting == null && buffer.size() >= bufferCapacity) {
+                    return;
+                }
+                next++;
+                if (waiting == null) {
+                    buffer.put(id, change);
+                    continue;
+                }
+                coalesced.increment();
+                Change merged = coalesce(waiting, change);
+                if (merged == null) {
+                    buffer.remove(id);
+                } else {
+                    buffer.put(id, merged);
+                }
+            }
+        }
+    }
+}
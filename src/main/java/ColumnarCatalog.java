@@ -0,0 +1,882 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Catalog store for very large libraries that keeps its records off the
+ * Java heap, so that tens of millions of books add almost nothing for the
+ * garbage collector to trace.
+ *
+ * <p>Records are stored as struct-of-arrays columns in direct
+ * {@link ByteBuffer}s: the UUID ID as two {@code long} columns, the year as
+ * an {@code int} column, and the title and author as {@code long}
+ * references into a UTF-8 arena of direct chunks. Books are looked up by
+ * ID through an open-addressing hash table of row numbers, itself a direct
+ * buffer. Deletes leave a tombstone and updates leave their old strings
+ * behind; once half the rows or half the arena is dead, a compaction pass
+ * rewrites the live records in order. Keyword search, exact search and
+ * sorting read the columns and the arena bytes directly, and {@link Book}
+ * objects are only created for the results handed back to callers.
+ *
+ * <p>The catalog is safe to share between threads: mutations take the
+ * write side of a {@link StampedLock} and everything else the read side.
+ * Book IDs must be UUIDs in canonical form, as the library generates them.
+ */
+public class ColumnarCatalog {
+    static final int MAGIC = 0x43434C44; // "DLCC"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+    static final int CHUNK_BYTES = 1 << 24;
+    static final int MAX_STRING_BYTES = (1 << 20) - 1;
+    private static final int LENGTH_BITS = 20;
+    private static final long NULL_REF = -1;
+    private static final int MIN_CAPACITY = 64;
+
+    private final StampedLock lock = new StampedLock();
+
+    // Columns, all with room for `capacity` rows; rows past `rows` are unused
+    private int capacity;
+    private int rows;
+    private ByteBuffer idHigh;
+    private ByteBuffer idLow;
+    private ByteBuffer years;
+    private ByteBuffer titleRefs;
+    private ByteBuffer authorRefs;
+    private final BitSet deleted = new BitSet();
+    private int deletedRows;
+
+    // UTF-8 arena; a reference is (chunk * CHUNK_BYTES + position) << LENGTH_BITS | length
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private long arenaBytes;
+    private long garbageBytes;
+
+    // Hash table from ID to row + 1, with 0 marking an empty slot
+    private ByteBuffer table;
+    private int tableMask;
+
+    /**
+     * Creates an empty catalog.
+     */
+    public ColumnarCatalog() {
+        allocateColumns(MIN_CAPACITY);
+        allocateTable(MIN_CAPACITY * 2);
+    }
+
+    /**
+     * Adds a book.
+     *
+     * @param book The book to add
+     * @return true if added, false if a book with its ID is already stored
+     * @throws IllegalArgumentException if the ID is not a canonical UUID or a
+     *         string is longer than {@link #MAX_STRING_BYTES} in UTF-8
+     */
+    public boolean addBook(Book book) {
+        UUID id = requireId(book.getId());
+        long stamp = lock.writeLock();
+        try {
+            return addLocked(id, book);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Adds books under a single acquisition of the lock.
+     *
+     * @param books The books to add
+     * @return How many were added; books whose ID is already stored are skipped
+     * @throws IllegalArgumentException as for {@link #addBook}; books before
+     *         the offending one stay added
+     */
+    public int addAll(List<Book> books) {
+        long stamp = lock.writeLock();
+        try {
+            int added = 0;
+            for (Book book : books) {
+                if (addLocked(requireId(book.getId()), book)) {
+                    added++;
+                }
+            }
+            return added;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Replaces a book's title, author and year. The book keeps its place in
+     * the catalog order.
+     *
+     * @param id The ID of the book to update
+     * @param updatedBook The new values
+     * @return true if updated, false if no book has the ID
+     */
+    public boolean updateBook(String id, Book updatedBook) {
+        UUID uuid = CompactBook.parseId(id);
+        if (uuid == null) {
+            return false;
+        }
+        long stamp = lock.writeLock();
+        try {
+            int row = find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if (row < 0) {
+                return false;
+            }
+            long title = putString(updatedBook.getTitle());
+            long author = putString(updatedBook.getAuthor());
+            garbageBytes += length(titleRefs.getLong(row * 8)) + length(authorRefs.getLong(row * 8));
+            titleRefs.putLong(row * 8, title);
+            authorRefs.putLong(row * 8, author);
+            years.putInt(row * 4, updatedBook.getPublicationYear());
+            compactIfSparse();
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Deletes a book, leaving a tombstone until the next compaction.
+     *
+     * @param id The ID of the book to delete
+     * @return true if deleted, false if no book has the ID
+     */
+    public boolean deleteBook(String id) {
+        UUID uuid = CompactBook.parseId(id);
+        if (uuid == null) {
+            return false;
+        }
+        long stamp = lock.writeLock();
+        try {
+            int row = find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if (row < 0) {
+                return false;
+            }
+            removeFromTable(row);
+            deleted.set(row);
+            deletedRows++;
+            garbageBytes += length(titleRefs.getLong(row * 8)) + length(authorRefs.getLong(row * 8));
+            compactIfSparse();
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets a book by ID.
+     *
+     * @param id The ID of the book
+     * @return Optional containing the book if found
+     */
+    public Optional<Book> getBookById(String id) {
+        UUID uuid = CompactBook.parseId(id);
+        if (uuid == null) {
+            return Optional.empty();
+        }
+        long stamp = lock.readLock();
+        try {
+            int row = find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            return row < 0 ? Optional.empty() : Optional.of(materialize(row));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return The number of books stored
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return rows - deletedRows;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns every book in catalog order. This creates a {@code Book} per
+     * record; prefer {@link #forEach} or a search for large catalogs.
+     *
+     * @return The books
+     */
+    public List<Book> getBooks() {
+        List<Book> books = new ArrayList<>();
+        forEach(books::add);
+        return books;
+    }
+
+    /**
+     * Passes every book to an action in catalog order, creating each
+     * {@code Book} just before it is passed. The action runs under the read
+     * lock and must not modify the catalog.
+     *
+     * @param action The action
+     */
+    public void forEach(Consumer<Book> action) {
+        long stamp = lock.readLock();
+        try {
+            for (int row = 0; row < rows; row++) {
+                if (!deleted.get(row)) {
+                    action.accept(materialize(row));
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Searches for books whose title, author or year contains a keyword,
+     * ignoring case, as {@link Library#searchBooksByKeyword} does. ASCII
+     * strings are matched byte by byte in the arena; only strings with other
+     * characters are decoded.
+     *
+     * @param keyword The search term
+     * @return Matching books in catalog order
+     */
+    public List<Book> searchBooksByKeyword(String keyword) {
+        List<Book> result = new ArrayList<>();
+        if (keyword == null || keyword.isEmpty()) {
+            return result;
+        }
+        String lowerKeyword = keyword.toLowerCase();
+        byte[] needle = asciiBytes(lowerKeyword);
+        boolean numeric = lowerKeyword.chars().allMatch(c -> c == '-' || (c >= '0' && c <= '9'));
+        long stamp = lock.readLock();
+        try {
+            for (int row = 0; row < rows; row++) {
+                if (deleted.get(row)) {
+                    continue;
+                }
+                if (contains(titleRefs.getLong(row * 8), needle, lowerKeyword)
+                        || contains(authorRefs.getLong(row * 8), needle, lowerKeyword)
+                        || (numeric && String.valueOf(years.getInt(row * 4)).contains(lowerKeyword))) {
+                    result.add(materialize(row));
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the earliest book whose title or author equals a keyword,
+     * ignoring case, as {@link Library#searchBookByKeyword} does.
+     *
+     * @param keyword The search term
+     * @return The earliest matching book, or null if there is none
+     */
+    public Book searchBookByKeyword(String keyword) {
+        if (keyword == null) {
+            return null;
+        }
+        byte[] ascii = asciiBytes(keyword);
+        long stamp = lock.readLock();
+        try {
+            for (int row = 0; row < rows; row++) {
+                if (!deleted.get(row) && (equalsIgnoreCase(titleRefs.getLong(row * 8), ascii, keyword)
+                        || equalsIgnoreCase(authorRefs.getLong(row * 8), ascii, keyword))) {
+                    return materialize(row);
+                }
+            }
+            return null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the books sorted by one of the standard keys, in the same
+     * order {@link SortUtil#sort(List, SortUtil.Key)} produces. Row numbers
+     * are sorted against the columns and books are created afterwards, in
+     * sorted order.
+     *
+     * @param key The sort key
+     * @return The sorted books
+     */
+    public List<Book> getSortedBooks(SortUtil.Key key) {
+        long stamp = lock.readLock();
+        try {
+            int[] order = key == SortUtil.Key.YEAR ? sortByYear()
+                    : sortByCollation(key == SortUtil.Key.TITLE ? titleRefs : authorRefs);
+            List<Book> books = new ArrayList<>(order.length);
+            for (int row : order) {
+                books.add(materialize(row));
+            }
+            return books;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Rewrites the live records into fresh columns and a fresh arena,
+     * dropping tombstones and superseded strings. Runs on its own once half
+     * the rows or half the arena is dead.
+     */
+    public void compact() {
+        long stamp = lock.writeLock();
+        try {
+            compactLocked();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return The direct memory held by the columns, the arena and the ID
+     *         table, in bytes
+     */
+    public long offHeapBytes() {
+        long stamp = lock.readLock();
+        try {
+            return (long) capacity * (8 + 8 + 4 + 8 + 8) + (long) chunks.size() * CHUNK_BYTES
+                    + table.capacity();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Writes the catalog to a file, compacting it first. The columns and
+     * arena chunks are written to the file channel as they are, without
+     * passing through the heap.
+     *
+     * <pre>
+     * header   magic, version, row count, chunk count, CRC32 of the rest
+     * columns  ID high longs, ID low longs, year ints, title refs, author refs
+     * arena    per chunk: used byte count, bytes
+     * </pre>
+     *
+     * @param path Destination file, replaced atomically
+     */
+    public void save(Path path) throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            compactLocked();
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            CRC32 crc = new CRC32();
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.position(HEADER_BYTES);
+                for (ByteBuffer column : columns()) {
+                    write(channel, crc, column.duplicate().position(0)
+                            .limit(rows * (column == years ? 4 : 8)));
+                }
+                ByteBuffer used = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+                for (int i = 0; i < chunks.size(); i++) {
+                    int length = chunkUsed(i);
+                    used.clear();
+                    write(channel, crc, used.putInt(0, length));
+                    write(channel, crc, chunks.get(i).duplicate().position(0).limit(length));
+                }
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(chunks.size()).putLong(crc.getValue());
+                header.flip();
+                channel.write(header, 0);
+                channel.force(true);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            try {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Reads a catalog written by {@link #save}, straight into direct
+     * buffers.
+     *
+     * @param path The file
+     * @return The catalog
+     * @throws IOException if the file cannot be read or is not a valid
+     *         catalog file
+     */
+    public static ColumnarCatalog load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            read(channel, null, header);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a columnar catalog: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported columnar catalog version " + version + ": " + path);
+            }
+            int rows = header.getInt();
+            int chunkCount = header.getInt();
+            long expectedCrc = header.getLong();
+            if (rows < 0 || chunkCount < 0
+                    || HEADER_BYTES + rows * 36L + chunkCount * 4L > channel.size()) {
+                throw new IOException("Columnar catalog header does not match file size: " + path);
+            }
+
+            ColumnarCatalog catalog = new ColumnarCatalog();
+            catalog.allocateColumns(Math.max(MIN_CAPACITY, rows));
+            CRC32 crc = new CRC32();
+            for (ByteBuffer column : catalog.columns()) {
+                read(channel, crc, column.duplicate().position(0).limit(rows * (column == catalog.years ? 4 : 8)));
+            }
+            ByteBuffer used = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < chunkCount; i++) {
+                used.clear();
+                read(channel, crc, used);
+                int length = used.getInt(0);
+                if (length < 0 || length > CHUNK_BYTES) {
+                    throw new IOException("Columnar catalog chunk is corrupt: " + path);
+                }
+                ByteBuffer chunk = newBuffer(CHUNK_BYTES);
+                read(channel, crc, chunk.duplicate().position(0).limit(length));
+                catalog.chunks.add(chunk);
+                catalog.arenaBytes = (long) i * CHUNK_BYTES + length;
+            }
+            if (crc.getValue() != expectedCrc || channel.position() != channel.size()) {
+                throw new IOException("Columnar catalog checksum mismatch: " + path);
+            }
+
+            catalog.rows = rows;
+            catalog.allocateTable(tableSizeFor(rows));
+            for (int row = 0; row < rows; row++) {
+                catalog.checkRef(catalog.titleRefs.getLong(row * 8), path);
+                catalog.checkRef(catalog.authorRefs.getLong(row * 8), path);
+                if (catalog.find(catalog.idHigh.getLong(row * 8), catalog.idLow.getLong(row * 8)) >= 0) {
+                    throw new IOException("Columnar catalog repeats a book ID: " + path);
+                }
+                catalog.insertIntoTable(row);
+            }
+            return catalog;
+        }
+    }
+
+    // Caller holds the write lock
+    private boolean addLocked(UUID id, Book book) {
+        long high = id.getMostSignificantBits();
+        long low = id.getLeastSignificantBits();
+        if (find(high, low) >= 0) {
+            return false;
+        }
+        long title = putString(book.getTitle());
+        long author = putString(book.getAuthor());
+        if (rows == capacity) {
+            growColumns(capacity * 2);
+        }
+        int row = rows++;
+        idHigh.putLong(row * 8, high);
+        idLow.putLong(row * 8, low);
+        years.putInt(row * 4, book.getPublicationYear());
+        titleRefs.putLong(row * 8, title);
+        authorRefs.putLong(row * 8, author);
+        if ((rows - deletedRows) * 2L > tableMask + 1) {
+            rebuildTable(tableSizeFor(rows - deletedRows));
+        } else {
+            insertIntoTable(row);
+        }
+        return true;
+    }
+
+    // Caller holds the write lock
+    private void compactIfSparse() {
+        if ((deletedRows > MIN_CAPACITY && deletedRows > rows / 2)
+                || (garbageBytes > CHUNK_BYTES && garbageBytes > arenaBytes / 2)) {
+            compactLocked();
+        }
+    }
+
+    // Caller holds the write lock
+    private void compactLocked() {
+        if (deletedRows == 0 && garbageBytes == 0) {
+            return;
+        }
+        ByteBuffer[] oldColumns = columns();
+        List<ByteBuffer> oldChunks = new ArrayList<>(chunks);
+        int oldRows = rows;
+        int live = oldRows - deletedRows;
+
+        allocateColumns(Math.max(MIN_CAPACITY, live));
+        chunks.clear();
+        arenaBytes = 0;
+        rows = 0;
+        for (int row = 0; row < oldRows; row++) {
+            if (deleted.get(row)) {
+                continue;
+            }
+            int to = rows++;
+            idHigh.putLong(to * 8, oldColumns[0].getLong(row * 8));
+            idLow.putLong(to * 8, oldColumns[1].getLong(row * 8));
+            years.putInt(to * 4, oldColumns[2].getInt(row * 4));
+            titleRefs.putLong(to * 8, copyString(oldChunks, oldColumns[3].getLong(row * 8)));
+            authorRefs.putLong(to * 8, copyString(oldChunks, oldColumns[4].getLong(row * 8)));
+        }
+        deleted.clear();
+        deletedRows = 0;
+        garbageBytes = 0;
+        rebuildTable(tableSizeFor(rows));
+    }
+
+    /**
+     * Creates the {@code Book} for a row; the only place records leave the
+     * columns.
+     */
+    private Book materialize(int row) {
+        return new Book(new UUID(idHigh.getLong(row * 8), idLow.getLong(row * 8)).toString(),
+                getString(titleRefs.getLong(row * 8)), getString(authorRefs.getLong(row * 8)),
+                years.getInt(row * 4));
+    }
+
+    // Caller holds a lock; returns live rows by year, then by row
+    private int[] sortByYear() {
+        long[] keys = new long[rows - deletedRows];
+        int count = 0;
+        for (int row = 0; row < rows; row++) {
+            if (!deleted.get(row)) {
+                keys[count++] = ((long) years.getInt(row * 4) << 32) | row;
+            }
+        }
+        Arrays.sort(keys);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    // Caller holds a lock; returns live rows by collation key, then by row
+    private int[] sortByCollation(ByteBuffer refs) {
+        Collator collator = Collator.getInstance();
+        Keyed[] keyed = new Keyed[rows - deletedRows];
+        int count = 0;
+        for (int row = 0; row < rows; row++) {
+            if (!deleted.get(row)) {
+                String value = getString(refs.getLong(row * 8));
+                keyed[count++] = new Keyed(collator.getCollationKey(value == null ? "" : value), row);
+            }
+        }
+        Arrays.sort(keyed, Comparator.comparing((Keyed k) -> k.key));
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = keyed[i].row;
+        }
+        return order;
+    }
+
+    /**
+     * Checks whether a stored string contains a lower-cased keyword. Pure
+     * ASCII strings are scanned in place, folding case byte by byte; others
+     * are decoded and compared as {@code String}s.
+     */
+    private boolean contains(long ref, byte[] needle, String lowerKeyword) {
+        if (ref == NULL_REF) {
+            return false;
+        }
+        int length = length(ref);
+        ByteBuffer chunk = chunk(ref);
+        int start = position(ref);
+        if (needle == null || !isAscii(chunk, start, length)) {
+            return getString(ref).toLowerCase().contains(lowerKeyword);
+        }
+        byte first = needle[0];
+        for (int i = start, last = start + length - needle.length; i <= last; i++) {
+            if (toLower(chunk.get(i)) != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < needle.length && toLower(chunk.get(i + j)) == needle[j]) {
+                j++;
+            }
+            if (j == needle.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean equalsIgnoreCase(long ref, byte[] ascii, String keyword) {
+        if (ref == NULL_REF) {
+            return false;
+        }
+        int length = length(ref);
+        ByteBuffer chunk = chunk(ref);
+        int start = position(ref);
+        if (ascii == null || !isAscii(chunk, start, length)) {
+            return getString(ref).equalsIgnoreCase(keyword);
+        }
+        if (length != ascii.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (toLower(chunk.get(start + i)) != toLower(ascii[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(ByteBuffer chunk, int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            if (chunk.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte toLower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /**
+     * @return The string's bytes if it is pure ASCII, else null
+     */
+    private static byte[] asciiBytes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return null;
+            }
+        }
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Caller holds the write lock
+    private long putString(String value) {
+        if (value == null) {
+            return NULL_REF;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Strings are limited to " + MAX_STRING_BYTES + " bytes of UTF-8");
+        }
+        return append(bytes, 0, bytes.length, null);
+    }
+
+    // Caller holds the write lock; copies a string from an older arena
+    private long copyString(List<ByteBuffer> from, long ref) {
+        if (ref == NULL_REF) {
+            return NULL_REF;
+        }
+        ByteBuffer source = from.get((int) ((ref >>> LENGTH_BITS) / CHUNK_BYTES));
+        return append(null, position(ref), length(ref), source);
+    }
+
+    /**
+     * Appends bytes, from an array or from another chunk, to the arena,
+     * starting a new chunk if they do not fit in the current one. Strings
+     * never straddle chunks, so reading one is a single bulk get.
+     */
+    private long append(byte[] bytes, int offset, int length, ByteBuffer source) {
+        int position = (int) (arenaBytes % CHUNK_BYTES);
+        if (chunks.isEmpty() || (position + length > CHUNK_BYTES) || (position == 0 && arenaBytes > 0)) {
+            chunks.add(newBuffer(CHUNK_BYTES));
+            arenaBytes = (long) (chunks.size() - 1) * CHUNK_BYTES;
+            position = 0;
+        }
+        ByteBuffer chunk = chunks.get(chunks.size() - 1);
+        if (source != null) {
+            chunk.put(position, source, offset, length);
+        } else {
+            chunk.put(position, bytes, offset, length);
+        }
+        long ref = (arenaBytes << LENGTH_BITS) | length;
+        arenaBytes += length;
+        return ref;
+    }
+
+    private String getString(long ref) {
+        if (ref == NULL_REF) {
+            return null;
+        }
+        byte[] bytes = new byte[length(ref)];
+        chunk(ref).get(position(ref), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer chunk(long ref) {
+        return chunks.get((int) ((ref >>> LENGTH_BITS) / CHUNK_BYTES));
+    }
+
+    private static int position(long ref) {
+        return (int) ((ref >>> LENGTH_BITS) % CHUNK_BYTES);
+    }
+
+    private static int length(long ref) {
+        return ref == NULL_REF ? 0 : (int) (ref & ((1 << LENGTH_BITS) - 1));
+    }
+
+    private int chunkUsed(int chunk) {
+        return chunk < chunks.size() - 1 ? CHUNK_BYTES : (int) (arenaBytes - (long) chunk * CHUNK_BYTES);
+    }
+
+    private void checkRef(long ref, Path path) throws IOException {
+        if (ref != NULL_REF && (ref < 0 || (ref >>> LENGTH_BITS) + length(ref) > arenaBytes
+                || position(ref) + length(ref) > CHUNK_BYTES)) {
+            throw new IOException("Columnar catalog string reference out of range: " + path);
+        }
+    }
+
+    // Caller holds a lock; returns the row holding an ID, or -1
+    private int find(long high, long low) {
+        for (int slot = hash(high, low) & tableMask; ; slot = (slot + 1) & tableMask) {
+            int entry = table.getInt(slot * 4);
+            if (entry == 0) {
+                return -1;
+            }
+            int row = entry - 1;
+            if (idHigh.getLong(row * 8) == high && idLow.getLong(row * 8) == low) {
+                return row;
+            }
+        }
+    }
+
+    private void insertIntoTable(int row) {
+        int slot = home(row);
+        while (table.getInt(slot * 4) != 0) {
+            slot = (slot + 1) & tableMask;
+        }
+        table.putInt(slot * 4, row + 1);
+    }
+
+    /**
+     * Removes a row from the hash table, shifting later entries of the
+     * probe sequence back so that lookups never need tombstones.
+     */
+    private void removeFromTable(int row) {
+        int hole = home(row);
+        while (table.getInt(hole * 4) != row + 1) {
+            hole = (hole + 1) & tableMask;
+        }
+        for (int slot = (hole + 1) & tableMask; ; slot = (slot + 1) & tableMask) {
+            int entry = table.getInt(slot * 4);
+            if (entry == 0) {
+                break;
+            }
+            int home = home(entry - 1);
+            // Move the entry into the hole unless its home lies cyclically
+            // after the hole and at or before its current slot
+            boolean stays = hole <= slot ? (home > hole && home <= slot) : (home > hole || home <= slot);
+            if (!stays) {
+                table.putInt(hole * 4, entry);
+                hole = slot;
+            }
+        }
+        table.putInt(hole * 4, 0);
+    }
+
+    private int home(int row) {
+        return hash(idHigh.getLong(row * 8), idLow.getLong(row * 8)) & tableMask;
+    }
+
+    private void rebuildTable(int size) {
+        allocateTable(size);
+        for (int row = 0; row < rows; row++) {
+            if (!deleted.get(row)) {
+                insertIntoTable(row);
+            }
+        }
+    }
+
+    private void allocateTable(int size) {
+        table = newBuffer(size * 4);
+        tableMask = size - 1;
+    }
+
+    private static int tableSizeFor(int entries) {
+        return (int) Math.max(MIN_CAPACITY * 2, Long.highestOneBit(Math.max(1, entries) * 4L - 1));
+    }
+
+    private static int hash(long high, long low) {
+        long h = (high ^ Long.rotateLeft(low, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private ByteBuffer[] columns() {
+        return new ByteBuffer[] {idHigh, idLow, years, titleRefs, authorRefs};
+    }
+
+    private void allocateColumns(int capacity) {
+        this.capacity = capacity;
+        idHigh = newBuffer(capacity * 8);
+        idLow = newBuffer(capacity * 8);
+        years = newBuffer(capacity * 4);
+        titleRefs = newBuffer(capacity * 8);
+        authorRefs = newBuffer(capacity * 8);
+    }
+
+    private void growColumns(int newCapacity) {
+        ByteBuffer[] old = columns();
+        allocateColumns(newCapacity);
+        ByteBuffer[] grown = columns();
+        for (int i = 0; i < old.length; i++) {
+            grown[i].put(0, old[i], 0, rows * (i == 2 ? 4 : 8));
+        }
+    }
+
+    private static ByteBuffer newBuffer(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static UUID requireId(String id) {
+        UUID uuid = CompactBook.parseId(id);
+        if (uuid == null) {
+            throw new IllegalArgumentException("Book ID is not a canonical UUID: " + id);
+        }
+        return uuid;
+    }
+
+    private static void write(FileChannel channel, CRC32 crc, ByteBuffer buffer) throws IOException {
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void read(FileChannel channel, CRC32 crc, ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Columnar catalog is truncated");
+            }
+        }
+        if (crc != null) {
+            crc.update(buffer.duplicate().flip().position(start));
+        }
+    }
+
+    private static final class Keyed {
+        private final CollationKey key;
+        private final int row;
+
+        private Keyed(CollationKey key, int row) {
+            this.key = key;
+            this.row = row;
+        }
+    }
+}
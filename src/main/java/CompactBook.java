@@ -0,0 +1,120 @@
+import java.io.ObjectStreamException;
+import java.util.UUID;
+
+/**
+ * A {@link Book} stored in a few bytes: the UUID ID is kept as two
+ * {@code long}s instead of a 36-character string, and the author as an
+ * {@code int} code into a {@link StringDictionary} shared by every book of
+ * a library, so each author's name is held once. The title and year are
+ * kept as in {@code Book}.
+ *
+ * <p>Compact books behave exactly like plain ones: {@link #getId()} and
+ * {@link #getAuthor()} rebuild the same strings, and a compact book equals,
+ * and has the same hash code as, a plain book with the same ID. Java
+ * serialization writes a plain {@code Book}.
+ */
+public class CompactBook extends Book {
+    private static final long serialVersionUID = 1L;
+
+    private final long idHigh;
+    private final long idLow;
+    private final transient StringDictionary authors;
+    private int authorCode;
+
+    private CompactBook(long idHigh, long idLow, String title, String author, int publicationYear,
+            StringDictionary authors) {
+        super(title, publicationYear);
+        this.idHigh = idHigh;
+        this.idLow = idLow;
+        this.authors = authors;
+        this.authorCode = authors.encode(author);
+    }
+
+    /**
+     * Makes a compact copy of a book.
+     *
+     * @param book The book to copy
+     * @param authors The dictionary to encode the author with
+     * @return The copy, or null if the book's ID is not a UUID in its
+     *         canonical lower-case form and so cannot be stored as two longs
+     */
+    public static CompactBook of(Book book, StringDictionary authors) {
+        UUID id = parseId(book.getId());
+        if (id == null || book.getAuthor() == null) {
+            return null;
+        }
+        return new CompactBook(id.getMostSignificantBits(), id.getLeastSignificantBits(),
+                book.getTitle(), book.getAuthor(), book.getPublicationYear(), authors);
+    }
+
+    /**
+     * Parses an ID that {@link UUID#toString()} would print back unchanged.
+     *
+     * @param id The ID
+     * @return The UUID, or null if the ID is not in that form
+     */
+    public static UUID parseId(String id) {
+        if (id == null || id.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            return uuid.toString().equals(id) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /** @return The high 64 bits of the ID */
+    public long getIdHigh() { return idHigh; }
+
+    /** @return The low 64 bits of the ID */
+    public long getIdLow() { return idLow; }
+
+    @Override
+    public String getId() {
+        return new UUID(idHigh, idLow).toString();
+    }
+
+    @Override
+    public String getAuthor() {
+        return authors.decode(authorCode);
+    }
+
+    @Override
+    public void setAuthor(String author) {
+        checkMutable();
+        this.authorCode = authors.encode(author);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof CompactBook) {
+            CompactBook book = (CompactBook) obj;
+            return idHigh == book.idHigh && idLow == book.idLow;
+        }
+        return super.equals(obj);
+    }
+
+    /**
+     * Computes {@code getId().hashCode()} from the two longs, without
+     * building the string.
+     */
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int digit = 0; digit < 32; digit++) {
+            if (digit == 8 || digit == 12 || digit == 16 || digit == 20) {
+                hash = 31 * hash + '-';
+            }
+            long bits = digit < 16 ? idHigh : idLow;
+            int nibble = (int) (bits >>> (60 - 4 * (digit & 15))) & 0xF;
+            hash = 31 * hash + Character.forDigit(nibble, 16);
+        }
+        return hash;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new Book(getId(), getTitle(), getAuthor(), getPublicationYear());
+    }
+}
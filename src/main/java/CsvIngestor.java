@@ -0,0 +1,464 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Parallel CSV importer for book catalogs in {@code title,author,year}
+ * form.
+ *
+ * <p>The file is memory-mapped and cut into chunks that are parsed in
+ * parallel on a fork/join pool. Fields follow RFC 4180: a field may be
+ * wrapped in double quotes, in which case it can contain commas, line
+ * breaks and doubled quotes. Chunks must start on a record boundary, which
+ * depends on whether the preceding bytes left a quote open; a first
+ * parallel pass counts the quotes in each region to place the boundaries.
+ * That count is only a guess, since a quote inside an unquoted field is an
+ * ordinary character, so each chunk's parser finishes its last record past
+ * the chunk's end, and a chunk that does not start where the one before it
+ * stopped is parsed again from there. The result is the same as parsing
+ * the whole file in one pass.
+ *
+ * <p>Lines that cannot be parsed are reported with their line number and
+ * skipped. Blank lines are ignored.
+ */
+public class CsvIngestor {
+    private static final int MIN_CHUNK_BYTES = 4 << 20;
+    private static final int MAX_CHUNK_BYTES = 256 << 20;
+    private static final int FIELDS = 3;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an ingestor that parses on the common fork/join pool.
+     */
+    public CsvIngestor() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an ingestor that parses on the given pool.
+     *
+     * @param pool The pool to run chunk tasks on
+     */
+    public CsvIngestor(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Parses a CSV file into books.
+     *
+     * @param file The CSV file
+     * @return The parsed books in file order, the per-line errors and
+     *         throughput statistics
+     */
+    public Result ingest(Path file) throws IOException {
+        long started = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return new Result(new ArrayList<>(), new ArrayList<>(), 0, 0, System.nanoTime() - started);
+            }
+
+            long chunkBytes = Math.min(MAX_CHUNK_BYTES,
+                    Math.max(MIN_CHUNK_BYTES, size / (pool.getParallelism() * 4L) + 1));
+            int regions = (int) ((size + chunkBytes - 1) / chunkBytes);
+
+            // Pass 1: quote parity of each region, giving the quote state at
+            // the start of every region
+            List<Callable<Boolean>> parityTasks = new ArrayList<>(regions);
+            for (int r = 0; r < regions; r++) {
+                long from = r * chunkBytes;
+                long to = Math.min(size, from + chunkBytes);
+                parityTasks.add(() -> oddQuotes(channel, from, to));
+            }
+            List<Boolean> parities = run(parityTasks);
+
+            // Place each boundary just after the first newline outside quotes
+            long[] starts = new long[regions + 1];
+            boolean quoted = false;
+            starts[0] = skipByteOrderMark(channel, size);
+            for (int r = 1; r < regions; r++) {
+                quoted ^= parities.get(r - 1);
+                starts[r] = Math.max(starts[r - 1], nextRecord(channel, r * chunkBytes, size, quoted));
+            }
+            starts[regions] = size;
+
+            // Pass 2: parse the chunks
+            List<Callable<Chunk>> parseTasks = new ArrayList<>(regions);
+            for (int r = 0; r < regions; r++) {
+                long from = starts[r];
+                long to = starts[r + 1];
+                parseTasks.add(() -> parse(channel, from, to, size));
+            }
+            List<Chunk> chunks = run(parseTasks);
+
+            // A misplaced boundary shows up as a chunk starting somewhere other
+            // than where the previous chunk's last record ended
+            for (int r = 1; r < regions; r++) {
+                long end = chunks.get(r - 1).end;
+                if (chunks.get(r).start != end) {
+                    chunks.set(r, parse(channel, end, Math.max(end, starts[r + 1]), size));
+                }
+            }
+
+            int total = 0;
+            for (Chunk chunk : chunks) {
+                total += chunk.books.size();
+            }
+            List<Book> books = new ArrayList<>(total);
+            List<String> errors = new ArrayList<>();
+            long line = 1;
+            for (Chunk chunk : chunks) {
+                books.addAll(chunk.books);
+                for (int i = 0; i < chunk.errorLines.size(); i++) {
+                    errors.add("line " + (line + chunk.errorLines.get(i)) + ": " + chunk.errorMessages.get(i));
+                }
+                line += chunk.newlines;
+            }
+            long lines = map(channel, size - 1, size).get(0) == '\n' ? line - 1 : line;
+            return new Result(books, errors, lines, size, System.nanoTime() - started);
+        }
+    }
+
+    private <T> List<T> run(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Error parsing file", e.getCause());
+        }
+        return results;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long from, long to) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(to - from, Integer.MAX_VALUE));
+    }
+
+    private static boolean oddQuotes(FileChannel channel, long from, long to) throws IOException {
+        MappedByteBuffer buffer = map(channel, from, to);
+        int quotes = 0;
+        for (int i = 0, n = buffer.limit(); i < n; i++) {
+            if (buffer.get(i) == '"') {
+                quotes++;
+            }
+        }
+        return (quotes & 1) != 0;
+    }
+
+    private static long skipByteOrderMark(FileChannel channel, long size) throws IOException {
+        if (size < 3) {
+            return 0;
+        }
+        MappedByteBuffer buffer = map(channel, 0, 3);
+        return buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF ? 3 : 0;
+    }
+
+    /**
+     * Finds the offset just after the first line break at or after
+     * {@code from} that is not inside a quoted field.
+     */
+    private static long nextRecord(FileChannel channel, long from, long size, boolean quoted) throws IOException {
+        MappedByteBuffer buffer = map(channel, from, size);
+        for (int i = 0, n = buffer.limit(); i < n; i++) {
+            byte b = buffer.get(i);
+            if (b == '"') {
+                quoted = !quoted;
+            } else if (b == '\n' && !quoted) {
+                return from + i + 1;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Parses the records that start in {@code [from, to)}, reading past
+     * {@code to} to finish the last one.
+     */
+    private static Chunk parse(FileChannel channel, long from, long to, long size) throws IOException {
+        Chunk chunk = new Chunk(from);
+        if (from >= to) {
+            return chunk;
+        }
+        new RecordParser(map(channel, from, size), (int) Math.min(to - from, Integer.MAX_VALUE), chunk).run();
+        return chunk;
+    }
+
+    /**
+     * Creates a random version 4 UUID without going through the shared
+     * {@code SecureRandom} behind {@link UUID#randomUUID()}, which would
+     * serialize the parsing threads.
+     */
+    static String randomId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long most = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long least = (random.nextLong() & ~(0xC000L << 48)) | (0x8000L << 48);
+        return new UUID(most, least).toString();
+    }
+
+    /**
+     * Books and errors parsed from one chunk. Error lines are relative to
+     * the chunk's first line.
+     */
+    private static final class Chunk {
+        private final List<Book> books = new ArrayList<>();
+        private final List<Long> errorLines = new ArrayList<>();
+        private final List<String> errorMessages = new ArrayList<>();
+        private final long start;
+        private long end;
+        private long newlines;
+
+        Chunk(long start) {
+            this.start = start;
+            this.end = start;
+        }
+    }
+
+    /**
+     * Single-threaded parser over one chunk. Field bounds are kept as
+     * offsets into the mapped buffer; only titles and authors are decoded
+     * into strings, and years are parsed straight from the bytes.
+     */
+    private static final class RecordParser {
+        private final MappedByteBuffer buffer;
+        private final int limit;
+        private final int stop;
+        private final Chunk chunk;
+        private final int[] starts = new int[FIELDS];
+        private final int[] ends = new int[FIELDS];
+        private final boolean[] quoted = new boolean[FIELDS];
+        private final boolean[] escaped = new boolean[FIELDS];
+        private byte[] scratch = new byte[256];
+        private int pos;
+        private long line;
+        private String error;
+
+        /**
+         * @param buffer The bytes from the chunk's start to the end of the file
+         * @param stop Where the next chunk starts; a record starting before
+         *        it is read to its end even if that lies beyond
+         */
+        RecordParser(MappedByteBuffer buffer, int stop, Chunk chunk) {
+            this.buffer = buffer;
+            this.limit = buffer.limit();
+            this.stop = stop;
+            this.chunk = chunk;
+        }
+
+        void run() {
+            while (pos < stop) {
+                long recordLine = line;
+                error = null;
+                int fields = parseRecord();
+                if (error != null) {
+                    reject(recordLine, error);
+                } else if (fields == 1 && starts[0] == ends[0] && !quoted[0]) {
+                    continue; // blank line
+                } else if (fields != FIELDS) {
+                    reject(recordLine, "expected " + FIELDS + " fields but found " + fields);
+                } else {
+                    accept(recordLine);
+                }
+            }
+            chunk.newlines = line;
+            chunk.end = chunk.start + pos;
+        }
+
+        /**
+         * Reads one record, leaving {@code pos} at the start of the next.
+         *
+         * @return The number of fields in the record
+         */
+        private int parseRecord() {
+            int fields = 0;
+            while (true) {
+                while (pos < limit && (buffer.get(pos) == ' ' || buffer.get(pos) == '\t')) {
+                    pos++;
+                }
+                int start;
+                int end;
+                boolean isQuoted = pos < limit && buffer.get(pos) == '"';
+                boolean hasEscapes = false;
+                if (isQuoted) {
+                    start = ++pos;
+                    while (true) {
+                        if (pos >= limit) {
+                            error = "unterminated quoted field";
+                            return fields;
+                        }
+                        byte b = buffer.get(pos);
+                        if (b == '\n') {
+                            line++;
+                        }
+                        if (b == '"') {
+                            if (pos + 1 < limit && buffer.get(pos + 1) == '"') {
+                                hasEscapes = true;
+                                pos += 2;
+                                continue;
+                            }
+                            break;
+                        }
+                        pos++;
+                    }
+                    end = pos++;
+                    while (pos < limit && (buffer.get(pos) == ' ' || buffer.get(pos) == '\t'
+                            || buffer.get(pos) == '\r')) {
+                        pos++;
+                    }
+                    if (pos < limit && buffer.get(pos) != ',' && buffer.get(pos) != '\n') {
+                        error = "unexpected character after closing quote";
+                        skipLine();
+                        return fields;
+                    }
+                } else {
+                    start = pos;
+                    while (pos < limit && buffer.get(pos) != ',' && buffer.get(pos) != '\n') {
+                        pos++;
+                    }
+                    end = pos;
+                    while (end > start && (buffer.get(end - 1) & 0xFF) <= ' ') {
+                        end--;
+                    }
+                }
+                if (fields < FIELDS) {
+                    starts[fields] = start;
+                    ends[fields] = end;
+                    quoted[fields] = isQuoted;
+                    escaped[fields] = hasEscapes;
+                }
+                fields++;
+                if (pos < limit && buffer.get(pos) == ',') {
+                    pos++;
+                    continue;
+                }
+                if (pos < limit) {
+                    pos++; // newline
+                    line++;
+                }
+                return fields;
+            }
+        }
+
+        private void skipLine() {
+            while (pos < limit && buffer.get(pos) != '\n') {
+                pos++;
+            }
+            if (pos < limit) {
+                pos++;
+                line++;
+            }
+        }
+
+        private void accept(long recordLine) {
+            int year = 0;
+            int i = starts[2];
+            int end = ends[2];
+            boolean negative = false;
+            if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negative = buffer.get(i) == '-';
+                i++;
+            }
+            if (i == end) {
+                reject(recordLine, "invalid publication year");
+                return;
+            }
+            for (; i < end; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9 || year > (Integer.MAX_VALUE - digit) / 10) {
+                    reject(recordLine, "invalid publication year");
+                    return;
+                }
+                year = year * 10 + digit;
+            }
+            chunk.books.add(new Book(randomId(), field(0), field(1), negative ? -year : year));
+        }
+
+        private String field(int index) {
+            int length = ends[index] - starts[index];
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(starts[index], scratch, 0, length);
+            if (!escaped[index]) {
+                return new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+            int out = 0;
+            for (int i = 0; i < length; i++) {
+                scratch[out++] = scratch[i];
+                if (scratch[i] == '"' && i + 1 < length && scratch[i + 1] == '"') {
+                    i++;
+                }
+            }
+            return new String(scratch, 0, out, StandardCharsets.UTF_8);
+        }
+
+        private void reject(long recordLine, String message) {
+            chunk.errorLines.add(recordLine);
+            chunk.errorMessages.add(message);
+        }
+    }
+
+    /**
+     * Outcome of an import.
+     */
+    public static final class Result {
+        private final List<Book> books;
+        private final List<String> errors;
+        private final long lines;
+        private final long bytes;
+        private final long elapsedNanos;
+
+        Result(List<Book> books, List<String> errors, long lines, long bytes, long elapsedNanos) {
+            this.books = books;
+            this.errors = Collections.unmodifiableList(errors);
+            this.lines = lines;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public List<Book> getBooks() { return books; }
+
+        /** @return One "line N: reason" message per rejected record */
+        public List<String> getErrors() { return errors; }
+
+        public long getLines() { return lines; }
+
+        public long getBytes() { return bytes; }
+
+        public long getElapsedNanos() { return elapsedNanos; }
+
+        public double getMegabytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : bytes / (1024.0 * 1024.0) / (elapsedNanos / 1e9);
+        }
+
+        public double getRecordsPerSecond() {
+            return elapsedNanos == 0 ? 0 : books.size() / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Parsed %d books from %d lines (%d errors) in %.1f ms: %.1f MB/s, %.0f records/s",
+                    books.size(), lines, errors.size(), elapsedNanos / 1e6,
+                    getMegabytesPerSecond(), getRecordsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,259 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Case-insensitive hash index from exact title and author to the books that
+ * carry them. Each bucket is kept in the order books were added, so the first
+ * entry of a bucket is the earliest matching book.
+ *
+ * <p>Writes must be serialized by the caller. The lookups only read and
+ * tolerate running concurrently with a write, though it may then return a
+ * stale answer or throw, which optimistic readers detect and retry.
+ */
+public class ExactMatchIndex {
+    private final Map<Book, Entry> entries = new HashMap<>();
+    private final Map<String, List<Entry>> byTitle = new ConcurrentHashMap<>();
+    private final Map<String, List<Entry>> byAuthor = new ConcurrentHashMap<>();
+    private long nextSequence;
+
+    /**
+     * Indexes a book under its title and author.
+     *
+     * @param book The book to index
+     */
+    public void add(Book book) {
+        if (entries.containsKey(book)) {
+            update(book);
+            return;
+        }
+        Entry entry = new Entry(book, nextSequence++);
+        entries.put(book, entry);
+        link(entry);
+    }
+
+    /**
+     * Moves a book to the buckets for its current title and author, keeping
+     * its original position in the ordering. The book may be a new instance
+     * with the same ID, which then replaces the indexed one.
+     *
+     * @param book The book whose fields were modified
+     */
+    public void update(Book book) {
+        Entry entry = entries.get(book);
+        if (entry == null) {
+            add(book);
+            return;
+        }
+        if (entry.book != book) {
+            entries.remove(book);
+            entries.put(book, entry);
+            entry.book = book;
+        }
+        String titleKey = fold(book.getTitle());
+        String authorKey = fold(book.getAuthor());
+        if (titleKey.equals(entry.titleKey) && authorKey.equals(entry.authorKey)) {
+            return;
+        }
+        unlink(entry);
+        link(entry);
+    }
+
+    /**
+     * Removes a book from the index.
+     *
+     * @param book The book to remove
+     */
+    public void remove(Book book) {
+        Entry entry = entries.remove(book);
+        if (entry != null) {
+            unlink(entry);
+        }
+    }
+
+    /**
+     * Removes every book from the index.
+     */
+    public void clear() {
+        entries.clear();
+        byTitle.clear();
+        byAuthor.clear();
+        nextSequence = 0;
+    }
+
+    /**
+     * Finds the earliest book whose title or author equals the keyword,
+     * ignoring case.
+     *
+     * @param keyword The search term
+     * @return The earliest matching book, or null if there is none
+     */
+    public Book first(String keyword) {
+        if (keyword == null) {
+            return null;
+        }
+        String key = fold(keyword);
+        Entry title = head(byTitle.get(key));
+        Entry author = head(byAuthor.get(key));
+        if (title == null) {
+            return author == null ? null : author.book;
+        }
+        if (author == null || title.sequence < author.sequence) {
+            return title.book;
+        }
+        return author.book;
+    }
+
+    /**
+     * @param title The title, in any case
+     * @return The number of books with exactly this title, ignoring case
+     */
+    public int titleCount(String title) {
+        List<Entry> bucket = byTitle.get(fold(title));
+        return bucket == null ? 0 : bucket.size();
+    }
+
+    /**
+     * @param author The author, in any case
+     * @return The number of books by exactly this author, ignoring case
+     */
+    public int authorCount(String author) {
+        List<Entry> bucket = byAuthor.get(fold(author));
+        return bucket == null ? 0 : bucket.size();
+    }
+
+    /**
+     * Lists the books with a title, earliest first. The iterator reads the
+     * index as it goes, so it must be used up before the next write.
+     *
+     * @param title The title, in any case
+     * @return The books with exactly this title, ignoring case
+     */
+    public Iterator<Book> withTitle(String title) {
+        return books(byTitle.get(fold(title)));
+    }
+
+    /**
+     * Lists the books by an author, earliest first. The iterator reads the
+     * index as it goes, so it must be used up before the next write.
+     *
+     * @param author The author, in any case
+     * @return The books by exactly this author, ignoring case
+     */
+    public Iterator<Book> byAuthor(String author) {
+        return books(byAuthor.get(fold(author)));
+    }
+
+    private static Iterator<Book> books(List<Entry> bucket) {
+        List<Entry> entries = bucket == null ? List.of() : bucket;
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < entries.size();
+            }
+
+            @Override
+            public Book next() {
+                return entries.get(next++).book;
+            }
+        };
+    }
+
+    private void link(Entry entry) {
+        entry.titleKey = fold(entry.book.getTitle());
+        entry.authorKey = fold(entry.book.getAuthor());
+        insert(byTitle.computeIfAbsent(entry.titleKey, k -> new ArrayList<>()), entry);
+        insert(byAuthor.computeIfAbsent(entry.authorKey, k -> new ArrayList<>()), entry);
+    }
+
+    private void unlink(Entry entry) {
+        delete(byTitle, entry.titleKey, entry);
+        delete(byAuthor, entry.authorKey, entry);
+    }
+
+    private static Entry head(List<Entry> bucket) {
+        return bucket == null || bucket.isEmpty() ? null : bucket.get(0);
+    }
+
+    private static void insert(List<Entry> bucket, Entry entry) {
+        int pos = position(bucket, entry.sequence);
+        bucket.add(pos < 0 ? -pos - 1 : pos, entry);
+    }
+
+    private static void delete(Map<String, List<Entry>> index, String key, Entry entry) {
+        List<Entry> bucket = index.get(key);
+        if (bucket == null) {
+            return;
+        }
+        int pos = position(bucket, entry.sequence);
+        if (pos >= 0) {
+            bucket.remove(pos);
+        }
+        if (bucket.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static int position(List<Entry> bucket, long sequence) {
+        int low = 0;
+        int high = bucket.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midSequence = bucket.get(mid).sequence;
+            if (midSequence < sequence) {
+                low = mid + 1;
+            } else if (midSequence > sequence) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Folds a string so that two strings have equal keys exactly when
+     * {@link String#equalsIgnoreCase} considers them equal. Like it, this
+     * maps supplementary characters as whole code points.
+     */
+    private static String fold(String value) {
+        if (value == null) {
+            return "";
+        }
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (Character.isSurrogate(chars[i])) {
+                return foldCodePoints(value);
+            }
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    private static String foldCodePoints(String value) {
+        StringBuilder folded = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); ) {
+            int codePoint = value.codePointAt(i);
+            folded.appendCodePoint(Character.toLowerCase(Character.toUpperCase(codePoint)));
+            i += Character.charCount(codePoint);
+        }
+        return folded.toString();
+    }
+
+    private static final class Entry {
+        private Book book;
+        private final long sequence;
+        private String titleKey;
+        private String authorKey;
+
+        private Entry(Book book, long sequence) {
+            this.book = book;
+            this.sequence = sequence;
+        }
+    }
+}
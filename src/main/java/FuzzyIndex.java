@@ -0,0 +1,680 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Typo-tolerant index over the words of each book's title and author, using
+ * symmetric deletes: every distinct word is filed under the strings left by
+ * deleting up to two of its characters, and a query word looks up its own
+ * deletes, so candidate words are found without comparing the query against
+ * the whole vocabulary. Deletes are taken from the first
+ * {@value #PREFIX_LENGTH} characters only, which bounds their number per
+ * word; candidates are then verified with the full edit distance.
+ *
+ * <p>A book matches a query when every query word is within its allowed edit
+ * distance of some word of the book: none for words of one or two
+ * characters, one for three or four, two otherwise. Transposing two adjacent
+ * characters counts as one edit. Books are ranked by the total distance,
+ * then by the order they were added. Matching books are found by walking the
+ * sorted posting lists of the candidate words in step, leaping over books
+ * that cannot match.
+ *
+ * <p>Writes must be serialized by the caller. {@link #search} only reads and
+ * tolerates running concurrently with a write, though it may then return a
+ * wrong answer or throw, which optimistic readers detect and retry.
+ */
+public class FuzzyIndex {
+    private static final int MAX_DISTANCE = 2;
+    private static final int PREFIX_LENGTH = 7;
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private final Map<Book, Integer> docIds = new HashMap<>();
+    private final List<Book> docs = new ArrayList<>();
+    private final List<int[]> docWords = new ArrayList<>();
+    private int deadDocs;
+
+    private final Map<String, Integer> wordIds = new HashMap<>();
+    private final List<String> words = new ArrayList<>();
+    private final List<PostingList> postings = new ArrayList<>();
+    private final DeleteTable deletes = new DeleteTable();
+    private int deadWords;
+
+    /**
+     * Indexes a book. Books are numbered in the order they are added, which
+     * breaks ties between equally close matches.
+     *
+     * @param book The book to index
+     */
+    public void add(Book book) {
+        if (docIds.containsKey(book)) {
+            update(book);
+            return;
+        }
+        int docId = docs.size();
+        int[] wordsOfBook = wordIdsOf(book);
+        docIds.put(book, docId);
+        docs.add(book);
+        docWords.add(wordsOfBook);
+        for (int wordId : wordsOfBook) {
+            post(wordId, docId);
+        }
+    }
+
+    /**
+     * Re-indexes a book after its title or author has changed. The book
+     * keeps its position in the tie-break order, and may be a new instance
+     * with the same ID, which then replaces the indexed one.
+     *
+     * @param book The book whose fields were modified
+     */
+    public void update(Book book) {
+        Integer docId = docIds.get(book);
+        if (docId == null) {
+            add(book);
+            return;
+        }
+        if (docs.get(docId) != book) {
+            docIds.remove(book);
+            docIds.put(book, docId);
+            docs.set(docId, book);
+        }
+        int[] oldWords = docWords.get(docId);
+        int[] newWords = wordIdsOf(book);
+        if (Arrays.equals(oldWords, newWords)) {
+            return;
+        }
+        for (int wordId : oldWords) {
+            unpost(wordId, docId);
+        }
+        docWords.set(docId, newWords);
+        for (int wordId : newWords) {
+            post(wordId, docId);
+        }
+        rebuildIfMostlyDead();
+    }
+
+    /**
+     * Removes a book from the index.
+     *
+     * @param book The book to remove
+     */
+    public void remove(Book book) {
+        Integer docId = docIds.remove(book);
+        if (docId == null) {
+            return;
+        }
+        for (int wordId : docWords.get(docId)) {
+            unpost(wordId, docId);
+        }
+        docs.set(docId, null);
+        docWords.set(docId, null);
+        deadDocs++;
+        rebuildIfMostlyDead();
+    }
+
+    /**
+     * Removes every book from the index.
+     */
+    public void clear() {
+        docIds.clear();
+        docs.clear();
+        docWords.clear();
+        deadDocs = 0;
+        wordIds.clear();
+        words.clear();
+        postings.clear();
+        deletes.clear();
+        deadWords = 0;
+    }
+
+    /**
+     * Finds the books closest to a query, allowing typos in each of its
+     * words.
+     *
+     * @param query The search terms, in any case
+     * @param k How many books to return at most
+     * @return Matching books, closest first
+     */
+    public List<Book> search(String query, int k) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || k <= 0) {
+            return new ArrayList<>();
+        }
+
+        List<Term> matches = new ArrayList<>(terms.size());
+        int maxScore = 0;
+        for (String term : terms) {
+            Term match = lookup(term);
+            if (match.cursors.length == 0) {
+                return new ArrayList<>();
+            }
+            matches.add(match);
+            maxScore += maxDistance(term.length());
+        }
+        // Lead with the word that has the fewest candidate books
+        matches.sort((a, b) -> Long.compare(a.postings, b.postings));
+
+        // Books arrive in index order, so the first k at each score are the best k at that score
+        List<List<Book>> byScore = new ArrayList<>(maxScore + 1);
+        for (int score = 0; score <= maxScore; score++) {
+            byScore.add(new ArrayList<>());
+        }
+        int doc = 0;
+        search:
+        while (true) {
+            boolean agreed = true;
+            for (Term match : matches) {
+                int next = match.advance(doc);
+                if (next == NONE) {
+                    break search;
+                }
+                if (next != doc) {
+                    doc = next;
+                    agreed = false;
+                }
+            }
+            if (agreed) {
+                int score = 0;
+                for (Term match : matches) {
+                    score += match.distanceAt(doc);
+                }
+                List<Book> level = byScore.get(score);
+                Book book = docs.get(doc);
+                if (level.size() < k && book != null) {
+                    level.add(book);
+                }
+                doc++;
+                if (ranked(byScore, lowestScoreLeft(matches)) >= k) {
+                    // No book further on can displace the ones found
+                    break;
+                }
+            }
+        }
+
+        List<Book> results = new ArrayList<>(k);
+        for (List<Book> level : byScore) {
+            for (Book book : level) {
+                if (results.size() == k) {
+                    return results;
+                }
+                results.add(book);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return The smallest score a book not yet reached could have
+     */
+    private static int lowestScoreLeft(List<Term> matches) {
+        int score = 0;
+        for (Term match : matches) {
+            int distance = match.lowestDistanceLeft();
+            if (distance == NONE) {
+                return NONE;
+            }
+            score += distance;
+        }
+        return score;
+    }
+
+    /**
+     * @return How many books have been found with at most the given score
+     */
+    private static int ranked(List<List<Book>> byScore, int score) {
+        int count = 0;
+        for (int s = 0; s <= score && s < byScore.size(); s++) {
+            count += byScore.get(s).size();
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of books currently indexed
+     */
+    public int size() {
+        return docIds.size();
+    }
+
+    /**
+     * Finds the vocabulary words within the allowed distance of a query word.
+     */
+    private Term lookup(String term) {
+        int maxDistance = maxDistance(term.length());
+        Set<String> variants = new HashSet<>();
+        addDeletes(prefix(term), maxDistance, variants);
+        Set<Integer> seen = new HashSet<>();
+        List<Cursor> cursors = new ArrayList<>();
+        long total = 0;
+        for (String variant : variants) {
+            for (int entry = deletes.head(hash(variant)); entry >= 0; entry = deletes.next(entry)) {
+                int wordId = deletes.word(entry);
+                if (!seen.add(wordId)) {
+                    continue;
+                }
+                PostingList list = postings.get(wordId);
+                if (list.size == 0) {
+                    continue;
+                }
+                int distance = distance(term, words.get(wordId), maxDistance);
+                if (distance <= maxDistance) {
+                    cursors.add(new Cursor(list.ids, list.size, distance));
+                    total += list.size;
+                }
+            }
+        }
+        return new Term(cursors.toArray(new Cursor[0]), total);
+    }
+
+    private int[] wordIdsOf(Book book) {
+        Set<String> distinct = new HashSet<>(tokenize(book.getTitle()));
+        distinct.addAll(tokenize(book.getAuthor()));
+        int[] ids = new int[distinct.size()];
+        int i = 0;
+        for (String word : distinct) {
+            ids[i++] = wordId(word);
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private int wordId(String word) {
+        Integer id = wordIds.get(word);
+        if (id != null) {
+            return id;
+        }
+        int wordId = words.size();
+        wordIds.put(word, wordId);
+        words.add(word);
+        postings.add(new PostingList());
+        deadWords++;
+        Set<String> variants = new HashSet<>();
+        addDeletes(prefix(word), MAX_DISTANCE, variants);
+        for (String variant : variants) {
+            deletes.add(hash(variant), wordId);
+        }
+        return wordId;
+    }
+
+    private void post(int wordId, int docId) {
+        PostingList list = postings.get(wordId);
+        if (list.size == 0) {
+            deadWords--;
+        }
+        list.add(docId);
+    }
+
+    private void unpost(int wordId, int docId) {
+        PostingList list = postings.get(wordId);
+        list.remove(docId);
+        if (list.size == 0) {
+            deadWords++;
+        }
+    }
+
+    /**
+     * Rebuilds the index once more than half of the book numbers belong to
+     * removed books, or more than half of the words are no longer used,
+     * preserving the relative order of the live books.
+     */
+    private void rebuildIfMostlyDead() {
+        boolean docsDead = deadDocs > 1024 && deadDocs > docs.size() / 2;
+        boolean wordsDead = deadWords > 1024 && deadWords > words.size() / 2;
+        if (!docsDead && !wordsDead) {
+            return;
+        }
+        List<Book> live = new ArrayList<>(docIds.size());
+        for (Book book : docs) {
+            if (book != null) {
+                live.add(book);
+            }
+        }
+        clear();
+        for (Book book : live) {
+            add(book);
+        }
+    }
+
+    /**
+     * Scores one book against a query the way {@link #search} ranks it, for
+     * merging results from several indexes.
+     *
+     * @param query The search terms
+     * @param book The book
+     * @return The total distance, or -1 if the book does not match
+     */
+    static int score(String query, Book book) {
+        List<String> words = tokenize(book.getTitle());
+        words.addAll(tokenize(book.getAuthor()));
+        int score = 0;
+        for (String term : tokenize(query)) {
+            int max = maxDistance(term.length());
+            int best = max + 1;
+            for (String word : words) {
+                best = Math.min(best, distance(term, word, max));
+            }
+            if (best > max) {
+                return -1;
+            }
+            score += best;
+        }
+        return score;
+    }
+
+    private static int maxDistance(int length) {
+        return length <= 2 ? 0 : length <= 4 ? 1 : MAX_DISTANCE;
+    }
+
+    private static String prefix(String word) {
+        return word.length() <= PREFIX_LENGTH ? word : word.substring(0, PREFIX_LENGTH);
+    }
+
+    /**
+     * Adds a word and every string of two or more characters left by
+     * deleting up to {@code depth} of its characters.
+     */
+    private static void addDeletes(String word, int depth, Set<String> out) {
+        if (!out.add(word) || depth == 0 || word.length() <= 2) {
+            return;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            addDeletes(word.substring(0, i) + word.substring(i + 1), depth - 1, out);
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a delete. Collisions only add candidates, which
+     * the distance check then rejects.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Edit distance counting insertions, deletions, substitutions and
+     * transpositions of adjacent characters, giving up once it must exceed
+     * {@code max}.
+     *
+     * @return The distance, or {@code max + 1} if it is larger than {@code max}
+     */
+    static int distance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+        int n = b.length();
+        int[] previous2 = new int[n + 1];
+        int[] previous = new int[n + 1];
+        int[] current = new int[n + 1];
+        for (int j = 0; j <= n; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= n; j++) {
+                char cb = b.charAt(j - 1);
+                int cost = ca == cb ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && ca == b.charAt(j - 2) && a.charAt(i - 2) == cb) {
+                    value = Math.min(value, previous2[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[n], max + 1);
+    }
+
+    /**
+     * Splits text into case-folded words of letters and digits.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(Character.toUpperCase(c)));
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * The candidate words of one query word, as cursors over their posting
+     * lists.
+     */
+    private static final class Term {
+        private final Cursor[] cursors;
+        private final long postings;
+
+        private Term(Cursor[] cursors, long postings) {
+            this.cursors = cursors;
+            this.postings = postings;
+        }
+
+        /**
+         * Moves every cursor to its first book at or after {@code target}.
+         *
+         * @return The smallest of those books, or {@link #NONE}
+         */
+        int advance(int target) {
+            int min = NONE;
+            for (Cursor cursor : cursors) {
+                int doc = cursor.seek(target);
+                if (doc < min) {
+                    min = doc;
+                }
+            }
+            return min;
+        }
+
+        /**
+         * @return The smallest distance of the candidate words with books
+         *         left, or {@link #NONE} if there are none
+         */
+        int lowestDistanceLeft() {
+            int min = NONE;
+            for (Cursor cursor : cursors) {
+                if (cursor.pos < cursor.size) {
+                    min = Math.min(min, cursor.distance);
+                }
+            }
+            return min;
+        }
+
+        /**
+         * @return The smallest distance of the candidate words containing a book
+         */
+        int distanceAt(int doc) {
+            int min = NONE;
+            for (Cursor cursor : cursors) {
+                if (cursor.pos < cursor.size && cursor.ids[cursor.pos] == doc) {
+                    min = Math.min(min, cursor.distance);
+                }
+            }
+            return min;
+        }
+    }
+
+    private static final class Cursor {
+        private final int[] ids;
+        private final int size;
+        private final int distance;
+        private int pos;
+
+        private Cursor(int[] ids, int size, int distance) {
+            this.ids = ids;
+            this.size = Math.min(size, ids.length);
+            this.distance = distance;
+        }
+
+        /**
+         * Gallops forward to the first book at or after {@code target}.
+         *
+         * @return That book, or {@link #NONE} if the list is exhausted
+         */
+        int seek(int target) {
+            if (pos >= size || ids[pos] >= target) {
+                return pos < size ? ids[pos] : NONE;
+            }
+            int step = 1;
+            int low = pos;
+            int high = pos + 1;
+            while (high < size && ids[high] < target) {
+                low = high;
+                step <<= 1;
+                high = low + step;
+            }
+            int found = Arrays.binarySearch(ids, low + 1, Math.min(high, size - 1) + 1, target);
+            pos = found >= 0 ? found : -found - 1;
+            return pos < size ? ids[pos] : NONE;
+        }
+    }
+
+    /**
+     * Multimap from 64-bit delete hashes to word numbers, with open
+     * addressing for the hashes and chained arrays for the words.
+     */
+    private static final class DeleteTable {
+        private long[] keys = new long[1024];
+        private int[] heads = new int[1024];
+        private int used;
+        private int[] entryWords = new int[1024];
+        private int[] entryNext = new int[1024];
+        private int entries;
+
+        void add(long hash, int wordId) {
+            if ((used + 1) * 2 > keys.length) {
+                grow();
+            }
+            if (entries == entryWords.length) {
+                entryWords = Arrays.copyOf(entryWords, entries * 2);
+                entryNext = Arrays.copyOf(entryNext, entries * 2);
+            }
+            int slot = slot(keys, hash);
+            if (keys[slot] == 0) {
+                keys[slot] = hash;
+                heads[slot] = -1;
+                used++;
+            }
+            entryWords[entries] = wordId;
+            entryNext[entries] = heads[slot];
+            heads[slot] = entries++;
+        }
+
+        /**
+         * @return The first entry filed under a hash, or -1
+         */
+        int head(long hash) {
+            long[] k = keys;
+            int[] h = heads;
+            int mask = Math.min(k.length, h.length) - 1;
+            for (int i = (int) mix(hash) & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                if (k[i] == hash) {
+                    return h[i];
+                }
+                if (k[i] == 0) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        int next(int entry) {
+            return entryNext[entry];
+        }
+
+        int word(int entry) {
+            return entryWords[entry];
+        }
+
+        void clear() {
+            keys = new long[1024];
+            heads = new int[1024];
+            used = 0;
+            entryWords = new int[1024];
+            entryNext = new int[1024];
+            entries = 0;
+        }
+
+        private void grow() {
+            long[] newKeys = new long[keys.length * 2];
+            int[] newHeads = new int[heads.length * 2];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    int slot = slot(newKeys, keys[i]);
+                    newKeys[slot] = keys[i];
+                    newHeads[slot] = heads[i];
+                }
+            }
+            heads = newHeads;
+            keys = newKeys;
+        }
+
+        private static int slot(long[] keys, long hash) {
+            int mask = keys.length - 1;
+            int i = (int) mix(hash) & mask;
+            while (keys[i] != 0 && keys[i] != hash) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private static long mix(long hash) {
+            return hash ^ (hash >>> 32);
+        }
+    }
+
+    /**
+     * Sorted, duplicate-free list of book numbers.
+     */
+    private static final class PostingList {
+        private int[] ids = new int[2];
+        private int size;
+
+        void add(int docId) {
+            int pos = size > 0 && ids[size - 1] >= docId ? Arrays.binarySearch(ids, 0, size, docId) : -size - 1;
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = docId;
+            size++;
+        }
+
+        void remove(int docId) {
+            int pos = Arrays.binarySearch(ids, 0, size, docId);
+            if (pos >= 0) {
+                System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+                size--;
+            }
+        }
+    }
+}
@@ -0,0 +1,446 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Substring search over case-folded byte copies of every book's title,
+ * author and year, for keywords the {@link TrigramIndex} cannot answer.
+ *
+ * <p>Each book is a record in one byte arena: its lower-cased title, author
+ * and year encoded as UTF-8, each followed by a separator byte. A search
+ * encodes the keyword the same way and walks the arena eight bytes at a
+ * time, testing a whole {@code long} for the keyword's first byte with
+ * SWAR bit tricks; only where the first byte occurs are the remaining bytes
+ * compared. UTF-8 is self-synchronizing, so a byte match is exactly a
+ * character match, and since the separator {@code 0xFE} never occurs in
+ * UTF-8, no match spans two fields. Unpaired surrogates, which UTF-8 cannot
+ * encode, are stored as {@code 0xFF} and never match; keywords containing
+ * one are not answered. Nothing is allocated per record, and large arenas
+ * are searched in segments on a fork/join pool.
+ *
+ * <p>A record keeps its place when its book is updated to text no longer
+ * than before; longer text is appended to the arena and the old record
+ * cleared, and results are then put back in catalog order by sequence
+ * number. Cleared records are dropped, restoring the order, once they take
+ * up more than half of the arena.
+ *
+ * <p>Writes must be serialized by the caller. {@link #search} only reads and
+ * tolerates running concurrently with a write, though it may then return a
+ * wrong answer or throw, which optimistic readers detect and retry.
+ */
+public class KeywordScanner {
+    private static final byte SEPARATOR = (byte) 0xFE;
+    private static final byte UNENCODABLE = (byte) 0xFF;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final VarHandle LONGS =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    // Arena bytes per parallel segment
+    private static final int SEGMENT_BYTES = 1 << 20;
+
+    private final ForkJoinPool pool;
+    private final Map<Book, Integer> records = new HashMap<>();
+    private byte[] arena = new byte[1024];
+    // Record r spans arena[starts[r], starts[r + 1]); starts[count] is the arena's length
+    private int[] starts = new int[17];
+    private Book[] books = new Book[16];
+    private long[] sequences = new long[16];
+    private int count;
+    private int clearedBytes;
+    private boolean ordered = true;
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Creates a scanner that searches large arenas on the common fork/join
+     * pool.
+     */
+    public KeywordScanner() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a scanner that searches large arenas on the given pool.
+     *
+     * @param pool The pool to run segment scans on
+     */
+    public KeywordScanner(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Adds a book, or updates it if it is already present.
+     *
+     * @param book The book
+     * @param sequence The book's catalog sequence number
+     */
+    public void add(Book book, long sequence) {
+        if (records.containsKey(book)) {
+            update(book);
+            return;
+        }
+        int length = encode(book);
+        records.put(book, append(book, sequence, length));
+    }
+
+    /**
+     * Re-encodes a book whose title, author or year may have changed. The
+     * book may be a new instance with the same ID, which then replaces the
+     * stored one.
+     *
+     * @param book The book with its new values
+     */
+    public void update(Book book) {
+        Integer record = records.get(book);
+        if (record == null) {
+            return;
+        }
+        int length = encode(book);
+        int start = starts[record];
+        int capacity = starts[record + 1] - start;
+        if (length <= capacity) {
+            System.arraycopy(scratch, 0, arena, start, length);
+            Arrays.fill(arena, start + length, start + capacity, SEPARATOR);
+            records.remove(book);
+            records.put(book, record);
+            books[record] = book;
+            return;
+        }
+        long sequence = sequences[record];
+        clearRecord(record);
+        records.remove(book);
+        records.put(book, append(book, sequence, length));
+        ordered = false;
+        compactIfSparse();
+    }
+
+    /**
+     * Removes a book.
+     *
+     * @param book The book
+     */
+    public void remove(Book book) {
+        Integer record = records.remove(book);
+        if (record != null) {
+            clearRecord(record);
+            compactIfSparse();
+        }
+    }
+
+    /**
+     * Removes every book.
+     */
+    public void clear() {
+        records.clear();
+        arena = new byte[1024];
+        starts = new int[17];
+        books = new Book[16];
+        sequences = new long[16];
+        count = 0;
+        clearedBytes = 0;
+        ordered = true;
+    }
+
+    /**
+     * Finds the books whose lower-cased title, author or year contains the
+     * keyword.
+     *
+     * @param lowerKeyword The keyword, already lower-cased
+     * @return Matching books in catalog order, or null if the keyword is
+     *         empty or contains an unpaired surrogate
+     */
+    public List<Book> search(String lowerKeyword) {
+        byte[] keyword = utf8(lowerKeyword);
+        if (keyword == null || keyword.length == 0) {
+            return null;
+        }
+        byte[] arena = this.arena;
+        int[] starts = this.starts;
+        Book[] books = this.books;
+        int count = this.count;
+        Matches matches;
+        if (starts[count] >= 2 * SEGMENT_BYTES && pool.getParallelism() > 1) {
+            matches = pool.invoke(new ScanTask(arena, starts, books, keyword, 0, count));
+        } else {
+            matches = scan(arena, starts, books, keyword, 0, count);
+        }
+        List<Book> result = new ArrayList<>(matches.size);
+        if (ordered) {
+            for (int i = 0; i < matches.size; i++) {
+                result.add(books[matches.records[i]]);
+            }
+            return result;
+        }
+        long[] sequences = this.sequences;
+        Integer[] records = new Integer[matches.size];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = matches.records[i];
+        }
+        Arrays.sort(records, (a, b) -> Long.compare(sequences[a], sequences[b]));
+        for (Integer record : records) {
+            result.add(books[record]);
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of books stored
+     */
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * Finds matching records among records {@code [from, to)}, at most once
+     * per record.
+     */
+    private static Matches scan(byte[] arena, int[] starts, Book[] books, byte[] keyword, int from, int to) {
+        Matches matches = new Matches();
+        int end = starts[to];
+        int last = end - keyword.length;
+        byte first = keyword[0];
+        long pattern = ONES * (first & 0xFF);
+        int record = from;
+        int pos = starts[from];
+        while (pos <= last) {
+            if (pos + Long.BYTES <= end) {
+                // Bytes equal to the first byte become zero; the lowest set
+                // high bit marks the first zero byte
+                long x = (long) LONGS.get(arena, pos) ^ pattern;
+                long found = (x - ONES) & ~x & HIGH_BITS;
+                if (found == 0) {
+                    pos += Long.BYTES;
+                    continue;
+                }
+                pos += Long.numberOfTrailingZeros(found) >>> 3;
+                if (pos > last) {
+                    break;
+                }
+            } else if (arena[pos] != first) {
+                pos++;
+                continue;
+            }
+            if (!matchesAt(arena, pos, keyword)) {
+                pos++;
+                continue;
+            }
+            while (starts[record + 1] <= pos) {
+                record++;
+            }
+            if (books[record] != null) {
+                matches.add(record);
+            }
+            pos = starts[record + 1];
+        }
+        return matches;
+    }
+
+    private static boolean matchesAt(byte[] arena, int pos, byte[] keyword) {
+        for (int i = 1; i < keyword.length; i++) {
+            if (arena[pos + i] != keyword[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int append(Book book, long sequence, int length) {
+        if (count == books.length) {
+            books = Arrays.copyOf(books, books.length * 2);
+            sequences = Arrays.copyOf(sequences, sequences.length * 2);
+            starts = Arrays.copyOf(starts, books.length + 1);
+        }
+        int start = starts[count];
+        if (start + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, start + length));
+        }
+        System.arraycopy(scratch, 0, arena, start, length);
+        if (count > 0 && sequence < sequences[count - 1]) {
+            ordered = false;
+        }
+        books[count] = book;
+        sequences[count] = sequence;
+        starts[count + 1] = start + length;
+        return count++;
+    }
+
+    private void clearRecord(int record) {
+        books[record] = null;
+        Arrays.fill(arena, starts[record], starts[record + 1], SEPARATOR);
+        clearedBytes += starts[record + 1] - starts[record];
+    }
+
+    /**
+     * Rebuilds the arena from the live records in catalog order once
+     * cleared records take up more than half of it, and more than 1 KiB.
+     */
+    private void compactIfSparse() {
+        if (clearedBytes <= 1024 || clearedBytes <= starts[count] / 2) {
+            return;
+        }
+        Integer[] live = new Integer[records.size()];
+        int n = 0;
+        for (int r = 0; r < count; r++) {
+            if (books[r] != null) {
+                live[n++] = r;
+            }
+        }
+        long[] oldSequences = sequences;
+        Arrays.sort(live, (a, b) -> Long.compare(oldSequences[a], oldSequences[b]));
+        byte[] oldArena = arena;
+        int[] oldStarts = starts;
+        Book[] oldBooks = books;
+        clear();
+        for (Integer r : live) {
+            int length = oldStarts[r + 1] - oldStarts[r];
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            System.arraycopy(oldArena, oldStarts[r], scratch, 0, length);
+            records.put(oldBooks[r], append(oldBooks[r], oldSequences[r], length));
+        }
+    }
+
+    /**
+     * Encodes a book's record into {@link #scratch}.
+     *
+     * @return The record's length
+     */
+    private int encode(Book book) {
+        int length = put(lower(book.getTitle()), 0);
+        length = put(lower(book.getAuthor()), length);
+        return put(Integer.toString(book.getPublicationYear()), length);
+    }
+
+    private static String lower(String value) {
+        return value == null ? "" : value.toLowerCase();
+    }
+
+    /**
+     * Writes a field and its separator at {@code pos} of the scratch buffer.
+     *
+     * @return The position after the separator
+     */
+    private int put(String value, int pos) {
+        if (pos + value.length() * 3 + 1 > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, pos + value.length() * 3 + 1));
+        }
+        pos = encode(value, scratch, pos);
+        scratch[pos++] = SEPARATOR;
+        return pos;
+    }
+
+    /**
+     * Encodes a keyword as UTF-8.
+     *
+     * @return The bytes, or null if the keyword contains an unpaired surrogate
+     */
+    private static byte[] utf8(String value) {
+        byte[] bytes = new byte[value.length() * 3];
+        int length = encode(value, bytes, 0);
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == UNENCODABLE) {
+                return null;
+            }
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Encodes text as UTF-8, unpaired surrogates as {@link #UNENCODABLE}.
+     * Needs at most three bytes per character.
+     *
+     * @return The position after the text
+     */
+    private static int encode(String value, byte[] out, int pos) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xC0 | c >> 6);
+                out[pos++] = (byte) (0x80 | c & 0x3F);
+            } else if (!Character.isSurrogate(c)) {
+                out[pos++] = (byte) (0xE0 | c >> 12);
+                out[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+                out[pos++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, value.charAt(++i));
+                out[pos++] = (byte) (0xF0 | code >> 18);
+                out[pos++] = (byte) (0x80 | code >> 12 & 0x3F);
+                out[pos++] = (byte) (0x80 | code >> 6 & 0x3F);
+                out[pos++] = (byte) (0x80 | code & 0x3F);
+            } else {
+                out[pos++] = UNENCODABLE;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Growable list of matching record numbers.
+     */
+    private static final class Matches {
+        private int[] records = new int[16];
+        private int size;
+
+        void add(int record) {
+            if (size == records.length) {
+                records = Arrays.copyOf(records, size * 2);
+            }
+            records[size++] = record;
+        }
+
+        void addAll(Matches other) {
+            if (size + other.size > records.length) {
+                records = Arrays.copyOf(records, Math.max(records.length * 2, size + other.size));
+            }
+            System.arraycopy(other.records, 0, records, size, other.size);
+            size += other.size;
+        }
+    }
+
+    /**
+     * Scans a range of records, splitting it in two while it spans more
+     * than {@link #SEGMENT_BYTES} of the arena.
+     */
+    private static final class ScanTask extends RecursiveTask<Matches> {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] arena;
+        private final int[] starts;
+        private final Book[] books;
+        private final byte[] keyword;
+        private final int from;
+        private final int to;
+
+        ScanTask(byte[] arena, int[] starts, Book[] books, byte[] keyword, int from, int to) {
+            this.arena = arena;
+            this.starts = starts;
+            this.books = books;
+            this.keyword = keyword;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Matches compute() {
+            if (to - from < 2 || starts[to] - starts[from] <= SEGMENT_BYTES) {
+                return scan(arena, starts, books, keyword, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            ScanTask right = new ScanTask(arena, starts, books, keyword, mid, to);
+            right.fork();
+            Matches left = new ScanTask(arena, starts, books, keyword, from, mid).compute();
+            left.addAll(right.join());
+            return left;
+        }
+    }
+}
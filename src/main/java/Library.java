@@ -1,40 +1,185 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Manages a collection of books and provides operations for searching and
  * manipulating the collection.
+ *
+ * <p>The library is safe to share between threads. Mutations are serialized
+ * by the write side of a {@link StampedLock}. Searches run as optimistic
+ * reads and are retried, falling back to the read lock only if writers keep
+ * interfering, so readers do not block each other or wait for writers in the
+ * common case. Lookups by ID never lock. Books are never modified in place:
+ * an update swaps in a new {@link Book} instance, so a book a reader holds
+ * always shows one consistent set of values. {@link #getBooks} and the
+ * sorted views hand out immutable snapshots that are rebuilt at most once
+ * per change.
+ *
+ * <p>{@link #addAll}, {@link #updateAll}, {@link #deleteAll} and
+ * {@link #deleteWhere} apply a batch under one acquisition of the write
+ * lock, as one change to the version, and with a single round of listener
+ * flushing, slot compaction and, for batches touching a large part of the
+ * catalog, index rebuilding.
+ *
+ * <p>Changes can be followed as they happen by registering a
+ * {@link LibraryListener}, or by subscribing to the {@link ChangeFeed} from
+ * {@link #getChangeFeed}, which delivers them with backpressure.
+ *
+ * <p>{@link #query} runs a compound {@link Query} of title, author, keyword
+ * and year conditions with an ordering and a limit along the plan the
+ * {@link QueryPlan planner} expects to be cheapest, and {@link #explain}
+ * shows that plan.
+ *
+ * <p>For large catalogs, {@link #getPage} walks the catalog order a page at
+ * a time with a cursor, and {@link #iterator} and {@link #stream} build on it,
+ * so neither copies the whole collection.
+ *
+ * <p>Keyword and exact searches are answered from a bounded LRU
+ * {@link ResultCache} when the same search ran since the last change; every
+ * add, update, delete and {@link #setBooks} bumps the library's
+ * {@linkplain #getVersion version}, which invalidates the cached results.
+ *
+ * <p>A library created with {@link Storage#COMPACT} stores each book as a
+ * {@link CompactBook}, whose UUID is held as two longs and whose author is a
+ * code into a dictionary the library owns, and files books by ID under a
+ * two-long key rather than the ID string. Callers still see ordinary
+ * {@link Book}s, but the stored instances are copies of the ones passed in.
  */
-public class Library {
-    private List<Book> books = new ArrayList<>();
+public class Library implements Iterable<Book> {
+    private static final int MAX_REPORTED_ERRORS = 20;
+    private static final int OPTIMISTIC_ATTEMPTS = 3;
+    private static final int ITERATOR_PAGE_SIZE = 1024;
+    private static final int DEFAULT_SEARCH_CACHE_WEIGHT = 1 << 16;
+    // Updating or deleting at least 1/REBUILD_DIVISOR of the catalog rebuilds the indexes
+    private static final int REBUILD_DIVISOR = 16;
+
+    private static final Metrics.Operation LOAD_BOOKS = Metrics.operation("Library.loadBooks");
+    private static final Metrics.Operation ADD_BOOK = Metrics.operation("Library.addBook");
+    private static final Metrics.Operation UPDATE_BOOK = Metrics.operation("Library.updateBook");
+    private static final Metrics.Operation DELETE_BOOK = Metrics.operation("Library.deleteBook");
+    private static final Metrics.Operation GET_BOOK_BY_ID = Metrics.operation("Library.getBookById");
+    private static final Metrics.Operation GET_PAGE = Metrics.operation("Library.getPage");
+    private static final Metrics.Operation SEARCH_KEYWORD = Metrics.operation("Library.searchBooksByKeyword");
+    private static final Metrics.Operation SEARCH_EXACT = Metrics.operation("Library.searchBookByKeyword");
+    private static final Metrics.Operation SEARCH_FUZZY = Metrics.operation("Library.searchBooksFuzzy");
+    private static final Metrics.Operation FIND_BY_YEAR_RANGE = Metrics.operation("Library.findByYearRange");
+    private static final Metrics.Operation QUERY = Metrics.operation("Library.query");
+    private static final Metrics.Operation SORTED_BOOKS = Metrics.operation("Library.getSortedBooks");
+    private static final Metrics.Operation SET_BOOKS = Metrics.operation("Library.setBooks");
+    private static final Metrics.Operation ADD_ALL = Metrics.operation("Library.addAll");
+    private static final Metrics.Operation UPDATE_ALL = Metrics.operation("Library.updateAll");
+    private static final Metrics.Operation DELETE_ALL = Metrics.operation("Library.deleteAll");
+    private static final Metrics.Operation DELETE_WHERE = Metrics.operation("Library.deleteWhere");
+
+    private final StampedLock lock = new StampedLock();
+
+    // Guarded by lock; deleted books leave a null slot until compaction.
+    // Each slot also has a sequence number, increasing along the list, that
+    // page cursors refer to.
+    private final List<Book> books = new ArrayList<>();
+    private long[] slotSequences = new long[16];
+    private long nextSequence;
+    private int deletedSlots;
+    private final ExactMatchIndex exactIndex = new ExactMatchIndex();
+    private final TrigramIndex keywordIndex = new TrigramIndex();
+    private final FuzzyIndex fuzzyIndex = new FuzzyIndex();
+    private final YearIndex yearIndex = new YearIndex();
+    private final KeywordScanner keywordScanner = new KeywordScanner();
+
+    // Written under lock, read without it
+    private final Map<Object, Slot> booksById = new ConcurrentHashMap<>();
+    private volatile long version;
+    private volatile Snapshot snapshot;
+
+    private final List<LibraryListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Created on first use
+    private volatile ChangeFeed changeFeed;
+
+    // Logs batch operations; null when not logging
+    private volatile UserInteractionLogger interactionLogger;
+
+    // Null when caching is off
+    private volatile ResultCache<Object> searchCache = newSearchCache(DEFAULT_SEARCH_CACHE_WEIGHT);
+
+    private final Storage storage;
+    // Author dictionary for compact storage, null otherwise
+    private final StringDictionary authors;
 
     /**
-     * Loads books from a CSV file.
+     * Creates an empty library that stores books as they are given.
+     */
+    public Library() {
+        this(Storage.STANDARD);
+    }
+
+    /**
+     * Creates an empty library.
+     *
+     * @param storage How to store books
+     */
+    public Library(Storage storage) {
+        this.storage = storage;
+        this.authors = storage == Storage.COMPACT ? new StringDictionary() : null;
+    }
+
+    /**
+     * @return How this library stores books
+     */
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Loads books from a CSV file of {@code title,author,year} lines. Fields
+     * may be quoted as described in RFC 4180, so titles can contain commas.
+     * The file is parsed in parallel by {@link CsvIngestor}; lines that cannot
+     * be parsed are reported and skipped.
      *
      * @param fileName Path to the CSV file
      */
     public void loadBooks(String fileName) {
-        try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length == 3) {
-                    try {
-                        String title = parts[0].trim();
-                        String author = parts[1].trim();
-                        int year = Integer.parseInt(parts[2].trim());
-                        books.add(new Book(title, author, year));
-                    } catch (NumberFormatException e) {
-                        System.err.println("Error parsing year in line: " + line);
-                    }
-                }
+        long start = Metrics.start();
+        try {
+            CsvIngestor.Result result = new CsvIngestor().ingest(Path.of(fileName));
+            List<String> errors = result.getErrors();
+            for (int i = 0; i < Math.min(errors.size(), MAX_REPORTED_ERRORS); i++) {
+                System.err.println("Error parsing " + errors.get(i));
+            }
+            if (errors.size() > MAX_REPORTED_ERRORS) {
+                System.err.println("... and " + (errors.size() - MAX_REPORTED_ERRORS) + " more errors");
             }
-            System.out.println("Successfully loaded " + books.size() + " books.");
+            write(() -> {
+                boolean changed = false;
+                for (Book book : result.getBooks()) {
+                    changed |= addLocked(book);
+                }
+                return changed;
+            });
+            LOAD_BOOKS.record(start, result.getBooks().size());
+            System.out.println("Successfully loaded " + booksById.size() + " books.");
+            System.out.println(result);
+            System.out.printf("Year index: %.1f KiB%n", getYearIndexMemoryBytes() / 1024.0);
         } catch (IOException e) {
             System.err.println("Error reading file: " + e.getMessage());
         }
@@ -44,91 +189,482 @@ public class Library {
      * Displays all books in the collection.
      */
     public void viewAllBooks() {
+        if (booksById.isEmpty()) {
+            System.out.println("No books in the library.");
+            return;
+        }
+        CatalogWriter out = new CatalogWriter(System.out);
+        out.header();
+        int number = 1;
+        for (Book book : this) {
+            out.row(number++, book);
+        }
+        out.footer();
+        out.flush();
+    }
+
+    /**
+     * Displays the given books as a numbered catalog, for example a sorted
+     * view returned by {@link #getSortedBooks(SortUtil.Key)}.
+     *
+     * @param books The books to display
+     */
+    public void viewBooks(List<Book> books) {
         if (books.isEmpty()) {
             System.out.println("No books in the library.");
             return;
         }
 
-        System.out.println("\n===== LIBRARY CATALOG =====");
+        CatalogWriter out = new CatalogWriter(System.out);
+        out.header();
         for (int i = 0; i < books.size(); i++) {
-            System.out.println((i + 1) + ". " + books.get(i));
+            out.row(i + 1, books.get(i));
         }
-        System.out.println("==========================");
+        out.footer();
+        out.flush();
     }
 
     /**
      * Searches for books by keyword in title, author, or publication year.
+     * Keywords of three or more characters are answered from the trigram
+     * index; shorter ones by the {@link KeywordScanner}'s scan of
+     * case-folded byte copies of the fields.
      *
      * @param keyword The search term
-     * @return List of books matching the keyword
+     * @return Immutable list of books matching the keyword, in the order
+     *         they were added
      */
     public List<Book> searchBooksByKeyword(String keyword) {
         if (keyword == null || keyword.isEmpty()) {
-            return new ArrayList<>();
+            return List.of();
         }
 
+        long start = Metrics.start();
         String lowerKeyword = keyword.toLowerCase();
-        return books.stream()
+        @SuppressWarnings("unchecked")
+        List<Book> result = (List<Book>) cached("keyword:" + lowerKeyword, () -> search(lowerKeyword));
+        SEARCH_KEYWORD.record(start, result.size());
+        return result;
+    }
+
+    private List<Book> search(String lowerKeyword) {
+        List<Book> indexed = read(() -> keywordIndex.search(lowerKeyword));
+        if (indexed != null) {
+            return Collections.unmodifiableList(indexed);
+        }
+        List<Book> scanned = read(() -> keywordScanner.search(lowerKeyword));
+        if (scanned != null) {
+            return Collections.unmodifiableList(scanned);
+        }
+        return getBooks().stream()
                 .filter(book -> book.getTitle().toLowerCase().contains(lowerKeyword) ||
                         book.getAuthor().toLowerCase().contains(lowerKeyword) ||
                         String.valueOf(book.getPublicationYear()).contains(lowerKeyword))
-                .collect(Collectors.toList());
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * Finds the books published in a range of years, using the sorted year
+     * index rather than a scan.
+     *
+     * @param from First year, inclusive
+     * @param to Last year, inclusive
+     * @return The matching books ordered by year, and by catalog order within
+     *         a year; empty if {@code from > to}
+     */
+    public List<Book> findByYearRange(int from, int to) {
+        long start = Metrics.start();
+        List<Book> result = read(() -> yearIndex.range(from, to));
+        FIND_BY_YEAR_RANGE.record(start, result.size());
+        return result;
+    }
+
+    /**
+     * Estimates the heap taken by the year index, not counting the books.
+     *
+     * @return The estimated footprint in bytes
+     */
+    public long getYearIndexMemoryBytes() {
+        return read(yearIndex::memoryBytes);
     }
 
     /**
      * Searches for a single book by exact keyword in title or author.
      *
      * @param keyword The search term
-     * @return The first book matching the keyword, or null if not found
+     * @return The earliest added book matching the keyword, or null if not found
      */
     public Book searchBookByKeyword(String keyword) {
-        return books.stream()
-                .filter(book -> book.getTitle().equalsIgnoreCase(keyword) ||
-                        book.getAuthor().equalsIgnoreCase(keyword))
-                .findFirst()
-                .orElse(null);
+        if (keyword == null) {
+            return null;
+        }
+        long start = Metrics.start();
+        Book found = (Book) cached("exact:" + keyword, () -> read(() -> exactIndex.first(keyword)));
+        SEARCH_EXACT.record(start, found == null ? 0 : 1);
+        return found;
+    }
+
+    /**
+     * Finds the books whose title and author words come closest to a query,
+     * tolerating typos: "Orwel" finds George Orwell and "great gatsbi" finds
+     * The Great Gatsby. Every word of the query must be within one edit of a
+     * word of the book if it has three or four characters, within two if it
+     * is longer, and equal if it is shorter; swapping two adjacent letters
+     * counts as one edit. See {@link FuzzyIndex}.
+     *
+     * @param query The search terms, in any case
+     * @param k How many books to return at most
+     * @return Immutable list of the matching books, fewest edits first and in
+     *         the order they were added among equals
+     */
+    public List<Book> searchBooksFuzzy(String query, int k) {
+        if (query == null || k <= 0) {
+            return List.of();
+        }
+        long start = Metrics.start();
+        @SuppressWarnings("unchecked")
+        List<Book> result = (List<Book>) cached("fuzzy:" + k + ":" + query.toLowerCase(),
+                () -> List.copyOf(read(() -> fuzzyIndex.search(query, k))));
+        SEARCH_FUZZY.record(start, result.size());
+        return result;
+    }
+
+    /**
+     * Runs a compound query. The planner estimates from the indexes how many
+     * books each condition lets through and picks the cheapest way in: an
+     * exact title or author bucket, the trigram index, the year index, the
+     * sorted view of the ordering field, or a scan. The books are then
+     * filtered, ordered and limited in a single pass that stops early when
+     * the way in already yields them in order.
+     *
+     * @param query The query
+     * @return Immutable list of the matching books, in the query's order and
+     *         in catalog order among equals
+     */
+    public List<Book> query(Query query) {
+        long start = Metrics.start();
+        @SuppressWarnings("unchecked")
+        List<Book> result = (List<Book>) cached("query:" + query, () -> List.copyOf(run(plan(query))));
+        QUERY.record(start, result.size());
+        return result;
+    }
+
+    /**
+     * Describes how {@link #query} would run a query right now: the chosen
+     * plan with its estimated matches and cost, and the other ways in that
+     * were considered.
+     *
+     * @param query The query
+     * @return The description, one step per line
+     */
+    public String explain(Query query) {
+        return plan(query).explain();
+    }
+
+    private QueryPlan plan(Query query) {
+        QueryPlan.Statistics statistics = new QueryPlan.Statistics() {
+            @Override
+            public int size() { return booksById.size(); }
+
+            @Override
+            public int titleCount(String title) { return exactIndex.titleCount(title); }
+
+            @Override
+            public int authorCount(String author) { return exactIndex.authorCount(author); }
+
+            @Override
+            public int keywordEstimate(String lowerText) { return keywordIndex.estimate(lowerText); }
+
+            @Override
+            public int yearCount(int from, int to) { return yearIndex.count(from, to); }
+
+            @Override
+            public boolean isSortedViewReady(SortUtil.Key key) {
+                Snapshot current = snapshot;
+                return current != null && current.version == version && current.sorted[key.ordinal()] != null;
+            }
+        };
+        return read(() -> QueryPlan.choose(query, statistics));
+    }
+
+    private List<Book> run(QueryPlan plan) {
+        Query.Condition condition = plan.getIndexCondition();
+        return switch (plan.getAccess()) {
+            case SCAN -> plan.run(QueryPlan.Source.of(getBooks().iterator()));
+            case SORTED_VIEW -> {
+                List<Book> sorted = getSortedBooks(plan.getQuery().getOrderBy());
+                yield plan.run(QueryPlan.Source.of(sorted.iterator()));
+            }
+            case TITLE_INDEX -> read(() -> plan.run(QueryPlan.Source.of(exactIndex.withTitle(condition.getText()))));
+            case AUTHOR_INDEX -> read(() -> plan.run(QueryPlan.Source.of(exactIndex.byAuthor(condition.getText()))));
+            case KEYWORD_INDEX -> read(() -> {
+                Iterator<Book> matches = keywordIndex.matches(condition.getLowerText());
+                return plan.run(QueryPlan.Source.of(matches));
+            });
+            case YEAR_INDEX -> read(() -> {
+                YearIndex.Cursor cursor = yearIndex.cursor(condition.getFrom(), condition.getTo());
+                return plan.run(new QueryPlan.Source() {
+                    @Override
+                    public boolean advance() { return cursor.advance(); }
+
+                    @Override
+                    public Book book() { return cursor.book(); }
+
+                    @Override
+                    public long catalogRank() { return cursor.sequence(); }
+                });
+            });
+        };
+    }
+
+    /**
+     * Sets how many books' worth of search results to cache; each cached
+     * search weighs the number of books it returned, plus one. Cached
+     * results and counters are discarded.
+     *
+     * @param maxWeight The limit, or 0 to turn caching off
+     */
+    public void setSearchCacheCapacity(int maxWeight) {
+        searchCache = maxWeight > 0 ? newSearchCache(maxWeight) : null;
+    }
+
+    /**
+     * @return Hit, miss and eviction counts of the search cache, or null if
+     *         caching is off
+     */
+    public ResultCache.Stats getSearchCacheStats() {
+        ResultCache<Object> cache = searchCache;
+        return cache == null ? null : cache.getStats();
+    }
+
+    /**
+     * Returns a counter that goes up with every change to the catalog, so
+     * two equal readings mean nothing changed in between.
+     *
+     * @return The current version
+     */
+    public long getVersion() {
+        return version;
     }
 
     /**
      * Adds a new book to the library.
      *
      * @param book The book to add
-     * @return true if added successfully
+     * @return true if added successfully, false if it is null or its ID is
+     *         already in the library
      */
     public boolean addBook(Book book) {
-        if (book == null) {
-            return false;
-        }
-        return books.add(book);
+        long start = Metrics.start();
+        boolean added = book != null && write(() -> addLocked(book));
+        ADD_BOOK.record(start, added ? 1 : 0);
+        return added;
     }
 
     /**
-     * Updates an existing book.
+     * Updates an existing book. The stored book is replaced by a new instance
+     * carrying the updated values; references to the old instance keep their
+     * old values.
      *
      * @param id          The ID of the book to update
      * @param updatedBook The updated book information
      * @return true if updated successfully
      */
     public boolean updateBook(String id, Book updatedBook) {
-        for (int i = 0; i < books.size(); i++) {
-            if (books.get(i).getId().equals(id)) {
-                books.get(i).setTitle(updatedBook.getTitle());
-                books.get(i).setAuthor(updatedBook.getAuthor());
-                books.get(i).setPublicationYear(updatedBook.getPublicationYear());
-                return true;
+        long start = Metrics.start();
+        boolean changed = id != null && write(() -> {
+            Object key = key(id);
+            Slot slot = booksById.get(key);
+            if (slot == null) {
+                return false;
             }
-        }
-        return false;
+            Book book = store(new Book(id, updatedBook.getTitle(), updatedBook.getAuthor(),
+                    updatedBook.getPublicationYear()));
+            replaceLocked(key, slot, book, true);
+            version++;
+            for (LibraryListener listener : listeners) {
+                listener.bookUpdated(book);
+            }
+            return true;
+        });
+        UPDATE_BOOK.record(start, changed ? 1 : 0);
+        return changed;
     }
 
     /**
-     * Deletes a book by ID.
+     * Deletes a book by ID. The book is dropped from the indexes immediately
+     * and leaves an empty slot in the catalog order; the slots are compacted
+     * in one pass once half of them are empty, so a run of deletes costs a
+     * single scan rather than one per delete.
      *
      * @param id The ID of the book to delete
      * @return true if deleted successfully
      */
     public boolean deleteBook(String id) {
-        return books.removeIf(book -> book.getId().equals(id));
+        long start = Metrics.start();
+        boolean changed = id != null && write(() -> {
+            Slot slot = booksById.remove(key(id));
+            if (slot == null) {
+                return false;
+            }
+            clearSlotLocked(slot, true);
+            if (deletedSlots > books.size() / 2) {
+                compactSlots();
+            }
+            version++;
+            for (LibraryListener listener : listeners) {
+                listener.bookDeleted(slot.book);
+            }
+            return true;
+        });
+        DELETE_BOOK.record(start, changed ? 1 : 0);
+        return changed;
+    }
+
+    /**
+     * Adds books in one batch. Books that are null or whose ID is already in
+     * the library, or earlier in the batch, are skipped.
+     *
+     * @param books The books to add
+     * @return How many books were added
+     */
+    public int addAll(Collection<? extends Book> books) {
+        if (books == null || books.isEmpty()) {
+            return 0;
+        }
+        long start = Metrics.start();
+        int[] added = new int[1];
+        write(() -> {
+            for (Book given : books) {
+                if (given != null && !booksById.containsKey(key(given.getId()))) {
+                    Book book = store(given);
+                    indexLocked(book, appendSlot(book));
+                    added[0]++;
+                    for (LibraryListener listener : listeners) {
+                        listener.bookAdded(book);
+                    }
+                }
+            }
+            return bumpVersion(added[0]);
+        });
+        ADD_ALL.record(start, added[0]);
+        logBatch("add", books.size(), added[0]);
+        return added[0];
+    }
+
+    /**
+     * Updates books in one batch, like {@link #updateBook} for each entry.
+     * IDs that are not in the library are skipped.
+     *
+     * @param updates The updated book information by ID
+     * @return How many books were updated
+     */
+    public int updateAll(Map<String, ? extends Book> updates) {
+        if (updates == null || updates.isEmpty()) {
+            return 0;
+        }
+        long start = Metrics.start();
+        int[] updated = new int[1];
+        write(() -> {
+            boolean rebuild = updates.size() >= booksById.size() / REBUILD_DIVISOR;
+            for (Map.Entry<String, ? extends Book> update : updates.entrySet()) {
+                String id = update.getKey();
+                Object key = id == null ? null : key(id);
+                Slot slot = key == null ? null : booksById.get(key);
+                if (slot == null) {
+                    continue;
+                }
+                Book values = update.getValue();
+                Book book = store(new Book(id, values.getTitle(), values.getAuthor(), values.getPublicationYear()));
+                replaceLocked(key, slot, book, !rebuild);
+                updated[0]++;
+                for (LibraryListener listener : listeners) {
+                    listener.bookUpdated(book);
+                }
+            }
+            if (rebuild && updated[0] > 0) {
+                rebuildIndexesLocked();
+            }
+            return bumpVersion(updated[0]);
+        });
+        UPDATE_ALL.record(start, updated[0]);
+        logBatch("update", updates.size(), updated[0]);
+        return updated[0];
+    }
+
+    /**
+     * Deletes books by ID in one batch. IDs that are not in the library are
+     * skipped.
+     *
+     * @param ids The IDs of the books to delete
+     * @return How many books were deleted
+     */
+    public int deleteAll(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return 0;
+        }
+        long start = Metrics.start();
+        int[] deleted = new int[1];
+        write(() -> {
+            boolean rebuild = ids.size() >= booksById.size() / REBUILD_DIVISOR;
+            for (String id : ids) {
+                Slot slot = id == null ? null : booksById.remove(key(id));
+                if (slot != null) {
+                    clearSlotLocked(slot, !rebuild);
+                    deleted[0]++;
+                    for (LibraryListener listener : listeners) {
+                        listener.bookDeleted(slot.book);
+                    }
+                }
+            }
+            return finishDeletes(deleted[0], rebuild);
+        });
+        DELETE_ALL.record(start, deleted[0]);
+        logBatch("delete", ids.size(), deleted[0]);
+        return deleted[0];
+    }
+
+    /**
+     * Deletes every book matching a condition, in one pass over the catalog
+     * under the write lock. The condition must not call back into the
+     * library.
+     *
+     * @param condition Selects the books to delete
+     * @return How many books were deleted
+     */
+    public int deleteWhere(Predicate<? super Book> condition) {
+        long start = Metrics.start();
+        int[] deleted = new int[1];
+        write(() -> {
+            List<Slot> matching = new ArrayList<>();
+            for (Book book : books) {
+                if (book != null && condition.test(book)) {
+                    matching.add(booksById.get(key(book)));
+                }
+            }
+            boolean rebuild = matching.size() >= booksById.size() / REBUILD_DIVISOR;
+            for (Slot slot : matching) {
+                booksById.remove(key(slot.book));
+                clearSlotLocked(slot, !rebuild);
+                for (LibraryListener listener : listeners) {
+                    listener.bookDeleted(slot.book);
+                }
+            }
+            deleted[0] = matching.size();
+            return finishDeletes(deleted[0], rebuild);
+        });
+        DELETE_WHERE.record(start, deleted[0]);
+        logBatch("delete where", deleted[0], deleted[0]);
+        return deleted[0];
+    }
+
+    /**
+     * Sets the logger that batch operations record one entry each in.
+     *
+     * @param logger The logger, or null to stop logging batches
+     */
+    public void setInteractionLogger(UserInteractionLogger logger) {
+        interactionLogger = logger;
     }
 
     /**
@@ -138,6 +674,7 @@ public class Library {
      * @return The book at the specified index, or null if index is invalid
      */
     public Book getBookByIndex(int index) {
+        List<Book> books = getBooks();
         if (index < 0 || index >= books.size()) {
             return null;
         }
@@ -151,17 +688,654 @@ public class Library {
      * @return Optional containing the book if found
      */
     public Optional<Book> getBookById(String id) {
-        return books.stream()
-                .filter(book -> book.getId().equals(id))
-                .findFirst();
+        long start = Metrics.start();
+        Slot slot = id == null ? null : booksById.get(key(id));
+        GET_BOOK_BY_ID.record(start, slot == null ? 0 : 1);
+        return slot == null ? Optional.empty() : Optional.of(slot.book);
+    }
+
+    /**
+     * Returns up to {@code pageSize} books in catalog order, starting after
+     * the position a cursor from an earlier page refers to. Cursors stay
+     * valid while the library changes: books added later show up on later
+     * pages, deleted books are skipped, and no book is returned twice.
+     *
+     * @param cursor The previous page's {@link Page#getNextCursor()}, or null
+     *        to start from the beginning
+     * @param pageSize The maximum number of books to return
+     * @return The page
+     * @throws IllegalArgumentException if the cursor is malformed or the page
+     *         size is not positive
+     */
+    public Page getPage(String cursor, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        long start = Metrics.start();
+        long after = cursor == null ? -1 : parseCursor(cursor);
+        Page result = read(() -> {
+            int size = books.size();
+            int slot = firstSlotAfter(after, size);
+            List<Book> page = new ArrayList<>(Math.min(pageSize, size - slot));
+            long last = after;
+            for (; slot < size && page.size() < pageSize; slot++) {
+                Book book = books.get(slot);
+                if (book != null) {
+                    page.add(book);
+                    last = slotSequences[slot];
+                }
+            }
+            while (slot < size && books.get(slot) == null) {
+                slot++;
+            }
+            return new Page(page, slot < size ? Long.toString(last, Character.MAX_RADIX) : null);
+        });
+        GET_PAGE.record(start, result.getBooks().size());
+        return result;
+    }
+
+    /**
+     * Iterates over the books in catalog order, fetching them a page at a
+     * time. The iterator does not fail when the library changes meanwhile;
+     * it sees the changes that land after its current position.
+     */
+    @Override
+    public Iterator<Book> iterator() {
+        return new Iterator<>() {
+            private Iterator<Book> page = Collections.emptyIterator();
+            private String cursor;
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && !exhausted) {
+                    Page next = getPage(cursor, ITERATOR_PAGE_SIZE);
+                    page = next.getBooks().iterator();
+                    cursor = next.getNextCursor();
+                    exhausted = cursor == null;
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public Book next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+    }
+
+    /**
+     * @return A sequential stream over the books in catalog order, backed by
+     *         {@link #iterator()}
+     */
+    public Stream<Book> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns the books sorted by one of the standard keys. The library's
+     * own order is left alone; the sorted list is computed once per change
+     * and shared by every caller until the next one.
+     *
+     * @param key The sort key
+     * @return An immutable sorted list
+     */
+    public List<Book> getSortedBooks(SortUtil.Key key) {
+        long start = Metrics.start();
+        Snapshot current = currentSnapshot();
+        List<Book> sorted = current.sorted[key.ordinal()];
+        if (sorted == null) {
+            List<Book> copy = new ArrayList<>(current.books);
+            SortUtil.sort(copy, key);
+            sorted = Collections.unmodifiableList(copy);
+            current.sorted[key.ordinal()] = sorted;
+        }
+        SORTED_BOOKS.record(start, sorted.size());
+        return sorted;
+    }
+
+    /**
+     * Returns the books sorted by a comparator, leaving the library's own
+     * order alone.
+     *
+     * @param comparator The ordering
+     * @return An immutable sorted list
+     */
+    public List<Book> getSortedBooks(Comparator<Book> comparator) {
+        List<Book> copy = new ArrayList<>(getBooks());
+        SortUtil.sort(copy, comparator);
+        return Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Returns the first {@code k} books in comparator order, such as the 50
+     * first authors alphabetically, without sorting the whole catalog or
+     * changing its order. Ties keep their catalog order.
+     *
+     * @param comparator The ordering
+     * @param k How many books to return
+     * @return At most {@code k} books, in comparator order
+     */
+    public List<Book> topK(Comparator<Book> comparator, int k) {
+        return topK(comparator, k, false);
+    }
+
+    /**
+     * Like {@link #topK(Comparator, int)}, optionally searching segments of
+     * the catalog in parallel on the common fork/join pool.
+     *
+     * @param comparator The ordering
+     * @param k How many books to return
+     * @param parallel Whether to evaluate in parallel
+     * @return At most {@code k} books, in comparator order
+     */
+    public List<Book> topK(Comparator<Book> comparator, int k, boolean parallel) {
+        return SortUtil.topK(getBooks(), comparator, k, parallel);
+    }
+
+    /**
+     * Returns the {@code k} newest or oldest books, comparing primitive years
+     * directly. Books from the same year keep their catalog order.
+     *
+     * @param k How many books to return
+     * @param newestFirst true for the newest books, false for the oldest
+     * @return At most {@code k} books, ordered by year
+     */
+    public List<Book> topKByYear(int k, boolean newestFirst) {
+        return topKByYear(k, newestFirst, false);
+    }
+
+    /**
+     * Like {@link #topKByYear(int, boolean)}, optionally searching segments
+     * of the catalog in parallel.
+     *
+     * @param k How many books to return
+     * @param newestFirst true for the newest books, false for the oldest
+     * @param parallel Whether to evaluate in parallel
+     * @return At most {@code k} books, ordered by year
+     */
+    public List<Book> topKByYear(int k, boolean newestFirst, boolean parallel) {
+        return SortUtil.topKByYear(getBooks(), k, newestFirst, parallel);
+    }
+
+    /**
+     * Registers a listener to be told about every add, update and delete.
+     *
+     * @param listener The listener to add
+     */
+    public void addListener(LibraryListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeListener(LibraryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the library's change feed, creating and registering it on
+     * first use; it numbers and reports the changes made from then on.
+     *
+     * @return The feed
+     */
+    public ChangeFeed getChangeFeed() {
+        ChangeFeed feed = changeFeed;
+        if (feed == null) {
+            synchronized (listeners) {
+                feed = changeFeed;
+                if (feed == null) {
+                    feed = new ChangeFeed();
+                    addListener(feed);
+                    changeFeed = feed;
+                }
+            }
+        }
+        return feed;
+    }
+
+    /**
+     * Runs an action while no mutation can take place and returns the books
+     * as they were at that moment. A journal uses this to cut over to a new
+     * file at exactly the state it is about to write to a snapshot. The
+     * action must not call back into the library.
+     *
+     * @param action The action to run while mutations are held off
+     * @return An immutable list of the books in catalog order
+     */
+    public List<Book> checkpoint(Runnable action) {
+        long stamp = lock.writeLock();
+        try {
+            action.run();
+            Snapshot current = snapshot;
+            return current != null && current.version == version ? current.books : copyBooks();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return The number of books in the library
+     */
+    public int size() {
+        return booksById.size();
     }
 
     // Getters and setters
+    /**
+     * Returns the books in catalog order as an immutable snapshot. The list
+     * does not change when the library does; call again to see later
+     * changes. Use {@link #getSortedBooks} for another order.
+     */
     public List<Book> getBooks() {
-        return books;
+        return currentSnapshot().books;
     }
 
+    /**
+     * Replaces the collection and rebuilds every index. If several books
+     * share an ID, only the first one is kept. Listeners are not notified;
+     * this is meant for restoring a saved state.
+     */
     public void setBooks(List<Book> books) {
-        this.books = books;
+        long start = Metrics.start();
+        long stamp = lock.writeLock();
+        try {
+            this.books.clear();
+            slotSequences = new long[Math.max(16, books.size())];
+            booksById.clear();
+            exactIndex.clear();
+            keywordIndex.clear();
+            fuzzyIndex.clear();
+            yearIndex.clear();
+            keywordScanner.clear();
+            deletedSlots = 0;
+            for (Book given : books) {
+                if (!booksById.containsKey(key(given.getId()))) {
+                    Book book = store(given);
+                    indexLocked(book, appendSlot(book));
+                }
+            }
+            version++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        SET_BOOKS.record(start, books.size());
+    }
+
+    // Caller holds the write lock
+    private boolean addLocked(Book given) {
+        if (booksById.containsKey(key(given.getId()))) {
+            return false;
+        }
+        Book book = store(given);
+        indexLocked(book, appendSlot(book));
+        version++;
+        for (LibraryListener listener : listeners) {
+            listener.bookAdded(book);
+        }
+        return true;
+    }
+
+    // Caller holds the write lock
+    private void indexLocked(Book book, long sequence) {
+        exactIndex.add(book);
+        keywordIndex.add(book);
+        fuzzyIndex.add(book);
+        yearIndex.add(book, sequence);
+        keywordScanner.add(book, sequence);
+    }
+
+    // Caller holds the write lock; the indexes are left alone if reindex is false
+    private void replaceLocked(Object key, Slot slot, Book book, boolean reindex) {
+        booksById.put(key, new Slot(book, slot.position));
+        books.set(slot.position, book);
+        if (reindex) {
+            exactIndex.update(book);
+            keywordIndex.update(book);
+            fuzzyIndex.update(book);
+            yearIndex.update(slot.book, book, slotSequences[slot.position]);
+            keywordScanner.update(book);
+        }
+    }
+
+    // Caller holds the write lock and has removed the slot from booksById
+    private void clearSlotLocked(Slot slot, boolean unindex) {
+        books.set(slot.position, null);
+        deletedSlots++;
+        if (unindex) {
+            exactIndex.remove(slot.book);
+            keywordIndex.remove(slot.book);
+            fuzzyIndex.remove(slot.book);
+            yearIndex.remove(slot.book, slotSequences[slot.position]);
+            keywordScanner.remove(slot.book);
+        }
+    }
+
+    // Caller holds the write lock
+    private boolean finishDeletes(int deleted, boolean rebuild) {
+        if (deleted > 0 && deletedSlots > books.size() / 2) {
+            compactSlots();
+        }
+        if (rebuild && deleted > 0) {
+            rebuildIndexesLocked();
+        }
+        return bumpVersion(deleted);
+    }
+
+    // Caller holds the write lock
+    private boolean bumpVersion(int changes) {
+        if (changes == 0) {
+            return false;
+        }
+        version++;
+        return true;
+    }
+
+    /**
+     * Indexes the books in the slots from scratch, which is cheaper than
+     * maintaining the indexes through a batch touching a large part of the
+     * catalog. Caller holds the write lock.
+     */
+    private void rebuildIndexesLocked() {
+        exactIndex.clear();
+        keywordIndex.clear();
+        fuzzyIndex.clear();
+        yearIndex.clear();
+        keywordScanner.clear();
+        for (int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            if (book != null) {
+                indexLocked(book, slotSequences[i]);
+            }
+        }
+    }
+
+    private void logBatch(String action, int requested, int applied) {
+        UserInteractionLogger logger = interactionLogger;
+        if (logger != null) {
+            logger.logBatch(action, requested, applied);
+        }
+    }
+
+    // Caller holds the write lock; returns the new slot's sequence number
+    private long appendSlot(Book book) {
+        int position = books.size();
+        if (position == slotSequences.length) {
+            slotSequences = Arrays.copyOf(slotSequences, position * 2);
+        }
+        long sequence = nextSequence++;
+        slotSequences[position] = sequence;
+        booksById.put(key(book), new Slot(book, position));
+        books.add(book);
+        return sequence;
+    }
+
+    // Caller holds the write lock
+    private void compactSlots() {
+        int live = 0;
+        for (int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            if (book != null) {
+                books.set(live, book);
+                slotSequences[live] = slotSequences[i];
+                booksById.get(key(book)).position = live;
+                live++;
+            }
+        }
+        books.subList(live, books.size()).clear();
+        deletedSlots = 0;
+    }
+
+    /**
+     * Returns the instance to store for a book: a compact copy in compact
+     * storage, when the book's ID allows it, and the book itself otherwise,
+     * frozen either way.
+     */
+    private Book store(Book book) {
+        Book stored = book;
+        if (authors != null) {
+            CompactBook compact = CompactBook.of(book, authors);
+            if (compact != null) {
+                stored = compact;
+            }
+        }
+        // The indexes are built from the fields, so they must not change
+        stored.freeze();
+        return stored;
+    }
+
+    /**
+     * Returns what {@link #booksById} files an ID under: the ID itself, or in
+     * compact storage its two longs when it is a UUID, matching
+     * {@link #key(Book)} for the stored book.
+     */
+    private Object key(String id) {
+        if (authors != null) {
+            UUID uuid = CompactBook.parseId(id);
+            if (uuid != null) {
+                return new IdKey(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            }
+        }
+        return id;
+    }
+
+    private static Object key(Book book) {
+        if (book instanceof CompactBook compact) {
+            return new IdKey(compact.getIdHigh(), compact.getIdLow());
+        }
+        return book.getId();
+    }
+
+    /**
+     * Copies the live books. May run as an optimistic read, in which case a
+     * concurrent write can make it fail or return garbage that the caller
+     * then discards.
+     */
+    private List<Book> copyBooks() {
+        int size = books.size();
+        Book[] copy = new Book[size - deletedSlots];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            Book book = books.get(i);
+            if (book != null) {
+                copy[count++] = book;
+            }
+        }
+        if (count != copy.length) {
+            throw new IllegalStateException("Catalog changed while being copied");
+        }
+        return Collections.unmodifiableList(Arrays.asList(copy));
+    }
+
+    /**
+     * Binary-searches the slot sequences for the first slot after a cursor.
+     * May run as an optimistic read.
+     */
+    private int firstSlotAfter(long after, int size) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (slotSequences[mid] <= after) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static long parseCursor(String cursor) {
+        try {
+            long sequence = Long.parseLong(cursor, Character.MAX_RADIX);
+            if (sequence >= 0) {
+                return sequence;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+
+    private Object cached(String key, Supplier<Object> search) {
+        ResultCache<Object> cache = searchCache;
+        return cache == null ? search.get() : cache.get(key, version, search);
+    }
+
+    private static ResultCache<Object> newSearchCache(int maxWeight) {
+        return new ResultCache<>(maxWeight, result -> result instanceof List<?> books ? books.size() + 1 : 1);
+    }
+
+    private Snapshot currentSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null || current.version != version) {
+            current = read(() -> new Snapshot(version, copyBooks()));
+            snapshot = current;
+        }
+        return current;
+    }
+
+    /**
+     * Runs a read-only action against the guarded state. The action is first
+     * tried optimistically without taking the lock; if a write overlaps it,
+     * its result (or exception) is discarded and it is retried, under the
+     * read lock once the optimistic attempts are used up.
+     */
+    private <T> T read(Supplier<T> reader) {
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Applies a mutation under the write lock, then tells the listeners the
+     * lock has been released.
+     */
+    private boolean write(BooleanSupplier mutation) {
+        boolean changed;
+        long stamp = lock.writeLock();
+        try {
+            changed = mutation.getAsBoolean();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (changed) {
+            for (LibraryListener listener : listeners) {
+                listener.mutationsApplied();
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * How a library stores its books.
+     */
+    public enum Storage {
+        /** Books are stored as given */
+        STANDARD,
+        /** Books are stored as {@link CompactBook}s with dictionary-encoded authors */
+        COMPACT
+    }
+
+    /**
+     * A UUID book ID as a map key, in compact storage.
+     */
+    private static final class IdKey {
+        private final long high;
+        private final long low;
+
+        private IdKey(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof IdKey key && key.high == high && key.low == low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high * 31 + low);
+        }
+    }
+
+    /**
+     * One page of the catalog, as returned by {@link #getPage}.
+     */
+    public static final class Page {
+        private final List<Book> books;
+        private final String nextCursor;
+
+        private Page(List<Book> books, String nextCursor) {
+            this.books = Collections.unmodifiableList(books);
+            this.nextCursor = nextCursor;
+        }
+
+        /** @return The books on this page, in catalog order */
+        public List<Book> getBooks() { return books; }
+
+        /** @return The cursor for the following page, or null if this is the last one */
+        public String getNextCursor() { return nextCursor; }
+
+        /** @return true if there is a following page */
+        public boolean hasNext() { return nextCursor != null; }
+    }
+
+    /**
+     * Where a book sits in the catalog order. The book is final so lock-free
+     * lookups see it fully constructed; the position is only used under the
+     * write lock.
+     */
+    private static final class Slot {
+        private final Book book;
+        private int position;
+
+        private Slot(Book book, int position) {
+            this.book = book;
+            this.position = position;
+        }
+    }
+
+    /**
+     * The catalog as of one version, plus the sorted views computed from it
+     * so far.
+     */
+    private static final class Snapshot {
+        private final long version;
+        private final List<Book> books;
+        @SuppressWarnings("unchecked")
+        private final List<Book>[] sorted = (List<Book>[]) new List<?>[SortUtil.Key.values().length];
+
+        private Snapshot(long version, List<Book> books) {
+            this.version = version;
+            this.books = books;
+        }
     }
-}
\ No newline at end of file
+}
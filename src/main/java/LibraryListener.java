@@ -0,0 +1,41 @@
+/**
+ * Receives notifications after a {@link Library} has changed. Callbacks run
+ * on the thread that made the change, once the library's own state and
+ * indexes are up to date.
+ *
+ * <p>The per-book callbacks run while the library still holds its write
+ * lock, so they are delivered in the order the changes were applied. They
+ * should be quick and must not call back into the library. Anything slow,
+ * such as waiting for a write to reach the disk, belongs in
+ * {@link #mutationsApplied}, which runs after the lock is released.
+ */
+public interface LibraryListener {
+    /**
+     * Called after a book has been added.
+     *
+     * @param book The added book
+     */
+    void bookAdded(Book book);
+
+    /**
+     * Called after a book's title, author or year has been updated.
+     *
+     * @param book The book, carrying its new values
+     */
+    void bookUpdated(Book book);
+
+    /**
+     * Called after a book has been deleted.
+     *
+     * @param book The deleted book
+     */
+    void bookDeleted(Book book);
+
+    /**
+     * Called once the library has released its write lock after a call that
+     * changed it, on the same thread that received the per-book callbacks
+     * for that call.
+     */
+    default void mutationsApplied() {
+    }
+}
@@ -1,14 +1,23 @@
-import java.util.Comparator;
+import java.io.IOException;
 import java.util.Scanner;
 import java.util.List;
 
 public class LibraryMenu {
+    private static final int PAGE_SIZE = 50;
+    private static final int FUZZY_RESULTS = 10;
+
     private final Library library;
     private final UserInteractionLogger logger = new UserInteractionLogger();
     private final LibrarySerializer serializer = new LibrarySerializer();
+    private final MutationJournal journal;
 
     public LibraryMenu(Library library) {
+        this(library, null);
+    }
+
+    public LibraryMenu(Library library, MutationJournal journal) {
         this.library = library;
+        this.journal = journal;
     }
 
     public void displayMenu() {
@@ -19,10 +28,10 @@ public class LibraryMenu {
                 int choice = safeReadInt(scanner);
 
                 switch (choice) {
-                    case 1 -> viewAllBooks();
-                    case 2 -> sortBooksByTitle();
-                    case 3 -> sortBooksByAuthor();
-                    case 4 -> sortBooksByYear();
+                    case 1 -> viewAllBooks(scanner);
+                    case 2 -> sortBooksByTitle(scanner);
+                    case 3 -> sortBooksByAuthor(scanner);
+                    case 4 -> sortBooksByYear(scanner);
                     case 5 -> searchBook(scanner);
                     case 6 -> addBook(scanner);
                     case 7 -> updateBook(scanner);
@@ -62,36 +71,93 @@ public class LibraryMenu {
         }
     }
 
-    private void viewAllBooks() {
-        library.viewAllBooks();
+    private void viewAllBooks(Scanner scanner) {
+        scanner.nextLine(); // Consume newline
+        CatalogWriter out = new CatalogWriter(System.out);
+        String cursor = null;
+        int shown = 0;
+        do {
+            Library.Page page = library.getPage(cursor, PAGE_SIZE);
+            if (shown == 0) {
+                if (page.getBooks().isEmpty()) {
+                    System.out.println("No books in the library.");
+                    break;
+                }
+                out.header();
+            }
+            for (Book book : page.getBooks()) {
+                out.row(++shown, book);
+            }
+            cursor = page.getNextCursor();
+            if (cursor == null) {
+                out.footer();
+            }
+            out.flush();
+        } while (cursor != null && wantsMore(scanner));
         logger.logViewAllBooks();
     }
 
-    private void sortBooksByTitle() {
-        SortUtil.bubbleSort(library.getBooks(), Comparator.comparing(Book::getTitle));
-        library.viewAllBooks();
+    private void sortBooksByTitle(Scanner scanner) {
+        showPages(scanner, library.getSortedBooks(SortUtil.Key.TITLE));
         logger.logSort("Title");
     }
 
-    private void sortBooksByAuthor() {
-        SortUtil.insertionSort(library.getBooks(), Comparator.comparing(Book::getAuthor));
-        library.viewAllBooks();
+    private void sortBooksByAuthor(Scanner scanner) {
+        showPages(scanner, library.getSortedBooks(SortUtil.Key.AUTHOR));
         logger.logSort("Author");
     }
 
-    private void sortBooksByYear() {
-        SortUtil.quickSort(library.getBooks(), Comparator.comparing(Book::getPublicationYear),
-                0, library.getBooks().size() - 1);
-        library.viewAllBooks();
+    private void sortBooksByYear(Scanner scanner) {
+        showPages(scanner, library.getSortedBooks(SortUtil.Key.YEAR));
         logger.logSort("Publication Year");
     }
 
+    /**
+     * Prints a list a page at a time, asking before each further page.
+     */
+    private void showPages(Scanner scanner, List<Book> books) {
+        scanner.nextLine(); // Consume newline
+        if (books.isEmpty()) {
+            System.out.println("No books in the library.");
+            return;
+        }
+        CatalogWriter out = new CatalogWriter(System.out);
+        out.header();
+        int shown = 0;
+        do {
+            int end = Math.min(shown + PAGE_SIZE, books.size());
+            while (shown < end) {
+                out.row(shown + 1, books.get(shown));
+                shown++;
+            }
+            if (shown == books.size()) {
+                out.footer();
+            }
+            out.flush();
+        } while (shown < books.size() && wantsMore(scanner));
+    }
+
+    private boolean wantsMore(Scanner scanner) {
+        System.out.print("\033[1;34m-- Press Enter for more, or q to return to the menu: \033[0m");
+        return scanner.hasNextLine() && !scanner.nextLine().trim().equalsIgnoreCase("q");
+    }
+
     private void searchBook(Scanner scanner) {
         scanner.nextLine(); // Consume newline
         System.out.print("Enter search keyword: ");
         String keyword = scanner.nextLine();
         Book found = library.searchBookByKeyword(keyword);
-        System.out.println(found != null ? found : "\033[1;31mBook not found.\033[0m");
+        if (found != null) {
+            System.out.println(found);
+        } else {
+            List<Book> close = library.searchBooksFuzzy(keyword, FUZZY_RESULTS);
+            if (close.isEmpty()) {
+                System.out.println("\033[1;31mBook not found.\033[0m");
+            } else {
+                System.out.println("\033[1;33mNo exact match. Did you mean:\033[0m");
+                close.forEach(System.out::println);
+            }
+        }
         logger.logSearch(keyword);
     }
 
@@ -143,8 +209,24 @@ public class LibraryMenu {
     }
 
     private void exit() {
-        serializer.saveLibrary(library.getBooks(), "src/main/resources/data/library.ser");
-        System.out.println("\033[1;32mSaving data... Goodbye!\033[0m");
+        boolean saved = false;
+        if (journal != null) {
+            try {
+                saved = journal.compact();
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Error closing journal: " + e.getMessage());
+            }
+        } else {
+            saved = serializer.saveLibrary(library.getBooks(), Main.LIBRARY_FILE);
+        }
+        if (saved) {
+            System.out.println("\033[1;32mSaving data... Goodbye!\033[0m");
+        } else if (journal != null) {
+            System.out.println("\033[1;31mCould not save a snapshot; changes are kept in the journal. Goodbye!\033[0m");
+        } else {
+            System.out.println("\033[1;31mCould not save the library; changes are lost. Goodbye!\033[0m");
+        }
         System.exit(0);
     }
 }
\ No newline at end of file
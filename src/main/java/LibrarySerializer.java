@@ -3,8 +3,14 @@ import java.util.List;
 
 /**
  * Handles the serialization and deserialization of library data.
+ * Libraries are saved as binary snapshots (see {@link LibrarySnapshot});
+ * files written with Java serialization by earlier versions can still be
+ * loaded.
  */
 public class LibrarySerializer {
+    private static final Metrics.Operation SAVE = Metrics.operation("LibrarySerializer.saveLibrary");
+    private static final Metrics.Operation LOAD = Metrics.operation("LibrarySerializer.loadLibrary");
+
     /**
      * Saves the library books list to a file.
      *
@@ -13,18 +19,23 @@ public class LibrarySerializer {
      * @return true if saved successfully
      */
     public boolean saveLibrary(List<Book> books, String fileName) {
+        long start = Metrics.start();
+        boolean saved = save(books, fileName);
+        SAVE.record(start, saved ? books.size() : 0);
+        return saved;
+    }
+
+    private boolean save(List<Book> books, String fileName) {
         File file = new File(fileName);
         try {
             // Create parent directories if they don't exist
             if (file.getParentFile() != null && !file.getParentFile().exists()) {
                 file.getParentFile().mkdirs();
             }
-            
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-                oos.writeObject(books);
-                return true;
-            }
-        } catch (IOException e) {
+
+            LibrarySnapshot.write(books, file.toPath());
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
             System.err.println("Error saving library: " + e.getMessage());
             return false;
         }
@@ -37,21 +48,44 @@ public class LibrarySerializer {
      * @return List of books, or null if file doesn't exist or is empty
      */
     public List<Book> loadLibrary(String fileName) {
+        long start = Metrics.start();
+        List<Book> books = load(fileName);
+        LOAD.record(start, books == null ? 0 : books.size());
+        return books;
+    }
+
+    private List<Book> load(String fileName) {
         File file = new File(fileName);
         if (!file.exists() || file.length() == 0) {
             return null;
         }
 
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(fileName))) {
+        try {
+            if (LibrarySnapshot.isSnapshot(file.toPath())) {
+                return LibrarySnapshot.read(file.toPath());
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading library: " + e.getMessage());
+            return null;
+        }
+        return loadLegacyLibrary(file);
+    }
+
+    /**
+     * Loads a library saved with Java serialization.
+     */
+    private List<Book> loadLegacyLibrary(File file) {
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
             @SuppressWarnings("unchecked")
             List<Book> loadedBooks = (List<Book>) ois.readObject();
             return loadedBooks;
         } catch (EOFException e) {
-            System.err.println("File is empty: " + fileName);
+            System.err.println("File is empty: " + file.getPath());
             return null;
         } catch (IOException | ClassNotFoundException e) {
             System.err.println("Error loading library: " + e.getMessage());
             return null;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,369 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * JSON-over-HTTP front end for a {@link Library}, built on the JDK's
+ * {@link HttpServer}.
+ *
+ * <p>Endpoints:
+ * <pre>
+ * GET    /books?sort=title|author|year&amp;offset=0&amp;limit=100   listing, optionally sorted
+ * POST   /books                    add; body {"title","author","year"}
+ * GET    /books/{id}               one book
+ * PUT    /books/{id}               update; body as for add
+ * DELETE /books/{id}               delete
+ * GET    /search?q=keyword         books whose title, author or year contain the keyword
+ * GET    /search/exact?q=keyword   earliest book whose title or author equals the keyword
+ * POST   /batch                    array of {"method","path","body"}; answers an array
+ *                                  of {"status","body"} in the same order
+ * </pre>
+ *
+ * <p>Each request runs on its own virtual thread when the runtime has them
+ * (Java 21 and later) and on a cached pool of platform threads otherwise.
+ * Every response carries a Content-Length and the request body is always
+ * read to the end, so clients can keep connections alive across requests.
+ */
+public class LibraryServer implements Closeable {
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 10_000;
+    private static final int MAX_BATCH = 1_000;
+
+    static {
+        // Small JSON responses otherwise sit out the peer's delayed ACK,
+        // adding ~40 ms to every request on a kept-alive connection
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final Library library;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+
+    /**
+     * Creates a server bound to a port. Call {@link #start} to begin serving.
+     *
+     * @param library The library to serve
+     * @param port The port, or 0 for any free port
+     */
+    public LibraryServer(Library library, int port) throws IOException {
+        this.library = library;
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : newCachedExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Starts serving requests in the background.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @return The port the server is bound to
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return true if requests run on virtual threads
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Stops accepting connections, gives in-flight requests a second to
+     * finish, and shuts the request threads down.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Response response;
+        try (InputStream in = exchange.getRequestBody()) {
+            String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            URI uri = exchange.getRequestURI();
+            response = dispatch(exchange.getRequestMethod(), uri.getRawPath(), uri.getRawQuery(), body);
+        } catch (RuntimeException e) {
+            response = Response.error(500, "Internal error: " + e.getMessage());
+        }
+
+        try {
+            byte[] bytes = response.body == null ? null
+                    : Json.write(response.body).getBytes(StandardCharsets.UTF_8);
+            if (bytes != null) {
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            }
+            exchange.sendResponseHeaders(response.status, bytes == null ? -1 : bytes.length);
+            if (bytes != null) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Routes one request. Used for top-level requests and for each entry of
+     * a batch.
+     */
+    private Response dispatch(String method, String path, String rawQuery, String body) {
+        try {
+            Map<String, String> query = parseQuery(rawQuery);
+            if (path.equals("/books")) {
+                switch (method) {
+                    case "GET":
+                        return listBooks(query);
+                    case "POST":
+                        Book book = bookFrom(body, null);
+                        library.addBook(book);
+                        return new Response(201, book);
+                    default:
+                        return Response.error(405, "Use GET or POST");
+                }
+            }
+            if (path.startsWith("/books/")) {
+                String id = decodePath(path.substring("/books/".length()));
+                switch (method) {
+                    case "GET":
+                        return library.getBookById(id)
+                                .map(book -> new Response(200, book))
+                                .orElseGet(() -> Response.error(404, "No book with ID " + id));
+                    case "PUT":
+                        Book book = bookFrom(body, id);
+                        return library.updateBook(id, book) ? new Response(200, book)
+                                : Response.error(404, "No book with ID " + id);
+                    case "DELETE":
+                        return library.deleteBook(id) ? new Response(204, null)
+                                : Response.error(404, "No book with ID " + id);
+                    default:
+                        return Response.error(405, "Use GET, PUT or DELETE");
+                }
+            }
+            if (path.equals("/search") || path.equals("/search/exact")) {
+                if (!method.equals("GET")) {
+                    return Response.error(405, "Use GET");
+                }
+                String keyword = query.get("q");
+                if (keyword == null) {
+                    return Response.error(400, "Missing parameter q");
+                }
+                if (path.equals("/search")) {
+                    return new Response(200, library.searchBooksByKeyword(keyword));
+                }
+                Book found = library.searchBookByKeyword(keyword);
+                return found != null ? new Response(200, found)
+                        : Response.error(404, "No book titled or written by " + keyword);
+            }
+            if (path.equals("/batch")) {
+                return method.equals("POST") ? batch(body) : Response.error(405, "Use POST");
+            }
+            return Response.error(404, "Unknown path " + path);
+        } catch (IllegalArgumentException e) {
+            return Response.error(400, e.getMessage());
+        }
+    }
+
+    private Response listBooks(Map<String, String> query) {
+        String sort = query.get("sort");
+        List<Book> books;
+        if (sort == null) {
+            books = library.getBooks();
+        } else {
+            try {
+                books = library.getSortedBooks(SortUtil.Key.valueOf(sort.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("sort must be title, author or year");
+            }
+        }
+        int offset = intParameter(query, "offset", 0, 0, Integer.MAX_VALUE);
+        int limit = intParameter(query, "limit", DEFAULT_LIMIT, 0, MAX_LIMIT);
+        int from = Math.min(offset, books.size());
+        int to = (int) Math.min((long) from + limit, books.size());
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("total", books.size());
+        page.put("offset", from);
+        page.put("books", books.subList(from, to));
+        return new Response(200, page);
+    }
+
+    private Response batch(String body) {
+        if (!(Json.parse(body) instanceof List<?> requests)) {
+            throw new IllegalArgumentException("Batch body must be a JSON array");
+        }
+        if (requests.size() > MAX_BATCH) {
+            throw new IllegalArgumentException("A batch holds at most " + MAX_BATCH + " requests");
+        }
+        List<Object> responses = new ArrayList<>(requests.size());
+        for (Object element : requests) {
+            Response response;
+            if (element instanceof Map<?, ?> request && request.get("method") instanceof String method
+                    && request.get("path") instanceof String target) {
+                int question = target.indexOf('?');
+                String path = question < 0 ? target : target.substring(0, question);
+                String query = question < 0 ? null : target.substring(question + 1);
+                Object requestBody = request.get("body");
+                response = path.equals("/batch") ? Response.error(400, "Batches cannot be nested")
+                        : dispatch(method.toUpperCase(Locale.ROOT), path, query,
+                                requestBody == null ? "" : Json.write(requestBody));
+            } else {
+                response = Response.error(400, "Each batch entry needs a method and a path");
+            }
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("status", response.status);
+            entry.put("body", response.body);
+            responses.add(entry);
+        }
+        return new Response(200, responses);
+    }
+
+    private static Book bookFrom(String body, String id) {
+        if (!(Json.parse(body) instanceof Map<?, ?> fields)) {
+            throw new IllegalArgumentException("Body must be a JSON object");
+        }
+        if (!(fields.get("title") instanceof String title) || !(fields.get("author") instanceof String author)) {
+            throw new IllegalArgumentException("title and author must be strings");
+        }
+        if (!(fields.get("year") instanceof Long year) || year != year.intValue()) {
+            throw new IllegalArgumentException("year must be an integer");
+        }
+        return id == null ? new Book(title, author, year.intValue())
+                : new Book(id, title, author, year.intValue());
+    }
+
+    private static int intParameter(Map<String, String> query, String name, int fallback, int min, int max) {
+        String value = query.get(name);
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= min && parsed <= max) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException(name + " must be between " + min + " and " + max);
+    }
+
+    /**
+     * Decodes the percent escapes in a path segment. Unlike
+     * {@link URLDecoder}, leaves {@code +} alone: it only means a space in
+     * a query string.
+     *
+     * @throws IllegalArgumentException if an escape is malformed
+     */
+    static String decodePath(String segment) {
+        if (segment.indexOf('%') < 0) {
+            return segment;
+        }
+        byte[] bytes = segment.getBytes(StandardCharsets.UTF_8);
+        byte[] decoded = new byte[bytes.length];
+        int length = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '%') {
+                decoded[length++] = bytes[i];
+                continue;
+            }
+            int high = i + 2 < bytes.length ? Character.digit(bytes[i + 1], 16) : -1;
+            int low = high >= 0 ? Character.digit(bytes[i + 2], 16) : -1;
+            if (low < 0) {
+                throw new IllegalArgumentException("Malformed escape in path: " + segment);
+            }
+            decoded[length++] = (byte) (high << 4 | low);
+            i += 2;
+        }
+        return new String(decoded, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    /**
+     * Looks up {@code Executors.newVirtualThreadPerTaskExecutor} at run time
+     * so the server still builds and runs on Java 17.
+     *
+     * @return A virtual-thread-per-task executor, or null if unavailable
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newCachedExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "http-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final class Response {
+        private final int status;
+        private final Object body;
+
+        private Response(int status, Object body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        private static Response error(int status, String message) {
+            return new Response(status, Map.of("error", message));
+        }
+    }
+}
@@ -0,0 +1,303 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned binary snapshot format for the library catalog.
+ *
+ * <pre>
+ * header     magic, version, record count, dictionary count,
+ *            dictionary byte length, CRC32 of everything after the header
+ * dictionary per string: byte length, UTF-8 bytes
+ * records    per book: UUID as two longs, title ref, author ref, year, ID ref
+ * </pre>
+ *
+ * Titles and authors are stored once in the dictionary and referenced by
+ * index, so books sharing an author cost four bytes each for it. An ID that
+ * is a canonical UUID is stored in the two longs and its ID ref is
+ * {@code UUID_REF}; any other ID is stored in the dictionary, and the longs
+ * are zero. Version 1 snapshots, whose records have no ID ref and hold
+ * only UUIDs, can still be read. Snapshots
+ * are written through a {@link FileChannel} into a temporary file that
+ * replaces the target atomically, and read back through memory mappings of
+ * at most 1 GiB each, so snapshots larger than 2 GiB load too.
+ */
+public final class LibrarySnapshot {
+    static final int MAGIC = 0x444C5342; // "DLSB"
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 32;
+    static final int RECORD_BYTES = 32;
+    static final int V1_RECORD_BYTES = 28;
+    private static final int NULL_REF = -1;
+    private static final int UUID_REF = -2;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    private LibrarySnapshot() {
+    }
+
+    /**
+     * Checks whether a file starts with the snapshot magic number.
+     *
+     * @param path Path to the file
+     * @return true if the file is a binary snapshot
+     */
+    public static boolean isSnapshot(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                return false;
+            }
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(magic, 0);
+            return magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Writes the books to a snapshot file.
+     *
+     * @param books Books to write
+     * @param path Destination file
+     */
+    public static void write(List<Book> books, Path path) throws IOException {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        UUID[] ids = new UUID[books.size()];
+        int[] refs = new int[books.size() * 3];
+        for (int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            ids[i] = CompactBook.parseId(book.getId());
+            for (int field = 0; field < 3; field++) {
+                String value = field == 0 ? book.getTitle() : field == 1 ? book.getAuthor() : book.getId();
+                if (field == 2 && ids[i] != null) {
+                    refs[i * 3 + field] = UUID_REF;
+                    continue;
+                }
+                if (value == null) {
+                    refs[i * 3 + field] = NULL_REF;
+                    continue;
+                }
+                Integer ref = dictionary.get(value);
+                if (ref == null) {
+                    ref = dictionary.size();
+                    dictionary.put(value, ref);
+                }
+                refs[i * 3 + field] = ref;
+            }
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(HEADER_BYTES);
+
+            long dictionaryBytes = 0;
+            for (String value : dictionary.keySet()) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                dictionaryBytes += 4 + bytes.length;
+                ensure(channel, buffer, crc, 4);
+                buffer.putInt(bytes.length);
+                int offset = 0;
+                while (offset < bytes.length) {
+                    ensure(channel, buffer, crc, 1);
+                    int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+                    buffer.put(bytes, offset, chunk);
+                    offset += chunk;
+                }
+            }
+
+            for (int i = 0; i < books.size(); i++) {
+                UUID id = ids[i];
+                ensure(channel, buffer, crc, RECORD_BYTES);
+                buffer.putLong(id == null ? 0 : id.getMostSignificantBits());
+                buffer.putLong(id == null ? 0 : id.getLeastSignificantBits());
+                buffer.putInt(refs[i * 3]);
+                buffer.putInt(refs[i * 3 + 1]);
+                buffer.putInt(books.get(i).getPublicationYear());
+                buffer.putInt(refs[i * 3 + 2]);
+            }
+            drain(channel, buffer, crc);
+
+            buffer.clear();
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(books.size());
+            buffer.putInt(dictionary.size());
+            buffer.putLong(dictionaryBytes);
+            buffer.putLong(crc.getValue());
+            buffer.flip();
+            channel.write(buffer, 0);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads the books from a snapshot file.
+     *
+     * @param path Snapshot file
+     * @return The books in the order they were written
+     * @throws IOException if the file is not a valid snapshot
+     */
+    public static List<Book> read(Path path) throws IOException {
+        return read(path, SEGMENT_BYTES);
+    }
+
+    /**
+     * Reads the books from a snapshot file, mapping at most
+     * {@code segmentBytes} of it at a time (more only for a longer string).
+     */
+    static List<Book> read(Path path, long segmentBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                throw new IOException("Snapshot is truncated: " + path);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a library snapshot: " + path);
+            }
+            int version = header.getInt(4);
+            if (version != VERSION && version != 1) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + path);
+            }
+            int recordBytes = version == 1 ? V1_RECORD_BYTES : RECORD_BYTES;
+            int recordCount = header.getInt(8);
+            int dictionaryCount = header.getInt(12);
+            long dictionaryBytes = header.getLong(16);
+            long expectedCrc = header.getLong(24);
+            if (recordCount < 0 || dictionaryCount < 0 || dictionaryBytes < 0
+                    || HEADER_BYTES + dictionaryBytes + (long) recordCount * recordBytes != size) {
+                throw new IOException("Snapshot header does not match file size: " + path);
+            }
+
+            CRC32 crc = new CRC32();
+            for (long position = HEADER_BYTES; position < size; position += segmentBytes) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(segmentBytes, size - position)));
+            }
+            if (crc.getValue() != expectedCrc) {
+                throw new IOException("Snapshot checksum mismatch: " + path);
+            }
+
+            Segments in = new Segments(channel, size, segmentBytes, HEADER_BYTES);
+            String[] dictionary = new String[dictionaryCount];
+            byte[] scratch = new byte[256];
+            for (int i = 0; i < dictionaryCount; i++) {
+                int length = in.require(4).getInt();
+                if (length > scratch.length) {
+                    scratch = new byte[Math.max(length, scratch.length * 2)];
+                }
+                in.require(length).get(scratch, 0, length);
+                dictionary[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+
+            List<Book> books = new ArrayList<>(recordCount);
+            for (int i = 0; i < recordCount; i++) {
+                ByteBuffer record = in.require(recordBytes);
+                UUID uuid = new UUID(record.getLong(), record.getLong());
+                String title = lookup(dictionary, record.getInt());
+                String author = lookup(dictionary, record.getInt());
+                int year = record.getInt();
+                int idRef = version == 1 ? UUID_REF : record.getInt();
+                String id = idRef == UUID_REF ? uuid.toString() : lookup(dictionary, idRef);
+                books.add(new Book(id, title, author, year));
+            }
+            return books;
+        } catch (IndexOutOfBoundsException | IllegalArgumentException | BufferUnderflowException e) {
+            throw new IOException("Snapshot is corrupt: " + path, e);
+        }
+    }
+
+    private static String lookup(String[] dictionary, int ref) throws IOException {
+        if (ref == NULL_REF) {
+            return null;
+        }
+        if (ref < 0 || ref >= dictionary.length) {
+            throw new IOException("Snapshot string reference out of range: " + ref);
+        }
+        return dictionary[ref];
+    }
+
+    private static void ensure(FileChannel channel, ByteBuffer buffer, CRC32 crc, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain(channel, buffer, crc);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * A read position in a file that is mapped one segment at a time, so
+     * files larger than a single mapping can be read. A new segment is
+     * mapped from the current position whenever the next value would run
+     * past the end of the current one.
+     */
+    private static final class Segments {
+        private final FileChannel channel;
+        private final long size;
+        private final long segmentBytes;
+        private long base;
+        private MappedByteBuffer map;
+
+        Segments(FileChannel channel, long size, long segmentBytes, long position) {
+            this.channel = channel;
+            this.size = size;
+            this.segmentBytes = segmentBytes;
+            this.base = position;
+        }
+
+        /**
+         * @return The mapping, positioned at the current position with at
+         *         least {@code bytes} remaining
+         * @throws IllegalArgumentException if the file ends sooner
+         */
+        ByteBuffer require(int bytes) throws IOException {
+            if (map != null && map.remaining() >= bytes) {
+                return map;
+            }
+            long position = map == null ? base : base + map.position();
+            if (bytes < 0 || bytes > size - position) {
+                throw new IllegalArgumentException("Read of " + bytes + " bytes at " + position);
+            }
+            map = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.max(bytes, Math.min(segmentBytes, size - position)));
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            base = position;
+            return map;
+        }
+    }
+}
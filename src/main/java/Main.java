@@ -1,12 +1,41 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Main {
+    static final String LIBRARY_FILE = "src/main/resources/data/library.ser";
+    static final String JOURNAL_FILE = "src/main/resources/data/library.journal";
+    static final String METRICS_FILE = "src/main/resources/data/metrics.log";
+    static final Duration METRICS_PERIOD = Duration.ofMinutes(1);
+    static final int DEFAULT_PORT = 8080;
+    static final int REPLAY_CONCURRENCY = 64;
+    static final int SYNTHETIC_OPERATIONS = 10_000;
+
     public static void main(String[] args) {
-        Library library = new Library();
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        Library library = new Library(options.remove("--compact") ? Library.Storage.COMPACT
+                : Library.Storage.STANDARD);
         LibrarySerializer serializer = new LibrarySerializer();
+        library.setInteractionLogger(new UserInteractionLogger());
+
+        // Publish operation metrics over JMX and dump them to a file periodically
+        Metrics.registerMBeans();
+        Closeable reporter = Metrics.startReporter(Path.of(METRICS_FILE), METRICS_PERIOD);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                reporter.close();
+            } catch (IOException e) {
+                System.err.println("Error writing metrics: " + e.getMessage());
+            }
+        }, "metrics-shutdown"));
 
         // Try to load saved library
-        List<Book> savedBooks = serializer.loadLibrary("src/main/resources/data/library.ser");
+        List<Book> savedBooks = serializer.loadLibrary(LIBRARY_FILE);
         if (savedBooks != null) {
             library.setBooks(savedBooks);
             System.out.println("\033[1;32mLoaded saved library state\033[0m");
@@ -15,8 +44,148 @@ public class Main {
             System.out.println("\033[1;32mLoaded initial book data\033[0m");
         }
 
+        // Replay changes made since the last snapshot and journal new ones
+        MutationJournal journal = null;
+        try {
+            journal = MutationJournal.open(library, LIBRARY_FILE, JOURNAL_FILE);
+            if (savedBooks == null) {
+                // Pin the generated book IDs so journaled changes can refer to them
+                if (!journal.compact()) {
+                    System.err.println("Could not save a snapshot; changes made now may not replay on the next start");
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error opening journal, changes will only be saved on exit: " + e.getMessage());
+        }
+
+        if (!options.isEmpty() && options.get(0).equals("--replay")) {
+            // The journal is open, so the library is up to date; the replay itself runs on a copy
+            try {
+                replay(library, options.size() > 1 ? Double.parseDouble(options.get(1)) : 0,
+                        options.size() > 2 ? Integer.parseInt(options.get(2)) : REPLAY_CONCURRENCY);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                System.err.println("Usage: --replay [operations per second, 0 for no limit] [concurrency]");
+            }
+            close(journal);
+            return;
+        }
+
+        if (!options.isEmpty() && options.get(0).equals("--export")) {
+            if (options.size() < 2) {
+                System.err.println("Usage: --export <file.csv|file.jsonl>[.gz]");
+            } else {
+                export(library, Path.of(options.get(1)));
+            }
+            close(journal);
+            return;
+        }
+
+        if (!options.isEmpty() && options.get(0).equals("--server")) {
+            int port;
+            try {
+                port = options.size() > 1 ? Integer.parseInt(options.get(1)) : DEFAULT_PORT;
+            } catch (NumberFormatException e) {
+                port = -1;
+            }
+            if (port < 0 || port > 65535) {
+                System.err.println("Usage: --server [port, 0 for any free port]");
+                close(journal);
+                return;
+            }
+            serve(library, journal, port);
+            return;
+        }
+
         // Start menu system
-        LibraryMenu menu = new LibraryMenu(library);
+        LibraryMenu menu = new LibraryMenu(library, journal);
         menu.displayMenu();
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes the catalog to a CSV or JSON Lines file, chosen by the file's
+     * extension and gzipped if it ends in {@code .gz}.
+     */
+    private static void export(Library library, Path file) {
+        try {
+            System.out.println(CatalogExporter.forFile(file).export(library, file));
+        } catch (IOException e) {
+            System.err.println("Error exporting library: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the journal, if there is one, once the library is done with.
+     */
+    private static void close(MutationJournal journal) {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Error closing journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Replays the interaction log, or a synthetic read-heavy workload if it
+     * records nothing, against a copy of the library and prints the
+     * throughput and latencies. The copy is neither journaled nor logged,
+     * so the saved library and the log are left as they were.
+     */
+    private static void replay(Library library, double rate, int concurrency) {
+        Library copy = new Library(library.getStorage());
+        copy.setBooks(library.getBooks());
+        List<WorkloadReplay.Operation> operations = List.of();
+        Path log = Path.of(UserInteractionLogger.LOG_FILE);
+        try {
+            if (Files.exists(log)) {
+                operations = WorkloadReplay.parse(log);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading interaction log, replaying a synthetic workload: " + e.getMessage());
+        }
+        if (operations.isEmpty()) {
+            operations = WorkloadReplay.synthetic(WorkloadReplay.DEFAULT_MIX, copy.getBooks(),
+                    SYNTHETIC_OPERATIONS, System.nanoTime());
+        }
+        try {
+            System.out.print(new WorkloadReplay(copy, rate, concurrency).run(operations));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Serves the library over HTTP until the process is stopped, then
+     * compacts and closes the journal.
+     */
+    private static void serve(Library library, MutationJournal journal, int port) {
+        LibraryServer server;
+        try {
+            server = new LibraryServer(library, port);
+        } catch (IOException e) {
+            System.err.println("Error starting server: " + e.getMessage());
+            close(journal);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            if (journal != null) {
+                try {
+                    if (!journal.compact()) {
+                        System.err.println("Could not save a snapshot; changes are kept in the journal");
+                    }
+                    journal.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing journal: " + e.getMessage());
+                }
+            } else {
+                new LibrarySerializer().saveLibrary(library.getBooks(), LIBRARY_FILE);
+            }
+        }, "server-shutdown"));
+        server.start();
+        System.out.println("\033[1;32mServing the library on http://localhost:" + server.getPort()
+                + (server.usesVirtualThreads() ? " (virtual threads)" : "") + "\033[0m");
+    }
+}
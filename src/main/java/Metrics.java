@@ -0,0 +1,312 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Latency and result-size metrics for library operations.
+ *
+ * <p>Each instrumented operation holds an {@link Operation} from
+ * {@link #operation} and brackets its work with {@link #start} and
+ * {@link Operation#record}, which adds the elapsed time to a latency
+ * {@link Histogram} and the number of books the operation returned or
+ * touched to a size histogram. Every call is counted, but only a random
+ * one in {@value #SAMPLE_EVERY} is timed and sized: a clock read can cost as
+ * much as a lookup by ID on a virtual machine, and a uniform sample gives
+ * the same distributions. Recording is lock-free; an unsampled call costs
+ * one striped counter increment, and with metrics switched off a call costs
+ * one volatile read. Metrics are on unless the JVM is started with
+ * {@code -Dlibrary.metrics=false}, and can be switched at run time with
+ * {@link #setEnabled}.
+ *
+ * <p>The metrics can be read through JMX, one MBean per operation under
+ * {@code DigitalLibrary:type=Operation} once {@link #registerMBeans} has
+ * been called, and as a plain-text table from {@link #report}, which
+ * {@link #startReporter} writes to a file periodically.
+ */
+public final class Metrics {
+    /** The JMX domain the operation MBeans are registered in */
+    public static final String DOMAIN = "DigitalLibrary";
+
+    /** One call in this many is timed */
+    public static final int SAMPLE_EVERY = 16;
+
+    private static final long NOT_RECORDED = Long.MIN_VALUE;
+    private static final long NOT_TIMED = Long.MIN_VALUE + 1;
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static volatile boolean enabled = !"false".equals(System.getProperty("library.metrics"));
+    private static final Map<String, Operation> operations = new ConcurrentSkipListMap<>();
+    private static MBeanServer mbeanServer;
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the metrics of an operation, creating them on first use.
+     *
+     * @param name The operation's name, such as {@code Library.addBook}
+     * @return The operation
+     */
+    public static Operation operation(String name) {
+        Operation operation = operations.get(name);
+        if (operation != null) {
+            return operation;
+        }
+        synchronized (Metrics.class) {
+            operation = operations.computeIfAbsent(name, Operation::new);
+            if (mbeanServer != null) {
+                register(operation);
+            }
+            return operation;
+        }
+    }
+
+    /**
+     * Starts a call of an operation, reading the clock if the call is one
+     * of the timed sample.
+     *
+     * @return The start time to pass to {@link Operation#record}, or a
+     *         marker telling it not to time the call, or to record nothing
+     *         if metrics are off
+     */
+    public static long start() {
+        if (!enabled) {
+            return NOT_RECORDED;
+        }
+        return ThreadLocalRandom.current().nextInt(SAMPLE_EVERY) == 0 ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * @return true if operations are being recorded
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Switches recording on or off. Metrics recorded so far are kept.
+     *
+     * @param on Whether to record
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Registers an MBean for every operation in the platform MBean server,
+     * and for operations created later. Calling this again has no effect.
+     */
+    public static synchronized void registerMBeans() {
+        if (mbeanServer != null) {
+            return;
+        }
+        mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        operations.values().forEach(Metrics::register);
+    }
+
+    /**
+     * Formats the metrics of every operation that has run as a table, one
+     * row per operation, with latencies in microseconds.
+     *
+     * @return The table
+     */
+    public static String report() {
+        StringBuilder out = new StringBuilder();
+        out.append("Library metrics at ").append(LocalDateTime.now().format(FORMATTER))
+                .append(enabled ? "" : " (recording off)").append('\n');
+        out.append(String.format("%-34s %10s %10s %10s %10s %10s %10s %10s %10s%n", "Operation", "Calls",
+                "Mean us", "p50 us", "p99 us", "p99.9 us", "Max us", "Mean size", "Max size"));
+        for (Operation operation : operations.values()) {
+            long calls = operation.calls.sum();
+            if (calls == 0) {
+                continue;
+            }
+            Histogram.Snapshot latency = operation.latencies.snapshot();
+            Histogram.Snapshot sizes = operation.sizes.snapshot();
+            out.append(String.format("%-34s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %10d%n",
+                    operation.name, calls, latency.getMean() / 1e3,
+                    latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(99) / 1e3,
+                    latency.getValueAtPercentile(99.9) / 1e3, latency.getMax() / 1e3,
+                    sizes.getMean(), sizes.getMax()));
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes {@link #report} to a file at a fixed rate from a daemon thread,
+     * and once more when closed. The metrics are cumulative, so each report
+     * replaces the previous one rather than being appended, and the file
+     * stays the size of one table however long the process runs. The file
+     * is replaced atomically, so a reader never sees a partial report.
+     *
+     * @param file The file to write to
+     * @param period Time between reports
+     * @return Stops the reporter when closed
+     */
+    public static Closeable startReporter(Path file, Duration period) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runnable write = () -> {
+            try {
+                if (file.getParent() != null) {
+                    Files.createDirectories(file.getParent());
+                }
+                Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.writeString(tmp, report(), StandardCharsets.UTF_8);
+                try {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing metrics: " + e.getMessage());
+            }
+        };
+        long millis = period.toMillis();
+        scheduler.scheduleAtFixedRate(write, millis, millis, TimeUnit.MILLISECONDS);
+        return () -> {
+            // Let a report in progress finish first; both would write the same temporary file
+            scheduler.shutdownNow();
+            try {
+                scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            write.run();
+        };
+    }
+
+    private static void register(Operation operation) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=Operation,name=" + operation.name);
+            if (!mbeanServer.isRegistered(name)) {
+                mbeanServer.registerMBean(new StandardMBean(operation, OperationMBean.class), name);
+            }
+        } catch (JMException e) {
+            System.err.println("Error registering metrics MBean for " + operation.name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The JMX view of an operation's metrics.
+     */
+    public interface OperationMBean {
+        /** @return How many times the operation completed while recording was on */
+        long getCount();
+
+        /** @return Mean latency in microseconds */
+        double getMeanMicros();
+
+        /** @return Median latency in microseconds */
+        double getP50Micros();
+
+        /** @return 99th percentile latency in microseconds */
+        double getP99Micros();
+
+        /** @return 99.9th percentile latency in microseconds */
+        double getP999Micros();
+
+        /** @return Largest latency in microseconds */
+        double getMaxMicros();
+
+        /** @return Mean number of books returned or touched by the sampled calls */
+        double getMeanResultSize();
+
+        /** @return 99th percentile of the number of books returned or touched by the sampled calls */
+        long getP99ResultSize();
+
+        /** @return Largest number of books returned or touched by a sampled call */
+        long getMaxResultSize();
+    }
+
+    /**
+     * The metrics of one operation.
+     */
+    public static final class Operation implements OperationMBean {
+        private final String name;
+        private final LongAdder calls = new LongAdder();
+        private final Histogram latencies = new Histogram();
+        private final Histogram sizes = new Histogram();
+
+        private Operation(String name) {
+            this.name = name;
+        }
+
+        /** @return The operation's name */
+        public String getName() { return name; }
+
+        /**
+         * Counts one completed call, and records its latency and result size
+         * if it is one of the sample.
+         *
+         * @param start What {@link Metrics#start} returned when the call began
+         * @param books How many books the call returned or touched
+         */
+        public void record(long start, int books) {
+            if (start == NOT_RECORDED) {
+                return;
+            }
+            calls.increment();
+            if (start != NOT_TIMED) {
+                latencies.record(System.nanoTime() - start);
+                sizes.record(books);
+            }
+        }
+
+        /** @return A snapshot of the latencies of the sampled calls, in nanoseconds */
+        public Histogram.Snapshot getLatencies() { return latencies.snapshot(); }
+
+        /** @return A snapshot of the result sizes of the sampled calls */
+        public Histogram.Snapshot getResultSizes() { return sizes.snapshot(); }
+
+        @Override
+        public long getCount() { return calls.sum(); }
+
+        @Override
+        public double getMeanMicros() { return latencies.snapshot().getMean() / 1e3; }
+
+        @Override
+        public double getP50Micros() { return latencies.snapshot().getValueAtPercentile(50) / 1e3; }
+
+        @Override
+        public double getP99Micros() { return latencies.snapshot().getValueAtPercentile(99) / 1e3; }
+
+        @Override
+        public double getP999Micros() { return latencies.snapshot().getValueAtPercentile(99.9) / 1e3; }
+
+        @Override
+        public double getMaxMicros() { return latencies.snapshot().getMax() / 1e3; }
+
+        @Override
+        public double getMeanResultSize() { return sizes.snapshot().getMean(); }
+
+        @Override
+        public long getP99ResultSize() { return sizes.snapshot().getValueAtPercentile(99); }
+
+        @Override
+        public long getMaxResultSize() { return sizes.snapshot().getMax(); }
+    }
+}
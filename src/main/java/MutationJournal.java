@@ -0,0 +1,624 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of library mutations.
+ *
+ * <p>Each add, update and delete is appended as one record:
+ * <pre>
+ * int  body length
+ * body sequence (long), type (byte), UUID as two longs,
+ *      and for adds and updates: year (int), title, author
+ *      (strings as int byte length, -1 for null, then UTF-8 bytes)
+ *      An ID that is not a UUID in canonical form is stored as a string
+ *      in place of the two longs, with the type's high bit set.
+ * int  CRC32 of the body
+ * </pre>
+ *
+ * <p>Records are buffered in memory and a single committer thread writes
+ * and fsyncs them in groups, so concurrent writers share one fsync. When
+ * {@code waitForDurability} is set, each mutation returns only once its
+ * record is on disk; otherwise records reach the disk within one commit
+ * interval. Records are encoded while the library holds its write lock, so
+ * the journal order is the order the changes were applied; the wait for the
+ * fsync happens after the lock is released.
+ *
+ * <p>Once the journal grows past the compaction threshold the library is
+ * written to a fresh snapshot on a background thread, so the mutation that
+ * crosses the threshold does not wait for it. Compaction runs alongside
+ * ongoing mutations:
+ * while the library's writes are briefly held off, the journal is renamed
+ * aside and a new one started, and the aside file is deleted once the
+ * snapshot of that exact state is safely written. If the snapshot cannot be
+ * written, the aside file is put back as the journal.
+ *
+ * <p>At startup the state is the latest snapshot plus a replay of any file
+ * left aside by an unfinished compaction and then the journal; see
+ * {@link #open}. Replaying a record that the snapshot already reflects leaves
+ * the book unchanged, so a crash between writing a snapshot and deleting the
+ * old journal is harmless.
+ */
+public class MutationJournal implements LibraryListener, Closeable {
+    private static final byte ADD = 1;
+    private static final byte UPDATE = 2;
+    private static final byte DELETE = 3;
+    private static final byte STRING_ID = (byte) 0x80;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int MAX_RECORD_BYTES = 64 << 20;
+
+    private final Library library;
+    private final String snapshotFile;
+    private final Path journalPath;
+    private final Path compactingPath;
+    private final long commitIntervalMillis;
+    private final boolean waitForDurability;
+    private final long compactionThresholdBytes;
+    private final LibrarySerializer serializer = new LibrarySerializer();
+    private final Thread committer;
+    private final CRC32 crc = new CRC32();
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    // Guarded by this
+    private FileChannel channel;
+    private ByteBuffer pending = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private long appendedSequence;
+    private long writtenSequence;
+    private long durableSequence;
+    private long journalBytes;
+    private long compactAtBytes;
+    private int waiters;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * Creates a journal with default settings: mutations wait for their
+     * group commit, and the journal is compacted once it reaches 64 MiB.
+     *
+     * @param library The library whose mutations are journaled
+     * @param snapshotFile Snapshot file the journal is compacted into
+     * @param journalFile Journal file to append to
+     */
+    public MutationJournal(Library library, String snapshotFile, String journalFile) throws IOException {
+        this(library, snapshotFile, journalFile, 2, true, 64L << 20);
+    }
+
+    /**
+     * Creates a journal. The journal is not attached to the library; use
+     * {@link #open} to recover and attach in one step.
+     *
+     * @param library The library whose mutations are journaled
+     * @param snapshotFile Snapshot file the journal is compacted into
+     * @param journalFile Journal file to append to
+     * @param commitIntervalMillis How long the committer waits to gather a
+     *        batch when no writer is waiting for durability
+     * @param waitForDurability Whether mutations block until their record has
+     *        been fsynced
+     * @param compactionThresholdBytes Journal size that triggers compaction
+     */
+    public MutationJournal(Library library, String snapshotFile, String journalFile,
+                           long commitIntervalMillis, boolean waitForDurability,
+                           long compactionThresholdBytes) throws IOException {
+        this.library = library;
+        this.snapshotFile = snapshotFile;
+        this.journalPath = Paths.get(journalFile);
+        this.compactingPath = compactingPath(journalPath);
+        this.commitIntervalMillis = commitIntervalMillis;
+        this.waitForDurability = waitForDurability;
+        this.compactionThresholdBytes = compactionThresholdBytes;
+        if (journalPath.getParent() != null) {
+            Files.createDirectories(journalPath.getParent());
+        }
+        this.channel = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.journalBytes = channel.size();
+        this.compactAtBytes = compactionThresholdBytes;
+        this.committer = new Thread(this::runCommitter, "journal-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * Replays the journal into a library that already holds the latest
+     * snapshot, then attaches a journal so every further mutation is logged.
+     *
+     * @param library The library, restored from its snapshot
+     * @param snapshotFile Snapshot file the journal is compacted into
+     * @param journalFile Journal file
+     * @return The attached journal
+     */
+    public static MutationJournal open(Library library, String snapshotFile, String journalFile)
+            throws IOException {
+        Path journalPath = Paths.get(journalFile);
+        int replayed = replay(compactingPath(journalPath), library) + replay(journalPath, library);
+        if (replayed > 0) {
+            System.out.println("Replayed " + replayed + " journaled changes.");
+        }
+        MutationJournal journal = new MutationJournal(library, snapshotFile, journalFile);
+        library.addListener(journal);
+        return journal;
+    }
+
+    /**
+     * Applies every intact record in a journal file to a library. A torn or
+     * corrupt record ends the replay, and the file is truncated there so new
+     * records are not appended after garbage.
+     *
+     * @param journalPath Journal file
+     * @param library Library to apply the records to
+     * @return The number of records applied
+     */
+    public static int replay(Path journalPath, Library library) throws IOException {
+        if (!Files.exists(journalPath)) {
+            return 0;
+        }
+        int applied = 0;
+        try (FileChannel in = FileChannel.open(journalPath, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long offset = 0;
+            ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer body = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+            CRC32 crc = new CRC32();
+            while (offset + 4 <= size) {
+                header.clear();
+                readFully(in, header, offset);
+                int length = header.getInt(0);
+                if (length <= 0 || length > MAX_RECORD_BYTES || offset + 4 + length + 4 > size) {
+                    break;
+                }
+                if (body.capacity() < length + 4) {
+                    body = ByteBuffer.allocate(Math.max(length + 4, body.capacity() * 2))
+                            .order(ByteOrder.LITTLE_ENDIAN);
+                }
+                body.clear().limit(length + 4);
+                readFully(in, body, offset + 4);
+                crc.reset();
+                crc.update(body.array(), 0, length);
+                if ((int) crc.getValue() != body.getInt(length)) {
+                    break;
+                }
+                body.position(0).limit(length);
+                apply(body, library);
+                applied++;
+                offset += 4 + length + 4;
+            }
+            if (offset < size) {
+                System.err.println("Discarding " + (size - offset) + " bytes of incomplete journal data.");
+                in.truncate(offset);
+                in.force(true);
+            }
+        }
+        return applied;
+    }
+
+    @Override
+    public void bookAdded(Book book) {
+        append(ADD, book);
+    }
+
+    @Override
+    public void bookUpdated(Book book) {
+        append(UPDATE, book);
+    }
+
+    @Override
+    public void bookDeleted(Book book) {
+        append(DELETE, book);
+    }
+
+    /**
+     * Writes and fsyncs every record appended so far.
+     */
+    public void flush() throws IOException {
+        long target;
+        FileChannel forced;
+        synchronized (this) {
+            checkFailure();
+            writePending();
+            target = writtenSequence;
+            forced = channel;
+        }
+        try {
+            forced.force(false);
+        } catch (IOException e) {
+            synchronized (this) {
+                if (forced == channel) {
+                    throw e;
+                }
+            }
+        }
+        synchronized (this) {
+            durableSequence = Math.max(durableSequence, target);
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void mutationsApplied() {
+        long sequence;
+        boolean compactNow;
+        synchronized (this) {
+            sequence = appendedSequence;
+            compactNow = journalBytes + pending.position() >= compactAtBytes;
+        }
+        if (waitForDurability) {
+            awaitDurable(sequence);
+        }
+        if (compactNow && compactionScheduled.compareAndSet(false, true)) {
+            try {
+                compactor.execute(this::compactInBackground);
+            } catch (RejectedExecutionException e) {
+                // Closing
+                compactionScheduled.set(false);
+            }
+        }
+    }
+
+    private void compactInBackground() {
+        try {
+            if (compactionLock.tryLock()) {
+                try {
+                    compact();
+                } finally {
+                    compactionLock.unlock();
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error compacting journal: " + e.getMessage());
+        } finally {
+            compactionScheduled.set(false);
+        }
+    }
+
+    /**
+     * Writes the library to a new snapshot and starts an empty journal. Safe
+     * to call while other threads mutate the library; their changes land in
+     * the new journal. If the snapshot cannot be written, the records moved
+     * aside are put back in front of the new ones, so the journal is left
+     * whole, and the background compaction waits for the journal to grow by
+     * another threshold before it tries again.
+     *
+     * @return true if the snapshot was written and the old journal dropped
+     */
+    public boolean compact() throws IOException {
+        compactionLock.lock();
+        try {
+            List<Book> books;
+            try {
+                books = library.checkpoint(() -> {
+                    try {
+                        rotate();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (!serializer.saveLibrary(books, snapshotFile)) {
+                unrotate();
+                return false;
+            }
+            Files.deleteIfExists(compactingPath);
+            return true;
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    /**
+     * Flushes outstanding records, waits for a background compaction to
+     * finish, stops the committer and detaches from the library.
+     */
+    @Override
+    public void close() throws IOException {
+        library.removeListener(this);
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } finally {
+            synchronized (this) {
+                channel.close();
+            }
+        }
+    }
+
+    private void append(byte type, Book book) {
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            encode(++appendedSequence, type, book);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Makes every record so far durable in the current file, then moves it
+     * aside and opens a fresh journal. If an earlier compaction left an aside
+     * file behind, the current records are appended to it instead so no
+     * change is lost.
+     */
+    private synchronized void rotate() throws IOException {
+        writePending();
+        channel.force(false);
+        durableSequence = writtenSequence;
+        notifyAll();
+        channel.close();
+        if (Files.exists(compactingPath)) {
+            appendTo(compactingPath);
+            Files.delete(journalPath);
+        } else {
+            Files.move(journalPath, compactingPath, StandardCopyOption.ATOMIC_MOVE);
+        }
+        channel = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        journalBytes = 0;
+        compactAtBytes = compactionThresholdBytes;
+    }
+
+    /**
+     * Undoes {@link #rotate} after the snapshot could not be written: the
+     * records written since are appended to the aside file, which becomes
+     * the journal again. Left in place, the aside file would be copied into
+     * once more by every later attempt.
+     */
+    private synchronized void unrotate() throws IOException {
+        writePending();
+        channel.force(false);
+        durableSequence = writtenSequence;
+        notifyAll();
+        channel.close();
+        appendTo(compactingPath);
+        Files.move(compactingPath, journalPath, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        journalBytes = channel.size();
+        compactAtBytes = journalBytes + compactionThresholdBytes;
+    }
+
+    // Copies the closed journal file to the end of another file and fsyncs it
+    private void appendTo(Path target) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             FileChannel current = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+            long size = current.size();
+            for (long copied = 0; copied < size; ) {
+                copied += current.transferTo(copied, size - copied, out);
+            }
+            out.force(true);
+        }
+    }
+
+    private void awaitDurable(long sequence) {
+        synchronized (this) {
+            waiters++;
+            notifyAll();
+            try {
+                while (durableSequence < sequence && failure == null && !closed) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                waiters--;
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Journal write failed", failure);
+            }
+        }
+    }
+
+    private void runCommitter() {
+        while (true) {
+            long target;
+            FileChannel forced;
+            synchronized (this) {
+                try {
+                    while (!closed && appendedSequence == durableSequence) {
+                        wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    if (waiters == 0 && commitIntervalMillis > 0) {
+                        wait(commitIntervalMillis);
+                    }
+                    writePending();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    failure = e;
+                    notifyAll();
+                    return;
+                }
+                target = writtenSequence;
+                forced = channel;
+            }
+            try {
+                forced.force(false);
+            } catch (IOException e) {
+                synchronized (this) {
+                    if (forced != channel) {
+                        // Rotated meanwhile; rotate() forced the old file itself
+                        continue;
+                    }
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                durableSequence = Math.max(durableSequence, target);
+                notifyAll();
+            }
+        }
+    }
+
+    // Caller holds the monitor
+    private void encode(long sequence, byte type, Book book) {
+        byte[] title = type == DELETE ? null : bytes(book.getTitle());
+        byte[] author = type == DELETE ? null : bytes(book.getAuthor());
+        UUID id = CompactBook.parseId(book.getId());
+        byte[] rawId = id == null ? bytes(book.getId()) : null;
+        int length = 8 + 1 + (id != null ? 16 : 4 + (rawId == null ? 0 : rawId.length));
+        if (type != DELETE) {
+            length += 4 + 4 + (title == null ? 0 : title.length) + 4 + (author == null ? 0 : author.length);
+        }
+        if (pending.remaining() < length + 8) {
+            try {
+                writePending();
+            } catch (IOException e) {
+                failure = e;
+                throw new UncheckedIOException("Journal write failed", e);
+            }
+            if (pending.capacity() < length + 8) {
+                pending = ByteBuffer.allocateDirect(length + 8).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        pending.putInt(length);
+        int start = pending.position();
+        pending.putLong(sequence);
+        if (id != null) {
+            pending.put(type);
+            pending.putLong(id.getMostSignificantBits());
+            pending.putLong(id.getLeastSignificantBits());
+        } else {
+            pending.put((byte) (type | STRING_ID));
+            putString(rawId);
+        }
+        if (type != DELETE) {
+            pending.putInt(book.getPublicationYear());
+            putString(title);
+            putString(author);
+        }
+        crc.reset();
+        crc.update(pending.duplicate().position(start).limit(pending.position()));
+        pending.putInt((int) crc.getValue());
+    }
+
+    // Caller holds the monitor
+    private void writePending() throws IOException {
+        checkFailure();
+        if (pending.position() == 0) {
+            writtenSequence = appendedSequence;
+            return;
+        }
+        pending.flip();
+        while (pending.hasRemaining()) {
+            journalBytes += channel.write(pending);
+        }
+        pending.clear();
+        writtenSequence = appendedSequence;
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Journal is unusable after an earlier failure", failure);
+        }
+    }
+
+    private void putString(byte[] value) {
+        if (value == null) {
+            pending.putInt(-1);
+        } else {
+            pending.putInt(value.length);
+            pending.put(value);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Path compactingPath(Path journalPath) {
+        return journalPath.resolveSibling(journalPath.getFileName() + ".compacting");
+    }
+
+    private static void apply(ByteBuffer body, Library library) {
+        body.getLong(); // sequence
+        byte type = body.get();
+        String id;
+        if ((type & STRING_ID) != 0) {
+            type &= ~STRING_ID;
+            id = getString(body);
+        } else {
+            id = new UUID(body.getLong(), body.getLong()).toString();
+        }
+        if (type == DELETE) {
+            library.deleteBook(id);
+            return;
+        }
+        int year = body.getInt();
+        String title = getString(body);
+        String author = getString(body);
+        if (type == ADD) {
+            library.addBook(new Book(id, title, author, year));
+        } else if (type == UPDATE) {
+            library.updateBook(id, new Book(id, title, author, year));
+        }
+    }
+
+    private static String getString(ByteBuffer body) {
+        int length = body.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(body.array(), body.position(), length, StandardCharsets.UTF_8);
+        body.position(body.position() + length);
+        return value;
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = in.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of journal");
+            }
+            position += read;
+        }
+    }
+}
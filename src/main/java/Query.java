@@ -0,0 +1,271 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A compound query over a {@link Library}: conditions on title, author and
+ * year that must all hold, an optional ordering and an optional limit. For
+ * example, George Orwell's first ten books of the 1940s by title:
+ * <pre>
+ * Query.all()
+ *         .authorIs("George Orwell")
+ *         .yearBetween(1940, 1950)
+ *         .orderBy(SortUtil.Key.TITLE)
+ *         .limit(10)
+ * </pre>
+ *
+ * <p>Queries are immutable; every method returns a new query. Text
+ * conditions ignore case. {@link Library#query} runs a query along the
+ * cheapest plan it finds, and {@link Library#explain} shows that plan.
+ * Without an ordering, results come in catalog order; with one, books that
+ * compare equal come in catalog order.
+ */
+public final class Query {
+    private static final Query ALL = new Query(List.of(), null, false, Integer.MAX_VALUE);
+
+    private final List<Condition> conditions;
+    private final SortUtil.Key orderBy;
+    private final boolean descending;
+    private final int limit;
+
+    private Query(List<Condition> conditions, SortUtil.Key orderBy, boolean descending, int limit) {
+        this.conditions = conditions;
+        this.orderBy = orderBy;
+        this.descending = descending;
+        this.limit = limit;
+    }
+
+    /**
+     * @return A query matching every book
+     */
+    public static Query all() {
+        return ALL;
+    }
+
+    /**
+     * @param title The exact title, in any case
+     * @return This query, also requiring the title
+     */
+    public Query titleIs(String title) {
+        return with(new Condition(Field.TITLE, Operator.EQUALS, title, 0, 0));
+    }
+
+    /**
+     * @param text Text the title must contain, in any case
+     * @return This query, also requiring the text in the title
+     */
+    public Query titleContains(String text) {
+        return with(new Condition(Field.TITLE, Operator.CONTAINS, text, 0, 0));
+    }
+
+    /**
+     * @param author The exact author, in any case
+     * @return This query, also requiring the author
+     */
+    public Query authorIs(String author) {
+        return with(new Condition(Field.AUTHOR, Operator.EQUALS, author, 0, 0));
+    }
+
+    /**
+     * @param text Text the author must contain, in any case
+     * @return This query, also requiring the text in the author
+     */
+    public Query authorContains(String text) {
+        return with(new Condition(Field.AUTHOR, Operator.CONTAINS, text, 0, 0));
+    }
+
+    /**
+     * Requires a keyword in the title, author or year, as
+     * {@link Library#searchBooksByKeyword} does.
+     *
+     * @param keyword The keyword, in any case
+     * @return This query, also requiring the keyword
+     */
+    public Query keyword(String keyword) {
+        return with(new Condition(Field.ANY, Operator.CONTAINS, keyword, 0, 0));
+    }
+
+    /**
+     * @param from First year, inclusive
+     * @param to Last year, inclusive
+     * @return This query, also requiring a year in the range
+     */
+    public Query yearBetween(int from, int to) {
+        return with(new Condition(Field.YEAR, Operator.BETWEEN, null, from, to));
+    }
+
+    /**
+     * @param key The field to order by, in the order {@link SortUtil#sort(List, SortUtil.Key)} uses
+     * @return This query, ordered ascending by the field
+     */
+    public Query orderBy(SortUtil.Key key) {
+        return new Query(conditions, key, false, limit);
+    }
+
+    /**
+     * @param key The field to order by
+     * @return This query, ordered descending by the field
+     */
+    public Query orderByDescending(SortUtil.Key key) {
+        return new Query(conditions, key, true, limit);
+    }
+
+    /**
+     * @param limit The most books to return
+     * @return This query, returning at most {@code limit} books
+     * @throws IllegalArgumentException if the limit is negative
+     */
+    public Query limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative");
+        }
+        return new Query(conditions, orderBy, descending, limit);
+    }
+
+    /** @return The conditions, all of which must hold */
+    public List<Condition> getConditions() { return conditions; }
+
+    /** @return The field to order by, or null for catalog order */
+    public SortUtil.Key getOrderBy() { return orderBy; }
+
+    /** @return true if ordered descending */
+    public boolean isDescending() { return descending; }
+
+    /** @return The most books to return, {@code Integer.MAX_VALUE} if unlimited */
+    public int getLimit() { return limit; }
+
+    /**
+     * @param book The book
+     * @return true if every condition holds for the book
+     */
+    public boolean matches(Book book) {
+        for (Condition condition : conditions) {
+            if (!condition.test(book)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Query with(Condition condition) {
+        List<Condition> more = new ArrayList<>(conditions);
+        more.add(condition);
+        return new Query(Collections.unmodifiableList(more), orderBy, descending, limit);
+    }
+
+    /**
+     * @return The query in an SQL-like form
+     */
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("books");
+        for (int i = 0; i < conditions.size(); i++) {
+            out.append(i == 0 ? " WHERE " : " AND ").append(conditions.get(i));
+        }
+        if (orderBy != null) {
+            out.append(" ORDER BY ").append(orderBy.name().toLowerCase(Locale.ROOT)).append(descending ? " DESC" : "");
+        }
+        if (limit != Integer.MAX_VALUE) {
+            out.append(" LIMIT ").append(limit);
+        }
+        return out.toString();
+    }
+
+    /**
+     * The fields a condition can test.
+     */
+    public enum Field {
+        TITLE, AUTHOR, YEAR,
+        /** Title, author or year, as for a keyword search */
+        ANY
+    }
+
+    /**
+     * The tests a condition can apply.
+     */
+    public enum Operator {
+        EQUALS, CONTAINS, BETWEEN
+    }
+
+    /**
+     * One condition of a query.
+     */
+    public static final class Condition {
+        private final Field field;
+        private final Operator operator;
+        private final String text;
+        private final String lowerText;
+        private final int from;
+        private final int to;
+
+        private Condition(Field field, Operator operator, String text, int from, int to) {
+            if (operator != Operator.BETWEEN && text == null) {
+                throw new IllegalArgumentException("Text to match must not be null");
+            }
+            this.field = field;
+            this.operator = operator;
+            this.text = text;
+            this.lowerText = text == null ? null : text.toLowerCase();
+            this.from = from;
+            this.to = to;
+        }
+
+        /** @return The field tested */
+        public Field getField() { return field; }
+
+        /** @return The test applied */
+        public Operator getOperator() { return operator; }
+
+        /** @return The text to match, or null for a year range */
+        public String getText() { return text; }
+
+        /** @return The text to match, lower-cased */
+        public String getLowerText() { return lowerText; }
+
+        /** @return First year of a range, inclusive */
+        public int getFrom() { return from; }
+
+        /** @return Last year of a range, inclusive */
+        public int getTo() { return to; }
+
+        /**
+         * @param book The book
+         * @return true if the condition holds for the book
+         */
+        public boolean test(Book book) {
+            return switch (operator) {
+                case EQUALS -> text.equalsIgnoreCase(field == Field.TITLE ? book.getTitle() : book.getAuthor());
+                case BETWEEN -> book.getPublicationYear() >= from && book.getPublicationYear() <= to;
+                case CONTAINS -> switch (field) {
+                    case TITLE -> contains(book.getTitle());
+                    case AUTHOR -> contains(book.getAuthor());
+                    default -> contains(book.getTitle()) || contains(book.getAuthor())
+                            || String.valueOf(book.getPublicationYear()).contains(lowerText);
+                };
+            };
+        }
+
+        private boolean contains(String value) {
+            return value != null && value.toLowerCase().contains(lowerText);
+        }
+
+        @Override
+        public String toString() {
+            String name = field == Field.ANY ? "keyword" : field.name().toLowerCase(Locale.ROOT);
+            return switch (operator) {
+                case EQUALS -> name + " = " + quote(text);
+                case CONTAINS -> name + " CONTAINS " + quote(text);
+                case BETWEEN -> name + " BETWEEN " + from + " AND " + to;
+            };
+        }
+
+        /**
+         * Quotes text so that no two different queries print alike, which
+         * makes the printed form usable as a cache key.
+         */
+        private static String quote(String text) {
+            return '"' + text.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+        }
+    }
+}
@@ -0,0 +1,450 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * How a {@link Library} runs a {@link Query}: the access path that produces
+ * candidate books, the conditions checked on each of them, and how the
+ * ordering and limit are applied.
+ *
+ * <p>The planner estimates how many books each condition lets through from
+ * the indexes themselves: the size of an exact title or author bucket, the
+ * shortest trigram posting list of a text, the number of rows in a year
+ * range. It assumes the conditions are independent and costs every usable
+ * path: a full scan, an index per indexable condition, and for an ascending
+ * ordering the library's sorted view by that field. A path that already
+ * yields books in the requested order lets the pipeline stop as soon as the
+ * limit is reached; otherwise the matches go through a bounded heap of the
+ * limit's size, or are sorted when there is no limit. The cheapest plan is
+ * run as one pass that pulls books from the path, filters them and feeds
+ * the ordering step, without materializing the candidates first.
+ *
+ * <p>Costs are in units of one book visited. Comparing titles or authors
+ * runs the collator, which costs as much as hundreds of visits.
+ */
+public final class QueryPlan {
+    // Relative to visiting one book, measured on the benchmark catalog
+    private static final double COLLATED_COMPARISON_COST = 500;
+    private static final double COMPARISON_COST = 2;
+    private static final double INDEX_ROW_COST = 1.5;
+    // Assumed for conditions the indexes cannot estimate
+    private static final double UNKNOWN_SELECTIVITY = 0.5;
+
+    /**
+     * The ways of finding candidate books.
+     */
+    public enum Access {
+        /** Every book, in catalog order */
+        SCAN("Full scan"),
+        /** The exact title index bucket, in catalog order */
+        TITLE_INDEX("Title index"),
+        /** The exact author index bucket, in catalog order */
+        AUTHOR_INDEX("Author index"),
+        /** The trigram index's matches for a text, in catalog order */
+        KEYWORD_INDEX("Trigram index"),
+        /** The year index range, ordered by year and then catalog order */
+        YEAR_INDEX("Year index"),
+        /** The library's sorted view of every book by the ordering field */
+        SORTED_VIEW("Sorted view");
+
+        private final String label;
+
+        Access(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * How the ordering and limit are applied.
+     */
+    public enum Ordering {
+        /** The access path yields books in order; stop at the limit */
+        STREAM,
+        /** Keep the best books seen in a heap of the limit's size */
+        TOP_K,
+        /** Collect every match and sort */
+        SORT
+    }
+
+    /**
+     * What the planner needs to know about a library's indexes.
+     */
+    interface Statistics {
+        /** @return The number of books */
+        int size();
+
+        /** @return The number of books with exactly this title, ignoring case */
+        int titleCount(String title);
+
+        /** @return The number of books by exactly this author, ignoring case */
+        int authorCount(String author);
+
+        /** @return An upper bound on the books containing this lower-cased text, or -1 if it is not indexable */
+        int keywordEstimate(String lowerText);
+
+        /** @return About how many books were published in a range of years */
+        int yearCount(int from, int to);
+
+        /** @return true if the sorted view by this field is already built */
+        boolean isSortedViewReady(SortUtil.Key key);
+    }
+
+    /**
+     * Books produced by an access path, with a number for each that grows
+     * with catalog order, for putting equal books in catalog order.
+     */
+    public interface Source {
+        /**
+         * Moves to the next book.
+         *
+         * @return false if there are no more
+         */
+        boolean advance();
+
+        /** @return The current book */
+        Book book();
+
+        /** @return The current book's rank in catalog order */
+        long catalogRank();
+
+        /**
+         * Wraps books that come in catalog order.
+         *
+         * @param books The books
+         * @return A source ranking the books by their position in the iteration
+         */
+        static Source of(Iterator<Book> books) {
+            return new Source() {
+                private Book book;
+                private long rank = -1;
+
+                @Override
+                public boolean advance() {
+                    if (!books.hasNext()) {
+                        return false;
+                    }
+                    book = books.next();
+                    rank++;
+                    return true;
+                }
+
+                @Override
+                public Book book() { return book; }
+
+                @Override
+                public long catalogRank() { return rank; }
+            };
+        }
+    }
+
+    private final Query query;
+    private final Candidate chosen;
+    private final List<Candidate> candidates;
+    private final double estimatedMatches;
+
+    private QueryPlan(Query query, Candidate chosen, List<Candidate> candidates, double estimatedMatches) {
+        this.query = query;
+        this.chosen = chosen;
+        this.candidates = candidates;
+        this.estimatedMatches = estimatedMatches;
+    }
+
+    /**
+     * Costs every access path for a query and picks the cheapest.
+     *
+     * @param query The query
+     * @param statistics The library's index statistics
+     * @return The plan
+     */
+    static QueryPlan choose(Query query, Statistics statistics) {
+        int n = statistics.size();
+        double selectivity = 1;
+        List<Candidate> candidates = new ArrayList<>();
+        for (Query.Condition condition : query.getConditions()) {
+            double rows = -1;
+            Access access = null;
+            switch (condition.getOperator()) {
+                case EQUALS -> {
+                    boolean title = condition.getField() == Query.Field.TITLE;
+                    rows = title ? statistics.titleCount(condition.getText())
+                            : statistics.authorCount(condition.getText());
+                    access = title ? Access.TITLE_INDEX : Access.AUTHOR_INDEX;
+                }
+                case CONTAINS -> {
+                    rows = statistics.keywordEstimate(condition.getLowerText());
+                    access = Access.KEYWORD_INDEX;
+                }
+                case BETWEEN -> {
+                    rows = statistics.yearCount(condition.getFrom(), condition.getTo());
+                    access = Access.YEAR_INDEX;
+                }
+            }
+            if (rows < 0) {
+                selectivity *= UNKNOWN_SELECTIVITY;
+                continue;
+            }
+            selectivity *= n == 0 ? 0 : Math.min(1, rows / n);
+            candidates.add(new Candidate(access, condition, rows, false));
+        }
+        double matches = n * selectivity;
+
+        SortUtil.Key key = query.getOrderBy();
+        if (key != null && !query.isDescending()) {
+            candidates.add(new Candidate(Access.SORTED_VIEW, null, n, !statistics.isSortedViewReady(key)));
+        }
+        candidates.add(new Candidate(Access.SCAN, null, n, false));
+
+        Candidate best = null;
+        for (Candidate candidate : candidates) {
+            candidate.cost(query, Math.min(matches, candidate.rows), n);
+            if (best == null || candidate.cost < best.cost) {
+                best = candidate;
+            }
+        }
+        return new QueryPlan(query, best, Collections.unmodifiableList(candidates), matches);
+    }
+
+    /** @return The query planned */
+    public Query getQuery() { return query; }
+
+    /** @return The chosen access path */
+    public Access getAccess() { return chosen.access; }
+
+    /** @return The condition the access path looks up, or null for a scan or sorted view */
+    public Query.Condition getIndexCondition() { return chosen.condition; }
+
+    /** @return How the ordering and limit are applied */
+    public Ordering getOrdering() { return chosen.ordering; }
+
+    /** @return The estimated number of books matching every condition */
+    public double getEstimatedMatches() { return estimatedMatches; }
+
+    /** @return The estimated cost of the chosen plan */
+    public double getCost() { return chosen.cost; }
+
+    /**
+     * Describes the chosen plan as a tree, read from the bottom up, and the
+     * other access paths with their estimated costs.
+     *
+     * @return The description
+     */
+    public String explain() {
+        StringBuilder out = new StringBuilder();
+        out.append("Query: ").append(query).append('\n');
+        out.append("Plan:\n");
+        String indent = "  ";
+        int limit = query.getLimit();
+        String order = query.getOrderBy() == null ? "catalog order"
+                : query.getOrderBy().name().toLowerCase(Locale.ROOT) + (query.isDescending() ? " descending" : "");
+        switch (chosen.ordering) {
+            case STREAM -> {
+                if (limit != Integer.MAX_VALUE) {
+                    out.append(indent).append("Limit ").append(limit).append(" (stops early)\n");
+                    indent += "  ";
+                }
+            }
+            case TOP_K -> {
+                out.append(indent).append("Top ").append(limit).append(" by ").append(order)
+                        .append(" (bounded heap)\n");
+                indent += "  ";
+            }
+            case SORT -> {
+                out.append(indent).append("Sort by ").append(order).append('\n');
+                indent += "  ";
+            }
+        }
+        List<Query.Condition> residual = new ArrayList<>(query.getConditions());
+        residual.remove(chosen.condition);
+        if (!residual.isEmpty()) {
+            out.append(indent).append("Filter: ");
+            for (int i = 0; i < residual.size(); i++) {
+                out.append(i == 0 ? "" : " AND ").append(residual.get(i));
+            }
+            out.append('\n');
+            indent += "  ";
+        }
+        out.append(indent).append(chosen.describe(query)).append('\n');
+        out.append(String.format("Estimated matches %,.0f, cost %,.0f%n", estimatedMatches, chosen.cost));
+        out.append("Considered:\n");
+        for (Candidate candidate : candidates) {
+            out.append(String.format("  %-56s %-16s cost %,.0f%s%n", candidate.describe(query),
+                    String.format("~%,.0f rows", candidate.rows), candidate.cost,
+                    candidate == chosen ? "  <- chosen" : ""));
+        }
+        return out.toString();
+    }
+
+    @Override
+    public String toString() {
+        return explain();
+    }
+
+    /**
+     * Runs the plan's pipeline over the books its access path produces.
+     *
+     * @param source The access path's books
+     * @return The matching books, ordered and limited
+     */
+    List<Book> run(Source source) {
+        int limit = query.getLimit();
+        List<Book> result = new ArrayList<>();
+        if (limit == 0) {
+            return result;
+        }
+        if (chosen.ordering == Ordering.STREAM) {
+            while (result.size() < limit && source.advance()) {
+                if (query.matches(source.book())) {
+                    result.add(source.book());
+                }
+            }
+            return result;
+        }
+        Comparator<Ranked> order = order();
+        if (chosen.ordering == Ordering.TOP_K) {
+            // Max-heap of the best books so far; its head is the one to drop next
+            PriorityQueue<Ranked> best = new PriorityQueue<>(Math.min(limit, 1024) + 1, order.reversed());
+            while (source.advance()) {
+                Book book = source.book();
+                if (!query.matches(book)) {
+                    continue;
+                }
+                Ranked ranked = new Ranked(book, source.catalogRank());
+                if (best.size() < limit) {
+                    best.add(ranked);
+                } else if (order.compare(ranked, best.peek()) < 0) {
+                    best.poll();
+                    best.add(ranked);
+                }
+            }
+            List<Ranked> sorted = new ArrayList<>(best);
+            sorted.sort(order);
+            for (Ranked ranked : sorted) {
+                result.add(ranked.book);
+            }
+            return result;
+        }
+
+        List<Ranked> matches = new ArrayList<>();
+        while (source.advance()) {
+            if (query.matches(source.book())) {
+                matches.add(new Ranked(source.book(), source.catalogRank()));
+            }
+        }
+        if (chosen.access == Access.YEAR_INDEX) {
+            // Put the matches in catalog order so the stable sort keeps ties that way
+            matches.sort(Comparator.comparingLong(ranked -> ranked.rank));
+        }
+        for (Ranked ranked : matches) {
+            result.add(ranked.book);
+        }
+        SortUtil.Key key = query.getOrderBy();
+        if (key != null && !query.isDescending()) {
+            SortUtil.sort(result, key);
+        } else if (key != null) {
+            SortUtil.sort(result, SortUtil.comparator(key).reversed());
+        }
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    private Comparator<Ranked> order() {
+        Comparator<Ranked> byRank = Comparator.comparingLong(ranked -> ranked.rank);
+        SortUtil.Key key = query.getOrderBy();
+        if (key == null) {
+            return byRank;
+        }
+        Comparator<Book> byKey = SortUtil.comparator(key);
+        if (query.isDescending()) {
+            byKey = byKey.reversed();
+        }
+        Comparator<Book> books = byKey;
+        return Comparator.<Ranked, Book>comparing(ranked -> ranked.book, books).thenComparing(byRank);
+    }
+
+    /**
+     * A book and its rank in catalog order.
+     */
+    private static final class Ranked {
+        private final Book book;
+        private final long rank;
+
+        private Ranked(Book book, long rank) {
+            this.book = book;
+            this.rank = rank;
+        }
+    }
+
+    /**
+     * One access path and its estimated cost for a query.
+     */
+    private static final class Candidate {
+        private final Access access;
+        private final Query.Condition condition;
+        private final double rows;
+        private final boolean needsBuild;
+        private Ordering ordering;
+        private double cost;
+
+        private Candidate(Access access, Query.Condition condition, double rows, boolean needsBuild) {
+            this.access = access;
+            this.condition = condition;
+            this.rows = rows;
+            this.needsBuild = needsBuild;
+        }
+
+        /**
+         * Works out how this path applies the ordering and what it costs.
+         *
+         * @param matches Estimated books passing every condition
+         * @param n Books in the library
+         */
+        private void cost(Query query, double matches, int n) {
+            SortUtil.Key key = query.getOrderBy();
+            int limit = query.getLimit();
+            double comparison = key == SortUtil.Key.TITLE || key == SortUtil.Key.AUTHOR
+                    ? COLLATED_COMPARISON_COST : COMPARISON_COST;
+            double visits = access == Access.SCAN || access == Access.SORTED_VIEW ? rows : rows * INDEX_ROW_COST;
+            cost = needsBuild ? n * comparison + n * log2(n) * COMPARISON_COST : 0;
+            if (yieldsOrder(query)) {
+                ordering = Ordering.STREAM;
+                // Matches are assumed to be spread evenly along the path
+                cost += matches <= limit ? visits : visits * limit / matches;
+            } else if (limit != Integer.MAX_VALUE) {
+                ordering = Ordering.TOP_K;
+                // Every match is compared with the heap's head; the ones that
+                // enter it are sifted down
+                cost += visits + matches * comparison + Math.min(matches, limit) * log2(limit) * comparison;
+            } else {
+                ordering = Ordering.SORT;
+                // Sorting by title or author computes one collation key per book
+                cost += visits + matches * log2(matches) * COMPARISON_COST
+                        + (comparison == COMPARISON_COST ? 0 : matches * comparison);
+            }
+        }
+
+        private boolean yieldsOrder(Query query) {
+            SortUtil.Key key = query.getOrderBy();
+            return switch (access) {
+                case SORTED_VIEW -> true;
+                case YEAR_INDEX -> key == SortUtil.Key.YEAR && !query.isDescending();
+                default -> key == null;
+            };
+        }
+
+        private String describe(Query query) {
+            return switch (access) {
+                case SCAN -> access.label;
+                case SORTED_VIEW -> access.label + " by " + query.getOrderBy().name().toLowerCase(Locale.ROOT)
+                        + (needsBuild ? " (to be built)" : "");
+                default -> access.label + ": " + condition;
+            };
+        }
+
+        private static double log2(double x) {
+            return x <= 1 ? 1 : Math.log(x) / Math.log(2);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Bounded cache of query results, evicting the least recently used entries
+ * once the total weight of the cached results passes a limit.
+ *
+ * <p>Every entry is tagged with the version of the data it was computed
+ * from, and a lookup only returns an entry whose version equals the
+ * caller's current one; an older entry is dropped and recomputed. Callers
+ * must read the version before running the query, so a result is never
+ * older than its tag. Concurrent misses for the same key and version are
+ * coalesced: one caller runs the query and the others wait for its result.
+ *
+ * <p>Lookups take no lock: entries live in a {@link ConcurrentHashMap} and a
+ * hit only stamps its entry with the time. Recency is therefore approximate
+ * under concurrent use. When a put takes the total weight past the limit,
+ * the least recently stamped entries are evicted until it is down to 7/8
+ * of the limit, so the scan this takes is paid once per several misses.
+ *
+ * @param <V> The result type; cached results are shared between callers and
+ *        must not be modified
+ */
+public class ResultCache<V> {
+    private final int maxWeight;
+    private final ToIntFunction<V> weigher;
+
+    private final Map<String, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final AtomicLong weight = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final Map<String, Flight<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxWeight The largest total weight to keep; results weighing
+     *        more than this on their own are not cached
+     * @param weigher Gives a non-null result's weight, for example the number
+     *        of books in it; null results and weights below 1 count as 1
+     */
+    public ResultCache(int maxWeight, ToIntFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Returns the cached result for a key, computing and caching it if there
+     * is none for the current version.
+     *
+     * @param key The query
+     * @param version The current version of the data, read before this call
+     * @param query Computes the result; may return null
+     * @return The result
+     */
+    public V get(String key, long version, Supplier<V> query) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            if (entry.version == version) {
+                entry.accessed = System.nanoTime();
+                hits.increment();
+                return entry.value;
+            }
+            if (remove(key, entry)) {
+                invalidations.increment();
+            }
+        }
+        misses.increment();
+
+        Flight<V> flight = new Flight<>(version);
+        Flight<V> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            if (running.version == version) {
+                coalesced.increment();
+                return await(running);
+            }
+            // Another version is being computed; compute this one uncoalesced
+            flight = null;
+        }
+        try {
+            V value = query.get();
+            if (flight != null) {
+                flight.result.complete(value);
+            }
+            put(key, version, value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            if (flight != null) {
+                flight.result.completeExceptionally(e);
+            }
+            throw e;
+        } finally {
+            if (flight != null) {
+                inFlight.remove(key, flight);
+            }
+        }
+    }
+
+    /**
+     * Drops every entry.
+     */
+    public void clear() {
+        for (Map.Entry<String, Entry<V>> entry : entries.entrySet()) {
+            remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return The counters and occupancy at this moment
+     */
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), coalesced.sum(), evictions.sum(),
+                invalidations.sum(), entries.size(), weight.get(), maxWeight);
+    }
+
+    private void put(String key, long version, V value) {
+        int entryWeight = value == null ? 1 : Math.max(1, weigher.applyAsInt(value));
+        if (entryWeight > maxWeight) {
+            return;
+        }
+        Entry<V> added = new Entry<>(value, version, entryWeight);
+        entries.compute(key, (k, previous) -> {
+            if (previous != null) {
+                if (previous.version > version) {
+                    // A caller that read a newer version got here first
+                    return previous;
+                }
+                weight.addAndGet(-previous.weight);
+            }
+            weight.addAndGet(entryWeight);
+            return added;
+        });
+        if (weight.get() > maxWeight) {
+            evict();
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries until the weight is at most
+     * 7/8 of the limit. A put that finds another evicting leaves it to
+     * that one.
+     */
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            long target = maxWeight - maxWeight / 8;
+            if (weight.get() <= maxWeight) {
+                return;
+            }
+            // Hits keep restamping entries, so sort on a copy of the stamps
+            List<Candidate<V>> candidates = new ArrayList<>(entries.size());
+            entries.forEach((key, entry) -> candidates.add(new Candidate<>(key, entry, entry.accessed)));
+            candidates.sort(Comparator.comparingLong(candidate -> candidate.accessed));
+            for (Candidate<V> candidate : candidates) {
+                if (weight.get() <= target) {
+                    break;
+                }
+                if (remove(candidate.key, candidate.entry)) {
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private boolean remove(String key, Entry<V> entry) {
+        if (!entries.remove(key, entry)) {
+            return false;
+        }
+        weight.addAndGet(-entry.weight);
+        return true;
+    }
+
+    private static <V> V await(Flight<V> flight) {
+        try {
+            return flight.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long version;
+        private final int weight;
+        // Written without synchronization by every hit; a stale read only
+        // makes eviction less exact
+        private long accessed = System.nanoTime();
+
+        private Entry(V value, long version, int weight) {
+            this.value = value;
+            this.version = version;
+            this.weight = weight;
+        }
+    }
+
+    private static final class Candidate<V> {
+        private final String key;
+        private final Entry<V> entry;
+        private final long accessed;
+
+        private Candidate(String key, Entry<V> entry, long accessed) {
+            this.key = key;
+            this.entry = entry;
+            this.accessed = accessed;
+        }
+    }
+
+    private static final class Flight<V> {
+        private final long version;
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+
+        private Flight(long version) {
+            this.version = version;
+        }
+    }
+
+    /**
+     * A snapshot of a cache's counters.
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long coalesced;
+        private final long evictions;
+        private final long invalidations;
+        private final int size;
+        private final long weight;
+        private final int maxWeight;
+
+        private Stats(long hits, long misses, long coalesced, long evictions, long invalidations,
+                int size, long weight, int maxWeight) {
+            this.hits = hits;
+            this.misses = misses;
+            this.coalesced = coalesced;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.size = size;
+            this.weight = weight;
+            this.maxWeight = maxWeight;
+        }
+
+        /** @return Lookups answered from the cache */
+        public long getHits() { return hits; }
+
+        /** @return Lookups not answered from the cache, including coalesced ones */
+        public long getMisses() { return misses; }
+
+        /** @return Misses that waited for another caller's identical query */
+        public long getCoalesced() { return coalesced; }
+
+        /** @return Entries dropped to stay within the weight limit */
+        public long getEvictions() { return evictions; }
+
+        /** @return Entries dropped because the data changed since they were computed */
+        public long getInvalidations() { return invalidations; }
+
+        /** @return Entries currently cached */
+        public int getSize() { return size; }
+
+        /** @return Total weight currently cached */
+        public long getWeight() { return weight; }
+
+        /** @return The fraction of lookups answered from the cache */
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d hits, %d misses (%d coalesced), %.1f%% hit rate, %d evictions, "
+                            + "%d invalidations, %d entries weighing %d of %d",
+                    hits, misses, coalesced, getHitRate() * 100, evictions, invalidations, size, weight,
+                    maxWeight);
+        }
+    }
+}
@@ -0,0 +1,538 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A catalog partitioned by book ID across several {@link Library} shards, so
+ * that queries use more than one core and each shard is saved to its own
+ * snapshot file.
+ *
+ * <p>A book lives in the shard picked by the hash of its ID. Lookups,
+ * updates and deletes by ID go straight to that shard. Searches, range
+ * queries, top-k queries and sorted listings are scattered to every shard
+ * as fork/join tasks and the shard results gathered: sorted results with a
+ * k-way merge, the others by concatenation. Each shard keeps its own
+ * indexes, caches and lock, so writers to different shards do not contend.
+ *
+ * <p>Results that are not sorted by a key come shard by shard, and in the
+ * order books were added within a shard, rather than in one global order of
+ * addition. The shard count is fixed; {@link #rebalance} copies the books
+ * into a library with a different count.
+ */
+public class ShardedLibrary {
+    private static final Pattern SHARD_FILE = Pattern.compile("shard-(\\d+)-of-(\\d+)\\.ser");
+
+    private final Library[] shards;
+    private final Library.Storage storage;
+    private final ForkJoinPool pool;
+    private final AtomicReferenceArray<Merged> merged = new AtomicReferenceArray<>(SortUtil.Key.values().length);
+
+    /**
+     * Creates an empty sharded library of standard-storage shards that runs
+     * queries on the common fork/join pool.
+     *
+     * @param shardCount The number of shards
+     */
+    public ShardedLibrary(int shardCount) {
+        this(shardCount, Library.Storage.STANDARD, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an empty sharded library.
+     *
+     * @param shardCount The number of shards
+     * @param storage How each shard stores its books
+     * @param pool The pool to run shard queries on
+     * @throws IllegalArgumentException if the shard count is not positive
+     */
+    public ShardedLibrary(int shardCount, Library.Storage storage, ForkJoinPool pool) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        this.storage = storage;
+        this.pool = pool;
+        shards = new Library[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Library(storage);
+        }
+    }
+
+    /**
+     * @return The number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @param index The shard number, from 0
+     * @return The shard
+     */
+    public Library getShard(int index) {
+        return shards[index];
+    }
+
+    /**
+     * Returns the shard a book ID belongs in.
+     *
+     * @param id The book ID
+     * @return The shard number, from 0
+     */
+    public int shardOf(String id) {
+        return shardOf(id, shards.length);
+    }
+
+    /**
+     * @return The number of books in all shards
+     */
+    public int size() {
+        int size = 0;
+        for (Library shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    /**
+     * Adds a book to its shard.
+     *
+     * @param book The book to add
+     * @return true if added, false if it is null or its ID is already present
+     */
+    public boolean addBook(Book book) {
+        return book != null && shards[shardOf(book.getId())].addBook(book);
+    }
+
+    /**
+     * Adds books, splitting them by shard and adding each shard's share as
+     * one batch, the shards in parallel.
+     *
+     * @param books The books to add
+     * @return How many books were added
+     */
+    public int addAll(Collection<? extends Book> books) {
+        List<List<Book>> parts = partition(books, shards.length);
+        return scatter(shard -> shard.addAll(parts.get(indexOf(shard)))).stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Updates a book in its shard.
+     *
+     * @param id The ID of the book to update
+     * @param updatedBook The updated book information
+     * @return true if updated
+     */
+    public boolean updateBook(String id, Book updatedBook) {
+        return id != null && shards[shardOf(id)].updateBook(id, updatedBook);
+    }
+
+    /**
+     * Deletes a book from its shard.
+     *
+     * @param id The ID of the book to delete
+     * @return true if deleted
+     */
+    public boolean deleteBook(String id) {
+        return id != null && shards[shardOf(id)].deleteBook(id);
+    }
+
+    /**
+     * Looks a book up in its shard.
+     *
+     * @param id The book ID
+     * @return The book, if present
+     */
+    public Optional<Book> getBookById(String id) {
+        return id == null ? Optional.empty() : shards[shardOf(id)].getBookById(id);
+    }
+
+    /**
+     * Returns every book, shard by shard.
+     *
+     * @return A new list of the books
+     */
+    public List<Book> getBooks() {
+        return concat(scatter(Library::getBooks), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds the books whose title, author or year contains a keyword, like
+     * {@link Library#searchBooksByKeyword}, searching the shards in parallel.
+     *
+     * @param keyword The search term
+     * @return The matching books, shard by shard
+     */
+    public List<Book> searchBooksByKeyword(String keyword) {
+        return concat(scatter(shard -> shard.searchBooksByKeyword(keyword)), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds a book whose title or author equals the keyword, ignoring case.
+     * Exact lookups cost less than handing work to another thread, so the
+     * shards are asked in turn.
+     *
+     * @param keyword The search term
+     * @return The first match in shard order, or null if there is none
+     */
+    public Book searchBookByKeyword(String keyword) {
+        for (Library shard : shards) {
+            Book found = shard.searchBookByKeyword(keyword);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the books closest to a query, like
+     * {@link Library#searchBooksFuzzy}. Each shard returns its own best
+     * {@code k}, which are then ranked together.
+     *
+     * @param query The search terms
+     * @param k How many books to return at most
+     * @return The closest books, fewest edits first, shard order among equals
+     */
+    public List<Book> searchBooksFuzzy(String query, int k) {
+        List<List<Book>> results = scatter(shard -> shard.searchBooksFuzzy(query, k));
+        // Each shard's list is ranked by score already
+        return SortUtil.mergeSorted(results, Comparator.comparingInt(book -> FuzzyIndex.score(query, book)), k);
+    }
+
+    /**
+     * Finds the books published in a range of years, merging the shards'
+     * year-ordered results.
+     *
+     * @param from First year, inclusive
+     * @param to Last year, inclusive
+     * @return The matching books ordered by year
+     */
+    public List<Book> findByYearRange(int from, int to) {
+        return SortUtil.mergeSorted(scatter(shard -> shard.findByYearRange(from, to)),
+                SortUtil.comparator(SortUtil.Key.YEAR), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns every book sorted by a field: each shard sorts its own books,
+     * reusing its cached sorted view, and the sorted shards are merged. The
+     * merged list is kept until a shard changes.
+     *
+     * @param key The sort key
+     * @return An immutable sorted list
+     */
+    public List<Book> getSortedBooks(SortUtil.Key key) {
+        long[] versions = versions();
+        Merged cached = merged.get(key.ordinal());
+        if (cached != null && Arrays.equals(cached.versions, versions)) {
+            return cached.books;
+        }
+        List<Book> books = Collections.unmodifiableList(
+                SortUtil.mergeSorted(scatter(shard -> shard.getSortedBooks(key)), key, Integer.MAX_VALUE));
+        merged.set(key.ordinal(), new Merged(versions, books));
+        return books;
+    }
+
+    /**
+     * Returns every book sorted by a comparator.
+     *
+     * @param comparator The ordering
+     * @return A new sorted list
+     */
+    public List<Book> getSortedBooks(Comparator<Book> comparator) {
+        return SortUtil.mergeSorted(scatter(shard -> shard.getSortedBooks(comparator)), comparator,
+                Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the first {@code k} books in comparator order: the top
+     * {@code k} of each shard, merged.
+     *
+     * @param comparator The ordering
+     * @param k How many books to return
+     * @return At most {@code k} books, in comparator order
+     */
+    public List<Book> topK(Comparator<Book> comparator, int k) {
+        return SortUtil.mergeSorted(scatter(shard -> shard.topK(comparator, k)), comparator, k);
+    }
+
+    /**
+     * Returns the {@code k} newest or oldest books: the top {@code k} of
+     * each shard, merged.
+     *
+     * @param k How many books to return
+     * @param newestFirst true for the newest books, false for the oldest
+     * @return At most {@code k} books, ordered by year
+     */
+    public List<Book> topKByYear(int k, boolean newestFirst) {
+        Comparator<Book> byYear = SortUtil.comparator(SortUtil.Key.YEAR);
+        return SortUtil.mergeSorted(scatter(shard -> shard.topKByYear(k, newestFirst)),
+                newestFirst ? byYear.reversed() : byYear, k);
+    }
+
+    /**
+     * Copies the books into a new sharded library with a different number
+     * of shards. Every shard is split in parallel, and the new shards are
+     * then loaded in parallel; this library is left unchanged.
+     *
+     * @param shardCount The new number of shards
+     * @return The new library
+     */
+    public ShardedLibrary rebalance(int shardCount) {
+        ShardedLibrary target = new ShardedLibrary(shardCount, storage, pool);
+        target.setBooks(scatter(shard -> partition(shard.getBooks(), shardCount)));
+        return target;
+    }
+
+    /**
+     * Saves each shard to its own snapshot file in a directory, the shards
+     * in parallel. The files are named {@code shard-<i>-of-<n>.ser}; files
+     * of a different shard count left by earlier saves are removed once
+     * every shard has been written.
+     *
+     * @param dir The directory to save to
+     * @throws IOException if a shard cannot be written, with the failures of
+     *         any other shards suppressed in it, or an old file cannot be
+     *         removed
+     */
+    public void save(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        List<IOException> failures = scatter(shard -> {
+            try {
+                LibrarySnapshot.write(shard.getBooks(), dir.resolve(fileName(indexOf(shard), shards.length)));
+                return null;
+            } catch (IOException e) {
+                return e;
+            }
+        });
+        IOException failure = null;
+        for (IOException e : failures) {
+            if (failure == null) {
+                failure = e;
+            } else if (e != null) {
+                failure.addSuppressed(e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Matcher matcher = SHARD_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches() && Integer.parseInt(matcher.group(2)) != shards.length) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads a sharded library saved by {@link #save}, reading the shard
+     * files in parallel and rebalancing if they were saved with a different
+     * shard count.
+     *
+     * @param dir The directory the shards were saved to
+     * @param shardCount The number of shards wanted
+     * @param storage How each shard stores its books
+     * @param pool The pool to run shard queries on
+     * @return The library, or null if the directory holds no complete set
+     *         of shard files or one of them cannot be read
+     */
+    public static ShardedLibrary load(Path dir, int shardCount, Library.Storage storage, ForkJoinPool pool) {
+        int savedCount = savedShardCount(dir);
+        if (savedCount == 0) {
+            return null;
+        }
+        ShardedLibrary saved = new ShardedLibrary(savedCount, storage, pool);
+        List<List<Book>> loaded = saved.scatter(shard -> new LibrarySerializer().loadLibrary(
+                dir.resolve(fileName(saved.indexOf(shard), savedCount)).toString()));
+        if (loaded.contains(null)) {
+            return null;
+        }
+        if (savedCount == shardCount) {
+            saved.scatter(shard -> {
+                shard.setBooks(loaded.get(saved.indexOf(shard)));
+                return null;
+            });
+            return saved;
+        }
+        ShardedLibrary target = new ShardedLibrary(shardCount, storage, pool);
+        target.setBooks(saved.scatter(shard -> partition(loaded.get(saved.indexOf(shard)), shardCount)));
+        return target;
+    }
+
+    /**
+     * Replaces every shard's books. {@code parts.get(i).get(j)} holds the
+     * books for shard {@code j} taken from source {@code i}.
+     */
+    private void setBooks(List<List<List<Book>>> parts) {
+        scatter(shard -> {
+            int index = indexOf(shard);
+            List<Book> books = new ArrayList<>();
+            for (List<List<Book>> part : parts) {
+                books.addAll(part.get(index));
+            }
+            shard.setBooks(books);
+            return null;
+        });
+    }
+
+    /**
+     * Runs a query on every shard in parallel on the pool.
+     *
+     * @return The shards' results, in shard order
+     */
+    private <T> List<T> scatter(Function<Library, T> query) {
+        return pool.invoke(new Scatter<>(shards, query));
+    }
+
+    private long[] versions() {
+        long[] versions = new long[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            versions[i] = shards[i].getVersion();
+        }
+        return versions;
+    }
+
+    private int indexOf(Library shard) {
+        for (int i = 0; i < shards.length; i++) {
+            if (shards[i] == shard) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not a shard of this library");
+    }
+
+    private static int shardOf(String id, int shardCount) {
+        int hash = id.hashCode() * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), shardCount);
+    }
+
+    private static List<List<Book>> partition(Collection<? extends Book> books, int shardCount) {
+        List<List<Book>> parts = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            parts.add(new ArrayList<>(books.size() / shardCount + 1));
+        }
+        for (Book book : books) {
+            if (book != null) {
+                parts.get(shardOf(book.getId(), shardCount)).add(book);
+            }
+        }
+        return parts;
+    }
+
+    private static List<Book> concat(List<List<Book>> results, int limit) {
+        List<Book> all = new ArrayList<>();
+        for (List<Book> result : results) {
+            for (Book book : result) {
+                if (all.size() == limit) {
+                    return all;
+                }
+                all.add(book);
+            }
+        }
+        return all;
+    }
+
+    private static String fileName(int shard, int shardCount) {
+        return "shard-" + shard + "-of-" + shardCount + ".ser";
+    }
+
+    /**
+     * @return The largest shard count with a file for every shard in the
+     *         directory, or 0 if there is none
+     */
+    private static int savedShardCount(Path dir) {
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        int best = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Matcher matcher = SHARD_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    int count = Integer.parseInt(matcher.group(2));
+                    if (count > best && complete(dir, count)) {
+                        best = count;
+                    }
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error listing shard files: " + e.getMessage());
+            return 0;
+        }
+        return best;
+    }
+
+    private static boolean complete(Path dir, int shardCount) {
+        for (int i = 0; i < shardCount; i++) {
+            if (!Files.isRegularFile(dir.resolve(fileName(i, shardCount)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A merged sorted listing and the shard versions it was merged from.
+     */
+    private static final class Merged {
+        private final long[] versions;
+        private final List<Book> books;
+
+        private Merged(long[] versions, List<Book> books) {
+            this.versions = versions;
+            this.books = books;
+        }
+    }
+
+    /**
+     * Forks one task per shard and joins them in shard order.
+     */
+    private static final class Scatter<T> extends RecursiveTask<List<T>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Library[] shards;
+        private final Function<Library, T> query;
+
+        private Scatter(Library[] shards, Function<Library, T> query) {
+            this.shards = shards;
+            this.query = query;
+        }
+
+        @Override
+        protected List<T> compute() {
+            List<RecursiveTask<T>> tasks = new ArrayList<>(shards.length);
+            for (int i = 1; i < shards.length; i++) {
+                Library shard = shards[i];
+                RecursiveTask<T> task = new RecursiveTask<>() {
+                    @Override
+                    protected T compute() {
+                        return query.apply(shard);
+                    }
+                };
+                task.fork();
+                tasks.add(task);
+            }
+            List<T> results = new ArrayList<>(shards.length);
+            results.add(query.apply(shards[0]));
+            for (RecursiveTask<T> task : tasks) {
+                results.add(task.join());
+            }
+            return results;
+        }
+    }
+}
@@ -1,11 +1,304 @@
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+import java.util.function.IntToLongFunction;
+import java.util.stream.IntStream;
 
 /**
  * Utility class providing different sorting algorithms for Book collections.
+ *
+ * <p>{@link #sort(List, Key)} and {@link #sort(List, Comparator)} are the
+ * general-purpose entry points: they pick an algorithm from the input size
+ * and the kind of key. {@link #topK} and {@link #topKByYear} select the
+ * first few books of an ordering without sorting the rest. The classic
+ * algorithms below them are kept for comparison.
  */
 public class SortUtil {
+    /**
+     * Book fields the sort engine has specialized paths for.
+     */
+    public enum Key {
+        TITLE, AUTHOR, YEAR
+    }
+
+    private static final int INSERTION_THRESHOLD = 32;
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+    private static final int COLLATION_KEY_THRESHOLD = 64;
+    private static final int COUNTING_RANGE_LIMIT = 1 << 16;
+
+    private static final Metrics.Operation SORT_BY_KEY = Metrics.operation("SortUtil.sortByKey");
+    private static final Metrics.Operation SORT_BY_COMPARATOR = Metrics.operation("SortUtil.sortByComparator");
+    private static final Metrics.Operation TOP_K = Metrics.operation("SortUtil.topK");
+    private static final Metrics.Operation TOP_K_BY_YEAR = Metrics.operation("SortUtil.topKByYear");
+
+    /**
+     * Sorts books by one of their fields. Years are ordered numerically with
+     * a counting or radix sort; titles and authors are ordered for the
+     * default locale using precomputed collation keys. Books without a title
+     * or author sort first. The sort is stable.
+     *
+     * @param books List of books to sort
+     * @param key The field to sort by
+     */
+    public static void sort(List<Book> books, Key key) {
+        long start = Metrics.start();
+        switch (key) {
+            case YEAR -> sortByYear(books);
+            case TITLE -> sortByCollation(books, Book::getTitle, Collator.getInstance());
+            case AUTHOR -> sortByCollation(books, Book::getAuthor, Collator.getInstance());
+        }
+        SORT_BY_KEY.record(start, books.size());
+    }
+
+    /**
+     * Returns the order {@link #sort(List, Key)} sorts by, for comparing
+     * books one pair at a time.
+     *
+     * @param key The field to order by
+     * @return The comparator
+     */
+    public static Comparator<Book> comparator(Key key) {
+        return switch (key) {
+            case YEAR -> Comparator.comparingInt(Book::getPublicationYear);
+            case TITLE -> Comparator.comparing(book -> book.getTitle() == null ? "" : book.getTitle(),
+                    Collator.getInstance());
+            case AUTHOR -> Comparator.comparing(book -> book.getAuthor() == null ? "" : book.getAuthor(),
+                    Collator.getInstance());
+        };
+    }
+
+    /**
+     * Merges lists that are each sorted by a comparator into one sorted
+     * list, taking the next book from a min-heap of the lists' heads, so
+     * {@code n} books from {@code r} lists cost O(n log r) comparisons. Ties
+     * go to the earlier list, keeping the merge stable.
+     *
+     * @param runs The sorted lists
+     * @param comparator The order they are sorted by
+     * @param limit The most books to return
+     * @return A new list of the first {@code limit} books in comparator order
+     */
+    public static List<Book> mergeSorted(List<List<Book>> runs, Comparator<? super Book> comparator, int limit) {
+        return merge(runs, (run, index) -> runs.get(run).get(index), comparator, limit);
+    }
+
+    /**
+     * Merges lists that are each sorted by {@link #sort(List, Key)} into one
+     * list in the same order. Titles and authors are merged on collation
+     * keys rather than by running the collator on every comparison. A key
+     * is computed once per distinct value, the lists in parallel once they
+     * are large.
+     *
+     * @param runs The sorted lists
+     * @param key The key they are sorted by
+     * @param limit The most books to return
+     * @return A new list of the first {@code limit} books in key order
+     */
+    public static List<Book> mergeSorted(List<List<Book>> runs, Key key, int limit) {
+        if (key == Key.YEAR || nonEmpty(runs) <= 1) {
+            return mergeSorted(runs, comparator(key), limit);
+        }
+        Function<Book, String> field = key == Key.TITLE ? Book::getTitle : Book::getAuthor;
+        int total = 0;
+        for (List<Book> run : runs) {
+            total += run.size();
+        }
+        CollationKey[][] keys = new CollationKey[runs.size()][];
+        IntStream indices = IntStream.range(0, runs.size());
+        if (total >= PARALLEL_THRESHOLD) {
+            indices = indices.parallel();
+        }
+        Collator collator = Collator.getInstance();
+        Map<String, CollationKey> distinct = new ConcurrentHashMap<>();
+        indices.forEach(r -> {
+            Collator own = (Collator) collator.clone();
+            List<Book> run = runs.get(r);
+            // Only the first limit books of a run can be merged
+            keys[r] = new CollationKey[Math.min(run.size(), limit)];
+            for (int i = 0; i < keys[r].length; i++) {
+                String value = field.apply(run.get(i));
+                keys[r][i] = distinct.computeIfAbsent(value == null ? "" : value, own::getCollationKey);
+            }
+        });
+        return merge(runs, (run, index) -> keys[run][index], Comparator.naturalOrder(), limit);
+    }
+
+    private static <K> List<Book> merge(List<List<Book>> runs, RunKey<K> keyOf, Comparator<? super K> comparator,
+            int limit) {
+        int total = 0;
+        for (List<Book> run : runs) {
+            total += run.size();
+        }
+        List<Book> merged = new ArrayList<>(Math.min(total, limit));
+        if (nonEmpty(runs) <= 1) {
+            // Nothing to compare
+            for (List<Book> run : runs) {
+                merged.addAll(run.subList(0, Math.min(run.size(), limit)));
+            }
+            return merged;
+        }
+        PriorityQueue<Head<K>> heads = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> {
+            int c = comparator.compare(a.key, b.key);
+            return c != 0 ? c : Integer.compare(a.run, b.run);
+        });
+        for (int run = 0; run < runs.size(); run++) {
+            if (!runs.get(run).isEmpty() && limit > 0) {
+                heads.add(new Head<>(run, keyOf.get(run, 0)));
+            }
+        }
+        while (!heads.isEmpty() && merged.size() < limit) {
+            Head<K> head = heads.poll();
+            List<Book> run = runs.get(head.run);
+            merged.add(run.get(head.index));
+            if (++head.index < run.size() && merged.size() < limit) {
+                head.key = keyOf.get(head.run, head.index);
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+
+    private static int nonEmpty(List<List<Book>> runs) {
+        int count = 0;
+        for (List<Book> run : runs) {
+            if (!run.isEmpty()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stable comparison sort. Small lists use insertion sort, larger ones a
+     * merge sort that runs in parallel on the common fork/join pool once the
+     * list is big enough to pay for it. Runs that are already in order are
+     * detected and not merged again, so presorted input costs O(n).
+     *
+     * @param books List of books to sort
+     * @param comparator Comparator to determine ordering
+     */
+    public static void sort(List<Book> books, Comparator<Book> comparator) {
+        long start = Metrics.start();
+        Book[] array = books.toArray(new Book[0]);
+        mergeSort(array, comparator);
+        writeBack(books, array);
+        SORT_BY_COMPARATOR.record(start, array.length);
+    }
+
+    /**
+     * Stable sort by publication year. When the years span a small range a
+     * single counting pass places every book; otherwise an LSD radix sort
+     * over the bytes of the year is used, skipping bytes that are the same
+     * for every book.
+     *
+     * @param books List of books to sort
+     */
+    public static void sortByYear(List<Book> books) {
+        int n = books.size();
+        if (n < INSERTION_THRESHOLD) {
+            insertionSort(books, Comparator.comparingInt(Book::getPublicationYear));
+            return;
+        }
+        Book[] array = books.toArray(new Book[0]);
+        int[] keys = new int[n];
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            keys[i] = array[i].getPublicationYear();
+            min = Math.min(min, keys[i]);
+            max = Math.max(max, keys[i]);
+        }
+        long range = (long) max - min + 1;
+        Book[] sorted = new Book[n];
+        if (range <= Math.max(COUNTING_RANGE_LIMIT, n)) {
+            int[] counts = new int[(int) range + 1];
+            for (int key : keys) {
+                counts[key - min + 1]++;
+            }
+            for (int i = 1; i < counts.length; i++) {
+                counts[i] += counts[i - 1];
+            }
+            for (int i = 0; i < n; i++) {
+                sorted[counts[keys[i] - min]++] = array[i];
+            }
+        } else {
+            int[] sortedKeys = new int[n];
+            int[] counts = new int[257];
+            for (int shift = 0; shift < 32; shift += 8) {
+                Arrays.fill(counts, 0);
+                for (int key : keys) {
+                    counts[digit(key, shift) + 1]++;
+                }
+                if (counts[digit(keys[0], shift) + 1] == n) {
+                    continue;
+                }
+                for (int i = 1; i < counts.length; i++) {
+                    counts[i] += counts[i - 1];
+                }
+                for (int i = 0; i < n; i++) {
+                    int slot = counts[digit(keys[i], shift)]++;
+                    sorted[slot] = array[i];
+                    sortedKeys[slot] = keys[i];
+                }
+                Book[] swapBooks = array;
+                array = sorted;
+                sorted = swapBooks;
+                int[] swapKeys = keys;
+                keys = sortedKeys;
+                sortedKeys = swapKeys;
+            }
+            sorted = array;
+        }
+        writeBack(books, sorted);
+    }
+
+    /**
+     * Stable sort by a string field using a collator. For larger lists each
+     * book's collation key is computed once, in parallel for big inputs, and
+     * the keys are compared as bytes instead of running the collator on
+     * every comparison.
+     *
+     * @param books List of books to sort
+     * @param field The field to sort by
+     * @param collator The collator defining the order
+     */
+    public static void sortByCollation(List<Book> books, Function<Book, String> field, Collator collator) {
+        int n = books.size();
+        if (n < COLLATION_KEY_THRESHOLD) {
+            Comparator<Book> comparator = Comparator.comparing(
+                    book -> field.apply(book) == null ? "" : field.apply(book), collator);
+            insertionSort(books, comparator);
+            return;
+        }
+        Book[] array = books.toArray(new Book[0]);
+        Keyed[] keyed = new Keyed[n];
+        IntStream indices = IntStream.range(0, n);
+        if (n >= PARALLEL_THRESHOLD) {
+            indices = indices.parallel();
+        }
+        ThreadLocal<Collator> collators = ThreadLocal.withInitial(() -> (Collator) collator.clone());
+        indices.forEach(i -> {
+            String value = field.apply(array[i]);
+            keyed[i] = new Keyed(collators.get().getCollationKey(value == null ? "" : value), array[i]);
+        });
+        mergeSort(keyed, Comparator.comparing(k -> k.key));
+        for (int i = 0; i < n; i++) {
+            array[i] = keyed[i].book;
+        }
+        writeBack(books, array);
+    }
     /**
      * Bubble sort implementation for books.
      *
@@ -42,7 +335,10 @@ public class SortUtil {
     }
 
     /**
-     * Quick sort implementation for books.
+     * Quick sort implementation for books. The pivot is the median of the
+     * first, middle and last elements, and only the smaller partition is
+     * sorted recursively, so sorted input does not degrade to O(n²) and the
+     * recursion depth stays O(log n).
      *
      * @param books List of books to sort
      * @param comparator Comparator to determine ordering
@@ -50,17 +346,33 @@ public class SortUtil {
      * @param high Ending index
      */
     public static void quickSort(List<Book> books, Comparator<Book> comparator, int low, int high) {
-        if (low < high) {
+        while (low < high) {
             int pi = partition(books, comparator, low, high);
-            quickSort(books, comparator, low, pi - 1);
-            quickSort(books, comparator, pi + 1, high);
+            if (pi - low < high - pi) {
+                quickSort(books, comparator, low, pi - 1);
+                low = pi + 1;
+            } else {
+                quickSort(books, comparator, pi + 1, high);
+                high = pi - 1;
+            }
         }
     }
 
     /**
-     * Helper method for quickSort that partitions the list.
+     * Helper method for quickSort that partitions the list around the
+     * median of three, which it first moves to the end.
      */
     private static int partition(List<Book> books, Comparator<Book> comparator, int low, int high) {
+        int mid = (low + high) >>> 1;
+        if (comparator.compare(books.get(mid), books.get(low)) < 0) {
+            Collections.swap(books, mid, low);
+        }
+        if (comparator.compare(books.get(high), books.get(low)) < 0) {
+            Collections.swap(books, high, low);
+        }
+        if (comparator.compare(books.get(mid), books.get(high)) < 0) {
+            Collections.swap(books, mid, high);
+        }
         Book pivot = books.get(high);
         int i = low - 1;
         for (int j = low; j < high; j++) {
@@ -85,4 +397,429 @@ public class SortUtil {
                 .sorted(comparator)
                 .toList();
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the first {@code k} books in comparator order without sorting
+     * the rest. A bounded max-heap holds the best {@code k} books seen so
+     * far, so this takes O(n log k) time and O(k) extra space. Ties keep
+     * their input order. The input list is not modified.
+     *
+     * @param books Books to select from; should support fast random access
+     * @param comparator Ordering
+     * @param k How many books to return
+     * @param parallel Whether to split large inputs into segments that are
+     *        searched in parallel, each with its own heap, and then merged
+     * @return A new list of at most {@code k} books, in comparator order
+     */
+    public static List<Book> topK(List<Book> books, Comparator<? super Book> comparator, int k,
+                                  boolean parallel) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative");
+        }
+        long start = Metrics.start();
+        int n = books.size();
+        int limit = Math.min(k, n);
+        if (limit == 0) {
+            TOP_K.record(start, 0);
+            return new ArrayList<>();
+        }
+        IndexOrder order = (a, b) -> {
+            int c = comparator.compare(books.get(a), books.get(b));
+            return c != 0 ? c : Integer.compare(a, b);
+        };
+        int[] heap;
+        if (parallel && n >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            heap = ForkJoinPool.commonPool().invoke(new TopKTask(order, limit, 0, n, segmentSize(n)));
+        } else {
+            heap = selectTopK(order, limit, 0, n);
+        }
+        for (int end = heap.length - 1; end > 0; end--) {
+            int top = heap[0];
+            heap[0] = heap[end];
+            heap[end] = top;
+            siftDown(heap, end, order);
+        }
+        List<Book> result = new ArrayList<>(heap.length);
+        for (int index : heap) {
+            result.add(books.get(index));
+        }
+        TOP_K.record(start, n);
+        return result;
+    }
+
+    /**
+     * Returns the {@code k} oldest or newest books, like {@link #topK} but
+     * working on primitive keys: each candidate is a {@code long} holding
+     * the year in its upper half and the list index in its lower half, so
+     * no comparator is called and nothing is boxed. Ties keep their input
+     * order in both directions.
+     *
+     * @param books Books to select from; should support fast random access
+     * @param k How many books to return
+     * @param newestFirst true for the newest books, false for the oldest
+     * @param parallel Whether to search segments of large inputs in parallel
+     * @return A new list of at most {@code k} books
+     */
+    public static List<Book> topKByYear(List<Book> books, int k, boolean newestFirst, boolean parallel) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative");
+        }
+        long start = Metrics.start();
+        int n = books.size();
+        int limit = Math.min(k, n);
+        if (limit == 0) {
+            TOP_K_BY_YEAR.record(start, 0);
+            return new ArrayList<>();
+        }
+        IntToLongFunction keyOf = index -> {
+            int year = books.get(index).getPublicationYear();
+            return ((long) (newestFirst ? ~year : year) << 32) | index;
+        };
+        long[] heap;
+        if (parallel && n >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            heap = ForkJoinPool.commonPool().invoke(new YearTopKTask(keyOf, limit, 0, n, segmentSize(n)));
+        } else {
+            heap = selectTopK(keyOf, limit, 0, n);
+        }
+        Arrays.sort(heap);
+        List<Book> result = new ArrayList<>(heap.length);
+        for (long key : heap) {
+            result.add(books.get((int) key));
+        }
+        TOP_K_BY_YEAR.record(start, n);
+        return result;
+    }
+
+    private static int segmentSize(int n) {
+        return Math.max(PARALLEL_THRESHOLD, n / (ForkJoinPool.getCommonPoolParallelism() * 4));
+    }
+
+    /**
+     * Selects the best {@code k} indexes in {@code [from, to)} into a
+     * max-heap whose root is the worst of them.
+     */
+    private static int[] selectTopK(IndexOrder order, int k, int from, int to) {
+        int[] heap = new int[Math.min(k, to - from)];
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            size = offer(heap, size, i, order);
+        }
+        return heap;
+    }
+
+    private static int offer(int[] heap, int size, int candidate, IndexOrder order) {
+        if (size < heap.length) {
+            int child = size;
+            while (child > 0) {
+                int parent = (child - 1) >>> 1;
+                if (order.compare(heap[parent], candidate) >= 0) {
+                    break;
+                }
+                heap[child] = heap[parent];
+                child = parent;
+            }
+            heap[child] = candidate;
+            return size + 1;
+        }
+        if (order.compare(candidate, heap[0]) < 0) {
+            heap[0] = candidate;
+            siftDown(heap, size, order);
+        }
+        return size;
+    }
+
+    private static void siftDown(int[] heap, int size, IndexOrder order) {
+        int value = heap[0];
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && order.compare(heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+            if (order.compare(heap[child], value) <= 0) {
+                break;
+            }
+            heap[parent] = heap[child];
+            parent = child;
+        }
+        heap[parent] = value;
+    }
+
+    private static long[] selectTopK(IntToLongFunction keyOf, int k, int from, int to) {
+        long[] heap = new long[Math.min(k, to - from)];
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            size = offer(heap, size, keyOf.applyAsLong(i));
+        }
+        return heap;
+    }
+
+    private static int offer(long[] heap, int size, long candidate) {
+        if (size < heap.length) {
+            int child = size;
+            while (child > 0) {
+                int parent = (child - 1) >>> 1;
+                if (heap[parent] >= candidate) {
+                    break;
+                }
+                heap[child] = heap[parent];
+                child = parent;
+            }
+            heap[child] = candidate;
+            return size + 1;
+        }
+        if (candidate < heap[0]) {
+            heap[0] = candidate;
+            int parent = 0;
+            while (true) {
+                int child = 2 * parent + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] > heap[child]) {
+                    child++;
+                }
+                if (heap[child] <= candidate) {
+                    break;
+                }
+                heap[parent] = heap[child];
+                parent = child;
+            }
+            heap[parent] = candidate;
+        }
+        return size;
+    }
+
+    private static int digit(int key, int shift) {
+        return ((key ^ Integer.MIN_VALUE) >>> shift) & 0xFF;
+    }
+
+    private static void writeBack(List<Book> books, Book[] sorted) {
+        ListIterator<Book> it = books.listIterator();
+        for (Book book : sorted) {
+            it.next();
+            it.set(book);
+        }
+    }
+
+    private static <T> void mergeSort(T[] array, Comparator<? super T> comparator) {
+        int n = array.length;
+        if (n < INSERTION_THRESHOLD) {
+            insertionSort(array, 0, n, comparator);
+            return;
+        }
+        T[] buffer = array.clone();
+        if (n >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            ForkJoinPool.commonPool().invoke(new MergeTask<>(buffer, array, 0, n, comparator));
+        } else {
+            mergeSort(buffer, array, 0, n, comparator);
+        }
+    }
+
+    /**
+     * Sorts {@code dst[low, high)}, using {@code src} as scratch space. Both
+     * ranges must hold the same elements on entry.
+     */
+    private static <T> void mergeSort(T[] src, T[] dst, int low, int high, Comparator<? super T> comparator) {
+        if (high - low < INSERTION_THRESHOLD) {
+            insertionSort(dst, low, high, comparator);
+            return;
+        }
+        int mid = (low + high) >>> 1;
+        mergeSort(dst, src, low, mid, comparator);
+        mergeSort(dst, src, mid, high, comparator);
+        merge(src, dst, low, mid, high, comparator);
+    }
+
+    /**
+     * Merges the sorted runs {@code src[low, mid)} and {@code src[mid, high)}
+     * into {@code dst}, copying straight across when they are already in
+     * order.
+     */
+    private static <T> void merge(T[] src, T[] dst, int low, int mid, int high, Comparator<? super T> comparator) {
+        if (comparator.compare(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, low, dst, low, high - low);
+            return;
+        }
+        int i = low;
+        int j = mid;
+        for (int k = low; k < high; k++) {
+            if (j >= high || i < mid && comparator.compare(src[i], src[j]) <= 0) {
+                dst[k] = src[i++];
+            } else {
+                dst[k] = src[j++];
+            }
+        }
+    }
+
+    private static <T> void insertionSort(T[] array, int low, int high, Comparator<? super T> comparator) {
+        for (int i = low + 1; i < high; i++) {
+            T key = array[i];
+            int j = i - 1;
+            while (j >= low && comparator.compare(array[j], key) > 0) {
+                array[j + 1] = array[j];
+                j--;
+            }
+            array[j + 1] = key;
+        }
+    }
+
+    /**
+     * Fork/join merge sort step: sorts the two halves in parallel until they
+     * drop below the parallel threshold, then merges them.
+     */
+    private static final class MergeTask<T> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final T[] src;
+        private final T[] dst;
+        private final int low;
+        private final int high;
+        private final Comparator<? super T> comparator;
+
+        MergeTask(T[] src, T[] dst, int low, int high, Comparator<? super T> comparator) {
+            this.src = src;
+            this.dst = dst;
+            this.low = low;
+            this.high = high;
+            this.comparator = comparator;
+        }
+
+        @Override
+        protected void compute() {
+            if (high - low < PARALLEL_THRESHOLD) {
+                mergeSort(src, dst, low, high, comparator);
+                return;
+            }
+            int mid = (low + high) >>> 1;
+            invokeAll(new MergeTask<>(dst, src, low, mid, comparator),
+                    new MergeTask<>(dst, src, mid, high, comparator));
+            merge(src, dst, low, mid, high, comparator);
+        }
+    }
+
+    /**
+     * Total order on list indexes: by the caller's comparator, then by index.
+     */
+    @FunctionalInterface
+    private interface IndexOrder {
+        int compare(int a, int b);
+    }
+
+    /**
+     * Fork/join top-k step: splits the range until segments are small enough,
+     * selects each segment's best k into its own heap, and merges pairs of
+     * heaps by offering one to the other.
+     */
+    private static final class TopKTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final IndexOrder order;
+        private final int k;
+        private final int from;
+        private final int to;
+        private final int segment;
+
+        TopKTask(IndexOrder order, int k, int from, int to, int segment) {
+            this.order = order;
+            this.k = k;
+            this.from = from;
+            this.to = to;
+            this.segment = segment;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from <= segment) {
+                return selectTopK(order, k, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            TopKTask right = new TopKTask(order, k, mid, to, segment);
+            right.fork();
+            int[] left = new TopKTask(order, k, from, mid, segment).compute();
+            int[] other = right.join();
+            int[] heap = Arrays.copyOf(left, Math.min(k, left.length + other.length));
+            int size = left.length;
+            for (int candidate : other) {
+                size = offer(heap, size, candidate, order);
+            }
+            return heap;
+        }
+    }
+
+    /**
+     * {@link TopKTask} over primitive year keys.
+     */
+    private static final class YearTopKTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final IntToLongFunction keyOf;
+        private final int k;
+        private final int from;
+        private final int to;
+        private final int segment;
+
+        YearTopKTask(IntToLongFunction keyOf, int k, int from, int to, int segment) {
+            this.keyOf = keyOf;
+            this.k = k;
+            this.from = from;
+            this.to = to;
+            this.segment = segment;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= segment) {
+                return selectTopK(keyOf, k, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            YearTopKTask right = new YearTopKTask(keyOf, k, mid, to, segment);
+            right.fork();
+            long[] left = new YearTopKTask(keyOf, k, from, mid, segment).compute();
+            long[] other = right.join();
+            long[] heap = Arrays.copyOf(left, Math.min(k, left.length + other.length));
+            int size = left.length;
+            for (long candidate : other) {
+                size = offer(heap, size, candidate);
+            }
+            return heap;
+        }
+    }
+
+    /**
+     * Gives the merge key of a book in one of the sorted lists of a merge.
+     */
+    private interface RunKey<K> {
+        K get(int run, int index);
+    }
+
+    /**
+     * The next book of one sorted list in a merge, with its merge key.
+     */
+    private static final class Head<K> {
+        private final int run;
+        private int index;
+        private K key;
+
+        Head(int run, K key) {
+            this.run = run;
+            this.key = key;
+        }
+    }
+
+    /**
+     * A book paired with the collation key of the field being sorted on.
+     */
+    private static final class Keyed {
+        private final CollationKey key;
+        private final Book book;
+
+        Keyed(CollationKey key, Book book) {
+            this.key = key;
+            this.book = book;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only dictionary that gives each distinct string a dense
+ * {@code int} code, so that many records sharing a value, such as the books
+ * of one author, can store four bytes each and share a single copy of the
+ * string.
+ *
+ * <p>{@link #encode} is synchronized. {@link #decode} never locks: codes are
+ * only handed out after their string is stored, and the table is replaced
+ * rather than resized in place, so any code a reader holds decodes from
+ * whichever table it sees.
+ */
+public class StringDictionary {
+    private final Map<String, Integer> codes = new HashMap<>();
+    private volatile String[] values = new String[64];
+    private int size;
+
+    /**
+     * Returns the code for a string, assigning the next free code the first
+     * time the string is seen. Codes are never reused.
+     *
+     * @param value The string, not null
+     * @return Its code
+     */
+    public synchronized int encode(String value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        String[] table = values;
+        if (size == table.length) {
+            table = Arrays.copyOf(table, size * 2);
+        }
+        table[size] = value;
+        values = table;
+        codes.put(value, size);
+        return size++;
+    }
+
+    /**
+     * @param code A code returned by {@link #encode}
+     * @return The string the code stands for
+     */
+    public String decode(int code) {
+        return values[code];
+    }
+
+    /**
+     * @return The number of distinct strings encoded so far
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,323 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted trigram index over the case-folded title, author and publication
+ * year of each book. Substring queries of three or more characters are
+ * answered by intersecting the posting lists of the query's trigrams and
+ * verifying the surviving candidates, instead of scanning every book.
+ *
+ * <p>Writes must be serialized by the caller. The lookups only read and
+ * tolerate running concurrently with a write, though it may then return a
+ * wrong answer or throw, which optimistic readers detect and retry.
+ */
+public class TrigramIndex {
+    private static final int GRAM = 3;
+    private static final char SEPARATOR = '\n';
+
+    private final Map<Book, Integer> docIds = new HashMap<>();
+    private final List<Book> docs = new ArrayList<>();
+    private final List<String> texts = new ArrayList<>();
+    private final Map<Long, PostingList> postings = new ConcurrentHashMap<>();
+    private int deadDocs;
+
+    /**
+     * Indexes a book. Books are numbered in the order they are added, and
+     * search results are returned in that order.
+     *
+     * @param book The book to index
+     */
+    public void add(Book book) {
+        if (docIds.containsKey(book)) {
+            update(book);
+            return;
+        }
+        int docId = docs.size();
+        String text = fold(book);
+        docIds.put(book, docId);
+        docs.add(book);
+        texts.add(text);
+        forEachGram(text, gram -> postings.computeIfAbsent(gram, g -> new PostingList()).add(docId));
+    }
+
+    /**
+     * Re-indexes a book after its title, author or year has changed. The book
+     * keeps its position in the result order, and may be a new instance with
+     * the same ID, which then replaces the indexed one.
+     *
+     * @param book The book whose fields were modified
+     */
+    public void update(Book book) {
+        Integer docId = docIds.get(book);
+        if (docId == null) {
+            add(book);
+            return;
+        }
+        if (docs.get(docId) != book) {
+            docIds.remove(book);
+            docIds.put(book, docId);
+            docs.set(docId, book);
+        }
+        String oldText = texts.get(docId);
+        String newText = fold(book);
+        if (oldText.equals(newText)) {
+            return;
+        }
+        unindex(oldText, docId);
+        texts.set(docId, newText);
+        forEachGram(newText, gram -> postings.computeIfAbsent(gram, g -> new PostingList()).add(docId));
+    }
+
+    /**
+     * Removes a book from the index.
+     *
+     * @param book The book to remove
+     */
+    public void remove(Book book) {
+        Integer docId = docIds.remove(book);
+        if (docId == null) {
+            return;
+        }
+        unindex(texts.get(docId), docId);
+        docs.set(docId, null);
+        texts.set(docId, null);
+        deadDocs++;
+        if (deadDocs > 1024 && deadDocs > docs.size() / 2) {
+            renumber();
+        }
+    }
+
+    /**
+     * Removes every book from the index.
+     */
+    public void clear() {
+        docIds.clear();
+        docs.clear();
+        texts.clear();
+        postings.clear();
+        deadDocs = 0;
+    }
+
+    /**
+     * Finds books whose case-folded title, author or year contains the
+     * keyword.
+     *
+     * @param lowerKeyword The keyword, already lower-cased
+     * @return Matching books in index order, or null if the keyword is too
+     *         short to be answered from the index
+     */
+    public List<Book> search(String lowerKeyword) {
+        Iterator<Book> matches = matches(lowerKeyword);
+        if (matches == null) {
+            return null;
+        }
+        List<Book> results = new ArrayList<>();
+        matches.forEachRemaining(results::add);
+        return results;
+    }
+
+    /**
+     * Finds books whose case-folded title, author or year contains the
+     * keyword, lazily: each call to {@code next} verifies candidates only
+     * until it finds the next match. The iterator reads the index as it goes,
+     * so it must be used up before the next write.
+     *
+     * @param lowerKeyword The keyword, already lower-cased
+     * @return Matching books in index order, or null if the keyword is too
+     *         short to be answered from the index
+     */
+    public Iterator<Book> matches(String lowerKeyword) {
+        List<PostingList> lists = postingLists(lowerKeyword);
+        if (lists == null) {
+            return null;
+        }
+        return new Iterator<>() {
+            private int next;
+            private Book match = advance();
+
+            private Book advance() {
+                if (lists.isEmpty()) {
+                    return null;
+                }
+                PostingList smallest = lists.get(0);
+                candidates:
+                while (next < smallest.size) {
+                    int docId = smallest.ids[next++];
+                    for (int j = 1; j < lists.size(); j++) {
+                        if (!lists.get(j).contains(docId)) {
+                            continue candidates;
+                        }
+                    }
+                    if (texts.get(docId).contains(lowerKeyword)) {
+                        return docs.get(docId);
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return match != null;
+            }
+
+            @Override
+            public Book next() {
+                if (match == null) {
+                    throw new NoSuchElementException();
+                }
+                Book book = match;
+                match = advance();
+                return book;
+            }
+        };
+    }
+
+    /**
+     * Bounds the number of books containing a keyword by the length of its
+     * rarest trigram's posting list, without verifying any candidate.
+     *
+     * @param lowerKeyword The keyword, already lower-cased
+     * @return An upper bound on the matches, or -1 if the keyword is too
+     *         short to be answered from the index
+     */
+    public int estimate(String lowerKeyword) {
+        List<PostingList> lists = postingLists(lowerKeyword);
+        if (lists == null) {
+            return -1;
+        }
+        return lists.isEmpty() ? 0 : lists.get(0).size;
+    }
+
+    /**
+     * Looks up the posting lists of a keyword's trigrams, shortest first.
+     *
+     * @return The lists, empty if some trigram occurs nowhere, or null if the
+     *         keyword cannot be answered from the index
+     */
+    private List<PostingList> postingLists(String lowerKeyword) {
+        if (lowerKeyword.length() < GRAM || lowerKeyword.indexOf(SEPARATOR) >= 0) {
+            return null;
+        }
+        List<PostingList> lists = new ArrayList<>();
+        for (int i = 0; i + GRAM <= lowerKeyword.length(); i++) {
+            PostingList list = postings.get(gramAt(lowerKeyword, i));
+            if (list == null) {
+                return new ArrayList<>();
+            }
+            lists.add(list);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        return lists;
+    }
+
+    /**
+     * @return The number of books currently indexed
+     */
+    public int size() {
+        return docIds.size();
+    }
+
+    private void unindex(String text, int docId) {
+        forEachGram(text, gram -> {
+            PostingList list = postings.get(gram);
+            if (list != null) {
+                list.remove(docId);
+                if (list.size == 0) {
+                    postings.remove(gram);
+                }
+            }
+        });
+    }
+
+    /**
+     * Compacts document numbers once more than half of them belong to
+     * removed books, preserving the relative order of the live ones.
+     */
+    private void renumber() {
+        List<Book> live = new ArrayList<>(docIds.size());
+        for (Book book : docs) {
+            if (book != null) {
+                live.add(book);
+            }
+        }
+        clear();
+        for (Book book : live) {
+            add(book);
+        }
+    }
+
+    private static String fold(Book book) {
+        return lower(book.getTitle()) + SEPARATOR + lower(book.getAuthor()) + SEPARATOR
+                + book.getPublicationYear();
+    }
+
+    private static String lower(String value) {
+        return value == null ? "" : value.toLowerCase();
+    }
+
+    private static long gramAt(String text, int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+
+    private static void forEachGram(String text, GramConsumer consumer) {
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            if (text.charAt(i) == SEPARATOR || text.charAt(i + 1) == SEPARATOR
+                    || text.charAt(i + 2) == SEPARATOR) {
+                continue;
+            }
+            consumer.accept(gramAt(text, i));
+        }
+    }
+
+    @FunctionalInterface
+    private interface GramConsumer {
+        void accept(long gram);
+    }
+
+    /**
+     * Sorted, duplicate-free list of document numbers.
+     */
+    private static final class PostingList {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int docId) {
+            if (size > 0 && ids[size - 1] >= docId) {
+                int pos = Arrays.binarySearch(ids, 0, size, docId);
+                if (pos >= 0) {
+                    return;
+                }
+                insertAt(-pos - 1, docId);
+                return;
+            }
+            insertAt(size, docId);
+        }
+
+        void remove(int docId) {
+            int pos = Arrays.binarySearch(ids, 0, size, docId);
+            if (pos >= 0) {
+                System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+                size--;
+            }
+        }
+
+        boolean contains(int docId) {
+            return Arrays.binarySearch(ids, 0, size, docId) >= 0;
+        }
+
+        private void insertAt(int pos, int docId) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = docId;
+            size++;
+        }
+    }
+}
@@ -1,27 +1,37 @@
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-
 /**
- * Logs user interactions with the library system.
+ * Logs user interactions with the library system. Messages are handed to an
+ * {@link AsyncLogWriter}, so logging never waits on file I/O.
  */
 public class UserInteractionLogger {
-    private static final String LOG_FILE = "src/resources/data/user_interactions.log";
-    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    static final String LOG_FILE = "src/resources/data/user_interactions.log";
+    private static AsyncLogWriter sharedWriter;
+
+    private final AsyncLogWriter writer;
 
     /**
-     * Constructor that ensures the log directory exists.
+     * Constructor that logs to the shared interaction log file. The writer
+     * behind it is created on first use and flushed when the JVM exits.
      */
     public UserInteractionLogger() {
-        File logFile = new File(LOG_FILE);
-        if (!logFile.exists()) {
-            File parentDir = logFile.getParentFile();
-            if (parentDir != null && !parentDir.exists()) {
-                parentDir.mkdirs();
-            }
+        this(sharedWriter());
+    }
+
+    /**
+     * Constructor that logs through the given writer.
+     *
+     * @param writer The writer to hand messages to
+     */
+    public UserInteractionLogger(AsyncLogWriter writer) {
+        this.writer = writer;
+    }
+
+    private static synchronized AsyncLogWriter sharedWriter() {
+        if (sharedWriter == null) {
+            AsyncLogWriter writer = new AsyncLogWriter(LOG_FILE);
+            Runtime.getRuntime().addShutdownHook(new Thread(writer::close, "log-writer-shutdown"));
+            sharedWriter = writer;
         }
+        return sharedWriter;
     }
 
     /**
@@ -104,17 +114,31 @@ public class UserInteractionLogger {
     }
 
     /**
-     * Logs a message with timestamp.
+     * Logs a batch operation as a single entry.
+     *
+     * @param action What the batch did, such as "delete"
+     * @param requested How many books the batch named or matched
+     * @param applied How many of them were changed
+     */
+    public void logBatch(String action, int requested, int applied) {
+        log("Batch " + action + " action: " + applied + " of " + requested + " books");
+    }
+
+    /**
+     * Logs a message with timestamp. The timestamp is taken now; formatting
+     * and writing happen on the writer thread.
      * Changed from private to public for testing access
      *
      * @param message The message to log
      */
     public void log(String message) {
-        try (FileWriter writer = new FileWriter(LOG_FILE, true)) {
-            String timestamp = LocalDateTime.now().format(formatter);
-            writer.write(timestamp + " - " + message + "\n");
-        } catch (IOException e) {
-            System.err.println("Error writing to log file: " + e.getMessage());
-        }
+        writer.enqueue(message);
+    }
+
+    /**
+     * Waits until every message logged so far has been written.
+     */
+    public void flush() {
+        writer.flush();
     }
 }
\ No newline at end of file
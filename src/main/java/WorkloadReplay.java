@@ -0,0 +1,545 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays the operations recorded by {@link UserInteractionLogger} against a
+ * library to reproduce production load, measuring throughput and latency
+ * per kind of operation.
+ *
+ * <p>Operations come from {@link #parse parsing} an interaction log, or
+ * from a {@link #synthetic synthetic} generator drawing from the catalog
+ * with the mix of kinds a log shows. {@link #run} issues them in order at a
+ * fixed rate, each on its own virtual thread when the runtime has them and
+ * on a pool of {@code concurrency} threads otherwise, with at most
+ * {@code concurrency} in flight. Latency is measured from when an operation
+ * was due rather than when it started, so time spent waiting behind a
+ * saturated library counts against it instead of silently lowering the
+ * offered load.
+ */
+public class WorkloadReplay {
+    /**
+     * The kinds of operation the interaction log records.
+     */
+    public enum Kind {
+        SEARCH("Search"),
+        SORT("Sort"),
+        VIEW("View all"),
+        ADD("Add"),
+        UPDATE("Update"),
+        DELETE("Delete"),
+        BATCH_ADD("Batch add"),
+        BATCH_UPDATE("Batch update"),
+        BATCH_DELETE("Batch delete");
+
+        private final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+
+        /** @return The name shown in reports */
+        public String getLabel() { return label; }
+    }
+
+    /**
+     * A read-heavy mix for when there is no log to take one from. Adds and
+     * deletes balance, so the catalog keeps its size over a long run.
+     */
+    public static final Map<Kind, Long> DEFAULT_MIX = Collections.unmodifiableMap(new EnumMap<>(Map.of(
+            Kind.SEARCH, 60L, Kind.SORT, 10L, Kind.VIEW, 10L, Kind.ADD, 7L, Kind.UPDATE, 6L, Kind.DELETE, 7L)));
+
+    // What LibraryMenu shows per page and offers when a search has no exact match
+    private static final int PAGE_SIZE = 50;
+    private static final int FUZZY_RESULTS = 10;
+    private static final int SYNTHETIC_BATCH_SIZE = 100;
+    private static final String REPLAY_AUTHOR = "Replay";
+    private static final int REPLAY_YEAR = 2000;
+    private static final int TIMESTAMP_LENGTH = "yyyy-MM-dd HH:mm:ss - ".length();
+
+    private final Library library;
+    private final double rate;
+    private final int concurrency;
+
+    /**
+     * Creates a replay that issues operations as fast as {@code concurrency}
+     * callers can.
+     *
+     * @param library The library to run the operations against
+     * @param concurrency How many operations may run at once
+     */
+    public WorkloadReplay(Library library, int concurrency) {
+        this(library, 0, concurrency);
+    }
+
+    /**
+     * Creates a replay.
+     *
+     * @param library The library to run the operations against
+     * @param rate Operations to start per second, or 0 to start each as soon
+     *        as one of the {@code concurrency} slots is free
+     * @param concurrency How many operations may run at once
+     */
+    public WorkloadReplay(Library library, double rate, int concurrency) {
+        if (!(rate >= 0) || Double.isInfinite(rate)) {
+            throw new IllegalArgumentException("rate must be a finite number of at least 0: " + rate);
+        }
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1: " + concurrency);
+        }
+        this.library = library;
+        this.rate = rate;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Reads the operations from an interaction log. Lines that do not
+     * record a replayable operation are skipped, as are malformed bytes.
+     *
+     * @param log The log file
+     * @return The operations in the order they were logged
+     * @throws IOException If the file cannot be read
+     */
+    public static List<Operation> parse(Path log) throws IOException {
+        List<Operation> operations = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(log),
+                StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Operation operation = Operation.parse(line);
+                if (operation != null) {
+                    operations.add(operation);
+                }
+            }
+        }
+        return operations;
+    }
+
+    /**
+     * Counts the operations of each kind.
+     *
+     * @param operations The operations, such as those of a parsed log
+     * @return How many there are of each kind, leaving out kinds with none
+     */
+    public static Map<Kind, Long> mix(List<Operation> operations) {
+        Map<Kind, Long> mix = new EnumMap<>(Kind.class);
+        for (Operation operation : operations) {
+            mix.merge(operation.kind, 1L, Long::sum);
+        }
+        return mix;
+    }
+
+    /**
+     * Generates operations in the proportions of a mix. Searches look for
+     * the title or author of a catalog book, one in ten misspelled so that
+     * it falls through to the fuzzy search as a user's typo would; updates
+     * and deletes name catalog books by title; batches hold 100 books.
+     *
+     * @param mix The relative weight of each kind, such as {@link #mix} of
+     *        a parsed log or {@link #DEFAULT_MIX}
+     * @param catalog The books to draw arguments from
+     * @param count How many operations to generate
+     * @param seed The random seed, so a run can be repeated
+     * @return The operations
+     */
+    public static List<Operation> synthetic(Map<Kind, Long> mix, List<Book> catalog, int count, long seed) {
+        List<Kind> kinds = new ArrayList<>();
+        List<Long> cumulative = new ArrayList<>();
+        long total = 0;
+        for (Map.Entry<Kind, Long> entry : mix.entrySet()) {
+            if (entry.getValue() < 0) {
+                throw new IllegalArgumentException("negative weight for " + entry.getKey());
+            }
+            if (entry.getValue() > 0) {
+                total += entry.getValue();
+                kinds.add(entry.getKey());
+                cumulative.add(total);
+            }
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("mix has no operations");
+        }
+
+        Random random = new Random(seed);
+        List<Operation> operations = new ArrayList<>(count);
+        String[] sorts = {"Title", "Author", "Publication Year"};
+        for (int i = 0; i < count; i++) {
+            long pick = (long) (random.nextDouble() * total);
+            int k = 0;
+            while (cumulative.get(k) <= pick) {
+                k++;
+            }
+            Kind kind = kinds.get(k);
+            Book book = catalog.isEmpty() ? null : catalog.get(random.nextInt(catalog.size()));
+            String title = book == null ? "Replay " + i : book.getTitle();
+            String argument = switch (kind) {
+                case SEARCH -> {
+                    String term = book == null || random.nextBoolean() ? title : book.getAuthor();
+                    yield term.length() > 3 && random.nextInt(10) == 0
+                            ? term.substring(0, term.length() / 2) + term.substring(term.length() / 2 + 1)
+                            : term;
+                }
+                case SORT -> sorts[random.nextInt(sorts.length)];
+                case VIEW -> "";
+                case ADD, BATCH_ADD -> "Replay " + i;
+                default -> title;
+            };
+            int size = switch (kind) {
+                case BATCH_ADD, BATCH_UPDATE, BATCH_DELETE -> SYNTHETIC_BATCH_SIZE;
+                default -> 1;
+            };
+            operations.add(new Operation(kind, argument, size));
+        }
+        return operations;
+    }
+
+    /**
+     * Runs the operations in order and waits for the last to finish.
+     * Failures are counted per kind and do not stop the run.
+     *
+     * @param operations The operations
+     * @return Throughput and latencies
+     * @throws InterruptedException If interrupted while waiting; operations
+     *         already started are left to finish on their own
+     */
+    public Result run(List<Operation> operations) throws InterruptedException {
+        // Updates and deletes that name no book in the library pick one from
+        // this snapshot instead, so a log replays against any catalog
+        List<Book> catalog = library.getBooks();
+        Map<Kind, Stats> stats = new EnumMap<>(Kind.class);
+        for (Kind kind : Kind.values()) {
+            stats.put(kind, new Stats());
+        }
+        ExecutorService virtual = newVirtualThreadExecutor();
+        ExecutorService executor = virtual != null ? virtual : newFixedExecutor(concurrency);
+        Semaphore slots = new Semaphore(concurrency);
+        double intervalNanos = rate > 0 ? 1e9 / rate : 0;
+
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < operations.size(); i++) {
+                Operation operation = operations.get(i);
+                long due;
+                if (rate > 0) {
+                    due = start + (long) (i * intervalNanos);
+                    for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    slots.acquire();
+                } else {
+                    slots.acquire();
+                    due = System.nanoTime();
+                }
+                Stats kindStats = stats.get(operation.kind);
+                executor.execute(() -> {
+                    try {
+                        apply(operation, catalog);
+                    } catch (RuntimeException e) {
+                        kindStats.errors.increment();
+                    } finally {
+                        kindStats.latencies.record(System.nanoTime() - due);
+                        slots.release();
+                    }
+                });
+            }
+            slots.acquire(concurrency);
+        } finally {
+            executor.shutdown();
+        }
+        return new Result(stats, System.nanoTime() - start, virtual != null);
+    }
+
+    private void apply(Operation operation, List<Book> catalog) {
+        String argument = operation.argument;
+        switch (operation.kind) {
+            case SEARCH -> {
+                // As LibraryMenu searches: exact match first, then typo-tolerant
+                if (library.searchBookByKeyword(argument) == null) {
+                    library.searchBooksFuzzy(argument, FUZZY_RESULTS);
+                }
+            }
+            case SORT -> library.getSortedBooks(sortKey(argument));
+            case VIEW -> library.getPage(null, PAGE_SIZE);
+            case ADD -> library.addBook(new Book(argument, REPLAY_AUTHOR, REPLAY_YEAR));
+            case UPDATE -> {
+                Book book = target(argument, catalog, 0);
+                if (book != null) {
+                    library.updateBook(book.getId(), new Book(book.getTitle(), book.getAuthor(),
+                            book.getPublicationYear()));
+                }
+            }
+            case DELETE -> {
+                Book book = target(argument, catalog, 0);
+                if (book != null) {
+                    library.deleteBook(book.getId());
+                }
+            }
+            case BATCH_ADD -> {
+                List<Book> books = new ArrayList<>(operation.size);
+                for (int i = 0; i < operation.size; i++) {
+                    books.add(new Book(argument + " " + i, REPLAY_AUTHOR, REPLAY_YEAR));
+                }
+                library.addAll(books);
+            }
+            case BATCH_UPDATE -> {
+                Map<String, Book> updates = new LinkedHashMap<>();
+                for (int i = 0; i < operation.size; i++) {
+                    Book book = target(argument, catalog, i);
+                    if (book != null) {
+                        updates.put(book.getId(), book);
+                    }
+                }
+                library.updateAll(updates);
+            }
+            case BATCH_DELETE -> {
+                List<String> ids = new ArrayList<>(operation.size);
+                for (int i = 0; i < operation.size; i++) {
+                    Book book = target(argument, catalog, i);
+                    if (book != null) {
+                        ids.add(book.getId());
+                    }
+                }
+                library.deleteAll(ids);
+            }
+        }
+    }
+
+    /**
+     * Finds the book an operation names by ID or exact title, or else picks
+     * one from the catalog snapshot by the argument's hash. The n-th pick
+     * of a batch is the next book along from the first.
+     */
+    private Book target(String argument, List<Book> catalog, int n) {
+        if (n == 0) {
+            Book named = library.getBookById(argument).orElse(null);
+            if (named == null) {
+                named = library.searchBookByKeyword(argument);
+            }
+            if (named != null) {
+                return named;
+            }
+        }
+        return catalog.isEmpty() ? null : catalog.get(Math.floorMod(argument.hashCode() + n, catalog.size()));
+    }
+
+    private static SortUtil.Key sortKey(String criteria) {
+        return switch (criteria.trim().toLowerCase()) {
+            case "author" -> SortUtil.Key.AUTHOR;
+            case "publication year", "year" -> SortUtil.Key.YEAR;
+            default -> SortUtil.Key.TITLE;
+        };
+    }
+
+    /**
+     * Looks up {@code Executors.newVirtualThreadPerTaskExecutor} at run time
+     * so the replay still builds and runs on Java 17.
+     *
+     * @return A virtual-thread-per-task executor, or null if unavailable
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newFixedExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "replay-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final class Stats {
+        private final Histogram latencies = new Histogram();
+        private final LongAdder errors = new LongAdder();
+    }
+
+    /**
+     * One logged operation.
+     */
+    public static final class Operation {
+        private final Kind kind;
+        private final String argument;
+        private final int size;
+
+        /**
+         * @param kind What the operation does
+         * @param argument The search term, sort criteria, title or book ID
+         *        it was logged with
+         * @param size How many books a batch changed, 1 for other kinds
+         */
+        public Operation(Kind kind, String argument, int size) {
+            if (size < 0) {
+                throw new IllegalArgumentException("size must be at least 0: " + size);
+            }
+            this.kind = kind;
+            this.argument = argument;
+            this.size = size;
+        }
+
+        /**
+         * Parses one line written by {@link UserInteractionLogger}.
+         *
+         * @param line The line, with or without its timestamp
+         * @return The operation, or null if the line records none
+         */
+        public static Operation parse(String line) {
+            String message = line.length() > TIMESTAMP_LENGTH
+                    && line.startsWith(" - ", TIMESTAMP_LENGTH - 3) ? line.substring(TIMESTAMP_LENGTH) : line;
+            if (message.equals("View all books action")) {
+                return new Operation(Kind.VIEW, "", 1);
+            }
+            if (message.startsWith("Batch ")) {
+                return parseBatch(message);
+            }
+            String[][] prefixes = {
+                    {"Search action: ", "SEARCH"}, {"Sort action: ", "SORT"},
+                    {"Add book action: ", "ADD"}, {"Create book action: ", "ADD"},
+                    {"Update book action: ", "UPDATE"}, {"Delete book action: ", "DELETE"}};
+            for (String[] prefix : prefixes) {
+                if (message.startsWith(prefix[0])) {
+                    String argument = message.substring(prefix[0].length());
+                    if (argument.startsWith("Book ID ") && !prefix[1].equals("SEARCH")) {
+                        argument = argument.substring("Book ID ".length());
+                    }
+                    return new Operation(Kind.valueOf(prefix[1]), argument, 1);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Parses "Batch {action} action: {applied} of {requested} books".
+         */
+        private static Operation parseBatch(String message) {
+            int actionEnd = message.indexOf(" action: ");
+            int of = message.indexOf(" of ", actionEnd + 1);
+            if (actionEnd < 0 || of < 0) {
+                return null;
+            }
+            Kind kind = switch (message.substring("Batch ".length(), actionEnd)) {
+                case "add" -> Kind.BATCH_ADD;
+                case "update" -> Kind.BATCH_UPDATE;
+                case "delete", "delete where" -> Kind.BATCH_DELETE;
+                default -> null;
+            };
+            try {
+                int applied = Integer.parseInt(message.substring(actionEnd + " action: ".length(), of));
+                return kind == null || applied < 0 ? null : new Operation(kind, "Replay batch", applied);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /** @return What the operation does */
+        public Kind getKind() { return kind; }
+
+        /** @return The search term, sort criteria, title or book ID */
+        public String getArgument() { return argument; }
+
+        /** @return How many books a batch changed, 1 for other kinds */
+        public int getSize() { return size; }
+
+        @Override
+        public String toString() {
+            return kind.label + (size == 1 ? "" : " x" + size) + (argument.isEmpty() ? "" : ": " + argument);
+        }
+    }
+
+    /**
+     * What a replay measured.
+     */
+    public static final class Result {
+        private final Map<Kind, Histogram.Snapshot> latencies = new EnumMap<>(Kind.class);
+        private final Map<Kind, Long> errors = new EnumMap<>(Kind.class);
+        private final long elapsedNanos;
+        private final boolean virtualThreads;
+
+        private Result(Map<Kind, Stats> stats, long elapsedNanos, boolean virtualThreads) {
+            stats.forEach((kind, s) -> {
+                latencies.put(kind, s.latencies.snapshot());
+                errors.put(kind, s.errors.sum());
+            });
+            this.elapsedNanos = elapsedNanos;
+            this.virtualThreads = virtualThreads;
+        }
+
+        /** @return How many operations ran */
+        public long getOperations() {
+            return latencies.values().stream().mapToLong(Histogram.Snapshot::getCount).sum();
+        }
+
+        /** @return How many operations threw */
+        public long getErrors() {
+            return errors.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        /** @return How many operations of a kind ran */
+        public long getOperations(Kind kind) { return latencies.get(kind).getCount(); }
+
+        /** @return How many operations of a kind threw */
+        public long getErrors(Kind kind) { return errors.get(kind); }
+
+        /** @return Latencies of a kind in nanoseconds, from when each was due */
+        public Histogram.Snapshot getLatencies(Kind kind) { return latencies.get(kind); }
+
+        /** @return Time from the first operation being due to the last finishing */
+        public long getElapsedNanos() { return elapsedNanos; }
+
+        /** @return Operations completed per second */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : getOperations() * 1e9 / elapsedNanos;
+        }
+
+        /** @return true if operations ran on virtual threads */
+        public boolean usesVirtualThreads() { return virtualThreads; }
+
+        /**
+         * Formats the result as a table, one row per kind that ran, with latencies in microseconds.
+         */
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format("Replayed %d operations in %.2f s: %.0f ops/s on %s%n", getOperations(),
+                    elapsedNanos / 1e9, getThroughput(), virtualThreads ? "virtual threads" : "a thread pool"));
+            out.append(String.format("%-14s %10s %10s %10s %10s %10s %10s %10s %10s%n", "Operation", "Calls",
+                    "Errors", "Ops/s", "Mean us", "p50 us", "p99 us", "p99.9 us", "Max us"));
+            for (Kind kind : Kind.values()) {
+                Histogram.Snapshot latency = latencies.get(kind);
+                if (latency.getCount() == 0) {
+                    continue;
+                }
+                out.append(String.format("%-14s %10d %10d %10.0f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                        kind.label, latency.getCount(), errors.get(kind),
+                        elapsedNanos == 0 ? 0 : latency.getCount() * 1e9 / elapsedNanos, latency.getMean() / 1e3,
+                        latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(99) / 1e3,
+                        latency.getValueAtPercentile(99.9) / 1e3, latency.getMax() / 1e3));
+            }
+            return out.toString();
+        }
+    }
+}
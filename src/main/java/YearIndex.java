@@ -0,0 +1,376 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * Sorted primitive index of publication years for range queries.
+ *
+ * <p>Rows are kept as parallel arrays sorted by year and then by the book's
+ * catalog sequence number: an {@code int[]} of years, a {@code long[]} of
+ * sequence numbers and a {@code Book[]} of row references, so no year is
+ * ever boxed. Rows are split between a large main run and a small pending
+ * run that takes new rows with a short array shift; once the pending run
+ * reaches about the square root of the main run's size it is merged into
+ * the main run in one linear pass. Deletes from the main run leave a null
+ * row that the next merge drops. A range query is a binary search in each
+ * run plus a merge of the two matching stretches, so it costs
+ * O(log n + output).
+ *
+ * <p>Writes must be serialized by the caller. The lookups only read and
+ * tolerate running concurrently with a write, though it may then return a
+ * wrong answer or throw, which optimistic readers detect and retry.
+ */
+public class YearIndex {
+    private static final int MIN_PENDING = 1024;
+    private static final int REFERENCE_BYTES = referenceBytes();
+
+    private Run main = new Run(16);
+    private Run pending = new Run(MIN_PENDING);
+    private int deadRows;
+
+    /**
+     * Indexes a book.
+     *
+     * @param book The book
+     * @param sequence The book's catalog sequence number, unique per book
+     */
+    public void add(Book book, long sequence) {
+        int year = book.getPublicationYear();
+        pending.insert(pending.search(year, sequence), year, sequence, book);
+        if (pending.size >= Math.max(MIN_PENDING, (int) Math.sqrt(main.size))) {
+            merge();
+        }
+    }
+
+    /**
+     * Re-indexes a book whose year may have changed, pointing its row at the
+     * new instance.
+     *
+     * @param old The book as it was indexed
+     * @param book The book with its new values
+     * @param sequence The book's catalog sequence number
+     */
+    public void update(Book old, Book book, long sequence) {
+        int year = old.getPublicationYear();
+        if (book.getPublicationYear() != year) {
+            remove(old, sequence);
+            add(book, sequence);
+            return;
+        }
+        int pos = main.search(year, sequence);
+        if (pos >= 0 && main.rows[pos] != null) {
+            main.rows[pos] = book;
+            return;
+        }
+        pos = pending.search(year, sequence);
+        if (pos >= 0) {
+            pending.rows[pos] = book;
+        }
+    }
+
+    /**
+     * Removes a book.
+     *
+     * @param book The book as it was indexed
+     * @param sequence The book's catalog sequence number
+     */
+    public void remove(Book book, long sequence) {
+        int year = book.getPublicationYear();
+        int pos = main.search(year, sequence);
+        if (pos >= 0 && main.rows[pos] != null) {
+            main.rows[pos] = null;
+            deadRows++;
+            if (deadRows > main.size / 2) {
+                merge();
+            }
+            return;
+        }
+        pos = pending.search(year, sequence);
+        if (pos >= 0) {
+            pending.delete(pos);
+        }
+    }
+
+    /**
+     * Removes every book.
+     */
+    public void clear() {
+        main = new Run(16);
+        pending = new Run(MIN_PENDING);
+        deadRows = 0;
+    }
+
+    /**
+     * @return The number of books indexed
+     */
+    public int size() {
+        return main.size - deadRows + pending.size;
+    }
+
+    /**
+     * Finds the books published in a range of years.
+     *
+     * @param from First year, inclusive
+     * @param to Last year, inclusive
+     * @return The matching books ordered by year, then by catalog order
+     */
+    public List<Book> range(int from, int to) {
+        Cursor cursor = cursor(from, to);
+        List<Book> result = new ArrayList<>(count(from, to));
+        while (cursor.advance()) {
+            result.add(cursor.book());
+        }
+        return result;
+    }
+
+    /**
+     * Counts the rows in a range of years with two binary searches per run.
+     * Rows of deleted books that have not been merged away yet are counted
+     * too, so the result is an upper bound.
+     *
+     * @param from First year, inclusive
+     * @param to Last year, inclusive
+     * @return About how many books were published in the range
+     */
+    public int count(int from, int to) {
+        if (from > to) {
+            return 0;
+        }
+        Run main = this.main;
+        Run pending = this.pending;
+        return Math.max(0, main.firstAbove(to) - main.firstAtLeast(from))
+                + Math.max(0, pending.firstAbove(to) - pending.firstAtLeast(from));
+    }
+
+    /**
+     * Walks the books published in a range of years lazily, ordered by year
+     * and then by catalog order. The cursor reads the index as it goes, so it
+     * must be used up before the next write.
+     *
+     * @param from First year, inclusive
+     * @param to Last year, inclusive
+     * @return A cursor before the first matching book
+     */
+    public Cursor cursor(int from, int to) {
+        return new Cursor(main, pending, from, to);
+    }
+
+    /**
+     * Position in a merged walk over the matching stretches of both runs.
+     */
+    public static final class Cursor {
+        private final Run main;
+        private final Run pending;
+        private int mainEnd;
+        private int pendingEnd;
+        private int i;
+        private int j;
+        private Book book;
+        private long sequence;
+
+        private Cursor(Run main, Run pending, int from, int to) {
+            this.main = main;
+            this.pending = pending;
+            if (from > to) {
+                return;
+            }
+            i = main.firstAtLeast(from);
+            mainEnd = main.firstAbove(to);
+            j = pending.firstAtLeast(from);
+            pendingEnd = pending.firstAbove(to);
+        }
+
+        /**
+         * Moves to the next book.
+         *
+         * @return false if there are no more
+         */
+        public boolean advance() {
+            while (i < mainEnd || j < pendingEnd) {
+                if (j >= pendingEnd || (i < mainEnd && main.before(i, pending, j))) {
+                    sequence = main.sequences[i];
+                    book = main.rows[i++];
+                    if (book != null) {
+                        return true;
+                    }
+                } else {
+                    sequence = pending.sequences[j];
+                    book = pending.rows[j++];
+                    return true;
+                }
+            }
+            book = null;
+            return false;
+        }
+
+        /** @return The current book */
+        public Book book() { return book; }
+
+        /** @return The current book's catalog sequence number */
+        public long sequence() { return sequence; }
+    }
+
+    /**
+     * Estimates the heap taken by the index: its arrays at their current
+     * capacity plus object headers, assuming 4-byte references when the JVM
+     * uses compressed oops. The books themselves are not counted.
+     *
+     * @return The estimated footprint in bytes
+     */
+    public long memoryBytes() {
+        return main.memoryBytes() + pending.memoryBytes() + 16;
+    }
+
+    /**
+     * Rebuilds the main run from the live rows of both runs.
+     */
+    private void merge() {
+        Run merged = new Run(Math.max(16, main.size - deadRows + pending.size));
+        int i = 0;
+        int j = 0;
+        while (i < main.size || j < pending.size) {
+            if (j >= pending.size || (i < main.size && main.before(i, pending, j))) {
+                if (main.rows[i] != null) {
+                    merged.append(main, i);
+                }
+                i++;
+            } else {
+                merged.append(pending, j++);
+            }
+        }
+        main = merged;
+        pending = new Run(MIN_PENDING);
+        deadRows = 0;
+    }
+
+    private static int referenceBytes() {
+        try {
+            HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            return Boolean.parseBoolean(bean.getVMOption("UseCompressedOops").getValue()) ? 4 : 8;
+        } catch (RuntimeException | LinkageError e) {
+            return 8;
+        }
+    }
+
+    /**
+     * Parallel arrays of rows sorted by year, then sequence number.
+     */
+    private static final class Run {
+        private int[] years;
+        private long[] sequences;
+        private Book[] rows;
+        private int size;
+
+        Run(int capacity) {
+            years = new int[capacity];
+            sequences = new long[capacity];
+            rows = new Book[capacity];
+        }
+
+        /**
+         * @return The row's position, or {@code -(insertion point) - 1}
+         */
+        int search(int year, long sequence) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int c = years[mid] != year ? Integer.compare(years[mid], year)
+                        : Long.compare(sequences[mid], sequence);
+                if (c < 0) {
+                    low = mid + 1;
+                } else if (c > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        int firstAtLeast(int year) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (years[mid] < year) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        int firstAbove(int year) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (years[mid] <= year) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return true if row {@code i} of this run sorts before row
+         *         {@code j} of the other
+         */
+        boolean before(int i, Run other, int j) {
+            return years[i] != other.years[j] ? years[i] < other.years[j]
+                    : sequences[i] < other.sequences[j];
+        }
+
+        /**
+         * Inserts at the position {@link #search} reported; a row that is
+         * already present is replaced.
+         */
+        void insert(int searchResult, int year, long sequence, Book book) {
+            if (searchResult >= 0) {
+                rows[searchResult] = book;
+                return;
+            }
+            int pos = -searchResult - 1;
+            if (size == years.length) {
+                int capacity = size * 2;
+                years = Arrays.copyOf(years, capacity);
+                sequences = Arrays.copyOf(sequences, capacity);
+                rows = Arrays.copyOf(rows, capacity);
+            }
+            System.arraycopy(years, pos, years, pos + 1, size - pos);
+            System.arraycopy(sequences, pos, sequences, pos + 1, size - pos);
+            System.arraycopy(rows, pos, rows, pos + 1, size - pos);
+            years[pos] = year;
+            sequences[pos] = sequence;
+            rows[pos] = book;
+            size++;
+        }
+
+        void delete(int pos) {
+            System.arraycopy(years, pos + 1, years, pos, size - pos - 1);
+            System.arraycopy(sequences, pos + 1, sequences, pos, size - pos - 1);
+            System.arraycopy(rows, pos + 1, rows, pos, size - pos - 1);
+            size--;
+            rows[size] = null;
+        }
+
+        void append(Run from, int i) {
+            years[size] = from.years[i];
+            sequences[size] = from.sequences[i];
+            rows[size] = from.rows[i];
+            size++;
+        }
+
+        long memoryBytes() {
+            long header = 16;
+            return 24 + 3 * header + (long) years.length * (Integer.BYTES + Long.BYTES + REFERENCE_BYTES);
+        }
+    }
+}
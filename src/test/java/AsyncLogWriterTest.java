@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AsyncLogWriterTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void writesEveryMessageFromConcurrentProducers() throws Exception {
+        Path file = dir.resolve("interactions.log");
+        AsyncLogWriter writer = new AsyncLogWriter(file.toString(), 64,
+                AsyncLogWriter.OverflowPolicy.BLOCK, 1024, 50, Long.MAX_VALUE, 0);
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int producer = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    writer.enqueue("Search action: " + producer + "-" + i);
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : producers) {
+            thread.join();
+        }
+        writer.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(20000, lines.size());
+        Set<String> messages = new HashSet<>();
+        for (String line : lines) {
+            assertTrue(line.matches("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2} - Search action: \\d-\\d+"), line);
+            messages.add(line.substring(line.indexOf(" - ") + 3));
+        }
+        assertEquals(20000, messages.size());
+        assertEquals(0, writer.droppedCount());
+    }
+
+    @Test
+    public void rotatesBySize() throws IOException {
+        Path file = dir.resolve("interactions.log");
+        AsyncLogWriter writer = new AsyncLogWriter(file.toString(), 1024,
+                AsyncLogWriter.OverflowPolicy.BLOCK, 256, 10, 1000, 2);
+        for (int i = 0; i < 200; i++) {
+            writer.enqueue("View all books action");
+            writer.flush();
+        }
+        writer.close();
+
+        assertTrue(Files.size(file) <= 1000);
+        assertTrue(Files.size(dir.resolve("interactions.log.1")) <= 1000);
+        assertTrue(Files.exists(dir.resolve("interactions.log.2")));
+        assertTrue(Files.notExists(dir.resolve("interactions.log.3")));
+    }
+
+    @Test
+    public void flushMakesMessagesVisible() throws IOException {
+        Path file = dir.resolve("interactions.log");
+        UserInteractionLogger logger = new UserInteractionLogger(new AsyncLogWriter(file.toString()));
+        logger.logSort("Title");
+        logger.flush();
+
+        assertTrue(Files.readString(file).endsWith(" - Sort action: Title\n"));
+    }
+}
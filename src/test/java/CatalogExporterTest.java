@@ -0,0 +1,95 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CatalogExporterTest {
+    @TempDir
+    Path dir;
+
+    private static List<Book> awkwardBooks() {
+        List<Book> books = new ArrayList<>();
+        books.add(new Book("1984", "George Orwell", 1949));
+        books.add(new Book("Eats, Shoots & Leaves", "Lynne Truss", 2003));
+        books.add(new Book("The \"Annotated\" Alice", "Lewis Carroll", 1960));
+        books.add(new Book("A title spanning\ntwo lines\r\n", "Someone", 2000));
+        books.add(new Book("  Leading spaces", "Trailing tab\t", -44));
+        books.add(new Book("Città invisibili 📚", "Ōe Kenzaburō", 1972));
+        books.add(new Book("Back\\slash \u0001 control", "", 0));
+        // Long enough to straddle the small buffers below
+        books.add(new Book("x".repeat(300), "y".repeat(70), 123456789));
+        return books;
+    }
+
+    @Test
+    public void csvReadsBackThroughTheImporter() throws IOException {
+        List<Book> books = awkwardBooks();
+        for (int bufferBytes : new int[] {64, 1 << 20}) {
+            Path file = dir.resolve("books-" + bufferBytes + ".csv");
+            CatalogExporter.Result result = new CatalogExporter(CatalogExporter.Format.CSV, false, bufferBytes)
+                    .export(books, file);
+            assertEquals(books.size(), result.getRecords());
+            assertEquals(Files.size(file), result.getBytes());
+
+            CsvIngestor.Result imported = new CsvIngestor().ingest(file);
+            assertEquals(List.of(), imported.getErrors());
+            assertEquals(books.size(), imported.getBooks().size());
+            for (int i = 0; i < books.size(); i++) {
+                Book expected = books.get(i);
+                Book actual = imported.getBooks().get(i);
+                assertEquals(expected.getTitle(), actual.getTitle());
+                assertEquals(expected.getAuthor(), actual.getAuthor());
+                assertEquals(expected.getPublicationYear(), actual.getPublicationYear());
+            }
+        }
+    }
+
+    @Test
+    public void jsonLinesMatchTheJsonWriterAndGzipHoldsTheSameBytes() throws IOException {
+        List<Book> books = awkwardBooks();
+        StringBuilder expected = new StringBuilder();
+        for (Book book : books) {
+            if (book.getPublicationYear() >= 0) {
+                Map<String, Object> object = new LinkedHashMap<>();
+                object.put("id", book.getId());
+                object.put("title", book.getTitle());
+                object.put("author", book.getAuthor());
+                object.put("year", book.getPublicationYear());
+                expected.append(Json.write(object)).append('\n');
+            }
+        }
+
+        Path plain = dir.resolve("books.jsonl");
+        Path zipped = dir.resolve("books.jsonl.gz");
+        CatalogExporter.Result result = CatalogExporter.forFile(plain)
+                .export(books, plain, book -> book.getPublicationYear() >= 0);
+        assertEquals(books.size() - 1, result.getRecords());
+        assertEquals(1, result.getSkipped());
+        assertTrue(result.toString().contains("MB/s"), result.toString());
+        byte[] bytes = Files.readAllBytes(plain);
+        assertEquals(expected.toString(), new String(bytes, StandardCharsets.UTF_8));
+
+        CatalogExporter.Result gzipped = new CatalogExporter(CatalogExporter.Format.JSON_LINES, true, 64)
+                .export(books, zipped, book -> book.getPublicationYear() >= 0);
+        assertEquals(result.getBytes(), gzipped.getBytes());
+        assertEquals(Files.size(zipped), gzipped.getFileBytes());
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(zipped))) {
+            assertEquals(new String(bytes, StandardCharsets.UTF_8),
+                    new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertFalse(Files.exists(dir.resolve("books.jsonl.gz.tmp")));
+    }
+}
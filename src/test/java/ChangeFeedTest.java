@@ -0,0 +1,213 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+public class ChangeFeedTest {
+    /**
+     * Records what it receives and requests only when told to.
+     */
+    private static class Recorder implements Flow.Subscriber<ChangeFeed.Change> {
+        private final List<ChangeFeed.Change> changes = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(ChangeFeed.Change change) {
+            changes.add(change);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        private String describe() {
+            return changes.stream().map(change -> change.getSequence() + " " + change.getType() + " "
+                    + change.getBook().getTitle()).collect(Collectors.joining(", "));
+        }
+    }
+
+    private static Library library(ChangeFeed feed) {
+        Library library = new Library();
+        library.addListener(feed);
+        return library;
+    }
+
+    @Test
+    public void deliversOnlyWhatIsRequestedAndCoalescesWhileWaiting() {
+        // Deliveries run on the changing thread, so the test sees them at once
+        ChangeFeed feed = new ChangeFeed(100, 2, Runnable::run);
+        Library library = library(feed);
+        Recorder recorder = new Recorder();
+        feed.subscribe(recorder);
+
+        Book a = new Book("A", "Author", 2000);
+        Book b = new Book("B", "Author", 2000);
+        Book c = new Book("C", "Author", 2000);
+        library.addBook(a);
+        library.addBook(b);
+        assertTrue(recorder.changes.isEmpty());
+        recorder.subscription.request(1);
+        assertEquals("1 ADDED A", recorder.describe());
+
+        // B waits in the buffer and absorbs its update, and A's two updates
+        // fold into one; C does not fit until the buffer drains, and its add
+        // and delete then cancel out
+        library.updateBook(b.getId(), new Book(b.getId(), "B2", "Author", 2000));
+        library.updateBook(a.getId(), new Book(a.getId(), "A2", "Author", 2000));
+        library.updateBook(a.getId(), new Book(a.getId(), "A3", "Author", 2000));
+        library.addBook(c);
+        library.deleteBook(c.getId());
+        assertEquals(7, feed.getLastSequence());
+        assertEquals(2, feed.getCoalescedCount());
+        recorder.subscription.request(10);
+        assertEquals("1 ADDED A, 2 ADDED B2, 4 UPDATED A3", recorder.describe());
+        assertEquals(3, feed.getCoalescedCount());
+    }
+
+    @Test
+    public void callsOnSubscribeFromTheDrainAndCountsSubscribersThatThrow() {
+        // Deliveries wait until the test runs them
+        List<Runnable> tasks = new ArrayList<>();
+        ChangeFeed feed = new ChangeFeed(100, 2, tasks::add);
+        Library library = library(feed);
+        Recorder recorder = new Recorder() {
+            @Override
+            public void onNext(ChangeFeed.Change change) {
+                super.onNext(change);
+                throw new IllegalStateException("Subscriber bug");
+            }
+        };
+        feed.subscribe(recorder);
+        assertNull(recorder.subscription);
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        recorder.subscription.request(2);
+
+        library.addBook(new Book("A", "Author", 2000));
+        library.addBook(new Book("B", "Author", 2000));
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+        assertEquals("1 ADDED A", recorder.describe());
+        assertNull(recorder.error);
+        assertEquals(1, feed.getSubscriberFailureCount());
+        assertEquals(0, feed.getSubscriberCount());
+    }
+
+    @Test
+    public void resumesAfterALastSeenChangeWhileTheHistoryHoldsIt() {
+        ChangeFeed feed = new ChangeFeed(8, 4, Runnable::run);
+        Library library = library(feed);
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            books.add(new Book("Book " + i, "Author", 2000 + i));
+            library.addBook(books.get(i));
+        }
+
+        Recorder resumed = new Recorder();
+        feed.subscribe(resumed, 3);
+        resumed.subscription.request(Long.MAX_VALUE);
+        library.deleteBook(books.get(0).getId());
+        assertEquals("4 ADDED Book 3, 5 ADDED Book 4, 6 DELETED Book 0", resumed.describe());
+        assertNull(resumed.error);
+
+        Recorder late = new Recorder();
+        feed.subscribe(late, 0);
+        // The late subscriber buffers four changes and leaves the fifth in a
+        // history that soon moves past it
+        for (int i = 0; i < 8; i++) {
+            library.updateBook(books.get(4).getId(), new Book(books.get(4).getId(), "Again " + i, "Author", 2000));
+        }
+        assertEquals(11, resumed.changes.size());
+        assertInstanceOf(ChangeFeed.SequenceExpiredException.class, late.error);
+        assertEquals(6, ((ChangeFeed.SequenceExpiredException) late.error).getOldestSequence());
+        assertTrue(late.changes.isEmpty());
+        assertEquals(1, feed.getSubscriberCount());
+
+        Recorder early = new Recorder();
+        feed.subscribe(early, 99);
+        assertInstanceOf(IllegalArgumentException.class, early.error);
+    }
+
+    @Test
+    public void slowAsynchronousSubscriberEndsUpMirroringTheLibrary() throws Exception {
+        ChangeFeed feed = new ChangeFeed(1 << 16, 16, ForkJoinPool.commonPool());
+        Library library = library(feed);
+        Map<String, String> mirror = new ConcurrentHashMap<>();
+        feed.subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(ChangeFeed.Change change) {
+                if (change.getType() == ChangeFeed.Type.DELETED) {
+                    mirror.remove(change.getBook().getId());
+                } else {
+                    mirror.put(change.getBook().getId(), change.getBook().getTitle());
+                }
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                mirror.put("error", throwable.toString());
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        Random random = new Random(5);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            int action = ids.isEmpty() ? 0 : random.nextInt(3);
+            if (action == 0) {
+                Book book = new Book("Title " + i, "Author", 2000);
+                library.addBook(book);
+                ids.add(book.getId());
+            } else if (action == 1) {
+                String id = ids.get(random.nextInt(ids.size()));
+                library.updateBook(id, new Book(id, "Title " + i, "Author", 2000));
+            } else {
+                library.deleteBook(ids.remove(random.nextInt(ids.size())));
+            }
+        }
+        Map<String, String> expected = library.stream().collect(Collectors.toMap(Book::getId, Book::getTitle));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!mirror.equals(expected) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, mirror);
+        assertSame(library.getChangeFeed(), library.getChangeFeed());
+    }
+}
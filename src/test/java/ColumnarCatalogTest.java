@@ -0,0 +1,107 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ColumnarCatalogTest {
+    private static final String[] AUTHORS = {"George Orwell", "Jane Austen", "Émile Zola", "Fyodor Dostoevsky"};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void matchesTheLibraryThroughChangesCompactionAndReload() throws IOException {
+        Library library = new Library();
+        ColumnarCatalog catalog = new ColumnarCatalog();
+        Random random = new Random(15);
+        List<String> ids = new ArrayList<>();
+        for (int op = 0; op < 5_000; op++) {
+            int choice = random.nextInt(10);
+            if (choice < 6 || ids.isEmpty()) {
+                Book book = randomBook(random, op);
+                assertTrue(catalog.addBook(book));
+                library.addBook(book);
+                ids.add(book.getId());
+            } else if (choice < 8) {
+                String id = ids.get(random.nextInt(ids.size()));
+                Book update = randomBook(random, op);
+                assertTrue(catalog.updateBook(id, update));
+                library.updateBook(id, update);
+            } else {
+                String id = ids.remove(random.nextInt(ids.size()));
+                assertTrue(catalog.deleteBook(id));
+                library.deleteBook(id);
+                assertFalse(catalog.deleteBook(id));
+            }
+        }
+        assertMatches(library, catalog);
+
+        Path file = dir.resolve("catalog.cols");
+        catalog.save(file);
+        ColumnarCatalog loaded = ColumnarCatalog.load(file);
+        assertMatches(library, loaded);
+        assertMatches(library, catalog);
+
+        // Deleting most books compacts the columns on the way
+        long before = loaded.offHeapBytes();
+        while (ids.size() > 100) {
+            String id = ids.remove(ids.size() - 1);
+            assertTrue(loaded.deleteBook(id));
+            library.deleteBook(id);
+        }
+        assertMatches(library, loaded);
+        assertTrue(loaded.offHeapBytes() <= before);
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> ColumnarCatalog.load(file));
+    }
+
+    @Test
+    public void rejectsIdsThatAreNotUuids() {
+        ColumnarCatalog catalog = new ColumnarCatalog();
+        Book book = new Book("Dune", "Frank Herbert", 1965);
+        assertTrue(catalog.addBook(book));
+        assertFalse(catalog.addBook(new Book(book.getId(), "Copy", "Someone", 2000)));
+        assertThrows(IllegalArgumentException.class, () -> catalog.addBook(new Book("custom", "T", "A", 2000)));
+        assertFalse(catalog.getBookById("custom").isPresent());
+        assertEquals(book.getTitle(), catalog.getBookById(book.getId()).orElseThrow().getTitle());
+    }
+
+    private static void assertMatches(Library library, ColumnarCatalog catalog) {
+        List<Book> expected = library.getBooks();
+        List<Book> actual = catalog.getBooks();
+        assertEquals(expected.size(), catalog.size());
+        assertEquals(expected, actual);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+        }
+        for (SortUtil.Key key : SortUtil.Key.values()) {
+            assertEquals(library.getSortedBooks(key), catalog.getSortedBooks(key));
+        }
+        for (String keyword : new String[] {"or", "ORWELL", "émile", "ZOLA", "19", "199", "title 12", "x"}) {
+            assertEquals(library.searchBooksByKeyword(keyword), catalog.searchBooksByKeyword(keyword), keyword);
+        }
+        for (String keyword : new String[] {"jane austen", "ÉMILE ZOLA", "Title 42", "nobody"}) {
+            assertEquals(library.searchBookByKeyword(keyword), catalog.searchBookByKeyword(keyword), keyword);
+        }
+        Book sample = expected.get(expected.size() / 2);
+        assertEquals(sample.getAuthor(), catalog.getBookById(sample.getId()).orElseThrow().getAuthor());
+    }
+
+    private static Book randomBook(Random random, int n) {
+        String title = random.nextInt(5) == 0 ? "Title " + n + " – Révision" : "Title " + n;
+        return new Book(title, AUTHORS[random.nextInt(AUTHORS.length)], 1900 + random.nextInt(125));
+    }
+}
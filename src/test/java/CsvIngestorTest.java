@@ -0,0 +1,105 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CsvIngestorTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void parsesQuotedFieldsAndReportsBadLines() throws IOException {
+        Path file = dir.resolve("books.csv");
+        Files.writeString(file, String.join("\n",
+                "The Great Gatsby,F. Scott Fitzgerald,1925",
+                "\"Eats, Shoots & Leaves\",Lynne Truss,2003",
+                "",
+                "\"The \"\"Annotated\"\" Alice\",  Lewis Carroll , 1960\r",
+                "\"A title spanning",
+                "two lines\",Someone,2000",
+                "Missing year,Nobody",
+                "Bad year,Nobody,19x5",
+                "1984,George Orwell,1949"), StandardCharsets.UTF_8);
+
+        CsvIngestor.Result result = new CsvIngestor().ingest(file);
+        List<Book> books = result.getBooks();
+
+        assertEquals(5, books.size());
+        assertEquals("Eats, Shoots & Leaves", books.get(1).getTitle());
+        assertEquals("The \"Annotated\" Alice", books.get(2).getTitle());
+        assertEquals("Lewis Carroll", books.get(2).getAuthor());
+        assertEquals(1960, books.get(2).getPublicationYear());
+        assertEquals("A title spanning\ntwo lines", books.get(3).getTitle());
+        assertEquals("1984", books.get(4).getTitle());
+        assertEquals(List.of("line 7: expected 3 fields but found 2", "line 8: invalid publication year"),
+                result.getErrors());
+        assertEquals(9, result.getLines());
+    }
+
+    @Test
+    public void parsesManyChunksInParallel() throws IOException {
+        Path file = dir.resolve("large.csv");
+        int rows = 300_000;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < rows; i++) {
+                if (i % 1000 == 0) {
+                    writer.write("\"Multi\nline, " + i + "\",Author " + (i % 97) + "," + (1900 + i % 120) + "\n");
+                } else if (i % 777 == 0) {
+                    writer.write("broken line " + i + "\n");
+                } else {
+                    writer.write("Title number " + i + ",Author " + (i % 97) + "," + (1900 + i % 120) + "\n");
+                }
+            }
+        }
+
+        CsvIngestor.Result result = new CsvIngestor(new ForkJoinPool(4)).ingest(file);
+
+        int broken = 0;
+        for (int i = 0; i < rows; i++) {
+            if (i % 1000 != 0 && i % 777 == 0) {
+                broken++;
+            }
+        }
+        assertEquals(rows - broken, result.getBooks().size());
+        assertEquals(broken, result.getErrors().size());
+        assertEquals("Multi\nline, 1000", result.getBooks().get(1000 - 1).getTitle());
+        // Row 777 is on line 778; the quoted newline in row 0 pushes it to 779
+        assertEquals("line 779: expected 3 fields but found 1", result.getErrors().get(0));
+        assertEquals(rows + rows / 1000, result.getLines());
+    }
+
+    @Test
+    public void strayQuoteInAnUnquotedFieldDoesNotShiftChunkBoundaries() throws IOException {
+        Path file = dir.resolve("stray.csv");
+        int rows = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            // An ordinary character to the parser, but it flips a plain quote count
+            writer.write("O\"Brien Tales,Someone,1999\n");
+            rows++;
+            // Enough rows for several 4 MiB chunks, with quoted line breaks
+            // near every boundary
+            while (rows < 400_000) {
+                writer.write("\"Line\n" + rows + "\",Author " + rows % 97 + "," + (1900 + rows % 120) + "\n");
+                rows++;
+            }
+        }
+
+        CsvIngestor.Result result = new CsvIngestor(new ForkJoinPool(4)).ingest(file);
+
+        assertEquals(List.of(), result.getErrors());
+        assertEquals(rows, result.getBooks().size());
+        assertEquals("O\"Brien Tales", result.getBooks().get(0).getTitle());
+        for (int i = 1; i < rows; i++) {
+            assertEquals("Line\n" + i, result.getBooks().get(i).getTitle());
+        }
+        assertEquals(2L * rows - 1, result.getLines());
+    }
+}
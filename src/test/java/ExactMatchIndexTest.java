@@ -0,0 +1,101 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class ExactMatchIndexTest {
+    // Letters whose case mappings are irregular: sharp s, dotted and dotless
+    // i, the Kelvin sign, final sigma, and a Deseret pair outside the BMP
+    private static final String[] PIECES = {"ß", "SS", "ss", "İ", "ı", "i", "I", "K", "k", "K",
+            "σ", "ς", "Σ", "𐐀", "𐐨", "a"};
+
+    private static String text(Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 1 + random.nextInt(2); i > 0; i--) {
+            text.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return text.toString();
+    }
+
+    /** What searchBookByKeyword did before it had an index. */
+    private static Book linearScan(List<Book> books, String keyword) {
+        return books.stream()
+                .filter(book -> book.getTitle().equalsIgnoreCase(keyword)
+                        || book.getAuthor().equalsIgnoreCase(keyword))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static List<Book> list(Iterator<Book> books) {
+        List<Book> list = new ArrayList<>();
+        books.forEachRemaining(list::add);
+        return list;
+    }
+
+    @Test
+    public void agreesWithEqualsIgnoreCaseThroughUpdatesAndDeletes() {
+        Random random = new Random(1);
+        Library library = new Library();
+        List<String> ids = new ArrayList<>();
+        for (int round = 0; round < 3_000; round++) {
+            int action = ids.isEmpty() ? 0 : random.nextInt(4);
+            if (action < 2) {
+                Book book = new Book(text(random), text(random), 2000);
+                library.addBook(book);
+                ids.add(book.getId());
+            } else {
+                String id = ids.get(random.nextInt(ids.size()));
+                if (action == 2) {
+                    library.updateBook(id, new Book(text(random), text(random), 2001));
+                } else {
+                    library.deleteBook(id);
+                }
+            }
+            if (round % 20 == 0) {
+                List<Book> books = library.getBooks();
+                for (int k = 0; k < 10; k++) {
+                    String keyword = text(random);
+                    assertEquals(linearScan(books, keyword), library.searchBookByKeyword(keyword), keyword);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bucketsKeepAddOrderThroughUpdatesAndDeletes() {
+        ExactMatchIndex index = new ExactMatchIndex();
+        Book first = new Book("Dune", "Frank Herbert", 1965);
+        Book second = new Book("Children of Dune", "Frank Herbert", 1976);
+        Book third = new Book("DUNE", "Someone Else", 2021);
+        index.add(first);
+        index.add(second);
+        index.add(third);
+        assertEquals(List.of(first, third), list(index.withTitle("dune")));
+        assertEquals(List.of(first, second), list(index.byAuthor("FRANK HERBERT")));
+
+        // An update keeps the book's place, even as a new instance
+        Book renamed = new Book(second.getId(), "dune", "Frank Herbert", 1976);
+        index.update(renamed);
+        assertEquals(List.of(first, renamed, third), list(index.withTitle("Dune")));
+        assertEquals(3, index.titleCount("dUnE"));
+        assertEquals(0, index.titleCount("Children of Dune"));
+
+        // Removing and re-adding puts a book last
+        index.remove(first);
+        assertEquals(renamed, index.first("dune"));
+        index.add(first);
+        assertEquals(List.of(renamed, third, first), list(index.withTitle("dune")));
+        assertEquals(List.of(renamed, first), list(index.byAuthor("frank herbert")));
+
+        index.remove(renamed);
+        index.remove(third);
+        index.remove(first);
+        assertNull(index.first("dune"));
+        assertEquals(0, index.authorCount("Frank Herbert"));
+    }
+}
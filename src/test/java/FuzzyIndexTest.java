@@ -0,0 +1,133 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class FuzzyIndexTest {
+    private static final String[] WORDS = {"the", "great", "gatsby", "war", "peace", "of", "mockingbird",
+            "brave", "new", "world", "animal", "farm", "crime", "punishment", "dune", "rings", "ice", "fire"};
+    private static final String[] AUTHORS = {"George Orwell", "Jane Austen", "Émile Zola", "Leo Tolstoy",
+            "Harper Lee", "Frank Herbert"};
+
+    @Test
+    public void matchesABruteForceScanThroughChanges() {
+        FuzzyIndex index = new FuzzyIndex();
+        List<Book> books = new ArrayList<>();
+        Random random = new Random(18);
+        for (int op = 0; op < 3_000; op++) {
+            int choice = random.nextInt(10);
+            if (choice < 6 || books.isEmpty()) {
+                Book book = randomBook(random);
+                index.add(book);
+                books.add(book);
+            } else if (choice < 8) {
+                int i = random.nextInt(books.size());
+                Book book = randomBook(random);
+                Book update = new Book(books.get(i).getId(), book.getTitle(), book.getAuthor(), 2000);
+                index.update(update);
+                books.set(i, update);
+            } else {
+                index.remove(books.remove(random.nextInt(books.size())));
+            }
+            if (op % 100 == 0) {
+                for (int q = 0; q < 20; q++) {
+                    String query = typo(random, WORDS[random.nextInt(WORDS.length)]);
+                    if (random.nextBoolean()) {
+                        query += " " + typo(random, AUTHORS[random.nextInt(AUTHORS.length)].split(" ")[1]);
+                    }
+                    int k = 1 + random.nextInt(20);
+                    assertEquals(bruteForce(books, query, k), index.search(query, k), query);
+                }
+            }
+        }
+        assertEquals(books.size(), index.size());
+    }
+
+    @Test
+    public void distanceCountsTranspositionsAsOneEdit() {
+        assertEquals(0, FuzzyIndex.distance("orwell", "orwell", 2));
+        assertEquals(1, FuzzyIndex.distance("orwel", "orwell", 2));
+        assertEquals(1, FuzzyIndex.distance("gatbsy", "gatsby", 2));
+        assertEquals(2, FuzzyIndex.distance("gatsbi", "gatsby!", 2));
+        assertEquals(3, FuzzyIndex.distance("tolstoy", "orwell", 2));
+        assertEquals(List.of("émile", "zola", "1984"), FuzzyIndex.tokenize("ÉMILE  Zola—1984"));
+    }
+
+    /**
+     * Scores every book against the query the slow way. Books keep their
+     * insertion order among equals, which is the order of the list.
+     */
+    private static List<Book> bruteForce(List<Book> books, String query, int k) {
+        List<String> terms = FuzzyIndex.tokenize(query);
+        List<Book> matches = new ArrayList<>();
+        List<Integer> scores = new ArrayList<>();
+        for (Book book : books) {
+            List<String> words = new ArrayList<>(FuzzyIndex.tokenize(book.getTitle()));
+            words.addAll(FuzzyIndex.tokenize(book.getAuthor()));
+            int score = 0;
+            for (String term : terms) {
+                int max = term.length() <= 2 ? 0 : term.length() <= 4 ? 1 : 2;
+                int best = max + 1;
+                for (String word : words) {
+                    best = Math.min(best, FuzzyIndex.distance(term, word, max));
+                }
+                if (best > max) {
+                    score = -1;
+                    break;
+                }
+                score += best;
+            }
+            if (score >= 0) {
+                matches.add(book);
+                scores.add(score);
+            }
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < matches.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing((Integer i) -> scores.get(i)).thenComparing(i -> i));
+        List<Book> result = new ArrayList<>();
+        for (int i = 0; i < Math.min(k, order.size()); i++) {
+            result.add(matches.get(order.get(i)));
+        }
+        return result;
+    }
+
+    private static Book randomBook(Random random) {
+        StringBuilder title = new StringBuilder();
+        int words = 1 + random.nextInt(3);
+        for (int w = 0; w < words; w++) {
+            title.append(w == 0 ? "" : " ").append(typo(random, WORDS[random.nextInt(WORDS.length)]));
+        }
+        return new Book(title.toString(), AUTHORS[random.nextInt(AUTHORS.length)], 1900 + random.nextInt(120));
+    }
+
+    /**
+     * Applies up to two random edits to a word.
+     */
+    private static String typo(Random random, String word) {
+        StringBuilder out = new StringBuilder(word);
+        int edits = random.nextInt(3);
+        for (int e = 0; e < edits && out.length() > 1; e++) {
+            int i = random.nextInt(out.length());
+            switch (random.nextInt(4)) {
+                case 0 -> out.deleteCharAt(i);
+                case 1 -> out.insert(i, (char) ('a' + random.nextInt(26)));
+                case 2 -> out.setCharAt(i, (char) ('a' + random.nextInt(26)));
+                default -> {
+                    if (i + 1 < out.length()) {
+                        char c = out.charAt(i);
+                        out.setCharAt(i, out.charAt(i + 1));
+                        out.setCharAt(i + 1, c);
+                    }
+                }
+            }
+        }
+        return out.toString();
+    }
+}
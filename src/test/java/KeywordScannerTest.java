@@ -0,0 +1,88 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+public class KeywordScannerTest {
+    private static final String[] PIECES = {"a", "b", "é", "É", "ß", "ö", "日本", "📚", "x", " ", "19", "\n", "\ud800"};
+
+    private static String text(Random random, int maxPieces) {
+        StringBuilder text = new StringBuilder();
+        for (int i = random.nextInt(maxPieces + 1); i > 0; i--) {
+            text.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return text.toString();
+    }
+
+    private static List<Book> bruteForce(List<Book> books, String lowerKeyword) {
+        List<Book> expected = new ArrayList<>();
+        for (Book book : books) {
+            if (book != null && (book.getTitle().toLowerCase().contains(lowerKeyword)
+                    || book.getAuthor().toLowerCase().contains(lowerKeyword)
+                    || String.valueOf(book.getPublicationYear()).contains(lowerKeyword))) {
+                expected.add(book);
+            }
+        }
+        return expected;
+    }
+
+    @Test
+    public void matchesWhatStringContainsFindsThroughUpdatesAndDeletes() {
+        Random random = new Random(1);
+        KeywordScanner scanner = new KeywordScanner();
+        // Catalog order, with null for deleted books
+        List<Book> catalog = new ArrayList<>();
+        for (int round = 0; round < 4_000; round++) {
+            int action = catalog.isEmpty() ? 0 : random.nextInt(4);
+            if (action < 2) {
+                Book book = new Book(text(random, 6), text(random, 4), random.nextInt(2100) - 50);
+                scanner.add(book, catalog.size());
+                catalog.add(book);
+            } else {
+                int i = random.nextInt(catalog.size());
+                Book old = catalog.get(i);
+                if (old == null) {
+                    continue;
+                }
+                if (action == 2) {
+                    // Shorter and longer texts exercise both in-place and moved records
+                    Book book = new Book(old.getId(), text(random, 8), text(random, 4), random.nextInt(2100));
+                    scanner.update(book);
+                    catalog.set(i, book);
+                } else {
+                    scanner.remove(old);
+                    catalog.set(i, null);
+                }
+            }
+            if (round % 40 == 0) {
+                String keyword = text(random, 2).toLowerCase();
+                if (keyword.isEmpty() || keyword.contains("\ud800")) {
+                    assertNull(scanner.search(keyword));
+                } else {
+                    assertEquals(bruteForce(catalog, keyword), scanner.search(keyword), keyword);
+                }
+            }
+        }
+        assertEquals(catalog.stream().filter(book -> book != null).count(), scanner.size());
+    }
+
+    @Test
+    public void splitsLargeArenasAcrossAPool() {
+        Random random = new Random(2);
+        List<Book> catalog = new ArrayList<>();
+        KeywordScanner scanner = new KeywordScanner(new ForkJoinPool(4));
+        for (int i = 0; i < 120_000; i++) {
+            Book book = new Book("Title " + text(random, 5), "Author " + random.nextInt(1000), 1900 + i % 120);
+            scanner.add(book, i);
+            catalog.add(book);
+        }
+        for (String keyword : new String[] {"é", "19", "r 7", "日", "📚x", "q"}) {
+            assertEquals(bruteForce(catalog, keyword), scanner.search(keyword), keyword);
+        }
+    }
+}
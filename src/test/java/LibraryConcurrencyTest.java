@@ -0,0 +1,178 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LibraryConcurrencyTest {
+    private static final int BOOKS = 5_000;
+
+    @TempDir
+    Path dir;
+
+    /** Title, author and year all carry the same number, so a torn book is easy to spot. */
+    private static Book book(String id, int n) {
+        return new Book(id, "Title " + n, "Author " + n, n);
+    }
+
+    private static void assertConsistent(Book book) {
+        int n = book.getPublicationYear();
+        assertEquals("Title " + n, book.getTitle());
+        assertEquals("Author " + n, book.getAuthor());
+    }
+
+    private static Library library(List<String> ids) {
+        Library library = new Library();
+        for (int i = 0; i < BOOKS; i++) {
+            Book book = new Book("Title " + i, "Author " + i, i);
+            ids.add(book.getId());
+            library.addBook(book);
+        }
+        return library;
+    }
+
+    /** Runs the tasks on their own threads until the writers finish, rethrowing the first failure. */
+    private static void run(List<Runnable> writers, List<Runnable> readers) throws InterruptedException {
+        AtomicBoolean done = new AtomicBoolean();
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        CountDownLatch writersDone = new CountDownLatch(writers.size());
+        for (Runnable writer : writers) {
+            threads.add(new Thread(() -> {
+                try {
+                    writer.run();
+                } catch (Throwable t) {
+                    failures.add(t);
+                } finally {
+                    writersDone.countDown();
+                }
+            }));
+        }
+        for (Runnable reader : readers) {
+            threads.add(new Thread(() -> {
+                try {
+                    while (!done.get() && failures.isEmpty()) {
+                        reader.run();
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        assertTrue(writersDone.await(60, TimeUnit.SECONDS));
+        done.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.peek());
+        }
+    }
+
+    @Test
+    public void readersSeeConsistentBooksWhileWritersRun() throws InterruptedException {
+        List<String> ids = new ArrayList<>();
+        Library library = library(ids);
+
+        List<Runnable> writers = new ArrayList<>();
+        for (int w = 0; w < 2; w++) {
+            writers.add(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 20_000; i++) {
+                    String id = ids.get(random.nextInt(BOOKS));
+                    if (random.nextInt(10) == 0) {
+                        // Delete and re-add under the same ID; either may lose to the other writer
+                        library.deleteBook(id);
+                        library.addBook(book(id, random.nextInt(BOOKS)));
+                    } else {
+                        library.updateBook(id, book(id, random.nextInt(BOOKS)));
+                    }
+                }
+            });
+        }
+        List<Runnable> readers = List.of(
+                () -> library.getBookById(ids.get(ThreadLocalRandom.current().nextInt(BOOKS)))
+                        .ifPresent(LibraryConcurrencyTest::assertConsistent),
+                () -> {
+                    int n = ThreadLocalRandom.current().nextInt(BOOKS);
+                    for (Book book : library.searchBooksByKeyword("Author " + n)) {
+                        assertConsistent(book);
+                        assertTrue(book.getAuthor().startsWith("Author " + n));
+                    }
+                    Book exact = library.searchBookByKeyword("title " + n);
+                    if (exact != null) {
+                        assertEquals("Title " + n, exact.getTitle());
+                    }
+                },
+                () -> {
+                    List<Book> byYear = library.getSortedBooks(SortUtil.Key.YEAR);
+                    for (int i = 1; i < byYear.size(); i++) {
+                        assertTrue(byYear.get(i - 1).getPublicationYear() <= byYear.get(i).getPublicationYear());
+                    }
+                    assertTrue(byYear.size() >= BOOKS - 2 && byYear.size() <= BOOKS);
+                });
+        run(writers, readers);
+
+        List<Book> books = library.getBooks();
+        assertEquals(BOOKS, books.size());
+        for (Book book : books) {
+            assertConsistent(book);
+            assertEquals(book, library.getBookById(book.getId()).orElseThrow());
+            assertTrue(library.searchBooksByKeyword(book.getTitle()).contains(book));
+        }
+    }
+
+    @Test
+    public void compactsJournalWhileWritersRun() throws Exception {
+        String snapshot = dir.resolve("library.ser").toString();
+        String journalFile = dir.resolve("library.journal").toString();
+        List<String> ids = new ArrayList<>();
+        Library library = library(ids);
+        MutationJournal journal = MutationJournal.open(library, snapshot, journalFile);
+        journal.compact();
+
+        List<Runnable> writers = new ArrayList<>();
+        for (int w = 0; w < 3; w++) {
+            writers.add(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 2_000; i++) {
+                    String id = ids.get(random.nextInt(BOOKS));
+                    library.updateBook(id, book(id, random.nextInt(BOOKS)));
+                }
+            });
+        }
+        writers.add(() -> {
+            for (int i = 0; i < 10; i++) {
+                try {
+                    assertTrue(journal.compact());
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        run(writers, List.of());
+        journal.flush();
+
+        // Recover without a clean shutdown
+        Library recovered = new Library();
+        recovered.setBooks(new LibrarySerializer().loadLibrary(snapshot));
+        MutationJournal.open(recovered, snapshot, journalFile).close();
+        journal.close();
+        assertEquals(library.getBooks().size(), recovered.getBooks().size());
+        for (Book book : library.getBooks()) {
+            Book other = recovered.getBookById(book.getId()).orElseThrow();
+            assertEquals(book.getTitle(), other.getTitle());
+            assertEquals(book.getPublicationYear(), other.getPublicationYear());
+        }
+    }
+}
@@ -1,5 +1,147 @@
-package test.java;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class LibrarySerializerTest {
-    
+    @TempDir
+    Path dir;
+
+    private final LibrarySerializer serializer = new LibrarySerializer();
+
+    private static List<Book> sampleBooks() {
+        List<Book> books = new ArrayList<>();
+        books.add(new Book("The Great Gatsby", "F. Scott Fitzgerald", 1925));
+        books.add(new Book("1984", "George Orwell", 1949));
+        books.add(new Book("Animal Farm", "George Orwell", 1945));
+        books.add(new Book("Cien años de soledad", "Gabriel García Márquez", 1967));
+        books.add(new Book(null, null, 0));
+        return books;
+    }
+
+    private static void assertSameBooks(List<Book> expected, List<Book> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getTitle(), actual.get(i).getTitle());
+            assertEquals(expected.get(i).getAuthor(), actual.get(i).getAuthor());
+            assertEquals(expected.get(i).getPublicationYear(), actual.get(i).getPublicationYear());
+        }
+    }
+
+    @Test
+    public void roundTripsSnapshot() throws IOException {
+        List<Book> books = sampleBooks();
+        String file = dir.resolve("library.ser").toString();
+
+        assertTrue(serializer.saveLibrary(books, file));
+        assertTrue(LibrarySnapshot.isSnapshot(Path.of(file)));
+        assertSameBooks(books, serializer.loadLibrary(file));
+    }
+
+    @Test
+    public void readsSnapshotOneSegmentAtATime() throws IOException {
+        List<Book> books = sampleBooks();
+        books.add(new Book("A title longer than any of the segments it is read through", "Anonymous", 2001));
+        for (int i = 0; i < 1_000; i++) {
+            books.add(new Book("Title " + i, "Author " + i % 7, 1900 + i % 120));
+        }
+        Path file = dir.resolve("segments.ser");
+        LibrarySnapshot.write(books, file);
+
+        // Segment sizes that split strings, lengths and records at every offset
+        for (long segment : new long[] {5, 16, 31, 33, 4096}) {
+            assertSameBooks(books, LibrarySnapshot.read(file, segment));
+        }
+    }
+
+    @Test
+    public void roundTripsIdsThatAreNotCanonicalUuids() throws IOException {
+        List<Book> books = sampleBooks();
+        books.add(new Book("isbn-978-0451524935", "1984", "George Orwell", 1949));
+        books.add(new Book("6F9619FF-8B86-D011-B42D-00C04FC964FF", "Upper-case UUID", "Anonymous", 2000));
+        books.add(new Book("George Orwell", "ID shared with an author", "George Orwell", 2001));
+        books.add(new Book("", "Empty ID", "Anonymous", 2002));
+        String file = dir.resolve("ids.ser").toString();
+
+        assertTrue(serializer.saveLibrary(books, file));
+        assertSameBooks(books, serializer.loadLibrary(file));
+    }
+
+    @Test
+    public void readsVersionOneSnapshot() throws IOException {
+        // Version 1 records have no ID ref: UUID as two longs, title ref, author ref, year
+        UUID id = UUID.randomUUID();
+        byte[] title = "Emma".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(4 + title.length + 28).order(ByteOrder.LITTLE_ENDIAN);
+        body.putInt(title.length).put(title);
+        body.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+        body.putInt(0).putInt(-1).putInt(1815);
+        CRC32 crc = new CRC32();
+        crc.update(body.array());
+        ByteBuffer header = ByteBuffer.allocate(LibrarySnapshot.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LibrarySnapshot.MAGIC).putInt(1).putInt(1).putInt(1)
+                .putLong(4 + title.length).putLong(crc.getValue());
+        Path file = dir.resolve("v1.ser");
+        Files.write(file, ByteBuffer.allocate(header.capacity() + body.capacity())
+                .put(header.array()).put(body.array()).array());
+
+        assertSameBooks(List.of(new Book(id.toString(), "Emma", null, 1815)), LibrarySnapshot.read(file));
+    }
+
+    @Test
+    public void roundTripsEmptyLibrary() {
+        String file = dir.resolve("empty.ser").toString();
+
+        assertTrue(serializer.saveLibrary(new ArrayList<>(), file));
+        assertEquals(0, serializer.loadLibrary(file).size());
+    }
+
+    @Test
+    public void loadsLegacySerializedFile() throws IOException {
+        List<Book> books = sampleBooks();
+        Path file = dir.resolve("legacy.ser");
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file.toFile()))) {
+            oos.writeObject(books);
+        }
+
+        assertFalse(LibrarySnapshot.isSnapshot(file));
+        assertSameBooks(books, serializer.loadLibrary(file.toString()));
+    }
+
+    @Test
+    public void rejectsCorruptSnapshot() throws IOException {
+        String file = dir.resolve("corrupt.ser").toString();
+        assertTrue(serializer.saveLibrary(sampleBooks(), file));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 0xFF);
+        }
+
+        assertNull(serializer.loadLibrary(file));
+    }
+
+    @Test
+    public void returnsNullForMissingFile() {
+        assertNull(serializer.loadLibrary(dir.resolve("missing.ser").toString()));
+    }
 }
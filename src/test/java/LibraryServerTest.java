@@ -0,0 +1,181 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class LibraryServerTest {
+    private Library library;
+    private LibraryServer server;
+    private HttpClient client;
+
+    @BeforeEach
+    public void start() throws IOException {
+        library = new Library();
+        library.addBook(new Book("The Great Gatsby", "F. Scott Fitzgerald", 1925));
+        library.addBook(new Book("1984", "George Orwell", 1949));
+        library.addBook(new Book("Animal Farm", "George Orwell", 1945));
+        server = new LibraryServer(library, 0);
+        server.start();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @AfterEach
+    public void stop() {
+        server.close();
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> object(HttpResponse<String> response) {
+        return (Map<String, Object>) Json.parse(response.body());
+    }
+
+    @Test
+    public void servesCrudSearchAndSortedListing() throws Exception {
+        HttpResponse<String> added = send("POST", "/books",
+                "{\"title\":\"Emma\",\"author\":\"Jane \\\"J.\\\" Austen\",\"year\":1815}");
+        assertEquals(201, added.statusCode());
+        String id = (String) object(added).get("id");
+        assertEquals("Jane \"J.\" Austen", library.getBookById(id).orElseThrow().getAuthor());
+
+        assertEquals("Emma", object(send("GET", "/books/" + id, null)).get("title"));
+        assertEquals(2, ((List<?>) Json.parse(send("GET", "/search?q=orwell", null).body())).size());
+        assertEquals("1984", object(send("GET", "/search/exact?q=" + URLEncoder.encode("1984",
+                StandardCharsets.UTF_8), null)).get("title"));
+
+        Map<String, Object> page = object(send("GET", "/books?sort=year&offset=1&limit=2", null));
+        assertEquals(4L, page.get("total"));
+        List<?> books = (List<?>) page.get("books");
+        assertEquals(List.of(1925L, 1945L), books.stream().map(b -> ((Map<?, ?>) b).get("year")).toList());
+
+        assertEquals(200, send("PUT", "/books/" + id,
+                "{\"title\":\"Emma\",\"author\":\"Jane Austen\",\"year\":1816}").statusCode());
+        assertEquals(1816, library.getBookById(id).orElseThrow().getPublicationYear());
+
+        assertEquals(204, send("DELETE", "/books/" + id, null).statusCode());
+        assertEquals(404, send("GET", "/books/" + id, null).statusCode());
+        assertEquals(400, send("POST", "/books", "{\"title\":\"No year\",\"author\":\"x\"}").statusCode());
+        assertEquals(400, send("GET", "/books?sort=color", null).statusCode());
+        assertEquals(405, send("DELETE", "/search?q=x", null).statusCode());
+    }
+
+    @Test
+    public void decodesOnlyPercentEscapesInPaths() throws Exception {
+        library.addBook(new Book("a+b c/é", "Plus", "Anonymous", 2000));
+
+        assertEquals("Plus", object(send("GET", "/books/a+b%20c%2F%C3%A9", null)).get("title"));
+        assertEquals(404, send("GET", "/books/a%2Bb%20c%2F%C3%A9x", null).statusCode());
+        // The HTTP client refuses to send malformed escapes, but a batch entry can carry them
+        List<?> results = (List<?>) Json.parse(send("POST", "/batch", Json.write(List.of(
+                Map.of("method", "GET", "path", "/books/a%2"),
+                Map.of("method", "GET", "path", "/books/%zz")))).body());
+        assertEquals(List.of(400L, 400L), results.stream().map(r -> ((Map<?, ?>) r).get("status")).toList());
+    }
+
+    @Test
+    public void answersBatchesInOrder() throws Exception {
+        String id = library.getBooks().get(0).getId();
+        HttpResponse<String> response = send("POST", "/batch", Json.write(List.of(
+                Map.of("method", "GET", "path", "/books/" + id),
+                Map.of("method", "GET", "path", "/search?q=George%20Orwell"),
+                Map.of("method", "POST", "path", "/books",
+                        "body", Map.of("title", "Persuasion", "author", "Jane Austen", "year", 1817)),
+                Map.of("method", "DELETE", "path", "/books/missing"),
+                Map.of("path", "/books"))));
+
+        assertEquals(200, response.statusCode());
+        List<?> results = (List<?>) Json.parse(response.body());
+        assertEquals(List.of(200L, 200L, 201L, 404L, 400L),
+                results.stream().map(r -> ((Map<?, ?>) r).get("status")).toList());
+        assertEquals("The Great Gatsby", ((Map<?, ?>) ((Map<?, ?>) results.get(0)).get("body")).get("title"));
+        assertEquals(2, ((List<?>) ((Map<?, ?>) results.get(1)).get("body")).size());
+        assertEquals(4, library.getBooks().size());
+    }
+
+    /**
+     * Load generator: several clients, each on its own keep-alive connection,
+     * issue a read-heavy mix of requests and the test reports requests per
+     * second and latency percentiles.
+     */
+    @Test
+    public void loadGeneratorReportsThroughputAndLatency() throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            Book book = new Book("Title " + i, "Author " + (i % 100), 1900 + i % 120);
+            library.addBook(book);
+            ids.add(book.getId());
+        }
+        int clients = 8;
+        int requestsPerClient = 300;
+        long[] latencies = new long[clients * requestsPerClient];
+        AtomicInteger failures = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            threads.add(new Thread(() -> {
+                HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < requestsPerClient; i++) {
+                    int n = random.nextInt(ids.size());
+                    String path = switch (i % 4) {
+                        case 0 -> "/search?q=title%20" + n;
+                        case 1 -> "/search/exact?q=Author%20" + (n % 100);
+                        case 2 -> "/books?sort=year&limit=10";
+                        default -> "/books/" + ids.get(n);
+                    };
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = http.send(HttpRequest.newBuilder(
+                                URI.create("http://localhost:" + server.getPort() + path)).build(),
+                                HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() != 200) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                    latencies[client * requestsPerClient + i] = System.nanoTime() - start;
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("HTTP load: %d requests from %d clients, %.0f req/s, p50 %.2f ms, p99 %.2f ms%s%n",
+                latencies.length, clients, latencies.length / seconds,
+                latencies[latencies.length / 2] / 1e6, latencies[latencies.length * 99 / 100] / 1e6,
+                server.usesVirtualThreads() ? " (virtual threads)" : "");
+        assertEquals(0, failures.get());
+        assertTrue(latencies[0] > 0);
+        assertFalse(library.getBooks().isEmpty());
+    }
+}
@@ -0,0 +1,335 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LibraryTest {
+    @TempDir
+    Path dir;
+
+    private static Library library(int n) {
+        Library library = new Library();
+        for (int i = 0; i < n; i++) {
+            library.addBook(new Book("Title " + i, "Author " + (i % 10), 1900 + i % 100));
+        }
+        return library;
+    }
+
+    @Test
+    public void cursorsSurviveInsertsDeletesAndCompaction() {
+        Library library = library(120);
+        List<Book> original = library.getBooks();
+
+        Library.Page first = library.getPage(null, 50);
+        assertEquals(original.subList(0, 50), first.getBooks());
+        assertTrue(first.hasNext());
+
+        // Delete most of the catalog (compacting the slots), including the
+        // book the cursor points at, then add more books
+        Set<Book> deleted = new HashSet<>();
+        for (int i = 0; i < 120; i += 3) {
+            deleted.add(original.get(i));
+        }
+        for (int i = 49; i < 120; i++) {
+            if (i % 4 != 1) {
+                deleted.add(original.get(i));
+            }
+        }
+        deleted.forEach(book -> library.deleteBook(book.getId()));
+        List<Book> added = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            Book book = new Book("New " + i, "Author", 2000);
+            added.add(book);
+            library.addBook(book);
+        }
+
+        List<Book> rest = new ArrayList<>();
+        String cursor = first.getNextCursor();
+        while (cursor != null) {
+            Library.Page page = library.getPage(cursor, 4);
+            assertTrue(page.getBooks().size() <= 4);
+            rest.addAll(page.getBooks());
+            cursor = page.getNextCursor();
+        }
+
+        List<Book> expected = new ArrayList<>();
+        for (Book book : original.subList(50, 120)) {
+            if (!deleted.contains(book)) {
+                expected.add(book);
+            }
+        }
+        expected.addAll(added);
+        assertEquals(expected, rest);
+    }
+
+    @Test
+    public void iteratorAndStreamWalkTheCatalogInOrder() {
+        Library library = library(3000);
+        List<Book> original = library.getBooks();
+        for (int i = 0; i < 3000; i += 7) {
+            library.deleteBook(original.get(i).getId());
+        }
+
+        List<Book> iterated = new ArrayList<>();
+        library.forEach(iterated::add);
+        assertEquals(library.getBooks(), iterated);
+        assertEquals(library.getBooks(), library.stream().collect(Collectors.toList()));
+
+        Library.Page last = library.getPage(null, library.getBooks().size());
+        assertNull(last.getNextCursor());
+        assertEquals(10, library.getPage(null, 10).getBooks().size());
+        assertThrows(IllegalArgumentException.class, () -> library.getPage("not a cursor!", 10));
+        assertThrows(IllegalArgumentException.class, () -> library.getPage(null, 0));
+        assertEquals(List.of(), new Library().getPage(null, 10).getBooks());
+    }
+
+    @Test
+    public void yearRangeMatchesAFilteredScanThroughChanges() {
+        Library library = new Library();
+        Random random = new Random(13);
+        List<String> ids = new ArrayList<>();
+        for (int op = 0; op < 20_000; op++) {
+            int choice = random.nextInt(10);
+            if (choice < 6 || ids.isEmpty()) {
+                Book book = new Book("Title " + op, "Author", 1800 + random.nextInt(225));
+                library.addBook(book);
+                ids.add(book.getId());
+            } else if (choice < 8) {
+                String id = ids.get(random.nextInt(ids.size()));
+                Book current = library.getBookById(id).orElse(null);
+                int year = random.nextBoolean() || current == null ? 1800 + random.nextInt(225)
+                        : current.getPublicationYear();
+                library.updateBook(id, new Book("Updated " + op, "Author", year));
+            } else {
+                library.deleteBook(ids.remove(random.nextInt(ids.size())));
+            }
+            if (op % 2500 == 0) {
+                assertYearRanges(library, random);
+            }
+        }
+        assertYearRanges(library, random);
+        assertTrue(library.getYearIndexMemoryBytes() > 16L * library.getBooks().size());
+    }
+
+    @Test
+    public void compactStorageBehavesLikeStandardStorage() throws Exception {
+        Library standard = new Library();
+        Library compact = new Library(Library.Storage.COMPACT);
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            books.add(new Book("Title " + i, new String("Author " + (i % 7)), 1900 + i % 50));
+        }
+        // IDs that cannot be stored as two longs stay plain books
+        books.add(new Book("custom-id", "Not a UUID", "Someone", 2001));
+        books.add(new Book(books.get(0).getId().toUpperCase(), "Upper-case UUID", "Someone", 2002));
+        for (Book book : books) {
+            assertTrue(standard.addBook(book));
+            assertTrue(compact.addBook(book));
+        }
+        assertEquals(500, compact.getBooks().stream().filter(b -> b instanceof CompactBook).count());
+
+        String id = books.get(3).getId();
+        assertTrue(compact.updateBook(id, new Book("Renamed", "Author 99", 1999)));
+        assertTrue(standard.updateBook(id, new Book("Renamed", "Author 99", 1999)));
+        assertTrue(compact.deleteBook(books.get(4).getId()));
+        assertTrue(standard.deleteBook(books.get(4).getId()));
+        assertTrue(compact.deleteBook("custom-id"));
+        assertTrue(standard.deleteBook("custom-id"));
+        assertFalse(compact.addBook(books.get(5)));
+
+        assertEquals(standard.getBooks(), compact.getBooks());
+        for (int i = 0; i < standard.getBooks().size(); i++) {
+            Book expected = standard.getBooks().get(i);
+            Book actual = compact.getBooks().get(i);
+            assertEquals(expected.toString(), actual.toString());
+            assertEquals(expected.hashCode(), actual.hashCode());
+            assertEquals(actual, compact.getBookById(expected.getId()).orElseThrow());
+        }
+        assertEquals(standard.searchBooksByKeyword("author 3"), compact.searchBooksByKeyword("author 3"));
+        assertEquals(standard.searchBookByKeyword("Author 99"), compact.searchBookByKeyword("Author 99"));
+        assertEquals(standard.getSortedBooks(SortUtil.Key.AUTHOR), compact.getSortedBooks(SortUtil.Key.AUTHOR));
+
+        // Java serialization writes compact books as plain ones
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new ArrayList<>(compact.getBooks()));
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            List<?> copy = (List<?>) in.readObject();
+            assertEquals(Book.class, copy.get(0).getClass());
+            assertEquals(standard.getBooks(), copy);
+        }
+    }
+
+    @Test
+    public void searchCacheServesRepeatsUntilTheCatalogChanges() {
+        Library library = library(200);
+        List<Book> orwell = library.searchBooksByKeyword("Author 3");
+        assertEquals(orwell, library.searchBooksByKeyword("author 3"));
+        Book exact = library.searchBookByKeyword("Title 7");
+        assertEquals(exact, library.searchBookByKeyword("Title 7"));
+        assertEquals(2, library.getSearchCacheStats().getHits());
+
+        Book added = new Book("Another", "Author 3", 2020);
+        library.addBook(added);
+        assertEquals(orwell.size() + 1, library.searchBooksByKeyword("author 3").size());
+        library.updateBook(exact.getId(), new Book("Renamed", "Author 7", 1907));
+        assertNull(library.searchBookByKeyword("Title 7"));
+        library.deleteBook(added.getId());
+        assertEquals(orwell, library.searchBooksByKeyword("author 3"));
+        library.setBooks(List.of(added));
+        assertEquals(List.of(added), library.searchBooksByKeyword("author 3"));
+        assertEquals(2, library.getSearchCacheStats().getHits());
+        assertEquals(4, library.getSearchCacheStats().getInvalidations());
+
+        library.setSearchCacheCapacity(0);
+        assertNull(library.getSearchCacheStats());
+        assertEquals(List.of(added), library.searchBooksByKeyword("author 3"));
+    }
+
+    @Test
+    public void fuzzySearchToleratesTyposAndFollowsChanges() {
+        Library library = new Library();
+        Book gatsby = new Book("The Great Gatsby", "F. Scott Fitzgerald", 1925);
+        Book nineteen = new Book("Nineteen Eighty-Four", "George Orwell", 1949);
+        Book farm = new Book("Animal Farm", "George Orwell", 1945);
+        library.setBooks(List.of(gatsby, nineteen, farm, new Book("Great Expectations", "Charles Dickens", 1861)));
+
+        assertEquals(List.of(nineteen, farm), library.searchBooksFuzzy("Orwel", 10));
+        assertEquals(List.of(gatsby), library.searchBooksFuzzy("Great Gatsbi", 10));
+        assertEquals(List.of(farm), library.searchBooksFuzzy("aminal frm orwell", 10));
+        assertEquals(List.of(nineteen), library.searchBooksFuzzy("orwell", 1));
+        assertTrue(library.searchBooksFuzzy("Tolstoy", 10).isEmpty());
+
+        library.updateBook(farm.getId(), new Book("Animal Farm", "Eric Blair", 1945));
+        assertEquals(List.of(nineteen), library.searchBooksFuzzy("Orwel", 10));
+        library.deleteBook(gatsby.getId());
+        assertTrue(library.searchBooksFuzzy("Great Gatsbi", 10).isEmpty());
+    }
+
+    @Test
+    public void batchesMatchOneAtATimeChangesAndLogOnce() throws Exception {
+        Library batched = new Library();
+        Library single = new Library();
+        List<String> events = new ArrayList<>();
+        batched.addListener(new LibraryListener() {
+            @Override
+            public void bookAdded(Book book) {
+            }
+
+            @Override
+            public void bookUpdated(Book book) {
+            }
+
+            @Override
+            public void bookDeleted(Book book) {
+                events.add("deleted");
+            }
+
+            @Override
+            public void mutationsApplied() {
+                events.add("applied");
+            }
+        });
+        Path log = dir.resolve("interactions.log");
+        AsyncLogWriter writer = new AsyncLogWriter(log.toString());
+        batched.setInteractionLogger(new UserInteractionLogger(writer));
+
+        Random random = new Random(19);
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            books.add(new Book("Title " + i, "Author " + random.nextInt(50), 1900 + random.nextInt(120)));
+        }
+        books.add(books.get(0));
+        assertEquals(2_000, batched.addAll(books));
+        books.forEach(single::addBook);
+        assertSameCatalog(single, batched);
+
+        // A small batch maintains the indexes, a large one rebuilds them
+        for (int size : new int[] {10, 1_000}) {
+            Map<String, Book> updates = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                Book book = books.get(random.nextInt(books.size()));
+                updates.put(book.getId(), new Book("Renamed " + i, "Author " + random.nextInt(50), 2000 + i % 20));
+            }
+            updates.put("missing", new Book("Nothing", "Nobody", 2000));
+            assertEquals(updates.size() - 1, batched.updateAll(updates));
+            updates.forEach(single::updateBook);
+            assertSameCatalog(single, batched);
+        }
+        for (int size : new int[] {10, 900}) {
+            Set<String> ids = new HashSet<>();
+            while (ids.size() < size) {
+                ids.add(books.get(random.nextInt(books.size())).getId());
+            }
+            int expected = (int) ids.stream().filter(id -> single.getBookById(id).isPresent()).count();
+            events.clear();
+            assertEquals(expected, batched.deleteAll(ids));
+            ids.forEach(single::deleteBook);
+            assertSameCatalog(single, batched);
+            assertEquals(expected + 1, events.size());
+            assertEquals("applied", events.get(events.size() - 1));
+        }
+        int expected = (int) single.stream().filter(book -> book.getPublicationYear() < 1950).count();
+        assertEquals(expected, batched.deleteWhere(book -> book.getPublicationYear() < 1950));
+        single.stream().filter(book -> book.getPublicationYear() < 1950).map(Book::getId).toList()
+                .forEach(single::deleteBook);
+        assertSameCatalog(single, batched);
+        assertEquals(0, batched.deleteWhere(book -> false));
+
+        writer.close();
+        List<String> lines = Files.readAllLines(log);
+        assertEquals(7, lines.size());
+        assertTrue(lines.get(0).endsWith("Batch add action: 2000 of 2001 books"), lines.get(0));
+    }
+
+    private static void assertSameCatalog(Library expected, Library actual) {
+        assertEquals(expected.getBooks(), actual.getBooks());
+        for (Book book : expected.getBooks()) {
+            assertEquals(book.toString(), actual.getBookById(book.getId()).orElseThrow().toString());
+        }
+        for (String keyword : new String[] {"renamed 1", "author 7", "title 19", "199"}) {
+            assertEquals(expected.searchBooksByKeyword(keyword), actual.searchBooksByKeyword(keyword));
+        }
+        assertEquals(expected.searchBookByKeyword("Author 3"), actual.searchBookByKeyword("Author 3"));
+        assertEquals(expected.searchBooksFuzzy("renamd 3", 20), actual.searchBooksFuzzy("renamd 3", 20));
+        assertEquals(expected.findByYearRange(1950, 2010), actual.findByYearRange(1950, 2010));
+    }
+
+    private static void assertYearRanges(Library library, Random random) {
+        for (int q = 0; q < 20; q++) {
+            int from = 1790 + random.nextInt(240);
+            int to = from + random.nextInt(30) - 5;
+            List<Book> expected = library.getBooks().stream()
+                    .filter(book -> book.getPublicationYear() >= from && book.getPublicationYear() <= to)
+                    .sorted(Comparator.comparingInt(Book::getPublicationYear))
+                    .collect(Collectors.toList());
+            List<Book> actual = library.findByYearRange(from, to);
+            assertEquals(expected, actual);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getTitle(), actual.get(i).getTitle());
+            }
+        }
+        assertEquals(library.getBooks().size(), library.findByYearRange(Integer.MIN_VALUE, Integer.MAX_VALUE).size());
+    }
+}
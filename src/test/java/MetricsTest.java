@@ -0,0 +1,112 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MetricsTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void reporterKeepsOnlyTheLatestReport() throws Exception {
+        Path file = dir.resolve("metrics.log");
+        Closeable reporter = Metrics.startReporter(file, Duration.ofMillis(20));
+        Thread.sleep(200);
+        reporter.close();
+        String report = Files.readString(file);
+        assertEquals(1, report.split("Library metrics at ", -1).length - 1, report);
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+
+    @Test
+    public void histogramPercentilesStayWithinBucketPrecision() throws Exception {
+        Histogram histogram = new Histogram();
+        List<Long> values = new ArrayList<>();
+        Random random = new Random(17);
+        for (int i = 0; i < 100_000; i++) {
+            values.add((long) (Math.exp(random.nextDouble() * 20)));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int from = t * values.size() / 4;
+                int to = (t + 1) * values.size() / 4;
+                futures.add(pool.submit(() -> values.subList(from, to).forEach(histogram::record)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        values.sort(null);
+        assertEquals(values.size(), snapshot.getCount());
+        assertEquals(values.get(values.size() - 1), snapshot.getMax());
+        assertEquals(values.stream().mapToLong(Long::longValue).average().orElseThrow(), snapshot.getMean(), 1e-6);
+        for (double percentile : new double[] {1, 50, 90, 99, 99.9, 100}) {
+            long exact = values.get((int) Math.ceil(percentile / 100 * values.size()) - 1);
+            long reported = snapshot.getValueAtPercentile(percentile);
+            assertTrue(reported >= exact && reported <= exact + exact / 32 + 1, percentile + ": " + reported);
+        }
+        assertEquals(0, new Histogram().snapshot().getValueAtPercentile(99));
+    }
+
+    @Test
+    public void recordsLibraryOperationsAndPublishesThemOverJmx() throws Exception {
+        Metrics.Operation lookups = Metrics.operation("Library.getBookById");
+        Metrics.Operation searches = Metrics.operation("Library.searchBooksByKeyword");
+        Library library = new Library();
+        Book book = new Book("Nineteen Eighty-Four", "George Orwell", 1949);
+        library.addBook(book);
+        library.addBook(new Book("Animal Farm", "George Orwell", 1945));
+
+        long lookupsBefore = lookups.getCount();
+        long searchesBefore = searches.getCount();
+        library.getBookById(book.getId());
+        for (int i = 0; i < 200; i++) {
+            library.searchBooksByKeyword("orwell");
+        }
+        // Every call is counted, a sample of them timed
+        assertEquals(lookupsBefore + 1, lookups.getCount());
+        assertEquals(searchesBefore + 200, searches.getCount());
+        assertTrue(searches.getMaxResultSize() >= 2);
+        assertTrue(searches.getLatencies().getCount() > 0);
+        assertTrue(searches.getLatencies().getCount() < searches.getCount());
+
+        Metrics.registerMBeans();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.DOMAIN + ":type=Operation,name=Library.getBookById");
+        assertEquals(lookups.getCount(), server.getAttribute(name, "Count"));
+        assertTrue(Metrics.report().contains("Library.searchBooksByKeyword"));
+
+        Metrics.setEnabled(false);
+        try {
+            library.getBookById(book.getId());
+            assertEquals(lookupsBefore + 1, lookups.getCount());
+        } finally {
+            Metrics.setEnabled(true);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MutationJournalTest {
+    @TempDir
+    Path dir;
+
+    private Library recover(String snapshot, String journal) throws IOException {
+        Library library = new Library();
+        List<Book> saved = new LibrarySerializer().loadLibrary(snapshot);
+        if (saved != null) {
+            library.setBooks(saved);
+        }
+        MutationJournal.replay(Path.of(journal), library);
+        return library;
+    }
+
+    private static void assertSameState(Library expected, Library actual) {
+        assertEquals(expected.getBooks().size(), actual.getBooks().size());
+        for (Book book : expected.getBooks()) {
+            Book other = actual.getBookById(book.getId()).orElseThrow();
+            assertEquals(book.getTitle(), other.getTitle());
+            assertEquals(book.getAuthor(), other.getAuthor());
+            assertEquals(book.getPublicationYear(), other.getPublicationYear());
+        }
+    }
+
+    @Test
+    public void recoversSnapshotPlusJournal() throws IOException {
+        String snapshot = dir.resolve("library.ser").toString();
+        String journalFile = dir.resolve("library.journal").toString();
+        Library library = new Library();
+        Book gatsby = new Book("The Great Gatsby", "F. Scott Fitzgerald", 1925);
+        library.addBook(gatsby);
+
+        MutationJournal journal = MutationJournal.open(library, snapshot, journalFile);
+        journal.compact();
+        Book orwell = new Book("1984", "George Orwell", 1949);
+        library.addBook(orwell);
+        library.addBook(new Book("Animal Farm", "George Orwell", 1945));
+        library.updateBook(gatsby.getId(), new Book("Gatsby", "Fitzgerald", 1926));
+        library.deleteBook(orwell.getId());
+        journal.flush();
+
+        // No close or compaction: simulate a crash
+        assertSameState(library, recover(snapshot, journalFile));
+        journal.close();
+    }
+
+    @Test
+    public void replayIsHarmlessAfterCompaction() throws IOException {
+        String snapshot = dir.resolve("library.ser").toString();
+        String journalFile = dir.resolve("library.journal").toString();
+        Library library = new Library();
+        MutationJournal journal = MutationJournal.open(library, snapshot, journalFile);
+        Book book = new Book("Emma", "Jane Austen", 1815);
+        library.addBook(book);
+        library.updateBook(book.getId(), new Book("Emma", "Austen", 1816));
+        journal.flush();
+        byte[] records = Files.readAllBytes(Path.of(journalFile));
+
+        journal.compact();
+        journal.close();
+        assertEquals(0, Files.size(Path.of(journalFile)));
+
+        // Crash between writing the snapshot and truncating the journal
+        Files.write(Path.of(journalFile), records);
+        assertSameState(library, recover(snapshot, journalFile));
+    }
+
+    @Test
+    public void truncatesTornTail() throws IOException {
+        String snapshot = dir.resolve("library.ser").toString();
+        String journalFile = dir.resolve("library.journal").toString();
+        Library library = new Library();
+        MutationJournal journal = MutationJournal.open(library, snapshot, journalFile);
+        library.addBook(new Book("Emma", "Jane Austen", 1815));
+        library.addBook(new Book("Persuasion", "Jane Austen", 1817));
+        journal.close();
+
+        long size = Files.size(Path.of(journalFile));
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+            raf.setLength(size - 3);
+        }
+
+        Library recovered = recover(snapshot, journalFile);
+        assertEquals(1, recovered.getBooks().size());
+        assertTrue(Files.size(Path.of(journalFile)) < size - 3);
+        assertFalse(recovered.getBooks().get(0).getTitle().isEmpty());
+    }
+
+    @Test
+    public void keepsIdsThatAreNotCanonicalUuids() throws IOException {
+        String snapshot = dir.resolve("library.ser").toString();
+        String journalFile = dir.resolve("library.journal").toString();
+        Library library = new Library();
+        MutationJournal journal = MutationJournal.open(library, snapshot, journalFile);
+        library.addBook(new Book("isbn-0451524934", "1984", "George Orwell", 1949));
+        library.addBook(new Book("3F2504E0-4F89-11D3-9A0C-0305E82C3301", "Emma", "Jane Austen", 1815));
+        library.addBook(new Book("1-2-3-4-5", "Persuasion", "Jane Austen", 1817));
+        library.updateBook("isbn-0451524934", new Book("Nineteen Eighty-Four", "George Orwell", 1949));
+        library.deleteBook("1-2-3-4-5");
+        journal.flush();
+
+        Library recovered = recover(snapshot, journalFile);
+        assertSameState(library, recovered);
+        assertEquals("Nineteen Eighty-Four", recovered.getBookById("isbn-0451524934").orElseThrow().getTitle());
+        assertTrue(recovered.getBookById("3F2504E0-4F89-11D3-9A0C-0305E82C3301").isPresent());
+        journal.close();
+    }
+
+    @Test
+    public void failedCompactionLeavesTheJournalWhole() throws IOException {
+        // The snapshot's directory cannot be created under a regular file
+        Path blocker = Files.createFile(dir.resolve("blocker"));
+        String snapshot = blocker.resolve("library.ser").toString();
+        String journalFile = dir.resolve("library.journal").toString();
+        Path compacting = Path.of(journalFile + ".compacting");
+        Library library = new Library();
+        MutationJournal journal = MutationJournal.open(library, snapshot, journalFile);
+        library.addBook(new Book("isbn-978-0451524935", "1984", "George Orwell", 1949));
+        journal.flush();
+        long size = Files.size(Path.of(journalFile));
+
+        for (int i = 0; i < 3; i++) {
+            assertFalse(journal.compact());
+            assertFalse(Files.exists(compacting));
+            assertEquals(size, Files.size(Path.of(journalFile)));
+        }
+        library.addBook(new Book("Animal Farm", "George Orwell", 1945));
+        journal.flush();
+        assertTrue(Files.size(Path.of(journalFile)) > size);
+        assertSameState(library, recover(snapshot, journalFile));
+        journal.close();
+    }
+
+    @Test
+    public void compactsInTheBackgroundOnceThresholdIsCrossed() throws Exception {
+        String snapshot = dir.resolve("library.ser").toString();
+        String journalFile = dir.resolve("library.journal").toString();
+        Library library = new Library();
+        MutationJournal journal = new MutationJournal(library, snapshot, journalFile, 2, true, 1024);
+        library.addListener(journal);
+        for (int i = 0; i < 100; i++) {
+            library.addBook(new Book("Title " + i, "Author " + i, 1900 + i));
+        }
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!Files.exists(Path.of(snapshot)) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(Files.exists(Path.of(snapshot)));
+        journal.close();
+        assertSameState(library, recover(snapshot, journalFile));
+    }
+}
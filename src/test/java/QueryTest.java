@@ -0,0 +1,117 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class QueryTest {
+    private static final String[] WORDS = {"river", "stone", "winter", "garden", "shadow", "island", "storm", "glass"};
+    private static final SortUtil.Key[] KEYS = SortUtil.Key.values();
+
+    private static Library library(int n, long seed) {
+        Random random = new Random(seed);
+        Library library = new Library();
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+            books.add(new Book(title, "Author " + random.nextInt(30), 1900 + random.nextInt(120)));
+        }
+        library.setBooks(books);
+        // Deletes leave dead rows in the year index and gaps in the catalog
+        // sequence, and updates move books between index buckets
+        for (int i = 0; i < n / 5; i++) {
+            Book book = books.get(random.nextInt(n));
+            if (random.nextBoolean()) {
+                library.deleteBook(book.getId());
+            } else {
+                library.updateBook(book.getId(), new Book(book.getId(), book.getTitle().toUpperCase(),
+                        "Author " + random.nextInt(30), 1900 + random.nextInt(120)));
+            }
+        }
+        return library;
+    }
+
+    private static List<Book> bruteForce(Library library, Query query) {
+        List<Book> expected = new ArrayList<>(library.getBooks().stream().filter(query::matches).toList());
+        if (query.getOrderBy() != null) {
+            Comparator<Book> order = SortUtil.comparator(query.getOrderBy());
+            expected.sort(query.isDescending() ? order.reversed() : order);
+        }
+        return expected.subList(0, Math.min(query.getLimit(), expected.size()));
+    }
+
+    private static Query randomQuery(Random random) {
+        Query query = Query.all();
+        for (int conditions = random.nextInt(3); conditions > 0; conditions--) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            switch (random.nextInt(6)) {
+                case 0 -> query = query.titleIs(word + " " + WORDS[random.nextInt(WORDS.length)]);
+                case 1 -> query = query.titleContains(word.substring(0, 1 + random.nextInt(word.length())));
+                case 2 -> query = query.authorIs("author " + random.nextInt(30));
+                case 3 -> query = query.authorContains(String.valueOf(random.nextInt(30)));
+                case 4 -> query = query.keyword(random.nextBoolean() ? word.substring(1, 4) : "19" + random.nextInt(10));
+                default -> {
+                    int from = 1900 + random.nextInt(120);
+                    query = query.yearBetween(from, from + random.nextInt(30));
+                }
+            }
+        }
+        if (random.nextInt(3) > 0) {
+            SortUtil.Key key = KEYS[random.nextInt(KEYS.length)];
+            query = random.nextBoolean() ? query.orderBy(key) : query.orderByDescending(key);
+        }
+        if (random.nextBoolean()) {
+            query = query.limit(random.nextInt(20));
+        }
+        return query;
+    }
+
+    @Test
+    public void everyPlanReturnsWhatABruteForceScanReturns() {
+        Library library = library(600, 1);
+        Random random = new Random(2);
+        for (int i = 0; i < 300; i++) {
+            Query query = randomQuery(random);
+            if (i == 150) {
+                // Later queries may go through the prebuilt sorted views
+                for (SortUtil.Key key : KEYS) {
+                    library.getSortedBooks(key);
+                }
+            }
+            assertEquals(bruteForce(library, query), library.query(query), query + "\n" + library.explain(query));
+        }
+    }
+
+    @Test
+    public void planFollowsTheSelectiveIndexAndPushesTheLimitDown() {
+        Library library = library(5_000, 3);
+        library.addBook(new Book("Nineteen Eighty-Four", "George Orwell", 1949));
+        library.addBook(new Book("Animal Farm", "George Orwell", 1945));
+        library.addBook(new Book("Burmese Days", "George Orwell", 1934));
+
+        Query orwell = Query.all().authorIs("george orwell").yearBetween(1940, 1950).orderBy(SortUtil.Key.TITLE)
+                .limit(10);
+        String plan = library.explain(orwell);
+        assertTrue(plan.contains("Top 10 by title"), plan);
+        assertTrue(plan.contains("Filter: year BETWEEN 1940 AND 1950"), plan);
+        String chosen = "\n  Author index: author = \"george orwell\" +~3 rows +cost [0-9,]+  <- chosen\n";
+        assertTrue(plan.matches("(?s).*" + chosen + ".*"), plan);
+        assertEquals(List.of("Animal Farm", "Nineteen Eighty-Four"),
+                library.query(orwell).stream().map(Book::getTitle).toList());
+
+        String newest = library.explain(Query.all().yearBetween(2010, 2019).orderBy(SortUtil.Key.YEAR).limit(5));
+        assertTrue(newest.contains("Limit 5 (stops early)") && newest.contains("  Year index: year BETWEEN"), newest);
+
+        String first = library.explain(Query.all().limit(3));
+        assertTrue(first.contains("Limit 3 (stops early)") && first.contains("    Full scan"), first);
+
+        assertThrows(IllegalArgumentException.class, () -> Query.all().limit(-1));
+        assertEquals("books WHERE title = \"a \\\" b\" ORDER BY author DESC LIMIT 2",
+                Query.all().titleIs("a \" b").orderByDescending(SortUtil.Key.AUTHOR).limit(2).toString());
+    }
+}
@@ -0,0 +1,149 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class ResultCacheTest {
+    @Test
+    public void evictsLeastRecentlyUsedByWeightAndDropsOldVersions() {
+        ResultCache<String> cache = new ResultCache<>(10, String::length);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertEquals("aaaa", cache.get("a", 1, () -> { runs.incrementAndGet(); return "aaaa"; }));
+        assertEquals("bbbb", cache.get("b", 1, () -> { runs.incrementAndGet(); return "bbbb"; }));
+        assertEquals("aaaa", cache.get("a", 1, () -> "unused"));
+        // Weighs 11 with the others, so the least recently used "b" goes
+        assertEquals("ccc", cache.get("c", 1, () -> { runs.incrementAndGet(); return "ccc"; }));
+        assertEquals("aaaa", cache.get("a", 1, () -> "unused"));
+        assertEquals("BBBB", cache.get("b", 1, () -> { runs.incrementAndGet(); return "BBBB"; }));
+
+        // A new version recomputes, and nulls and oversized results work
+        assertEquals("AAAA", cache.get("a", 2, () -> { runs.incrementAndGet(); return "AAAA"; }));
+        assertNull(cache.get("n", 2, () -> null));
+        assertEquals("x".repeat(11), cache.get("big", 2, () -> "x".repeat(11)));
+        assertEquals(5, runs.get());
+
+        ResultCache.Stats stats = cache.getStats();
+        assertEquals(2, stats.getHits());
+        assertEquals(7, stats.getMisses());
+        assertEquals(1, stats.getInvalidations());
+        assertEquals(2, stats.getEvictions());
+        assertEquals(9, stats.getWeight());
+    }
+
+    @Test
+    public void coalescesConcurrentMissesForTheSameKey() throws Exception {
+        ResultCache<List<String>> cache = new ResultCache<>(100, List::size);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            results.add(pool.submit(() -> cache.get("k", 1, () -> {
+                runs.incrementAndGet();
+                started.countDown();
+                await(release);
+                return List.of("slow");
+            })));
+            started.await();
+            for (int i = 0; i < 3; i++) {
+                results.add(pool.submit(() -> cache.get("k", 1, () -> {
+                    runs.incrementAndGet();
+                    return List.of("duplicate");
+                })));
+            }
+            while (cache.getStats().getCoalesced() < 3) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            for (Future<List<String>> result : results) {
+                assertEquals(List.of("slow"), result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, runs.get());
+
+            // A failing query fails its waiters too, and is not cached
+            assertThrows(IllegalStateException.class, () -> cache.get("e", 1, () -> {
+                throw new IllegalStateException("boom");
+            }));
+            assertEquals(List.of("ok"), cache.get("e", 1, () -> List.of("ok")));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void hitsTakeNoLock() throws Exception {
+        ResultCache<String> cache = new ResultCache<>(100, String::length);
+        cache.get("k", 1, () -> "value");
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            // Hits used to synchronize on the cache, so this would time out
+            synchronized (cache) {
+                Future<?> hits = pool.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        assertEquals("value", cache.get("k", 1, () -> "recomputed"));
+                    }
+                });
+                hits.get(5, TimeUnit.SECONDS);
+            }
+            assertEquals(10_000, cache.getStats().getHits());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void staysWithinItsWeightUnderConcurrentUse() throws Exception {
+        ResultCache<String> cache = new ResultCache<>(200, String::length);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                workers.add(pool.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 50_000; i++) {
+                        int key = random.nextInt(100);
+                        long version = random.nextInt(3);
+                        String expected = key + "@" + version;
+                        assertEquals(expected, cache.get("k" + key, version, () -> expected));
+                        if (i % 10_000 == 0) {
+                            cache.clear();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        // A put that finds another evicting may leave the weight over the
+        // limit until the next put evicts
+        assertEquals("x", cache.get("last", 9, () -> "x"));
+        ResultCache.Stats stats = cache.getStats();
+        assertTrue(stats.getWeight() <= 200, stats::toString);
+        assertTrue(stats.getSize() > 0 && stats.getEvictions() > 0, stats::toString);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
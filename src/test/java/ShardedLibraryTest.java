@@ -0,0 +1,174 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ShardedLibraryTest {
+    @TempDir
+    Path dir;
+
+    private static List<Book> books(int n, long seed) {
+        Random random = new Random(seed);
+        String[] words = {"river", "stone", "winter", "garden", "shadow", "island", "storm", "glass"};
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            String title = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)];
+            books.add(new Book(id(i), title, "Author " + random.nextInt(40), 1900 + random.nextInt(120)));
+        }
+        return books;
+    }
+
+    private static String id(int i) {
+        return new UUID(0, i).toString();
+    }
+
+    private static <T> List<T> keys(List<Book> books, Function<Book, T> key) {
+        return books.stream().map(key).toList();
+    }
+
+    @Test
+    public void queriesMatchASingleLibrary() {
+        List<Book> books = books(2_000, 1);
+        Library single = new Library();
+        single.setBooks(books);
+        ShardedLibrary sharded = new ShardedLibrary(4);
+        assertEquals(books.size(), sharded.addAll(books));
+        assertEquals(books.size(), sharded.size());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(sharded.getShard(i).size() > 0);
+            for (Book book : sharded.getShard(i).getBooks()) {
+                assertEquals(i, sharded.shardOf(book.getId()));
+            }
+        }
+
+        // Updates and deletes go to the right shard
+        Random random = new Random(2);
+        for (int i = 0; i < 200; i++) {
+            String id = id(random.nextInt(books.size()));
+            if (i % 2 == 0) {
+                Book updated = new Book(id, "renamed winter " + i, "Author " + i, 2000 + i % 20);
+                assertEquals(single.updateBook(id, updated), sharded.updateBook(id, updated));
+            } else {
+                assertEquals(single.deleteBook(id), sharded.deleteBook(id));
+            }
+        }
+        assertFalse(sharded.addBook(single.getBooks().get(0)));
+        assertEquals(single.size(), sharded.size());
+        for (Book book : single.getBooks()) {
+            assertEquals(book, sharded.getBookById(book.getId()).orElseThrow());
+        }
+
+        assertEquals(new HashSet<>(single.searchBooksByKeyword("winter")),
+                new HashSet<>(sharded.searchBooksByKeyword("winter")));
+        assertEquals(new HashSet<>(single.findByYearRange(1950, 1960)),
+                new HashSet<>(sharded.findByYearRange(1950, 1960)));
+        assertEquals(keys(single.findByYearRange(1950, 1960), Book::getPublicationYear),
+                keys(sharded.findByYearRange(1950, 1960), Book::getPublicationYear));
+        assertEquals("renamed winter 0", sharded.searchBookByKeyword("RENAMED WINTER 0").getTitle());
+        assertNull(sharded.searchBookByKeyword("nothing like it"));
+
+        assertEquals(keys(single.getSortedBooks(SortUtil.Key.TITLE), Book::getTitle),
+                keys(sharded.getSortedBooks(SortUtil.Key.TITLE), Book::getTitle));
+        assertEquals(keys(single.getSortedBooks(SortUtil.Key.YEAR), Book::getPublicationYear),
+                keys(sharded.getSortedBooks(SortUtil.Key.YEAR), Book::getPublicationYear));
+        assertEquals(new HashSet<>(single.getBooks()), new HashSet<>(sharded.getSortedBooks(SortUtil.Key.AUTHOR)));
+
+        // The merged listing is reused until a shard changes
+        List<Book> byTitle = sharded.getSortedBooks(SortUtil.Key.TITLE);
+        assertSame(byTitle, sharded.getSortedBooks(SortUtil.Key.TITLE));
+        assertTrue(sharded.addBook(new Book(id(-1), "aaa first", "Author", 2000)));
+        assertEquals("aaa first", sharded.getSortedBooks(SortUtil.Key.TITLE).get(0).getTitle());
+        assertTrue(sharded.deleteBook(id(-1)));
+
+        // A total order gives identical top-k results
+        Comparator<Book> byAuthorThenId = Comparator.comparing(Book::getAuthor).thenComparing(Book::getId);
+        assertEquals(single.topK(byAuthorThenId, 25), sharded.topK(byAuthorThenId, 25));
+        assertEquals(keys(single.topKByYear(30, true), Book::getPublicationYear),
+                keys(sharded.topKByYear(30, true), Book::getPublicationYear));
+
+        Function<Book, Integer> score = book -> FuzzyIndex.score("wintr garden", book);
+        assertEquals(keys(single.searchBooksFuzzy("wintr garden", 10), score),
+                keys(sharded.searchBooksFuzzy("wintr garden", 10), score));
+    }
+
+    @Test
+    public void savesLoadsAndRebalances() throws Exception {
+        List<Book> books = books(1_000, 3);
+        ShardedLibrary sharded = new ShardedLibrary(3);
+        sharded.addAll(books);
+        sharded.save(dir);
+        assertTrue(Files.exists(dir.resolve("shard-2-of-3.ser")));
+
+        ShardedLibrary same = load(dir, 3);
+        assertEquals(3, same.getShardCount());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(keys(sharded.getShard(i).getBooks(), Book::getId),
+                    keys(same.getShard(i).getBooks(), Book::getId));
+        }
+
+        ShardedLibrary more = load(dir, 5);
+        assertEquals(5, more.getShardCount());
+        assertEquals(books.size(), more.size());
+        for (Book book : books) {
+            assertEquals(book.getTitle(), more.getBookById(book.getId()).orElseThrow().getTitle());
+            assertEquals(more.shardOf(book.getId()), shardHolding(more, book.getId()));
+        }
+
+        ShardedLibrary fewer = sharded.rebalance(2);
+        assertEquals(books.size(), fewer.size());
+        assertEquals(keys(sharded.getSortedBooks(SortUtil.Key.TITLE), Book::getTitle),
+                keys(fewer.getSortedBooks(SortUtil.Key.TITLE), Book::getTitle));
+        assertEquals(books.size(), sharded.size());
+
+        // Saving with another count replaces the old files
+        fewer.save(dir);
+        assertFalse(Files.exists(dir.resolve("shard-0-of-3.ser")));
+        assertEquals(2, load(dir, 2).getShardCount());
+        assertNull(load(dir.resolve("missing"), 2));
+    }
+
+    @Test
+    public void savesIdsThatAreNotUuidsAndReportsFailures() throws Exception {
+        ShardedLibrary sharded = new ShardedLibrary(3);
+        sharded.addAll(books(100, 4));
+        sharded.addBook(new Book("isbn-978-0451524935", "1984", "George Orwell", 1949));
+        sharded.save(dir);
+        assertEquals("1984", load(dir, 3).getBookById("isbn-978-0451524935").orElseThrow().getTitle());
+
+        // A non-empty directory where a shard file belongs cannot be replaced
+        Path other = dir.resolve("other");
+        Files.createDirectories(other.resolve("shard-1-of-3.ser").resolve("blocker"));
+        assertThrows(IOException.class, () -> sharded.save(other));
+        assertNull(load(other, 3));
+    }
+
+    private static ShardedLibrary load(Path dir, int shardCount) {
+        return ShardedLibrary.load(dir, shardCount, Library.Storage.STANDARD, ForkJoinPool.commonPool());
+    }
+
+    private static int shardHolding(ShardedLibrary library, String id) {
+        for (int i = 0; i < library.getShardCount(); i++) {
+            if (library.getShard(i).getBookById(id).isPresent()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
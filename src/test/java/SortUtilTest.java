@@ -0,0 +1,119 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+public class SortUtilTest {
+    private static List<Book> books(int n, long seed, boolean wideYears) {
+        Random random = new Random(seed);
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int year = wideYears ? random.nextInt() : 1800 + random.nextInt(225);
+            books.add(new Book("Title " + random.nextInt(n), "Author " + random.nextInt(50), year));
+        }
+        return books;
+    }
+
+    private static void assertSortsLike(Comparator<Book> expected, List<Book> input, Consumer<List<Book>> sorter) {
+        List<Book> reference = new ArrayList<>(input);
+        reference.sort(expected);
+        List<Book> actual = new ArrayList<>(input);
+        sorter.accept(actual);
+        assertEquals(reference, actual);
+    }
+
+    @Test
+    public void yearSortIsStableForNarrowAndWideRanges() {
+        Comparator<Book> byYear = Comparator.comparingInt(Book::getPublicationYear);
+        for (int n : new int[] {0, 1, 31, 1000, 50_000}) {
+            assertSortsLike(byYear, books(n, n, false), books -> SortUtil.sort(books, SortUtil.Key.YEAR));
+            assertSortsLike(byYear, books(n, n, true), books -> SortUtil.sort(books, SortUtil.Key.YEAR));
+        }
+    }
+
+    @Test
+    public void comparatorSortIsStableAcrossSizesAndPresortedInput() {
+        Comparator<Book> byAuthor = Comparator.comparing(Book::getAuthor);
+        for (int n : new int[] {0, 5, 100, 20_000, 100_000}) {
+            List<Book> input = books(n, n, false);
+            assertSortsLike(byAuthor, input, books -> SortUtil.sort(books, byAuthor));
+            input.sort(byAuthor);
+            assertSortsLike(byAuthor, input, books -> SortUtil.sort(books, byAuthor));
+            input.sort(byAuthor.reversed());
+            assertSortsLike(byAuthor, input, books -> SortUtil.sort(books, byAuthor));
+        }
+    }
+
+    @Test
+    public void stringKeysUseCollationOrder() {
+        Comparator<Book> byTitle = Comparator.comparing(Book::getTitle, Collator.getInstance());
+        for (int n : new int[] {10, 10_000}) {
+            List<Book> input = books(n, n, false);
+            input.add(new Book("émile", "Rousseau", 1762));
+            input.add(new Book("Emma", "Austen", 1815));
+            assertSortsLike(byTitle, input, books -> SortUtil.sort(books, SortUtil.Key.TITLE));
+        }
+    }
+
+    @Test
+    public void topKMatchesTheHeadOfAStableSort() {
+        Comparator<Book> byAuthor = Comparator.comparing(Book::getAuthor);
+        Comparator<Book> byYear = Comparator.comparingInt(Book::getPublicationYear);
+        Comparator<Book> newest = (a, b) -> Integer.compare(b.getPublicationYear(), a.getPublicationYear());
+        for (int n : new int[] {0, 7, 1000, 60_000}) {
+            List<Book> input = books(n, n, n % 2 == 0);
+            List<Book> unchanged = new ArrayList<>(input);
+            for (int k : new int[] {0, 1, 20, 5000}) {
+                for (boolean parallel : new boolean[] {false, true}) {
+                    assertEquals(head(input, byAuthor, k), SortUtil.topK(input, byAuthor, k, parallel));
+                    assertEquals(head(input, byYear, k), SortUtil.topKByYear(input, k, false, parallel));
+                    assertEquals(head(input, newest, k), SortUtil.topKByYear(input, k, true, parallel));
+                }
+            }
+            assertEquals(unchanged, input);
+        }
+    }
+
+    private static List<Book> head(List<Book> input, Comparator<Book> comparator, int k) {
+        List<Book> sorted = new ArrayList<>(input);
+        sorted.sort(comparator);
+        return sorted.subList(0, Math.min(k, sorted.size()));
+    }
+
+    @Test
+    public void mergingSortedRunsMatchesOneStableSort() {
+        List<Book> input = books(20_000, 7, false);
+        for (SortUtil.Key key : SortUtil.Key.values()) {
+            List<List<Book>> runs = new ArrayList<>();
+            for (int r = 0; r < 3; r++) {
+                List<Book> run = new ArrayList<>(input.subList(r * input.size() / 3, (r + 1) * input.size() / 3));
+                SortUtil.sort(run, key);
+                runs.add(run);
+            }
+            runs.add(List.of());
+            List<Book> expected = new ArrayList<>(input);
+            SortUtil.sort(expected, key);
+            assertEquals(expected, SortUtil.mergeSorted(runs, key, Integer.MAX_VALUE));
+            assertEquals(expected, SortUtil.mergeSorted(runs, SortUtil.comparator(key), Integer.MAX_VALUE));
+            assertEquals(expected.subList(0, 50), SortUtil.mergeSorted(runs, key, 50));
+        }
+    }
+
+    @Test
+    public void quickSortHandlesSortedInputWithoutDeepRecursion() {
+        Comparator<Book> byYear = Comparator.comparingInt(Book::getPublicationYear);
+        List<Book> input = books(200_000, 7, true);
+        input.sort(byYear);
+        SortUtil.quickSort(input, byYear, 0, input.size() - 1);
+        for (int i = 1; i < input.size(); i++) {
+            assertTrue(input.get(i - 1).getPublicationYear() <= input.get(i).getPublicationYear());
+        }
+    }
+}
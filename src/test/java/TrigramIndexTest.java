@@ -0,0 +1,115 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class TrigramIndexTest {
+    private static final String[] WORDS = {"river", "stone", "Winter", "garden", "ÉTÉ", "shadow", "島の"};
+
+    private static String title(Random random) {
+        return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static List<Book> bruteForce(Map<String, Book> books, String lowerKeyword) {
+        List<Book> expected = new ArrayList<>();
+        for (Book book : books.values()) {
+            if (book.getTitle().toLowerCase().contains(lowerKeyword)
+                    || book.getAuthor().toLowerCase().contains(lowerKeyword)
+                    || String.valueOf(book.getPublicationYear()).contains(lowerKeyword)) {
+                expected.add(book);
+            }
+        }
+        return expected;
+    }
+
+    @Test
+    public void matchesAScanThroughUpdatesDeletesAndRenumbering() {
+        Random random = new Random(1);
+        TrigramIndex index = new TrigramIndex();
+        // Insertion order, which updates keep and the index returns results in
+        Map<String, Book> books = new LinkedHashMap<>();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 3_000; i++) {
+            Book book = new Book(title(random), "Author " + random.nextInt(50), 1900 + random.nextInt(120));
+            index.add(book);
+            books.put(book.getId(), book);
+            ids.add(book.getId());
+        }
+        String[] keywords = {"riv", "er ", "winter", "été", "stone garden", "uthor 1", "199", "e 島", "xyz"};
+        for (int round = 0; round < 6_000; round++) {
+            String id = ids.get(random.nextInt(ids.size()));
+            Book old = books.get(id);
+            if (old == null) {
+                continue;
+            }
+            if (round % 3 == 0) {
+                // A new instance under the same ID replaces the indexed one
+                Book updated = new Book(id, title(random), old.getAuthor(), 1900 + random.nextInt(120));
+                index.update(updated);
+                books.put(id, updated);
+            } else {
+                // Well past 1024 dead documents and half the index, so it renumbers
+                index.remove(old);
+                books.remove(id);
+            }
+            if (round % 200 == 0) {
+                for (String keyword : keywords) {
+                    assertEquals(bruteForce(books, keyword), index.search(keyword), keyword);
+                }
+            }
+        }
+        assertTrue(books.size() < 1_500, "deleted too few books to renumber: " + books.size());
+        assertEquals(books.size(), index.size());
+        for (String keyword : keywords) {
+            assertEquals(bruteForce(books, keyword), index.search(keyword), keyword);
+        }
+
+        // Re-adding a removed book puts it last; adding an indexed one updates it
+        Book first = books.values().iterator().next();
+        index.remove(first);
+        index.add(first);
+        List<Book> all = index.search(first.getAuthor().toLowerCase());
+        assertEquals(first, all.get(all.size() - 1));
+        index.add(new Book(first.getId(), "Renamed", first.getAuthor(), 1));
+        assertEquals(index.size(), books.size());
+        assertEquals(1, index.search("renamed").size());
+    }
+
+    @Test
+    public void leavesShortKeywordsToTheCaller() {
+        TrigramIndex index = new TrigramIndex();
+        index.add(new Book("Dune", "Frank Herbert", 1965));
+        assertNull(index.search("du"));
+        assertEquals(0, index.estimate("zzz"));
+        assertEquals(1, index.search("dun").size());
+        // Grams never span the separator between title and author
+        assertEquals(List.of(), index.search("nef"));
+    }
+
+    @Test
+    public void booksHeldByALibraryCannotBeChangedBehindItsIndexes() {
+        Library library = new Library();
+        Book dune = new Book("Dune", "Frank Herbert", 1965);
+        library.addBook(dune);
+        assertThrows(IllegalStateException.class, () -> dune.setTitle("Dune Messiah"));
+        assertThrows(IllegalStateException.class,
+                () -> library.getBookById(dune.getId()).orElseThrow().setPublicationYear(1969));
+
+        library.updateBook(dune.getId(), new Book("Dune Messiah", "Frank Herbert", 1969));
+        assertEquals(List.of(), library.searchBooksByKeyword("1965"));
+        assertEquals("Dune Messiah", library.searchBooksByKeyword("messiah").get(0).getTitle());
+        assertEquals(1, library.findByYearRange(1969, 1969).size());
+        // The caller's own copy stays the caller's to change
+        Book draft = new Book("Draft", "Someone", 2000);
+        draft.setTitle("Final");
+        assertEquals("Final", draft.getTitle());
+    }
+}
@@ -0,0 +1,102 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class WorkloadReplayTest {
+    @TempDir
+    Path dir;
+
+    private static Library library(int n) {
+        Library library = new Library();
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            books.add(new Book("Title " + i, "Author " + i % 50, 1900 + i % 120));
+        }
+        library.setBooks(books);
+        return library;
+    }
+
+    @Test
+    public void parsesWhatTheLoggerWrites() throws Exception {
+        Path file = dir.resolve("user_interactions.log");
+        AsyncLogWriter writer = new AsyncLogWriter(file.toString(), 64,
+                AsyncLogWriter.OverflowPolicy.BLOCK, 1024, 50, Long.MAX_VALUE, 0);
+        UserInteractionLogger logger = new UserInteractionLogger(writer);
+        logger.logSearch("Orwell");
+        logger.logSort("Publication Year");
+        logger.logViewAllBooks();
+        logger.logCreate("Animal Farm");
+        logger.logUpdateBook("42");
+        logger.logDelete("Burmese Days");
+        logger.logBatch("delete where", 7, 7);
+        logger.logBatch("add", 5, 3);
+        logger.log("Something unrelated");
+        writer.close();
+
+        List<WorkloadReplay.Operation> operations = WorkloadReplay.parse(file);
+        assertEquals(List.of("Search: Orwell", "Sort: Publication Year", "View all", "Add: Animal Farm",
+                "Update: 42", "Delete: Burmese Days", "Batch delete x7: Replay batch", "Batch add x3: Replay batch"),
+                operations.stream().map(Object::toString).toList());
+        assertEquals(Map.of(WorkloadReplay.Kind.SEARCH, 1L, WorkloadReplay.Kind.SORT, 1L,
+                WorkloadReplay.Kind.VIEW, 1L, WorkloadReplay.Kind.ADD, 1L, WorkloadReplay.Kind.UPDATE, 1L,
+                WorkloadReplay.Kind.DELETE, 1L, WorkloadReplay.Kind.BATCH_DELETE, 1L,
+                WorkloadReplay.Kind.BATCH_ADD, 1L), WorkloadReplay.mix(operations));
+        assertNull(WorkloadReplay.Operation.parse("Batch add action: many of 5 books"));
+    }
+
+    @Test
+    public void replaysEveryOperationAndReportsEachKind() throws Exception {
+        Library library = library(2_000);
+        List<WorkloadReplay.Operation> operations = WorkloadReplay.synthetic(WorkloadReplay.DEFAULT_MIX,
+                library.getBooks(), 3_000, 1);
+        Map<WorkloadReplay.Kind, Long> mix = WorkloadReplay.mix(operations);
+        long searches = mix.get(WorkloadReplay.Kind.SEARCH);
+        assertTrue(searches > 1_500 && searches < 2_100, mix::toString);
+        assertFalse(mix.containsKey(WorkloadReplay.Kind.BATCH_DELETE));
+
+        // Deleting by title, a logged ID that is not in this catalog, and a batch
+        operations.add(new WorkloadReplay.Operation(WorkloadReplay.Kind.DELETE, "Title 7", 1));
+        operations.add(new WorkloadReplay.Operation(WorkloadReplay.Kind.DELETE, "no-such-id", 1));
+        operations.add(new WorkloadReplay.Operation(WorkloadReplay.Kind.BATCH_DELETE, "Replay batch", 10));
+
+        WorkloadReplay.Result result = new WorkloadReplay(library, 4).run(operations);
+        assertEquals(operations.size(), result.getOperations());
+        assertEquals(0, result.getErrors());
+        assertEquals(searches, result.getOperations(WorkloadReplay.Kind.SEARCH));
+        assertEquals(1, result.getOperations(WorkloadReplay.Kind.BATCH_DELETE));
+        Histogram.Snapshot latencies = result.getLatencies(WorkloadReplay.Kind.SEARCH);
+        assertTrue(latencies.getValueAtPercentile(50) <= latencies.getValueAtPercentile(99.9));
+        assertTrue(result.toString().contains("Batch delete"), result::toString);
+        assertNull(library.searchBookByKeyword("Title 7"));
+
+        long added = mix.get(WorkloadReplay.Kind.ADD) + 100 * mix.getOrDefault(WorkloadReplay.Kind.BATCH_ADD, 0L);
+        long deleted = 2_000 + added - library.size();
+        // Every delete removed at most one book, and the batch at most ten
+        assertTrue(deleted > 0 && deleted <= mix.get(WorkloadReplay.Kind.DELETE) + 2 + 10, () -> deleted + "");
+    }
+
+    @Test
+    public void holdsTheOfferedRate() throws Exception {
+        Library library = library(100);
+        List<WorkloadReplay.Operation> operations = WorkloadReplay.synthetic(
+                Map.of(WorkloadReplay.Kind.SEARCH, 1L), library.getBooks(), 200, 2);
+        WorkloadReplay.Result result = new WorkloadReplay(library, 1_000, 8).run(operations);
+        assertEquals(200, result.getOperations());
+        // The last operation is due 199 ms after the first
+        assertTrue(result.getElapsedNanos() >= 199_000_000L, result::toString);
+        assertTrue(result.getThroughput() <= 1_010, result::toString);
+
+        assertThrows(IllegalArgumentException.class, () -> new WorkloadReplay(library, -1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new WorkloadReplay(library, 0));
+    }
+}